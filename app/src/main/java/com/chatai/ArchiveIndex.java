@@ -0,0 +1,488 @@
+package com.chatai;
+
+import android.util.Log;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
+import org.apache.commons.compress.archivers.sevenz.SevenZFile;
+
+/**
+ * Index des entrées d'une archive ROM (.zip ou .7z) pour les servir sans extraction sur disque.
+ * Zip: le répertoire central (ZIP64 inclus) est lu une seule fois, les offsets sont mis en cache;
+ * les entrées stockées sont envoyées en zero-copy, les entrées deflate décompressées à la volée.
+ * 7z: les entrées sont décodées à la volée via Commons Compress (pas d'accès direct dans un bloc solide).
+ */
+public final class ArchiveIndex {
+    private static final String TAG = "ArchiveIndex";
+
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_DEFLATED = 8;
+    // Entrée 7z (décodée par Commons Compress)
+    public static final int METHOD_SEVEN_ZIP = -1;
+
+    private static final int MAX_CACHED_ARCHIVES = 64;
+    // Protection contre les archives corrompues ou malveillantes
+    private static final int MAX_CENTRAL_DIRECTORY_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_ENTRIES = 200000;
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int ZIP64_EOCD_LOCATOR_SIZE = 20;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    // LinkedHashMap en ordre d'accès = LRU
+    private static final LinkedHashMap<String, ArchiveIndex> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private static long hits = 0;
+    private static long misses = 0;
+
+    public final File file;
+    public final long length;
+    public final long lastModified;
+    public final boolean sevenZip;
+
+    private final Map<String, Entry> entries;
+
+    /**
+     * Entrée d'archive
+     */
+    public static final class Entry {
+        public final String name;
+        public final int method;
+        public final long crc;
+        public final long compressedSize;
+        public final long size;
+        final int flags;
+        final long localHeaderOffset;
+        volatile long dataOffset = -1; // Lu dans l'en-tête local au premier accès
+
+        Entry(String name, int method, int flags, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.flags = flags;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public boolean isEncrypted() {
+            return (flags & 1) != 0;
+        }
+    }
+
+    private ArchiveIndex(File file, long length, long lastModified, boolean sevenZip, Map<String, Entry> entries) {
+        this.file = file;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.sevenZip = sevenZip;
+        this.entries = entries;
+    }
+
+    /**
+     * Vrai pour les archives dont les entrées peuvent être servies (.zip, .7z)
+     */
+    public static boolean isArchive(String fileName) {
+        String lower = fileName.toLowerCase(Locale.US);
+        return lower.endsWith(".zip") || lower.endsWith(".7z");
+    }
+
+    /**
+     * Retourne l'index de l'archive (depuis le cache si elle n'a pas changé)
+     */
+    public static ArchiveIndex get(File archive) throws IOException {
+        String key = archive.getAbsolutePath();
+        long length = archive.length();
+        long lastModified = archive.lastModified();
+
+        synchronized (ArchiveIndex.class) {
+            ArchiveIndex cached = cache.get(key);
+            if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+
+        long startTime = System.currentTimeMillis();
+        boolean sevenZip = archive.getName().toLowerCase(Locale.US).endsWith(".7z");
+        Map<String, Entry> entries = sevenZip ? readSevenZipEntries(archive) : readCentralDirectory(archive);
+        ArchiveIndex index = new ArchiveIndex(archive, length, lastModified, sevenZip, entries);
+        Log.d(TAG, "Archive indexée: " + archive.getName() + " (" + entries.size() + " entrées, " +
+                (System.currentTimeMillis() - startTime) + " ms)");
+
+        synchronized (ArchiveIndex.class) {
+            cache.put(key, index);
+            Iterator<ArchiveIndex> iterator = cache.values().iterator();
+            while (cache.size() > MAX_CACHED_ARCHIVES && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Statistiques du cache d'index
+     */
+    public static synchronized String getStats() {
+        return "archives=" + cache.size() + ", hits=" + hits + ", misses=" + misses;
+    }
+
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * Vrai si l'entrée peut être envoyée telle quelle depuis le fichier (zero-copy, Range)
+     */
+    public boolean isStored(Entry entry) {
+        return !sevenZip && entry.method == METHOD_STORED;
+    }
+
+    /**
+     * Vrai si l'entrée peut être servie (méthode supportée, non chiffrée)
+     */
+    public boolean isSupported(Entry entry) {
+        return sevenZip || (!entry.isEncrypted()
+                && (entry.method == METHOD_STORED || entry.method == METHOD_DEFLATED));
+    }
+
+    /**
+     * ETag fort d'une entrée: archive (taille, date) + CRC de l'entrée
+     */
+    public String getEtag(Entry entry) {
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "-" +
+                Long.toHexString(entry.crc) + "\"";
+    }
+
+    /**
+     * Position des données d'une entrée zip dans l'archive (lue dans l'en-tête local, puis mise en cache)
+     */
+    public long getDataOffset(Entry entry) throws IOException {
+        long offset = entry.dataOffset;
+        if (offset >= 0) {
+            return offset;
+        }
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            ByteBuffer header = readFully(channel, entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+            if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                throw new IOException("En-tête local invalide: " + entry.name);
+            }
+            int nameLength = header.getShort(26) & 0xFFFF;
+            int extraLength = header.getShort(28) & 0xFFFF;
+            offset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+        }
+        if (offset + entry.compressedSize > length) {
+            throw new IOException("Entrée hors de l'archive: " + entry.name);
+        }
+        entry.dataOffset = offset;
+        return offset;
+    }
+
+    /**
+     * Ouvre le contenu décompressé d'une entrée (deflate ou 7z)
+     */
+    public InputStream openStream(Entry entry) throws IOException {
+        if (sevenZip) {
+            return openSevenZipStream(entry);
+        }
+
+        long dataOffset = getDataOffset(entry);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        InputStream raw = new RegionInputStream(randomAccessFile, dataOffset, entry.compressedSize);
+        if (entry.method == METHOD_STORED) {
+            return raw;
+        }
+        return new EntryInflaterInputStream(raw, entry.size);
+    }
+
+    private InputStream openSevenZipStream(Entry entry) throws IOException {
+        final SevenZFile sevenZFile = new SevenZFile(file);
+        try {
+            for (SevenZArchiveEntry candidate : sevenZFile.getEntries()) {
+                if (candidate.getName().equals(entry.name)) {
+                    return new FilterInputStream(sevenZFile.getInputStream(candidate)) {
+                        @Override
+                        public void close() throws IOException {
+                            sevenZFile.close();
+                        }
+                    };
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            sevenZFile.close();
+            throw e;
+        }
+        sevenZFile.close();
+        throw new IOException("Entrée introuvable: " + entry.name);
+    }
+
+    /**
+     * Lit le répertoire central d'un zip (ZIP64 supporté)
+     */
+    private static Map<String, Entry> readCentralDirectory(File archive) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(archive, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            long fileLength = channel.size();
+            if (fileLength < EOCD_SIZE) {
+                throw new IOException("Archive zip trop courte");
+            }
+
+            // Fin du répertoire central: dans les derniers 22 + 65535 octets (commentaire)
+            int tailLength = (int) Math.min(fileLength, EOCD_SIZE + MAX_COMMENT_SIZE);
+            long tailStart = fileLength - tailLength;
+            ByteBuffer tail = readFully(channel, tailStart, tailLength);
+            int eocd = -1;
+            for (int i = tailLength - EOCD_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == EOCD_SIGNATURE) {
+                    eocd = i;
+                    break;
+                }
+            }
+            if (eocd < 0) {
+                throw new IOException("Fin du répertoire central introuvable");
+            }
+
+            long entryCount = tail.getShort(eocd + 10) & 0xFFFF;
+            long directorySize = tail.getInt(eocd + 12) & ZIP64_MAGIC;
+            long directoryOffset = tail.getInt(eocd + 16) & ZIP64_MAGIC;
+
+            // ZIP64: le localisateur précède la fin du répertoire central
+            long locatorPosition = tailStart + eocd - ZIP64_EOCD_LOCATOR_SIZE;
+            if (locatorPosition >= 0) {
+                ByteBuffer locator = readFully(channel, locatorPosition, ZIP64_EOCD_LOCATOR_SIZE);
+                if (locator.getInt(0) == ZIP64_EOCD_LOCATOR_SIGNATURE) {
+                    long zip64EocdOffset = locator.getLong(8);
+                    ByteBuffer zip64Eocd = readFully(channel, zip64EocdOffset, 56);
+                    if (zip64Eocd.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                        throw new IOException("Fin du répertoire central ZIP64 invalide");
+                    }
+                    entryCount = zip64Eocd.getLong(32);
+                    directorySize = zip64Eocd.getLong(40);
+                    directoryOffset = zip64Eocd.getLong(48);
+                }
+            }
+
+            if (entryCount > MAX_ENTRIES || directorySize > MAX_CENTRAL_DIRECTORY_SIZE
+                    || directoryOffset < 0 || directoryOffset + directorySize > fileLength) {
+                throw new IOException("Répertoire central invalide ou trop grand");
+            }
+
+            ByteBuffer directory = readFully(channel, directoryOffset, (int) directorySize);
+            Map<String, Entry> entries = new LinkedHashMap<>((int) Math.min(entryCount * 2, 1 << 16));
+            int position = 0;
+            for (long i = 0; i < entryCount; i++) {
+                if (position + CENTRAL_HEADER_SIZE > directorySize || directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                    throw new IOException("Entrée du répertoire central invalide (" + i + ")");
+                }
+                int flags = directory.getShort(position + 8) & 0xFFFF;
+                int method = directory.getShort(position + 10) & 0xFFFF;
+                long crc = directory.getInt(position + 16) & ZIP64_MAGIC;
+                long compressedSize = directory.getInt(position + 20) & ZIP64_MAGIC;
+                long size = directory.getInt(position + 24) & ZIP64_MAGIC;
+                int nameLength = directory.getShort(position + 28) & 0xFFFF;
+                int extraLength = directory.getShort(position + 30) & 0xFFFF;
+                int commentLength = directory.getShort(position + 32) & 0xFFFF;
+                long localHeaderOffset = directory.getInt(position + 42) & ZIP64_MAGIC;
+
+                int nameStart = position + CENTRAL_HEADER_SIZE;
+                int extraStart = nameStart + nameLength;
+                int next = extraStart + extraLength + commentLength;
+                if (next > directorySize) {
+                    throw new IOException("Entrée du répertoire central tronquée (" + i + ")");
+                }
+
+                byte[] nameBytes = new byte[nameLength];
+                directory.position(nameStart);
+                directory.get(nameBytes);
+                String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+                // Champ extra ZIP64: valeurs 64 bits pour les champs à 0xFFFFFFFF, dans cet ordre
+                int extra = extraStart;
+                while (extra + 4 <= extraStart + extraLength) {
+                    int headerId = directory.getShort(extra) & 0xFFFF;
+                    int dataSize = directory.getShort(extra + 2) & 0xFFFF;
+                    int data = extra + 4;
+                    if (headerId == ZIP64_EXTRA_ID) {
+                        int end = Math.min(data + dataSize, extraStart + extraLength);
+                        if (size == ZIP64_MAGIC && data + 8 <= end) {
+                            size = directory.getLong(data);
+                            data += 8;
+                        }
+                        if (compressedSize == ZIP64_MAGIC && data + 8 <= end) {
+                            compressedSize = directory.getLong(data);
+                            data += 8;
+                        }
+                        if (localHeaderOffset == ZIP64_MAGIC && data + 8 <= end) {
+                            localHeaderOffset = directory.getLong(data);
+                        }
+                        break;
+                    }
+                    extra = data + dataSize;
+                }
+
+                if (size < 0 || compressedSize < 0 || localHeaderOffset < 0 || localHeaderOffset >= fileLength) {
+                    throw new IOException("Entrée invalide: " + name);
+                }
+                entries.put(name, new Entry(name, method, flags, crc, compressedSize, size, localHeaderOffset));
+                position = next;
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Liste les entrées d'une archive 7z (en-têtes uniquement)
+     */
+    private static Map<String, Entry> readSevenZipEntries(File archive) throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        try (SevenZFile sevenZFile = new SevenZFile(archive)) {
+            for (SevenZArchiveEntry entry : sevenZFile.getEntries()) {
+                String name = entry.isDirectory() ? entry.getName() + "/" : entry.getName();
+                long crc = entry.getHasCrc() ? entry.getCrcValue() : 0;
+                entries.put(name, new Entry(name, METHOD_SEVEN_ZIP, 0, crc, -1, entry.getSize(), -1));
+                if (entries.size() > MAX_ENTRIES) {
+                    throw new IOException("Trop d'entrées dans l'archive 7z");
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Archive tronquée");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Portion d'un fichier lue via son canal (lectures positionnelles)
+     * Un octet nul est ajouté en fin de portion: l'Inflater en mode nowrap en a besoin pour terminer
+     */
+    private static final class RegionInputStream extends InputStream {
+        private final RandomAccessFile randomAccessFile;
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+        private boolean paddingSent;
+
+        RegionInputStream(RandomAccessFile randomAccessFile, long position, long length) {
+            this.randomAccessFile = randomAccessFile;
+            this.channel = randomAccessFile.getChannel();
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining <= 0) {
+                if (paddingSent) {
+                    return -1;
+                }
+                paddingSent = true;
+                b[off] = 0;
+                return 1;
+            }
+            int bytesRead = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (bytesRead < 0) {
+                throw new EOFException("Archive tronquée");
+            }
+            position += bytesRead;
+            remaining -= bytesRead;
+            return bytesRead;
+        }
+
+        @Override
+        public void close() throws IOException {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Décompression deflate d'une entrée, limitée à sa taille déclarée; libère l'Inflater à la fermeture
+     */
+    private static final class EntryInflaterInputStream extends InflaterInputStream {
+        private long remaining;
+
+        EntryInflaterInputStream(InputStream in, long size) {
+            super(in, new Inflater(true), 65536);
+            this.remaining = size;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int bytesRead = super.read(b, off, (int) Math.min(len, remaining));
+            if (bytesRead > 0) {
+                remaining -= bytesRead;
+            }
+            return bytesRead;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return remaining > 0 ? super.available() : 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.chatai;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache LRU (borné en octets) des assets de l'APK servis par WebServer et HttpServer.
+ * Chaque asset a un ETag fort (version de l'APK + hash SHA-256 du contenu) calculé une seule fois:
+ * les assets ne peuvent changer qu'avec une mise à jour de l'APK, donc un nouveau processus.
+ * Un asset plus gros que MAX_ENTRY_BYTES n'est jamais chargé en entier: il est relu en flux à chaque envoi.
+ */
+public final class AssetCache {
+    private static final String TAG = "AssetCache";
+
+    private static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+    // Au-delà, l'asset est relu en flux à chaque envoi (seuls sa taille et son ETag sont conservés)
+    private static final int MAX_ENTRY_BYTES = 2 * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private static AssetCache instance;
+
+    private final Context context;
+    private final long maxBytes;
+    private final String versionTag;
+    private final long lastModified;
+
+    // LinkedHashMap en ordre d'accès = LRU
+    private final LinkedHashMap<String, Asset> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+    // Assets trop gros pour le cache: taille et ETag seulement
+    private final Map<String, Asset> largeAssets = new ConcurrentHashMap<>();
+    private final Set<String> missingAssets = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Asset avec ses validateurs HTTP; content est null pour un asset trop gros pour le cache
+     * (lire alors le contenu avec open())
+     */
+    public static final class Asset {
+        public final byte[] content;
+        public final long length;
+        public final String etag;
+        public final long lastModified;
+        private final AssetManager assets;
+        private final String path;
+
+        Asset(byte[] content, long length, String etag, long lastModified, AssetManager assets, String path) {
+            this.content = content;
+            this.length = length;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.assets = assets;
+            this.path = path;
+        }
+
+        /**
+         * Contenu de l'asset: depuis la mémoire, ou relu depuis l'APK s'il n'est pas en cache
+         */
+        public InputStream open() throws IOException {
+            return content != null ? new ByteArrayInputStream(content) : assets.open(path);
+        }
+
+        /**
+         * Portion de l'APK d'un asset stocké sans compression (envoi zero-copy possible),
+         * null s'il est compressé dans l'APK
+         */
+        public AssetFileDescriptor openFd() throws IOException {
+            try {
+                return assets.openFd(path);
+            } catch (FileNotFoundException e) {
+                return null;
+            }
+        }
+    }
+
+    private AssetCache(Context context, long maxBytes) {
+        this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        this.maxBytes = maxBytes;
+
+        // Version de l'APK: préfixe des ETags, date de mise à jour comme Last-Modified
+        String version = "0";
+        long updateTime = System.currentTimeMillis();
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            version = String.valueOf(info.versionCode);
+            updateTime = info.lastUpdateTime;
+        } catch (Exception e) {
+            Log.w(TAG, "Version de l'APK indisponible", e);
+        }
+        this.versionTag = version;
+        this.lastModified = updateTime;
+    }
+
+    /**
+     * Instance partagée par les serveurs du processus
+     */
+    public static synchronized AssetCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new AssetCache(context, DEFAULT_MAX_BYTES);
+        }
+        return instance;
+    }
+
+    /**
+     * Retourne un asset (depuis le cache ou l'APK)
+     * @throws FileNotFoundException si l'asset n'existe pas
+     */
+    public Asset get(String path) throws IOException {
+        Asset asset = getIfExists(path);
+        if (asset == null) {
+            throw new FileNotFoundException(path);
+        }
+        return asset;
+    }
+
+    /**
+     * Retourne un asset, ou null s'il n'existe pas (l'absence est mémorisée)
+     */
+    public Asset getIfExists(String path) throws IOException {
+        synchronized (this) {
+            Asset cached = entries.get(path);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+
+        if (missingAssets.contains(path)) {
+            return null;
+        }
+        Asset large = largeAssets.get(path);
+        if (large != null) {
+            return large;
+        }
+
+        Asset asset;
+        try {
+            asset = readAsset(path);
+        } catch (FileNotFoundException e) {
+            missingAssets.add(path);
+            return null;
+        }
+        if (asset.content != null) {
+            put(path, asset);
+        } else {
+            largeAssets.put(path, asset);
+        }
+        return asset;
+    }
+
+    /**
+     * Évalue If-None-Match puis If-Modified-Since (RFC 7232): true si le client peut répondre 304
+     */
+    public static boolean isNotModified(Asset asset, String ifNoneMatch, String ifModifiedSince) {
+        if (ifNoneMatch != null) {
+            // If-None-Match prime sur If-Modified-Since; comparaison faible
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(asset.etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long since = HttpRange.parseHttpDate(ifModifiedSince);
+        return since != -1 && asset.lastModified / 1000 <= since / 1000;
+    }
+
+    /**
+     * Statistiques du cache
+     */
+    public synchronized String getStats() {
+        return "entries=" + entries.size() + ", bytes=" + currentBytes + "/" + maxBytes +
+                ", hits=" + hits + ", misses=" + misses;
+    }
+
+    private synchronized void put(String path, Asset asset) {
+        Asset previous = entries.put(path, asset);
+        if (previous != null) {
+            currentBytes -= previous.content.length;
+        }
+        currentBytes += asset.content.length;
+
+        // Éviction des moins récemment utilisés
+        Iterator<Map.Entry<String, Asset>> iterator = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Asset> eldest = iterator.next();
+            currentBytes -= eldest.getValue().content.length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Lit un asset par blocs: le contenu est gardé jusqu'à MAX_ENTRY_BYTES, au-delà seuls la taille
+     * et le hash (calculé au fil de la lecture) sont conservés
+     */
+    private Asset readAsset(String path) throws IOException {
+        AssetManager assets = context.getAssets();
+        String etag = etags.get(path);
+        MessageDigest digest = etag == null ? sha256() : null;
+        try (InputStream in = assets.open(path)) {
+            int expected = Math.min(in.available(), MAX_ENTRY_BYTES);
+            ByteArrayOutputStream content = new ByteArrayOutputStream(Math.max(expected, READ_BUFFER_SIZE));
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            long length = 0;
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                length += bytesRead;
+                if (digest != null) {
+                    digest.update(buffer, 0, bytesRead);
+                }
+                if (content != null) {
+                    content.write(buffer, 0, bytesRead);
+                    if (content.size() > MAX_ENTRY_BYTES) {
+                        content = null; // Trop gros pour le cache: servi en flux
+                    }
+                }
+            }
+            if (etag == null) {
+                etag = "\"" + versionTag + "-" + hexPrefix(digest.digest()) + "\"";
+                etags.put(path, etag);
+            }
+            return new Asset(content != null ? content.toByteArray() : null, length, etag, lastModified, assets, path);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e); // Toujours présent sur Android
+        }
+    }
+
+    private static String hexPrefix(byte[] hash) {
+        StringBuilder hex = new StringBuilder(32);
+        for (int i = 0; i < 16; i++) {
+            hex.append(String.format("%02x", hash[i] & 0xff));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,260 @@
+package com.chatai;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Corps de requête écrit sur disque par un worker au lieu du thread du sélecteur.
+ * Les octets reçus sont copiés dans des buffers du pool puis passés dans l'ordre au sink réel,
+ * une tâche à la fois par connexion: plusieurs connexions écrivent en parallèle et un stockage lent
+ * ne bloque plus les autres clients. Au-delà de MAX_QUEUED_BYTES en attente, la lecture de la connexion
+ * est suspendue jusqu'à ce que le worker repasse sous la moitié.
+ */
+public final class AsyncBodySink implements HttpRequestParser.BodySink {
+    private static final int MAX_QUEUED_BYTES = 256 * 1024;
+
+    /**
+     * Contrôle de la lecture de la connexion
+     */
+    public interface Listener {
+        /**
+         * Trop d'octets en attente d'écriture (appelé depuis le thread du sélecteur)
+         */
+        void suspendReading();
+
+        /**
+         * Le worker a rattrapé son retard (appelé depuis un worker)
+         */
+        void resumeReading();
+    }
+
+    /**
+     * Fin du corps: écrit et terminé (error null) ou en échec
+     */
+    public interface Completion {
+        void onComplete(HttpRequestParser.HttpParseException error);
+    }
+
+    private final HttpRequestParser.BodySink delegate;
+    private final Executor executor;
+    private final BufferPool bufferPool;
+    private final Listener listener;
+
+    private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+    private long queuedBytes;
+    private boolean draining;
+    private boolean suspended;
+    private boolean finishRequested;
+    private boolean abortRequested;
+    private boolean done;
+    private boolean completed;
+    private HttpRequestParser.HttpParseException error;
+    private Completion completion;
+
+    public AsyncBodySink(HttpRequestParser.BodySink delegate, Executor executor, BufferPool bufferPool, Listener listener) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.bufferPool = bufferPool;
+        this.listener = listener;
+    }
+
+    /**
+     * Sink réel (à lire une fois le corps terminé)
+     */
+    public HttpRequestParser.BodySink getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            ByteBuffer copy = bufferPool.acquire();
+            int count = Math.min(copy.remaining(), data.remaining());
+            ByteBuffer slice = data.duplicate();
+            slice.limit(slice.position() + count);
+            copy.put(slice).flip();
+            data.position(data.position() + count);
+
+            boolean suspend = false;
+            synchronized (this) {
+                if (error != null) {
+                    bufferPool.release(copy);
+                    throw error;
+                }
+                queue.addLast(copy);
+                queuedBytes += count;
+                if (queuedBytes >= MAX_QUEUED_BYTES && !suspended) {
+                    suspended = true;
+                    suspend = true;
+                }
+            }
+            if (suspend) {
+                listener.suspendReading();
+            }
+        }
+        schedule();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        synchronized (this) {
+            if (error != null) {
+                throw error;
+            }
+            finishRequested = true;
+        }
+        schedule();
+    }
+
+    @Override
+    public void abort() {
+        synchronized (this) {
+            abortRequested = true;
+        }
+        schedule();
+    }
+
+    /**
+     * Appelle completion à la fin du corps (tout de suite si elle a déjà eu lieu)
+     */
+    public void whenComplete(Completion completion) {
+        HttpRequestParser.HttpParseException result;
+        synchronized (this) {
+            if (!completed) {
+                this.completion = completion;
+                return;
+            }
+            result = error;
+        }
+        completion.onComplete(result);
+    }
+
+    private void schedule() {
+        synchronized (this) {
+            if (draining || done) {
+                return;
+            }
+            draining = true;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // Serveur arrêté: le corps est abandonné
+            synchronized (this) {
+                draining = false;
+                done = true;
+                fail(new HttpRequestParser.HttpParseException(503, "Serveur arrêté"));
+            }
+            delegate.abort();
+            complete();
+        }
+    }
+
+    /**
+     * Worker: écrit les buffers en attente, puis termine ou abandonne le corps quand c'est demandé
+     */
+    private void drain() {
+        while (true) {
+            ByteBuffer data;
+            boolean abort = false;
+            synchronized (this) {
+                data = queue.pollFirst();
+                if (data == null) {
+                    if (done || (!abortRequested && !finishRequested)) {
+                        draining = false;
+                        return;
+                    }
+                    done = true;
+                    abort = abortRequested || error != null;
+                }
+            }
+
+            if (data != null) {
+                writeBuffer(data);
+            } else if (abort) {
+                delegate.abort();
+                complete();
+            } else {
+                try {
+                    delegate.finish();
+                } catch (HttpRequestParser.HttpParseException e) {
+                    delegate.abort();
+                    synchronized (this) {
+                        fail(e);
+                    }
+                } catch (IOException e) {
+                    delegate.abort();
+                    synchronized (this) {
+                        fail(new HttpRequestParser.HttpParseException(500, "Écriture du corps impossible: " + e.getMessage()));
+                    }
+                }
+                complete();
+            }
+        }
+    }
+
+    private void writeBuffer(ByteBuffer data) {
+        int count = data.remaining();
+        boolean skip;
+        synchronized (this) {
+            skip = error != null || abortRequested;
+        }
+        if (!skip) {
+            try {
+                delegate.write(data);
+            } catch (HttpRequestParser.HttpParseException e) {
+                synchronized (this) {
+                    fail(e);
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    fail(new HttpRequestParser.HttpParseException(500, "Écriture du corps impossible: " + e.getMessage()));
+                }
+            }
+        }
+        bufferPool.release(data);
+
+        boolean resume;
+        synchronized (this) {
+            queuedBytes -= count;
+            // Après une erreur, la lecture reprend pour que la requête échoue au prochain write
+            resume = suspended && (queuedBytes <= MAX_QUEUED_BYTES / 2 || error != null);
+            if (resume) {
+                suspended = false;
+            }
+        }
+        if (resume) {
+            listener.resumeReading();
+        }
+    }
+
+    /**
+     * Enregistre la première erreur et libère les buffers en attente (appelé sous le verrou)
+     */
+    private void fail(HttpRequestParser.HttpParseException e) {
+        if (error == null) {
+            error = e;
+        }
+        ByteBuffer pending;
+        while ((pending = queue.pollFirst()) != null) {
+            queuedBytes -= pending.remaining();
+            bufferPool.release(pending);
+        }
+    }
+
+    private void complete() {
+        Completion callback;
+        HttpRequestParser.HttpParseException result;
+        synchronized (this) {
+            completed = true;
+            callback = completion;
+            result = error;
+        }
+        if (callback != null) {
+            callback.onComplete(result);
+        }
+    }
+}
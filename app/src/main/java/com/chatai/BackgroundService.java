@@ -135,6 +135,8 @@ public class BackgroundService extends Service {
             
             // Configurer les références entre serveurs
             httpServer.setFileServer(fileServer);
+            httpServer.setWebSocketServer(wsServer);
+            httpServer.setWebServer(webServer);
             
             aiService = new RealtimeAIService(this, httpServer, wsServer);
             
@@ -0,0 +1,55 @@
+package com.chatai;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool de ByteBuffers directs de taille fixe pour les lectures/écritures des serveurs NIO.
+ * Un buffer n'est emprunté que le temps d'une lecture: une connexion inactive n'en garde aucun.
+ */
+public final class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    private long allocated = 0;
+    private long reused = 0;
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Emprunte un buffer vide (alloué si le pool est vide)
+     */
+    public synchronized ByteBuffer acquire() {
+        ByteBuffer buffer = free.pollFirst();
+        if (buffer == null) {
+            allocated++;
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        reused++;
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Rend un buffer au pool (ignoré si le pool est plein)
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect() && buffer.capacity() == bufferSize && free.size() < maxPooled) {
+            free.offerFirst(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Statistiques du pool
+     */
+    public synchronized String getStats() {
+        return "size=" + bufferSize + ", free=" + free.size() + ", allocated=" + allocated + ", reused=" + reused;
+    }
+}
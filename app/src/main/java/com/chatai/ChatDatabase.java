@@ -6,6 +6,9 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -15,7 +18,8 @@ import java.util.List;
 public class ChatDatabase extends SQLiteOpenHelper {
     private static final String TAG = "ChatDatabase";
     private static final String DATABASE_NAME = "chat_ai.db";
-    private static final int DATABASE_VERSION = 1;
+    // 2: cache IA indexé par hash du prompt, borné (LRU)
+    private static final int DATABASE_VERSION = 2;
     
     // Tables
     private static final String TABLE_CONVERSATIONS = "conversations";
@@ -38,19 +42,46 @@ public class ChatDatabase extends SQLiteOpenHelper {
     private static final String COL_MSG_TYPE = "message_type";
     
     // Colonnes cache
-    private static final String COL_CACHE_ID = "cache_id";
+    private static final String COL_CACHE_HASH = "prompt_hash";
     private static final String COL_CACHE_PROMPT = "prompt";
     private static final String COL_CACHE_RESPONSE = "response";
-    private static final String COL_CACHE_TIMESTAMP = "timestamp";
+    private static final String COL_CACHE_SIZE = "size";
+    private static final String COL_CACHE_CREATED = "created_at";
+    private static final String COL_CACHE_LAST_ACCESS = "last_access";
+    private static final String COL_CACHE_HITS = "hit_count";
+    
+    // Limites du cache IA: au-delà, les entrées les moins récemment lues sont évincées
+    private static final long MAX_CACHE_ENTRIES = 100000;
+    private static final long MAX_CACHE_BYTES = 32L * 1024 * 1024;
+    // Une entrée plus grosse n'est pas mise en cache
+    private static final long MAX_CACHE_ENTRY_BYTES = 256 * 1024;
+    private static final int EVICTION_BATCH = 256;
+    
+    private static ChatDatabase instance;
+    
+    // Entrées et octets du cache (lus une fois, puis tenus à jour), -1 tant qu'ils ne sont pas chargés;
+    // valables parce que toutes les écritures passent par l'instance partagée
+    private long cacheEntries = -1;
+    private long cacheBytes = 0;
     
     // Colonnes settings
     private static final String COL_SETTINGS_KEY = "setting_key";
     private static final String COL_SETTINGS_VALUE = "setting_value";
     
-    public ChatDatabase(Context context) {
+    private ChatDatabase(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
     
+    /**
+     * Instance partagée par les serveurs et services du processus
+     */
+    public static synchronized ChatDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new ChatDatabase(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
     @Override
     public void onCreate(SQLiteDatabase db) {
         createTables(db);
@@ -59,8 +90,12 @@ public class ChatDatabase extends SQLiteOpenHelper {
     
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Migration future
         Log.i(TAG, "Mise à jour base de données de " + oldVersion + " vers " + newVersion);
+        if (oldVersion < 2) {
+            // Ancien cache (doublons, recherche par texte complet): reconstruit vide, ce n'est qu'un cache
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_CACHE);
+            createCacheTable(db);
+        }
     }
     
     /**
@@ -88,15 +123,6 @@ public class ChatDatabase extends SQLiteOpenHelper {
             "FOREIGN KEY(" + COL_MSG_CONV_ID + ") REFERENCES " + TABLE_CONVERSATIONS + "(" + COL_CONV_ID + ") ON DELETE CASCADE" +
             ")";
         
-        // Table cache IA
-        String createCacheTable = 
-            "CREATE TABLE " + TABLE_CACHE + " (" +
-            COL_CACHE_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-            COL_CACHE_PROMPT + " TEXT NOT NULL, " +
-            COL_CACHE_RESPONSE + " TEXT NOT NULL, " +
-            COL_CACHE_TIMESTAMP + " INTEGER NOT NULL" +
-            ")";
-        
         // Table settings
         String createSettingsTable = 
             "CREATE TABLE " + TABLE_SETTINGS + " (" +
@@ -106,13 +132,31 @@ public class ChatDatabase extends SQLiteOpenHelper {
         
         db.execSQL(createConversationsTable);
         db.execSQL(createMessagesTable);
-        db.execSQL(createCacheTable);
         db.execSQL(createSettingsTable);
+        createCacheTable(db);
         
         // Index pour les performances
         db.execSQL("CREATE INDEX idx_messages_conversation ON " + TABLE_MESSAGES + "(" + COL_MSG_CONV_ID + ")");
         db.execSQL("CREATE INDEX idx_messages_timestamp ON " + TABLE_MESSAGES + "(" + COL_MSG_TIMESTAMP + ")");
-        db.execSQL("CREATE INDEX idx_cache_timestamp ON " + TABLE_CACHE + "(" + COL_CACHE_TIMESTAMP + ")");
+    }
+    
+    /**
+     * Table cache IA: la clé est le hash du prompt (alias du rowid, recherche en O(log n) dans le B-tree);
+     * le prompt est gardé pour écarter une collision
+     */
+    private void createCacheTable(SQLiteDatabase db) {
+        db.execSQL(
+            "CREATE TABLE " + TABLE_CACHE + " (" +
+            COL_CACHE_HASH + " INTEGER PRIMARY KEY, " +
+            COL_CACHE_PROMPT + " TEXT NOT NULL, " +
+            COL_CACHE_RESPONSE + " TEXT NOT NULL, " +
+            COL_CACHE_SIZE + " INTEGER NOT NULL, " +
+            COL_CACHE_CREATED + " INTEGER NOT NULL, " +
+            COL_CACHE_LAST_ACCESS + " INTEGER NOT NULL, " +
+            COL_CACHE_HITS + " INTEGER NOT NULL DEFAULT 0" +
+            ")");
+        // Éviction LRU et nettoyage par âge
+        db.execSQL("CREATE INDEX idx_cache_last_access ON " + TABLE_CACHE + "(" + COL_CACHE_LAST_ACCESS + ")");
     }
     
     // ========== GESTION DES CONVERSATIONS ==========
@@ -266,54 +310,188 @@ public class ChatDatabase extends SQLiteOpenHelper {
     // ========== GESTION DU CACHE IA ==========
     
     /**
-     * Met en cache une réponse IA
+     * Met en cache une réponse IA (remplace celle du même prompt, en gardant son compteur de lectures)
      */
-    public void cacheAIResponse(String prompt, String response) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        
-        values.put(COL_CACHE_PROMPT, SecurityUtils.sanitizeInput(prompt));
-        values.put(COL_CACHE_RESPONSE, SecurityUtils.sanitizeInput(response));
-        values.put(COL_CACHE_TIMESTAMP, System.currentTimeMillis());
+    public synchronized void cacheAIResponse(String prompt, String response) {
+        String cleanPrompt = SecurityUtils.sanitizeInput(prompt);
+        String cleanResponse = SecurityUtils.sanitizeInput(response);
+        long size = utf8Length(cleanPrompt) + utf8Length(cleanResponse);
+        if (size > MAX_CACHE_ENTRY_BYTES) {
+            Log.d(TAG, "Réponse IA trop volumineuse pour le cache: " + size + " octets");
+            return;
+        }
+        long hash = promptHash(cleanPrompt);
+        String[] hashArgs = new String[]{String.valueOf(hash)};
+        long now = System.currentTimeMillis();
         
-        db.insert(TABLE_CACHE, null, values);
+        SQLiteDatabase db = this.getWritableDatabase();
+        loadCacheTotals(db);
+        boolean committed = false;
+        db.beginTransaction();
+        try {
+            long previousSize = -1;
+            Cursor cursor = db.rawQuery("SELECT " + COL_CACHE_SIZE + " FROM " + TABLE_CACHE +
+                                        " WHERE " + COL_CACHE_HASH + " = ?", hashArgs);
+            if (cursor.moveToFirst()) {
+                previousSize = cursor.getLong(0);
+            }
+            cursor.close();
+            
+            ContentValues values = new ContentValues();
+            values.put(COL_CACHE_PROMPT, cleanPrompt);
+            values.put(COL_CACHE_RESPONSE, cleanResponse);
+            values.put(COL_CACHE_SIZE, size);
+            values.put(COL_CACHE_LAST_ACCESS, now);
+            if (previousSize >= 0) {
+                db.update(TABLE_CACHE, values, COL_CACHE_HASH + " = ?", hashArgs);
+                cacheBytes += size - previousSize;
+            } else {
+                values.put(COL_CACHE_HASH, hash);
+                values.put(COL_CACHE_CREATED, now);
+                values.put(COL_CACHE_HITS, 0);
+                db.insert(TABLE_CACHE, null, values);
+                cacheEntries++;
+                cacheBytes += size;
+            }
+            evictIfNeeded(db);
+            db.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            db.endTransaction();
+            if (!committed) {
+                cacheEntries = -1; // Compteurs relus au prochain appel
+            }
+        }
         Log.d(TAG, "Réponse IA mise en cache");
     }
     
     /**
-     * Récupère une réponse du cache
+     * Récupère une réponse du cache (recherche par clé primaire) et note la lecture pour l'éviction LRU
      */
-    public String getCachedResponse(String prompt) {
-        SQLiteDatabase db = this.getReadableDatabase();
+    public synchronized String getCachedResponse(String prompt) {
+        String cleanPrompt = SecurityUtils.sanitizeInput(prompt);
+        long hash = promptHash(cleanPrompt);
+        SQLiteDatabase db = this.getWritableDatabase();
         
-        String query = "SELECT " + COL_CACHE_RESPONSE + " FROM " + TABLE_CACHE + 
-                      " WHERE " + COL_CACHE_PROMPT + " = ?" +
-                      " ORDER BY " + COL_CACHE_TIMESTAMP + " DESC LIMIT 1";
+        String query = "SELECT " + COL_CACHE_PROMPT + ", " + COL_CACHE_RESPONSE + " FROM " + TABLE_CACHE + 
+                      " WHERE " + COL_CACHE_HASH + " = ?";
         
-        Cursor cursor = db.rawQuery(query, new String[]{SecurityUtils.sanitizeInput(prompt)});
+        Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(hash)});
         
         String response = null;
-        if (cursor.moveToFirst()) {
-            response = cursor.getString(cursor.getColumnIndexOrThrow(COL_CACHE_RESPONSE));
+        if (cursor.moveToFirst() && cleanPrompt.equals(cursor.getString(0))) {
+            response = cursor.getString(1);
         }
         
         cursor.close();
+        
+        if (response != null) {
+            db.execSQL("UPDATE " + TABLE_CACHE + " SET " + COL_CACHE_LAST_ACCESS + " = ?, " +
+                       COL_CACHE_HITS + " = " + COL_CACHE_HITS + " + 1 WHERE " + COL_CACHE_HASH + " = ?",
+                       new Object[]{System.currentTimeMillis(), hash});
+        }
         return response;
     }
     
     /**
-     * Nettoie le cache ancien (plus de 7 jours)
+     * Nettoie le cache ancien (non lu depuis plus de 7 jours)
      */
-    public void cleanOldCache() {
+    public synchronized void cleanOldCache() {
         SQLiteDatabase db = this.getWritableDatabase();
         long sevenDaysAgo = System.currentTimeMillis() - (7 * 24 * 60 * 60 * 1000);
         
-        int rows = db.delete(TABLE_CACHE, COL_CACHE_TIMESTAMP + " < ?", 
+        int rows = db.delete(TABLE_CACHE, COL_CACHE_LAST_ACCESS + " < ?", 
                            new String[]{String.valueOf(sevenDaysAgo)});
+        cacheEntries = -1;
         
         Log.d(TAG, "Cache nettoyé: " + rows + " entrées supprimées");
     }
     
+    /**
+     * Taille du cache IA et ses limites
+     */
+    public synchronized String getCacheStats() {
+        loadCacheTotals(this.getReadableDatabase());
+        return String.format(java.util.Locale.US,
+            "{\"entries\":%d,\"bytes\":%d,\"max_entries\":%d,\"max_bytes\":%d}",
+            cacheEntries, cacheBytes, MAX_CACHE_ENTRIES, MAX_CACHE_BYTES);
+    }
+    
+    /**
+     * Charge le nombre d'entrées et d'octets du cache (un seul parcours, ensuite tenus à jour)
+     */
+    private void loadCacheTotals(SQLiteDatabase db) {
+        if (cacheEntries >= 0) {
+            return;
+        }
+        Cursor cursor = db.rawQuery("SELECT COUNT(*), TOTAL(" + COL_CACHE_SIZE + ") FROM " + TABLE_CACHE, null);
+        cacheEntries = 0;
+        cacheBytes = 0;
+        if (cursor.moveToFirst()) {
+            cacheEntries = cursor.getLong(0);
+            cacheBytes = cursor.getLong(1);
+        }
+        cursor.close();
+    }
+    
+    /**
+     * Évince les entrées les moins récemment lues jusqu'à 90 % des limites,
+     * pour ne pas repasser par ici à chaque insertion
+     */
+    private void evictIfNeeded(SQLiteDatabase db) {
+        if (cacheEntries <= MAX_CACHE_ENTRIES && cacheBytes <= MAX_CACHE_BYTES) {
+            return;
+        }
+        long targetEntries = MAX_CACHE_ENTRIES * 9 / 10;
+        long targetBytes = MAX_CACHE_BYTES * 9 / 10;
+        int evicted = 0;
+        while (cacheEntries > targetEntries || cacheBytes > targetBytes) {
+            Cursor cursor = db.rawQuery("SELECT " + COL_CACHE_HASH + ", " + COL_CACHE_SIZE + " FROM " + TABLE_CACHE +
+                                        " ORDER BY " + COL_CACHE_LAST_ACCESS + " ASC LIMIT " + EVICTION_BATCH, null);
+            StringBuilder hashes = new StringBuilder();
+            if (cursor.moveToFirst()) {
+                do {
+                    if (hashes.length() > 0) {
+                        hashes.append(',');
+                    }
+                    hashes.append(cursor.getLong(0));
+                    cacheEntries--;
+                    cacheBytes -= cursor.getLong(1);
+                    evicted++;
+                } while ((cacheEntries > targetEntries || cacheBytes > targetBytes) && cursor.moveToNext());
+            }
+            cursor.close();
+            if (hashes.length() == 0) {
+                // Compteurs désynchronisés: la table est vide
+                cacheEntries = 0;
+                cacheBytes = 0;
+                break;
+            }
+            db.execSQL("DELETE FROM " + TABLE_CACHE + " WHERE " + COL_CACHE_HASH + " IN (" + hashes + ")");
+        }
+        Log.d(TAG, "Cache IA: " + evicted + " entrées évincées (LRU)");
+    }
+    
+    /**
+     * 64 premiers bits du SHA-256 du prompt
+     */
+    private static long promptHash(String prompt) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(prompt.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+    
+    private static long utf8Length(String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
+    
     // ========== GESTION DES PARAMÈTRES ==========
     
     /**
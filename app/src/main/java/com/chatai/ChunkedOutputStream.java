@@ -0,0 +1,103 @@
+package com.chatai;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Corps de réponse HTTP/1.1 en Transfer-Encoding: chunked
+ * Les octets sont regroupés en chunks de taille fixe: la mémoire utilisée ne dépend pas de la taille de la réponse.
+ * close() envoie le chunk final sans fermer la connexion (keep-alive).
+ */
+public final class ChunkedOutputStream extends FilterOutputStream {
+    private static final int DEFAULT_CHUNK_SIZE = 8192;
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+
+    private final byte[] buffer;
+    private int count;
+    private long bodyBytes;
+    private boolean finished;
+
+    public ChunkedOutputStream(OutputStream out) {
+        this(out, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ChunkedOutputStream(OutputStream out, int chunkSize) {
+        super(out);
+        this.buffer = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (finished) {
+            throw new IOException("Réponse chunked déjà terminée");
+        }
+        if (count == buffer.length) {
+            writeChunk(buffer, 0, count);
+            count = 0;
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Réponse chunked déjà terminée");
+        }
+        if (len >= buffer.length) {
+            // Gros bloc: un chunk direct, sans recopie
+            flushBuffer();
+            writeChunk(b, off, len);
+            return;
+        }
+        if (len > buffer.length - count) {
+            flushBuffer();
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Envoie le dernier chunk; la connexion sous-jacente reste ouverte
+     */
+    @Override
+    public void close() throws IOException {
+        if (finished) {
+            return;
+        }
+        flushBuffer();
+        finished = true;
+        out.write(LAST_CHUNK);
+        out.flush();
+    }
+
+    /**
+     * Octets de contenu envoyés (hors framing chunked)
+     */
+    public long getBodyBytes() {
+        return bodyBytes;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            writeChunk(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void writeChunk(byte[] b, int off, int len) throws IOException {
+        out.write(Integer.toHexString(len).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        out.write(b, off, len);
+        out.write(CRLF);
+        bodyBytes += len;
+    }
+}
@@ -0,0 +1,306 @@
+package com.chatai;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Contrôle d'admission et expiration des connexions d'un serveur NIO (HttpServer, FileServer, WebSocketServer).
+ * Limite le nombre de connexions ouvertes (total et par IP) et ferme les connexions lentes ou inactives
+ * via une roue temporelle parcourue par le thread du sélecteur. Toutes les méthodes sauf les compteurs
+ * sont appelées depuis ce thread.
+ */
+public final class ConnectionManager {
+    private static final String TAG = "ConnectionManager";
+
+    // Roue temporelle: 256 cases de 250 ms (un tour = 64 s, les délais plus longs font plusieurs tours)
+    private static final long TICK_MS = 250;
+    private static final int WHEEL_SIZE = 256;
+    private static final int RETRY_AFTER_SECONDS = 10;
+
+    /**
+     * Phase d'une connexion, qui détermine son délai d'expiration
+     */
+    public enum Phase {
+        // Attente des headers d'une requête: délai fixe, non prolongé par l'activité (slowloris)
+        HEADER,
+        // Connexion ouverte sans requête en cours (keep-alive) ou envoi en cours: délai prolongé par l'activité
+        ACTIVE,
+        // Réponse en cours de calcul sur un worker: pas d'expiration
+        BUSY
+    }
+
+    /**
+     * Appelé pour chaque connexion expirée; la connexion est déjà retirée du suivi
+     */
+    public interface TimeoutListener {
+        void onTimeout(SelectionKey key, Phase phase);
+    }
+
+    private static final class Tracked {
+        final SelectionKey key;
+        final String address;
+        Phase phase = Phase.HEADER;
+        long headerDeadline;
+        long lastActivity;
+        long scheduledTick;
+        boolean removed;
+
+        Tracked(SelectionKey key, String address) {
+            this.key = key;
+            this.address = address;
+        }
+    }
+
+    private final String name;
+    private final int maxConnections;
+    private final int maxPerAddress;
+    private final long headerTimeoutMs;
+    private final long idleTimeoutMs;
+
+    private final Map<SelectionKey, Tracked> connections = new HashMap<>();
+    private final Map<String, Integer> perAddress = new HashMap<>();
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Tracked>[] wheel = new ArrayDeque[WHEEL_SIZE];
+    private long currentTick = -1;
+
+    private int peakConnections;
+    private long accepted;
+    private long rejectedTotal;
+    private long rejectedPerAddress;
+    private long headerTimeouts;
+    private long idleTimeouts;
+
+    /**
+     * @param name nom du serveur (logs et statistiques)
+     * @param maxConnections connexions ouvertes max
+     * @param maxPerAddress connexions max par adresse IP
+     * @param headerTimeoutMs délai max pour recevoir les headers d'une requête
+     * @param idleTimeoutMs délai max sans activité
+     */
+    public ConnectionManager(String name, int maxConnections, int maxPerAddress, long headerTimeoutMs, long idleTimeoutMs) {
+        this.name = name;
+        this.maxConnections = maxConnections;
+        this.maxPerAddress = maxPerAddress;
+        this.headerTimeoutMs = headerTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Vérifie les limites pour une connexion qui vient d'être acceptée.
+     * Si elle est refusée, un 503 avec Retry-After est envoyé et la socket est fermée.
+     * @return true si la connexion peut être enregistrée
+     */
+    public synchronized boolean admit(SocketChannel channel) {
+        String address = addressOf(channel);
+        boolean full = connections.size() >= maxConnections;
+        Integer count = perAddress.get(address);
+        boolean addressFull = count != null && count >= maxPerAddress;
+        if (!full && !addressFull) {
+            return true;
+        }
+
+        if (full) {
+            rejectedTotal++;
+        } else {
+            rejectedPerAddress++;
+        }
+        Log.w(TAG, name + ": connexion refusée (" + (full ? "limite totale" : "limite par IP") + ") " + address);
+        shed(channel);
+        return false;
+    }
+
+    /**
+     * Suit une connexion admise (phase HEADER: la première requête doit arriver dans le délai)
+     */
+    public synchronized void register(SelectionKey key) {
+        String address = addressOf((SocketChannel) key.channel());
+        Tracked tracked = new Tracked(key, address);
+        long now = System.currentTimeMillis();
+        tracked.lastActivity = now;
+        tracked.headerDeadline = now + headerTimeoutMs;
+        connections.put(key, tracked);
+        perAddress.merge(address, 1, Integer::sum);
+        accepted++;
+        peakConnections = Math.max(peakConnections, connections.size());
+        schedule(tracked, now);
+    }
+
+    /**
+     * Retire une connexion fermée du suivi (sans effet si elle n'est pas suivie)
+     */
+    public synchronized void unregister(SelectionKey key) {
+        Tracked tracked = connections.remove(key);
+        if (tracked == null) {
+            return;
+        }
+        tracked.removed = true; // Retirée de la roue au prochain passage
+        Integer count = perAddress.get(tracked.address);
+        if (count == null || count <= 1) {
+            perAddress.remove(tracked.address);
+        } else {
+            perAddress.put(tracked.address, count - 1);
+        }
+    }
+
+    /**
+     * Note une activité (octets lus ou écrits): prolonge le délai d'inactivité
+     */
+    public void touch(SelectionKey key) {
+        Tracked tracked = connections.get(key);
+        if (tracked != null) {
+            tracked.lastActivity = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Change la phase d'une connexion; le délai des headers part du passage en HEADER
+     */
+    public void setPhase(SelectionKey key, Phase phase) {
+        Tracked tracked = connections.get(key);
+        if (tracked == null || tracked.phase == phase) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (phase == Phase.HEADER) {
+            tracked.headerDeadline = now + headerTimeoutMs;
+        }
+        tracked.phase = phase;
+        tracked.lastActivity = now;
+    }
+
+    /**
+     * Délai à passer à Selector.select() pour que les expirations soient traitées à temps (0 = infini)
+     */
+    public long getSelectTimeout() {
+        return connections.isEmpty() ? 0 : TICK_MS;
+    }
+
+    /**
+     * Parcourt les cases échues de la roue et signale les connexions expirées
+     */
+    public void expire(TimeoutListener listener) {
+        long now = System.currentTimeMillis();
+        long targetTick = now / TICK_MS;
+        if (currentTick < 0 || targetTick - currentTick > WHEEL_SIZE) {
+            // Premier passage ou sélecteur bloqué longtemps: un tour complet suffit
+            currentTick = targetTick - WHEEL_SIZE;
+        }
+
+        while (currentTick < targetTick) {
+            currentTick++;
+            int index = (int) (currentTick % WHEEL_SIZE);
+            ArrayDeque<Tracked> slot = wheel[index];
+            if (slot.isEmpty()) {
+                continue;
+            }
+            wheel[index] = new ArrayDeque<>();
+
+            for (Tracked tracked : slot) {
+                if (tracked.removed) {
+                    continue;
+                }
+                if (tracked.scheduledTick > currentTick) {
+                    wheel[index].add(tracked); // Tour suivant
+                    continue;
+                }
+                long deadline = deadlineOf(tracked, now);
+                if (deadline > now) {
+                    schedule(tracked, deadline);
+                    continue;
+                }
+
+                Phase phase = tracked.phase;
+                synchronized (this) {
+                    if (phase == Phase.HEADER) {
+                        headerTimeouts++;
+                    } else {
+                        idleTimeouts++;
+                    }
+                }
+                unregister(tracked.key);
+                Log.d(TAG, name + ": connexion expirée (" + phase + ") " + tracked.address);
+                listener.onTimeout(tracked.key, phase);
+            }
+        }
+    }
+
+    public synchronized int getOpenConnections() {
+        return connections.size();
+    }
+
+    /**
+     * Compteurs du serveur (JSON)
+     */
+    public synchronized String getStats() {
+        return String.format(Locale.US,
+                "{\"server\":\"%s\",\"open\":%d,\"max\":%d,\"peak\":%d,\"addresses\":%d,\"accepted\":%d," +
+                "\"rejected\":%d,\"rejectedPerIp\":%d,\"headerTimeouts\":%d,\"idleTimeouts\":%d}",
+                name, connections.size(), maxConnections, peakConnections, perAddress.size(), accepted,
+                rejectedTotal, rejectedPerAddress, headerTimeouts, idleTimeouts);
+    }
+
+    private long deadlineOf(Tracked tracked, long now) {
+        switch (tracked.phase) {
+            case HEADER:
+                return tracked.headerDeadline;
+            case BUSY:
+                // Réexaminée plus tard: le worker a son propre délai
+                return now + idleTimeoutMs;
+            default:
+                return tracked.lastActivity + idleTimeoutMs;
+        }
+    }
+
+    private void schedule(Tracked tracked, long deadline) {
+        long tick = Math.max(deadline / TICK_MS, currentTick + 1);
+        tracked.scheduledTick = tick;
+        wheel[(int) (tick % WHEEL_SIZE)].add(tracked);
+    }
+
+    /**
+     * Réponse 503 minimale avant fermeture (best effort: la socket vient d'être acceptée, le tampon est vide)
+     */
+    private static void shed(SocketChannel channel) {
+        String response = "HTTP/1.1 503 Service Unavailable\r\n" +
+                "Retry-After: " + RETRY_AFTER_SECONDS + "\r\n" +
+                "Content-Length: 0\r\n" +
+                "Connection: close\r\n" +
+                "\r\n";
+        try {
+            channel.write(ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1)));
+        } catch (IOException e) {
+            Log.d(TAG, "Envoi 503 impossible: " + e.getMessage());
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Erreur fermeture connexion refusée", e);
+        }
+    }
+
+    private static String addressOf(SocketChannel channel) {
+        try {
+            SocketAddress remote = channel.getRemoteAddress();
+            if (remote instanceof InetSocketAddress) {
+                return ((InetSocketAddress) remote).getAddress().getHostAddress();
+            }
+            return String.valueOf(remote);
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+}
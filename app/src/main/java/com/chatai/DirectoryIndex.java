@@ -0,0 +1,427 @@
+package com.chatai;
+
+import android.os.Build;
+import android.os.FileObserver;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index en mémoire d'un répertoire de stockage: un seul stat par entrée, tenu à jour au fil
+ * des changements (FileObserver, notifications du FileServer) au lieu de relister le répertoire
+ * à chaque requête. Les vues triées sont des instantanés reconstruits seulement après un changement.
+ * Les fichiers cachés (uploads en cours, sessions reprenables) ne sont pas indexés.
+ */
+public final class DirectoryIndex {
+    private static final String TAG = "DirectoryIndex";
+
+    private static final int OBSERVER_MASK = FileObserver.CREATE | FileObserver.DELETE | FileObserver.MOVED_FROM |
+            FileObserver.MOVED_TO | FileObserver.CLOSE_WRITE | FileObserver.ATTRIB |
+            FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    public enum SortKey {
+        NAME, SIZE, MODIFIED;
+
+        /**
+         * Clé de tri d'un paramètre de requête (name, size, modified), NAME par défaut
+         */
+        public static SortKey parse(String value) {
+            if (value == null || value.isEmpty()) {
+                return NAME;
+            }
+            try {
+                return valueOf(value.toUpperCase(Locale.US));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Tri inconnu");
+            }
+        }
+    }
+
+    /**
+     * Attributs d'une entrée, lus en un seul stat; remplacée (jamais modifiée) à chaque changement
+     */
+    public static final class Entry {
+        public final String name;
+        public final long size;
+        public final long lastModified;
+        public final boolean isDirectory;
+
+        Entry(String name, long size, long lastModified, boolean isDirectory) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.isDirectory = isDirectory;
+        }
+    }
+
+    /**
+     * Page de résultats; nextCursor est null sur la dernière page
+     */
+    public static final class Page {
+        public final List<Entry> entries;
+        public final int total;
+        public final String nextCursor;
+
+        Page(List<Entry> entries, int total, String nextCursor) {
+            this.entries = entries;
+            this.total = total;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    private static final Comparator<Entry> BY_NAME = (a, b) -> {
+        int order = String.CASE_INSENSITIVE_ORDER.compare(a.name, b.name);
+        return order != 0 ? order : a.name.compareTo(b.name);
+    };
+    private static final Comparator<Entry> BY_SIZE = (a, b) -> {
+        int order = Long.compare(a.size, b.size);
+        return order != 0 ? order : BY_NAME.compare(a, b);
+    };
+    private static final Comparator<Entry> BY_MODIFIED = (a, b) -> {
+        int order = Long.compare(a.lastModified, b.lastModified);
+        return order != 0 ? order : BY_NAME.compare(a, b);
+    };
+
+    private final File directory;
+    private final Map<String, Entry> entries = new HashMap<>();
+    // Vues triées par SortKey, null tant qu'elles ne sont pas redemandées après un changement
+    private final Entry[][] views = new Entry[SortKey.values().length][];
+    private long totalBytes;
+    // mtime du répertoire (secondes) au dernier listage: il change à chaque ajout, suppression ou renommage
+    private long listedMtime = Long.MIN_VALUE;
+    private boolean fullRescan = true;
+    private FileObserver observer;
+
+    public DirectoryIndex(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Suit les changements faits hors du serveur (autres applications, gestionnaire de fichiers)
+     */
+    public synchronized void startWatching() {
+        if (observer != null) {
+            return;
+        }
+        observer = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                ? new IndexObserver(directory)
+                : new IndexObserver(directory.getAbsolutePath());
+        observer.startWatching();
+    }
+
+    /**
+     * Relevé complet immédiat; à appeler hors du thread du sélecteur (worker, thread de l'observer)
+     */
+    public synchronized void load() {
+        refresh();
+    }
+
+    /**
+     * false tant que le premier relevé (ou un relevé complet demandé) n'a pas été fait:
+     * le prochain accès lirait alors chaque entrée
+     */
+    public synchronized boolean isLoaded() {
+        return !fullRescan;
+    }
+
+    public synchronized void close() {
+        if (observer != null) {
+            observer.stopWatching();
+            observer = null;
+        }
+    }
+
+    /**
+     * Relit une seule entrée après un changement connu (upload, suppression, renommage)
+     */
+    public synchronized void update(String name) {
+        if (isHidden(name) || name.indexOf('/') >= 0) {
+            return;
+        }
+        Entry entry = stat(directory, name);
+        Entry previous = entry != null ? entries.put(name, entry) : entries.remove(name);
+        if (previous != null) {
+            totalBytes -= previous.size;
+        }
+        if (entry != null) {
+            totalBytes += entry.size;
+        }
+        Arrays.fill(views, null);
+    }
+
+    /**
+     * Force un relevé complet (stat de chaque entrée) au prochain accès
+     */
+    public synchronized void invalidate() {
+        fullRescan = true;
+    }
+
+    public synchronized int size() {
+        refresh();
+        return entries.size();
+    }
+
+    /**
+     * Somme des tailles des fichiers indexés
+     */
+    public synchronized long getTotalBytes() {
+        refresh();
+        return totalBytes;
+    }
+
+    /**
+     * Une page de l'index trié
+     *
+     * @param cursor   curseur opaque renvoyé par la page précédente, null pour la première
+     * @param contains filtre sur le nom (sans casse), null pour tout garder
+     * @param type     "file", "dir" ou null
+     * @throws IllegalArgumentException curseur invalide ou obtenu avec un autre tri
+     */
+    public Page list(SortKey sort, boolean descending, String cursor, int limit, String contains, String type) {
+        Entry[] view;
+        synchronized (this) {
+            refresh();
+            view = getView(sort);
+        }
+        Comparator<Entry> comparator = comparator(sort);
+        String needle = contains == null || contains.isEmpty() ? null : contains.toLowerCase(Locale.ROOT);
+        Boolean directories = type == null || type.isEmpty() ? null : "dir".equals(type);
+        boolean filtered = needle != null || directories != null;
+
+        int step = descending ? -1 : 1;
+        int position = descending ? view.length - 1 : 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            int found = Arrays.binarySearch(view, decodeCursor(sort, cursor), comparator);
+            // Première entrée strictement après le curseur dans le sens du parcours
+            if (found >= 0) {
+                position = found + step;
+            } else {
+                int insertion = -found - 1;
+                position = descending ? insertion - 1 : insertion;
+            }
+        }
+
+        List<Entry> page = new ArrayList<>(Math.min(limit, view.length));
+        String nextCursor = null;
+        for (int i = position; i >= 0 && i < view.length; i += step) {
+            Entry entry = view[i];
+            if (filtered && !matches(entry, needle, directories)) {
+                continue;
+            }
+            if (page.size() == limit) {
+                nextCursor = encodeCursor(sort, page.get(page.size() - 1));
+                break;
+            }
+            page.add(entry);
+        }
+
+        int total = view.length;
+        if (filtered) {
+            total = 0;
+            for (Entry entry : view) {
+                if (matches(entry, needle, directories)) {
+                    total++;
+                }
+            }
+        }
+        return new Page(Collections.unmodifiableList(page), total, nextCursor);
+    }
+
+    /**
+     * Met l'index en accord avec le disque: seules les entrées ajoutées depuis le dernier listage
+     * sont lues (un stat chacune), les disparues sont retirées
+     */
+    private void refresh() {
+        StructStat dirStat;
+        try {
+            dirStat = Os.stat(directory.getAbsolutePath());
+        } catch (ErrnoException e) {
+            if (!entries.isEmpty()) {
+                Log.w(TAG, "Répertoire inaccessible: " + directory + " (" + e.getMessage() + ")");
+                clear();
+            }
+            return;
+        }
+        if (!fullRescan && dirStat.st_mtime == listedMtime) {
+            return;
+        }
+
+        String[] names = directory.list();
+        if (names == null) {
+            clear();
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        Set<String> present = new HashSet<>(names.length * 2);
+        int statCount = 0;
+        for (String name : names) {
+            if (isHidden(name)) {
+                continue;
+            }
+            present.add(name);
+            if (fullRescan || !entries.containsKey(name)) {
+                Entry entry = stat(directory, name);
+                statCount++;
+                if (entry != null) {
+                    entries.put(name, entry);
+                }
+            }
+        }
+        entries.keySet().retainAll(present);
+        totalBytes = 0;
+        for (Entry entry : entries.values()) {
+            totalBytes += entry.size;
+        }
+
+        // mtime à la seconde: un changement dans la seconde du listage passerait inaperçu, on relistera
+        boolean racy = startTime / 1000 - dirStat.st_mtime <= 1;
+        listedMtime = racy ? Long.MIN_VALUE : dirStat.st_mtime;
+        fullRescan = false;
+        Arrays.fill(views, null);
+        Log.d(TAG, "Index " + directory.getName() + ": " + entries.size() + " entrées, " + statCount + " stat en "
+                + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    private void clear() {
+        entries.clear();
+        totalBytes = 0;
+        listedMtime = Long.MIN_VALUE;
+        Arrays.fill(views, null);
+    }
+
+    private Entry[] getView(SortKey sort) {
+        Entry[] view = views[sort.ordinal()];
+        if (view == null) {
+            view = entries.values().toArray(new Entry[0]);
+            Arrays.sort(view, comparator(sort));
+            views[sort.ordinal()] = view;
+        }
+        return view;
+    }
+
+    /**
+     * Relevé ponctuel d'un répertoire non indexé (sous-dossiers des sites): un stat par entrée,
+     * à faire sur un worker. Les fichiers cachés sont ignorés comme dans l'index.
+     */
+    public static List<Entry> scan(File directory) {
+        String[] names = directory.list();
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        List<Entry> result = new ArrayList<>(names.length);
+        for (String name : names) {
+            if (isHidden(name)) {
+                continue;
+            }
+            Entry entry = stat(directory, name);
+            if (entry != null) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Attributs d'une entrée en un seul appel système, null si elle n'existe plus
+     */
+    private static Entry stat(File directory, String name) {
+        try {
+            StructStat stat = Os.stat(new File(directory, name).getPath());
+            boolean isDirectory = OsConstants.S_ISDIR(stat.st_mode);
+            return new Entry(name, isDirectory ? 0 : stat.st_size, stat.st_mtime * 1000, isDirectory);
+        } catch (ErrnoException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Les événements arrivent sur le thread de FileObserver: un relevé complet s'y fait aussi,
+     * jamais sur le thread du sélecteur
+     */
+    private final class IndexObserver extends FileObserver {
+        IndexObserver(File directory) {
+            super(directory, OBSERVER_MASK);
+        }
+
+        @SuppressWarnings("deprecation")
+        IndexObserver(String path) {
+            super(path, OBSERVER_MASK); // Avant Android 10 (API 29)
+        }
+
+        @Override
+        public void onEvent(int event, String path) {
+            if (path == null || (event & (FileObserver.DELETE_SELF | FileObserver.MOVE_SELF)) != 0) {
+                // Événements perdus (file pleine) ou répertoire déplacé: tout relire
+                invalidate();
+                load();
+            } else {
+                update(path);
+            }
+        }
+    }
+
+    private static boolean isHidden(String name) {
+        return name.startsWith(".");
+    }
+
+    private static boolean matches(Entry entry, String needle, Boolean directories) {
+        if (directories != null && entry.isDirectory != directories) {
+            return false;
+        }
+        return needle == null || entry.name.toLowerCase(Locale.ROOT).contains(needle);
+    }
+
+    private static Comparator<Entry> comparator(SortKey sort) {
+        switch (sort) {
+            case SIZE:
+                return BY_SIZE;
+            case MODIFIED:
+                return BY_MODIFIED;
+            default:
+                return BY_NAME;
+        }
+    }
+
+    /**
+     * Le curseur porte la clé de tri de la dernière entrée renvoyée: la page suivante reste
+     * correcte même si des fichiers ont été ajoutés ou supprimés entre-temps
+     */
+    private static String encodeCursor(SortKey sort, Entry last) {
+        String key = sort.ordinal() + ":" + last.size + ":" + last.lastModified + ":" + last.name;
+        return Base64.encodeToString(key.getBytes(StandardCharsets.UTF_8),
+                Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
+    }
+
+    private static Entry decodeCursor(SortKey sort, String cursor) {
+        try {
+            String key = new String(Base64.decode(cursor, Base64.URL_SAFE), StandardCharsets.UTF_8);
+            String[] parts = key.split(":", 4);
+            if (parts.length != 4 || Integer.parseInt(parts[0]) != sort.ordinal()) {
+                throw new IllegalArgumentException("Curseur obtenu avec un autre tri");
+            }
+            return new Entry(parts[3], Long.parseLong(parts[1]), Long.parseLong(parts[2]), false);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Curseur invalide");
+        }
+    }
+}
@@ -4,28 +4,38 @@ import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Environment;
+import android.util.JsonWriter;
 import android.util.Log;
 import android.widget.Toast;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Writer;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
 
 /**
  * Serveur de fichiers local avec gestion des emplacements personnalisés
@@ -34,7 +44,21 @@ import java.util.concurrent.Executors;
 public class FileServer {
     private static final String TAG = "FileServer";
     private static final int FILE_PORT = 8082;
-    private static final int BUFFER_SIZE = 8192;
+    private static final int BUFFER_SIZE = 16384;
+    // Lectures et corps d'upload en attente d'écriture par un worker (256 Ko max par connexion)
+    private static final int MAX_POOLED_BUFFERS = 64;
+    // Workers (le sélecteur a son propre thread)
+    private static final int WORKER_THREADS = 4;
+    // Uploads en streaming: taille max d'un envoi (tous fichiers confondus)
+    private static final long MAX_UPLOAD_BYTES = 8L * 1024 * 1024 * 1024;
+    // Admission et expiration des connexions (un download lent reste ouvert tant qu'il progresse)
+    private static final int MAX_CONNECTIONS = 64;
+    private static final int MAX_CONNECTIONS_PER_IP = 16;
+    private static final long HEADER_TIMEOUT_MS = 10000;
+    private static final long IDLE_TIMEOUT_MS = 60000;
+    // Pagination de /api/files/list
+    private static final int DEFAULT_LIST_LIMIT = 100;
+    private static final int MAX_LIST_LIMIT = 1000;
     
     private Context context;
     private ServerSocketChannel serverChannel;
@@ -43,6 +67,13 @@ public class FileServer {
     private boolean isRunning = false;
     private SecureConfig secureConfig;
     private ChatDatabase chatDatabase;
+    private final BufferPool bufferPool = new BufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    // Réponses calculées sur un worker (finalisation d'upload), rendues au thread du sélecteur
+    private final ConcurrentLinkedQueue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private ResumableUploadManager resumableUploads;
+    private DirectoryIndex directoryIndex;
+    private final ConnectionManager connectionManager = new ConnectionManager("Files",
+            MAX_CONNECTIONS, MAX_CONNECTIONS_PER_IP, HEADER_TIMEOUT_MS, IDLE_TIMEOUT_MS);
     
     // Répertoire de stockage configurable
     private File storageDirectory;
@@ -51,8 +82,8 @@ public class FileServer {
     public FileServer(Context context) {
         this.context = context;
         this.secureConfig = new SecureConfig(context);
-        this.chatDatabase = new ChatDatabase(context);
-        this.executor = Executors.newFixedThreadPool(4);
+        this.chatDatabase = ChatDatabase.getInstance(context);
+        this.executor = createWorkerPool();
         
         // UTILISER LE MÊME RÉPERTOIRE QUE WEBSERVER
         Log.i(TAG, "=== UTILISATION DU RÉPERTOIRE WEBSERVER ===");
@@ -176,15 +207,33 @@ public class FileServer {
             }
         }
         
-        executor.execute(() -> {
+        if (executor.isShutdown()) {
+            executor = createWorkerPool(); // Redémarrage après stop()
+        }
+        // Boucle du sélecteur sur son propre thread: les workers restent tous disponibles
+        Thread selectorThread = new Thread(() -> {
             try {
                 startServer();
             } catch (Exception e) {
                 Log.e(TAG, "Erreur démarrage serveur de fichiers", e);
             }
+        }, "FileServer-selector");
+        selectorThread.start();
+    }
+    
+    /**
+     * Pool des workers: écriture des uploads, vérification des SHA-256, relevé de l'index
+     */
+    private static ExecutorService createWorkerPool() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(WORKER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "FileServer-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         });
     }
     
+    
     private void startServer() throws IOException {
         // Lire le port depuis la configuration utilisateur
         int configuredPort = secureConfig.getIntSetting("file_port", FILE_PORT);
@@ -216,10 +265,15 @@ public class FileServer {
             }
         }
         
+        if (isRunning) {
+            getDirectoryIndex(); // Lance le relevé initial de l'index sur un worker
+        }
+        
         // Boucle principale du serveur
         while (isRunning) {
             try {
-                selector.select();
+                selector.select(connectionManager.getSelectTimeout());
+                runSelectorTasks();
                 Set<SelectionKey> selectedKeys = selector.selectedKeys();
                 Iterator<SelectionKey> iterator = selectedKeys.iterator();
 
@@ -227,12 +281,18 @@ public class FileServer {
                     SelectionKey key = iterator.next();
                     iterator.remove();
 
+                    if (!key.isValid()) {
+                        continue;
+                    }
                     if (key.isAcceptable()) {
                         handleAccept(key);
                     } else if (key.isReadable()) {
                         handleRead(key);
+                    } else if (key.isWritable()) {
+                        handleWrite(key);
                     }
                 }
+                connectionManager.expire(this::handleTimeout);
             } catch (IOException e) {
                 Log.e(TAG, "Erreur dans la boucle du sélecteur de fichiers", e);
                 stop();
@@ -243,64 +303,454 @@ public class FileServer {
     private void handleAccept(SelectionKey key) throws IOException {
         ServerSocketChannel server = (ServerSocketChannel) key.channel();
         SocketChannel clientChannel = server.accept();
+        if (clientChannel == null) {
+            return;
+        }
+        if (!connectionManager.admit(clientChannel)) {
+            return; // 503 envoyé, socket fermée
+        }
         clientChannel.configureBlocking(false);
-        clientChannel.register(selector, SelectionKey.OP_READ);
+        // File d'envoi par connexion: une réponse lente ne bloque jamais le sélecteur
+        HttpConnection connection = new HttpConnection();
+        SelectionKey clientKey = clientChannel.register(selector, SelectionKey.OP_READ, connection);
+        connection.parser.setBodySinkFactory((request, contentLength) -> openRequestSink(clientKey, request, contentLength));
+        connectionManager.register(clientKey);
         Log.d(TAG, "Nouvelle connexion fichier: " + clientChannel.getRemoteAddress());
     }
     
     private void handleRead(SelectionKey key) throws IOException {
         SocketChannel clientChannel = (SocketChannel) key.channel();
-        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        HttpConnection connection = (HttpConnection) key.attachment();
+        HttpRequestParser parser = connection.parser;
+        ByteBuffer buffer = bufferPool.acquire();
         
         try {
             int bytesRead = clientChannel.read(buffer);
             if (bytesRead == -1) {
-                clientChannel.close();
-                key.cancel();
+                closeConnection(key);
                 return;
             }
-            
             buffer.flip();
-            byte[] data = new byte[bytesRead];
-            buffer.get(data);
-            String request = new String(data, "UTF-8");
-            
-            Log.d(TAG, "Requête fichier reçue: " + request.substring(0, Math.min(100, request.length())));
+            connectionManager.touch(key);
             
-            String response = processFileRequest(request);
-            sendFileResponse(clientChannel, response);
+            // Requête assemblée au fil des lectures; un upload part sur disque pendant la réception
+            try {
+                if (parser.parse(buffer)) {
+                    // Requête reçue: seul le délai d'inactivité s'applique pendant l'envoi
+                    connectionManager.setPhase(key, ConnectionManager.Phase.ACTIVE);
+                    handleRequest(key, parser);
+                    return;
+                }
+                if (parser.takeContinueRequest()) {
+                    connection.outbound.add(ByteBuffer.wrap("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1)));
+                    connection.outbound.flush(key, !connection.isInputPaused());
+                }
+                if (!parser.isReadingHeaders()) {
+                    connectionManager.setPhase(key, ConnectionManager.Phase.ACTIVE);
+                }
+            } catch (HttpRequestParser.HttpParseException e) {
+                Log.w(TAG, "Requête fichier invalide (" + e.statusCode + "): " + e.getMessage());
+                sendFileResponse(key, createFileErrorResponse(e.statusCode, e.getMessage()));
+            }
             
         } catch (IOException e) {
             Log.w(TAG, "Client fichier déconnecté: " + clientChannel.getRemoteAddress());
-            clientChannel.close();
-            key.cancel();
+            closeConnection(key);
+        } finally {
+            bufferPool.release(buffer);
         }
     }
     
-    private String processFileRequest(String request) {
+    /**
+     * Route une requête complète
+     */
+    private void handleRequest(SelectionKey key, HttpRequestParser parser) throws IOException {
+        String method = parser.getMethod();
+        String path = parser.getTarget();
+        Log.d(TAG, "Requête fichier reçue: " + method + " " + path);
+        
+        // Download: contenu envoyé en zero-copy, au rythme du client
+        if ((method.equals("GET") || method.equals("HEAD")) && path.startsWith("/api/files/download/")) {
+            String fileName = decodePathSegment(path.substring("/api/files/download/".length()));
+            sendFileResponse(key, handleDownloadFile(fileName, parser.getHeaders(), method.equals("HEAD")));
+            return;
+        }
+        // Upload ou morceau d'upload reprenable: réponse une fois le corps écrit et vérifié par le worker
+        if (parser.getBodySink() instanceof AsyncBodySink) {
+            AsyncBodySink upload = (AsyncBodySink) parser.getBodySink();
+            ((HttpConnection) key.attachment()).setInputPaused(false);
+            key.interestOps(0);
+            connectionManager.setPhase(key, ConnectionManager.Phase.BUSY);
+            upload.whenComplete(error -> {
+                if (error != null) {
+                    completeAsync(key, createFileErrorResponse(error.statusCode, error.getMessage()));
+                    return;
+                }
+                if (upload.getDelegate() instanceof StreamingUpload) {
+                    completeAsync(key, handleStreamingUpload((StreamingUpload) upload.getDelegate()));
+                    return;
+                }
+                ResumableUploadManager.ChunkSink chunk = (ResumableUploadManager.ChunkSink) upload.getDelegate();
+                completeAsync(key, createFileApiResponse(chunk.session.toJson()).header("X-Chunk-SHA256", chunk.getSha256()));
+            });
+            return;
+        }
+        // Index pas encore relevé: la liste est construite sur un worker
+        if (method.equals("GET") && (path.startsWith("/api/files/list") || path.equals("/api/files/storage/info"))
+                && !getDirectoryIndex().isLoaded()) {
+            processOnWorker(key, method, path);
+            return;
+        }
+        if (method.equals("POST") && path.startsWith("/api/files/uploads/") && path.endsWith("/complete")) {
+            String id = path.substring("/api/files/uploads/".length(), path.length() - "/complete".length());
+            finishResumableUpload(key, id);
+            return;
+        }
+        
+        sendFileResponse(key, processFileRequest(method, path, new String(parser.getBody(), StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * Poursuit l'envoi en attente (réponse ou fichier) quand le canal redevient inscriptible
+     */
+    private void handleWrite(SelectionKey key) throws IOException {
+        try {
+            connectionManager.touch(key);
+            flushResponse(key);
+        } catch (IOException e) {
+            Log.w(TAG, "Envoi fichier interrompu: " + e.getMessage());
+            closeConnection(key);
+        }
+    }
+    
+    /**
+     * Envoie sans bloquer ce que la socket accepte, puis ferme la connexion une fois tout envoyé.
+     * La lecture reste coupée: une seule réponse par connexion.
+     */
+    private void flushResponse(SelectionKey key) throws IOException {
+        HttpConnection connection = (HttpConnection) key.attachment();
+        if (connection.outbound.flush(key, false)) {
+            closeConnection(key);
+        }
+    }
+    
+    private void closeConnection(SelectionKey key) throws IOException {
+        Object attachment = key.attachment();
+        if (attachment instanceof HttpConnection) {
+            HttpConnection connection = (HttpConnection) attachment;
+            connection.outbound.clear();
+            connection.parser.reset(); // Supprime un upload inachevé
+        }
+        connectionManager.unregister(key);
+        key.cancel();
+        key.channel().close();
+    }
+    
+    /**
+     * Connexion sans requête dans le délai ou dont le client ne lit plus
+     */
+    private void handleTimeout(SelectionKey key, ConnectionManager.Phase phase) {
         try {
-            // Parser la requête HTTP basique
-            String[] lines = request.split("\n");
-            if (lines.length == 0) {
-                return createFileErrorResponse(400, "Bad Request");
+            closeConnection(key);
+        } catch (IOException e) {
+            Log.w(TAG, "Erreur fermeture connexion expirée", e);
+        }
+    }
+    
+    /**
+     * Connexions ouvertes, refusées et expirées (JSON)
+     */
+    public String getConnectionStats() {
+        return connectionManager.getStats();
+    }
+    
+    /**
+     * Sink des requêtes du FileServer: morceaux d'upload reprenable et uploads en streaming, écrits
+     * par un worker (les corps de connexions différentes en parallèle)
+     */
+    private HttpRequestParser.BodySink openRequestSink(SelectionKey key, HttpRequestParser request, long contentLength)
+            throws HttpRequestParser.HttpParseException {
+        String path = request.getTarget();
+        HttpRequestParser.BodySink sink;
+        if (request.getMethod().equals("PUT") && path.startsWith("/api/files/uploads/")) {
+            sink = getResumableUploads().openChunk(
+                    path.substring("/api/files/uploads/".length()),
+                    request.getHeader("content-range"), contentLength, request.getHeader("x-chunk-sha256"));
+        } else {
+            sink = openUploadSink(request, contentLength);
+        }
+        return sink != null ? new AsyncBodySink(sink, executor, bufferPool, new UploadReadControl(key)) : null;
+    }
+    
+    /**
+     * Suspend la lecture d'une connexion tant que son corps d'upload attend le disque
+     */
+    private final class UploadReadControl implements AsyncBodySink.Listener {
+        private final SelectionKey key;
+        
+        UploadReadControl(SelectionKey key) {
+            this.key = key;
+        }
+        
+        @Override
+        public void suspendReading() {
+            ((HttpConnection) key.attachment()).setInputPaused(true);
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            connectionManager.setPhase(key, ConnectionManager.Phase.BUSY);
+        }
+        
+        @Override
+        public void resumeReading() {
+            runOnSelector(() -> {
+                HttpConnection connection = (HttpConnection) key.attachment();
+                if (!key.isValid() || !connection.isInputPaused()) {
+                    return; // Connexion fermée ou corps déjà terminé
+                }
+                connection.setInputPaused(false);
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                connectionManager.setPhase(key, ConnectionManager.Phase.ACTIVE);
+                connectionManager.touch(key);
+            });
+        }
+    }
+    
+    /**
+     * Gestionnaire des uploads reprenables du répertoire de stockage courant
+     */
+    private synchronized ResumableUploadManager getResumableUploads() {
+        if (resumableUploads == null || !resumableUploads.getStorageDirectory().equals(storageDirectory)) {
+            if (resumableUploads != null) {
+                resumableUploads.close(); // Les sessions restent sur disque
             }
-            
-            String requestLine = lines[0];
-            String[] parts = requestLine.split(" ");
-            if (parts.length < 2) {
-                return createFileErrorResponse(400, "Bad Request");
+            resumableUploads = new ResumableUploadManager(storageDirectory);
+        }
+        return resumableUploads;
+    }
+    
+    /**
+     * Index du répertoire de stockage courant, recréé quand le répertoire change
+     */
+    private synchronized DirectoryIndex getDirectoryIndex() {
+        if (directoryIndex == null || !directoryIndex.getDirectory().equals(storageDirectory)) {
+            if (directoryIndex != null) {
+                directoryIndex.close();
             }
-            
-            String method = parts[0];
-            String path = parts[1];
-            
-            Log.d(TAG, "Requête fichier: " + method + " " + path);
-            
+            directoryIndex = new DirectoryIndex(storageDirectory);
+            directoryIndex.startWatching();
+            // Premier relevé (un stat par entrée) sur un worker plutôt qu'à la première requête
+            try {
+                executor.execute(directoryIndex::load);
+            } catch (RejectedExecutionException e) {
+                Log.w(TAG, "Relevé initial de l'index différé: serveur arrêté");
+            }
+        }
+        return directoryIndex;
+    }
+    
+    /**
+     * POST /api/files/uploads {"fileName","size","sha256"}: crée (ou reprend) une session d'upload
+     */
+    private HttpResponse handleCreateResumableUpload(String body) {
+        // Parser JSON complet: un nom avec guillemets ou caractères échappés arrive intact
+        JSONObject request;
+        try {
+            request = new JSONObject(body);
+        } catch (JSONException e) {
+            return createFileErrorResponse(400, "Invalid JSON");
+        }
+        String fileName = request.optString("fileName", null);
+        long size = request.optLong("size", -1);
+        if (fileName == null || size <= 0) {
+            return createFileErrorResponse(400, "Missing fileName or size");
+        }
+        try {
+            ResumableUploadManager.Session session = getResumableUploads().create(fileName, size,
+                    request.optString("sha256", null));
+            return new HttpResponse(201)
+                    .header("Content-Type", "application/json")
+                    .header("Access-Control-Allow-Origin", "*")
+                    .header("Location", "/api/files/uploads/" + session.id)
+                    .text(session.toJson());
+        } catch (HttpRequestParser.HttpParseException e) {
+            return createFileErrorResponse(e.statusCode, e.getMessage());
+        }
+    }
+    
+    /**
+     * GET /api/files/uploads/{id}: plages déjà reçues
+     */
+    private HttpResponse handleResumableUploadStatus(String id) {
+        ResumableUploadManager.Session session = getResumableUploads().get(id);
+        if (session == null) {
+            return createFileErrorResponse(404, "Upload not found");
+        }
+        return createFileApiResponse(session.toJson());
+    }
+    
+    /**
+     * POST /api/files/uploads/{id}/complete: vérification du SHA-256 complet sur un worker
+     * (lecture de tout le fichier), puis renommage dans le stockage
+     */
+    private void finishResumableUpload(SelectionKey key, String id) {
+        ResumableUploadManager uploads = getResumableUploads();
+        // Rien à lire ni à écrire en attendant le worker
+        key.interestOps(0);
+        connectionManager.setPhase(key, ConnectionManager.Phase.BUSY);
+        try {
+            executor.execute(() -> {
+                HttpResponse response;
+                try {
+                    ResumableUploadManager.Session session = uploads.get(id);
+                    if (session == null) {
+                        throw new HttpRequestParser.HttpParseException(404, "Upload inconnu");
+                    }
+                    String sha256 = uploads.finish(id);
+                    getDirectoryIndex().update(session.fileName);
+                    response = new HttpResponse(201)
+                            .header("Content-Type", "application/json")
+                            .header("Access-Control-Allow-Origin", "*")
+                            .text("{\"success\":true,\"fileName\":" + JSONObject.quote(session.fileName) +
+                                    ",\"size\":" + session.size + ",\"sha256\":\"" + sha256 + "\"}");
+                } catch (HttpRequestParser.HttpParseException e) {
+                    response = createFileErrorResponse(e.statusCode, e.getMessage());
+                }
+                completeAsync(key, response);
+            });
+        } catch (RejectedExecutionException e) {
+            sendFileResponse(key, createFileErrorResponse(503, "Server busy"));
+        }
+    }
+    
+    /**
+     * Requête sans corps traitée sur un worker, réponse rendue au sélecteur
+     */
+    private void processOnWorker(SelectionKey key, String method, String path) {
+        key.interestOps(0);
+        connectionManager.setPhase(key, ConnectionManager.Phase.BUSY);
+        try {
+            executor.execute(() -> completeAsync(key, processFileRequest(method, path, "")));
+        } catch (RejectedExecutionException e) {
+            sendFileResponse(key, createFileErrorResponse(503, "Server busy"));
+        }
+    }
+    
+    /**
+     * Appelé depuis un worker: la réponse est envoyée par le thread du sélecteur
+     */
+    private void completeAsync(SelectionKey key, HttpResponse response) {
+        runOnSelector(() -> {
+            if (!key.isValid()) {
+                response.close(); // Client parti entre-temps
+                return;
+            }
+            connectionManager.setPhase(key, ConnectionManager.Phase.ACTIVE);
+            sendFileResponse(key, response);
+        });
+    }
+    
+    private void runOnSelector(Runnable task) {
+        selectorTasks.add(task);
+        Selector currentSelector = selector;
+        if (currentSelector != null) {
+            currentSelector.wakeup();
+        }
+    }
+    
+    private void runSelectorTasks() {
+        Runnable task;
+        while ((task = selectorTasks.poll()) != null) {
+            task.run();
+        }
+    }
+    
+    /**
+     * Ouvre l'écriture sur disque d'un upload en streaming: PUT /api/files/upload/{nom} (corps brut,
+     * Content-Length ou chunked) ou POST /api/files/upload en multipart/form-data.
+     * Les autres requêtes (dont l'upload JSON historique) gardent leur corps en mémoire.
+     * Le sink écrit sur le thread qui l'appelle: les serveurs le confient à un AsyncBodySink.
+     */
+    public HttpRequestParser.BodySink openUploadSink(HttpRequestParser request, long contentLength)
+            throws HttpRequestParser.HttpParseException {
+        String path = request.getTarget();
+        if (path.contains("?")) {
+            path = path.substring(0, path.indexOf('?'));
+        }
+        
+        String fileName = null;
+        String boundary = null;
+        if (request.getMethod().equals("PUT") && path.startsWith("/api/files/upload/")) {
+            fileName = StreamingUpload.safeFileName(decodePathSegment(path.substring("/api/files/upload/".length())));
+            if (fileName == null) {
+                throw new HttpRequestParser.HttpParseException(400, "Nom de fichier invalide");
+            }
+        } else if (request.getMethod().equals("POST") && path.equals("/api/files/upload")) {
+            boundary = MultipartStream.getBoundary(request.getHeader("content-type"));
+            if (boundary == null) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        
+        if (contentLength > MAX_UPLOAD_BYTES) {
+            throw new HttpRequestParser.HttpParseException(413, "Upload trop volumineux (max " + MAX_UPLOAD_BYTES + " octets)");
+        }
+        if (contentLength > storageDirectory.getUsableSpace()) {
+            throw new HttpRequestParser.HttpParseException(507, "Espace de stockage insuffisant");
+        }
+        try {
+            return fileName != null
+                    ? StreamingUpload.raw(storageDirectory, fileName, MAX_UPLOAD_BYTES)
+                    : StreamingUpload.multipart(storageDirectory, boundary, MAX_UPLOAD_BYTES);
+        } catch (IOException e) {
+            Log.e(TAG, "Ouverture upload impossible", e);
+            throw new HttpRequestParser.HttpParseException(500, "Ouverture du fichier impossible");
+        }
+    }
+    
+    /**
+     * Réponse d'un upload en streaming: nom, taille et SHA-256 de chaque fichier reçu
+     */
+    public HttpResponse handleStreamingUpload(StreamingUpload upload) {
+        List<StreamingUpload.UploadedFile> files = upload.getFiles();
+        if (files.isEmpty()) {
+            return createFileErrorResponse(400, "No file in upload");
+        }
+        DirectoryIndex index = getDirectoryIndex();
+        for (StreamingUpload.UploadedFile file : files) {
+            index.update(file.fileName);
+        }
+        
+        StringBuilder json = new StringBuilder("{\"success\":true");
+        if (files.size() == 1) {
+            appendUploadedFile(json.append(','), files.get(0));
+        }
+        json.append(",\"files\":[");
+        for (int i = 0; i < files.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendUploadedFile(json.append('{'), files.get(i)).append('}');
+        }
+        json.append("]}");
+        return new HttpResponse(201)
+                .header("Content-Type", "application/json")
+                .header("Access-Control-Allow-Origin", "*")
+                .text(json);
+    }
+    
+    private StringBuilder appendUploadedFile(StringBuilder json, StreamingUpload.UploadedFile file) {
+        return json.append("\"fileName\":").append(JSONObject.quote(file.fileName))
+                .append(",\"size\":").append(file.size)
+                .append(",\"sha256\":\"").append(file.sha256).append('"');
+    }
+    
+    private HttpResponse processFileRequest(String method, String path, String body) {
+        try {
             // Router les requêtes
             if (method.equals("GET")) {
                 return handleFileGetRequest(path);
             } else if (method.equals("POST")) {
-                String body = extractRequestBody(request);
                 return handleFilePostRequest(path, body);
             } else if (method.equals("DELETE")) {
                 return handleFileDeleteRequest(path);
@@ -317,44 +767,53 @@ public class FileServer {
         }
     }
     
-    private String handleFileGetRequest(String path) {
+    private HttpResponse handleFileGetRequest(String path) {
         // API Endpoints pour les fichiers
-        if (path.equals("/api/files/list")) {
-            return handleListFiles();
+        if (path.equals("/api/files/list") || path.startsWith("/api/files/list?")) {
+            int query = path.indexOf('?');
+            return handleListFiles(query >= 0 ? path.substring(query + 1) : null);
         }
         else if (path.equals("/api/files/storage/info")) {
             return handleStorageInfo();
         }
-        else if (path.startsWith("/api/files/download/")) {
-            String fileName = path.substring("/api/files/download/".length());
-            return handleDownloadFile(fileName);
-        }
         else if (path.startsWith("/api/files/info/")) {
             String fileName = path.substring("/api/files/info/".length());
             return handleFileInfo(fileName);
         }
+        else if (path.startsWith("/api/files/uploads/")) {
+            return handleResumableUploadStatus(path.substring("/api/files/uploads/".length()));
+        }
         else {
             return createFileErrorResponse(404, "Not Found");
         }
     }
     
-    private String handleFilePostRequest(String path, String body) {
+    private HttpResponse handleFilePostRequest(String path, String body) {
         if (path.equals("/api/files/upload")) {
             return handleUploadFile(body);
         }
         else if (path.equals("/api/files/storage/change")) {
             return handleChangeStorage(body);
         }
+        else if (path.equals("/api/files/uploads")) {
+            return handleCreateResumableUpload(body);
+        }
         else {
             return createFileErrorResponse(404, "Not Found");
         }
     }
     
-    private String handleFileDeleteRequest(String path) {
+    private HttpResponse handleFileDeleteRequest(String path) {
         if (path.startsWith("/api/files/delete/")) {
             String fileName = path.substring("/api/files/delete/".length());
             return handleDeleteFile(fileName);
         }
+        else if (path.startsWith("/api/files/uploads/")) {
+            if (!getResumableUploads().abort(path.substring("/api/files/uploads/".length()))) {
+                return createFileErrorResponse(404, "Upload not found");
+            }
+            return new HttpResponse(204).header("Access-Control-Allow-Origin", "*");
+        }
         else {
             return createFileErrorResponse(404, "Not Found");
         }
@@ -362,28 +821,43 @@ public class FileServer {
     
     // ========== HANDLERS FICHIERS ==========
     
-    public String handleListFiles() {
+    /**
+     * GET /api/files/list?limit=&cursor=&sort=name|size|modified&order=asc|desc&filter=&type=file|dir
+     * Page lue dans l'index du répertoire, sérialisée directement dans la réponse
+     */
+    public HttpResponse handleListFiles(String queryString) {
         try {
-            List<Map<String, Object>> files = new ArrayList<>();
-            
-            if (storageDirectory.exists() && storageDirectory.isDirectory()) {
-                File[] fileList = storageDirectory.listFiles();
-                if (fileList != null) {
-                    for (File file : fileList) {
-                        Map<String, Object> fileInfo = new HashMap<>();
-                        fileInfo.put("name", file.getName());
-                        fileInfo.put("size", file.length());
-                        fileInfo.put("isDirectory", file.isDirectory());
-                        fileInfo.put("lastModified", file.lastModified());
-                        fileInfo.put("path", file.getAbsolutePath());
-                        files.add(fileInfo);
-                    }
+            DirectoryIndex.SortKey sort = DirectoryIndex.SortKey.parse(getQueryParameter(queryString, "sort"));
+            String order = getQueryParameter(queryString, "order");
+            if (order != null && !order.equals("asc") && !order.equals("desc")) {
+                return createFileErrorResponse(400, "Invalid order");
+            }
+            String type = getQueryParameter(queryString, "type");
+            if (type != null && !type.equals("file") && !type.equals("dir")) {
+                return createFileErrorResponse(400, "Invalid type");
+            }
+            int limit = DEFAULT_LIST_LIMIT;
+            String limitParam = getQueryParameter(queryString, "limit");
+            if (limitParam != null) {
+                limit = Integer.parseInt(limitParam);
+                if (limit < 1 || limit > MAX_LIST_LIMIT) {
+                    return createFileErrorResponse(400, "Invalid limit (1-" + MAX_LIST_LIMIT + ")");
                 }
             }
             
-            String response = "{\"files\":" + files.toString() + ",\"storagePath\":\"" + currentStoragePath + "\"}";
-            return createFileApiResponse(response);
+            DirectoryIndex.Page page = getDirectoryIndex().list(sort, "desc".equals(order),
+                    getQueryParameter(queryString, "cursor"), limit, getQueryParameter(queryString, "filter"), type);
+            String storagePath = currentStoragePath;
+            return new HttpResponse(200)
+                    .header("Content-Type", "application/json; charset=utf-8")
+                    .header("Access-Control-Allow-Origin", "*")
+                    .header("Access-Control-Allow-Methods", "GET, POST, DELETE, OPTIONS")
+                    .header("Access-Control-Allow-Headers", "Content-Type")
+                    .stream(new FilesJsonWriter(page, storagePath));
             
+        } catch (IllegalArgumentException e) {
+            // Tri, limite ou curseur invalide
+            return createFileErrorResponse(400, "Invalid list parameters");
         } catch (Exception e) {
             Log.e(TAG, "Erreur liste fichiers", e);
             return createFileErrorResponse(500, "Error listing files");
@@ -391,28 +865,16 @@ public class FileServer {
     }
     
     /**
-     * Retourne seulement le JSON des fichiers (sans headers HTTP)
+     * Retourne seulement le JSON des fichiers (sans headers HTTP), liste complète triée par nom
      */
     public String getFilesJson() {
         try {
-            List<Map<String, Object>> files = new ArrayList<>();
-            
-            if (storageDirectory.exists() && storageDirectory.isDirectory()) {
-                File[] fileList = storageDirectory.listFiles();
-                if (fileList != null) {
-                    for (File file : fileList) {
-                        Map<String, Object> fileInfo = new HashMap<>();
-                        fileInfo.put("name", file.getName());
-                        fileInfo.put("size", file.length());
-                        fileInfo.put("isDirectory", file.isDirectory());
-                        fileInfo.put("lastModified", file.lastModified());
-                        fileInfo.put("path", file.getAbsolutePath());
-                        files.add(fileInfo);
-                    }
-                }
-            }
-            
-            return "{\"files\":" + files.toString() + ",\"storagePath\":\"" + currentStoragePath + "\"}";
+            DirectoryIndex index = getDirectoryIndex();
+            DirectoryIndex.Page page = index.list(DirectoryIndex.SortKey.NAME, false, null,
+                    Math.max(1, index.size()), null, null);
+            ByteArrayOutputStream json = new ByteArrayOutputStream();
+            new FilesJsonWriter(page, currentStoragePath).writeAll(json);
+            return json.toString("UTF-8");
             
         } catch (Exception e) {
             Log.e(TAG, "Erreur JSON fichiers", e);
@@ -420,19 +882,71 @@ public class FileServer {
         }
     }
     
-    public String handleStorageInfo() {
+    /**
+     * Page de l'index en JSON, écrite par lots d'entrées au fil de l'envoi
+     */
+    private static final class FilesJsonWriter extends HttpResponse.ListWriter<DirectoryIndex.Entry> {
+        private final DirectoryIndex.Page page;
+        private final String storagePath;
+        private final String basePath;
+        private JsonWriter json;
+        
+        FilesJsonWriter(DirectoryIndex.Page page, String storagePath) {
+            super(page.entries);
+            this.page = page;
+            this.storagePath = storagePath;
+            this.basePath = storagePath + File.separator;
+        }
+        
+        @Override
+        protected void begin(Writer out) throws IOException {
+            json = new JsonWriter(out);
+            json.beginObject();
+            json.name("files").beginArray();
+        }
+        
+        @Override
+        protected void item(Writer out, DirectoryIndex.Entry entry) throws IOException {
+            json.beginObject();
+            json.name("name").value(entry.name);
+            json.name("size").value(entry.size);
+            json.name("isDirectory").value(entry.isDirectory);
+            json.name("lastModified").value(entry.lastModified);
+            json.name("path").value(basePath + entry.name);
+            json.endObject();
+        }
+        
+        @Override
+        protected void end(Writer out) throws IOException {
+            json.endArray();
+            json.name("count").value(page.entries.size());
+            json.name("total").value(page.total);
+            json.name("nextCursor");
+            if (page.nextCursor != null) {
+                json.value(page.nextCursor);
+            } else {
+                json.nullValue();
+            }
+            json.name("storagePath").value(storagePath);
+            json.endObject();
+            json.flush(); // La sortie reste ouverte: fermée par l'appelant
+        }
+    }
+    
+    public HttpResponse handleStorageInfo() {
         try {
             long totalSpace = storageDirectory.getTotalSpace();
             long freeSpace = storageDirectory.getFreeSpace();
             long usedSpace = totalSpace - freeSpace;
             
             String response = String.format(
-                "{\"storagePath\":\"%s\",\"totalSpace\":%d,\"freeSpace\":%d,\"usedSpace\":%d,\"fileCount\":%d}",
+                "{\"storagePath\":\"%s\",\"totalSpace\":%d,\"freeSpace\":%d,\"usedSpace\":%d,\"fileCount\":%d,\"filesSize\":%d}",
                 currentStoragePath,
                 totalSpace,
                 freeSpace,
                 usedSpace,
-                getFileCount()
+                getFileCount(),
+                getDirectoryIndex().getTotalBytes()
             );
             
             return createFileApiResponse(response);
@@ -443,34 +957,109 @@ public class FileServer {
         }
     }
     
-    public String handleDownloadFile(String fileName) {
+    /**
+     * Download d'un fichier du stockage: 200 complet, 206 pour une plage (Range, If-Range), 416 hors limites.
+     * Le contenu part en zero-copy depuis la file d'envoi, repris sur OP_WRITE sans bloquer le sélecteur.
+     * @param requestHeaders headers de la requête, noms en minuscules
+     * @param headOnly requête HEAD: mêmes headers, sans le contenu
+     */
+    public HttpResponse handleDownloadFile(String fileName, Map<String, String> requestHeaders, boolean headOnly) {
+        String safeFileName = StreamingUpload.safeFileName(fileName);
+        if (safeFileName == null) {
+            return createFileErrorResponse(404, "File not found");
+        }
+        File file = new File(storageDirectory, safeFileName);
+        FileChannel fileChannel = null;
         try {
-            String safeFileName = SecurityUtils.sanitizeFileName(fileName);
-            File file = new File(storageDirectory, safeFileName);
-            
-            if (!file.exists() || !file.isFile()) {
+            if (!file.isFile()) {
                 return createFileErrorResponse(404, "File not found");
             }
+            fileChannel = new RandomAccessFile(file, "r").getChannel();
+            long length = fileChannel.size();
+            long lastModified = file.lastModified();
+            String etag = HttpRange.fileEtag(length, lastModified);
             
-            // Pour l'instant, retourner les infos du fichier
-            // L'implémentation complète du download nécessiterait plus de code
-            String response = String.format(
-                "{\"fileName\":\"%s\",\"size\":%d,\"path\":\"%s\",\"downloadUrl\":\"/api/files/download/%s\"}",
-                safeFileName,
-                file.length(),
-                file.getAbsolutePath(),
-                safeFileName
-            );
+            // Une seule plage servie en 206; plusieurs plages (multipart/byteranges) donnent le fichier complet
+            List<HttpRange> ranges = null;
+            if (HttpRange.ifRangeMatches(requestHeaders.get("if-range"), etag, lastModified)) {
+                ranges = HttpRange.parse(requestHeaders.get("range"), length);
+            }
+            if (ranges != null && ranges.isEmpty()) {
+                fileChannel.close();
+                return createFileErrorResponse(416, "Range Not Satisfiable")
+                        .header("Content-Range", "bytes */" + length);
+            }
             
-            return createFileApiResponse(response);
+            HttpResponse response;
+            if (ranges != null && ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                response = new HttpResponse(206)
+                        .header("Content-Range", range.toContentRange(length))
+                        .file(fileChannel, range.start, range.length());
+            } else {
+                response = new HttpResponse(200).file(fileChannel, 0, length);
+            }
+            response.header("Content-Type", "application/octet-stream")
+                    .header("Content-Disposition", contentDisposition(safeFileName))
+                    .header("Accept-Ranges", "bytes")
+                    .header("ETag", etag)
+                    .header("Last-Modified", HttpRange.formatHttpDate(lastModified))
+                    .header("Access-Control-Allow-Origin", "*")
+                    .header("Access-Control-Expose-Headers", "Content-Range, Content-Disposition, ETag");
+            if (headOnly) {
+                response.omitBody();
+            }
+            Log.d(TAG, "Download: " + safeFileName + " (" + response.getStatus() + ", " +
+                    response.getContentLength() + "/" + length + " octets)");
+            return response;
             
-        } catch (Exception e) {
+        } catch (IOException e) {
             Log.e(TAG, "Erreur download fichier", e);
+            if (fileChannel != null) {
+                try {
+                    fileChannel.close();
+                } catch (IOException ignored) {
+                }
+            }
             return createFileErrorResponse(500, "Error downloading file");
         }
     }
     
-    public String handleFileInfo(String fileName) {
+    /**
+     * Content-Disposition avec un nom ASCII de repli et le nom exact encodé (RFC 6266)
+     */
+    private String contentDisposition(String fileName) {
+        StringBuilder ascii = new StringBuilder(fileName.length());
+        for (int i = 0; i < fileName.length(); i++) {
+            char c = fileName.charAt(i);
+            ascii.append(c >= 0x20 && c < 0x7f && c != '"' && c != '\\' ? c : '_');
+        }
+        String header = "attachment; filename=\"" + ascii + "\"";
+        if (!ascii.toString().equals(fileName)) {
+            try {
+                header += "; filename*=UTF-8''" + java.net.URLEncoder.encode(fileName, "UTF-8").replace("+", "%20");
+            } catch (java.io.UnsupportedEncodingException ignored) {
+            }
+        }
+        return header;
+    }
+    
+    /**
+     * Segment de chemin sans query string, %XX décodés ('+' reste un '+' dans un chemin)
+     */
+    private String decodePathSegment(String segment) {
+        int query = segment.indexOf('?');
+        if (query >= 0) {
+            segment = segment.substring(0, query);
+        }
+        try {
+            return java.net.URLDecoder.decode(segment.replace("+", "%2B"), "UTF-8");
+        } catch (IllegalArgumentException | java.io.UnsupportedEncodingException e) {
+            return segment;
+        }
+    }
+    
+    public HttpResponse handleFileInfo(String fileName) {
         try {
             String safeFileName = SecurityUtils.sanitizeFileName(fileName);
             File file = new File(storageDirectory, safeFileName);
@@ -496,7 +1085,7 @@ public class FileServer {
         }
     }
     
-    public String handleUploadFile(String body) {
+    public HttpResponse handleUploadFile(String body) {
         try {
             // Parser JSON simple pour l'upload
             String fileName = extractJsonValue(body, "fileName");
@@ -513,6 +1102,7 @@ public class FileServer {
             try (FileOutputStream fos = new FileOutputStream(file)) {
                 fos.write(content.getBytes("UTF-8"));
             }
+            getDirectoryIndex().update(safeFileName);
             
             String response = String.format(
                 "{\"success\":true,\"fileName\":\"%s\",\"size\":%d,\"path\":\"%s\"}",
@@ -529,7 +1119,7 @@ public class FileServer {
         }
     }
     
-    public String handleChangeStorage(String body) {
+    public HttpResponse handleChangeStorage(String body) {
         try {
             String newPath = extractJsonValue(body, "newPath");
             
@@ -580,7 +1170,7 @@ public class FileServer {
         }
     }
     
-    private String handleDeleteFile(String fileName) {
+    private HttpResponse handleDeleteFile(String fileName) {
         try {
             String safeFileName = SecurityUtils.sanitizeFileName(fileName);
             File file = new File(storageDirectory, safeFileName);
@@ -592,6 +1182,7 @@ public class FileServer {
             boolean deleted = file.delete();
             
             if (deleted) {
+                getDirectoryIndex().update(safeFileName);
                 String response = String.format(
                     "{\"success\":true,\"message\":\"File %s deleted successfully\"}",
                     safeFileName
@@ -611,19 +1202,31 @@ public class FileServer {
     
     private int getFileCount() {
         try {
-            if (storageDirectory.exists() && storageDirectory.isDirectory()) {
-                File[] files = storageDirectory.listFiles();
-                return files != null ? files.length : 0;
-            }
+            return getDirectoryIndex().size();
         } catch (Exception e) {
             Log.e(TAG, "Erreur comptage fichiers", e);
         }
         return 0;
     }
     
-    private String extractRequestBody(String request) {
-        String[] parts = request.split("\r\n\r\n");
-        return parts.length > 1 ? parts[1] : "";
+    /**
+     * Valeur décodée d'un paramètre de query string, null si absent
+     */
+    private String getQueryParameter(String queryString, String paramName) {
+        if (queryString == null || queryString.isEmpty()) {
+            return null;
+        }
+        for (String param : queryString.split("&")) {
+            String[] keyValue = param.split("=", 2);
+            if (keyValue.length == 2 && keyValue[0].equals(paramName)) {
+                try {
+                    return java.net.URLDecoder.decode(keyValue[1], "UTF-8");
+                } catch (java.io.UnsupportedEncodingException e) {
+                    return keyValue[1];
+                }
+            }
+        }
+        return null;
     }
     
     private String extractJsonValue(String json, String key) {
@@ -640,45 +1243,45 @@ public class FileServer {
         }
     }
     
-    private void sendFileResponse(SocketChannel clientChannel, String response) {
+    /**
+     * Met la réponse en file d'envoi et commence à l'écrire; le reste suivra sur OP_WRITE
+     */
+    private void sendFileResponse(SelectionKey key, HttpResponse response) {
+        HttpConnection connection = (HttpConnection) key.attachment();
         try {
-            ByteBuffer buffer = ByteBuffer.wrap(response.getBytes("UTF-8"));
-            clientChannel.write(buffer);
-            clientChannel.close();
+            // Une seule réponse par connexion: Connection: close
+            response.writeTo(connection.outbound, false, false);
+            flushResponse(key);
         } catch (IOException e) {
             Log.e(TAG, "Erreur envoi réponse fichier", e);
+            try {
+                closeConnection(key);
+            } catch (IOException ignored) {
+            }
         }
     }
     
-    private String createFileApiResponse(String jsonBody) {
-        return "HTTP/1.1 200 OK\r\n" +
-               "Content-Type: application/json\r\n" +
-               "Access-Control-Allow-Origin: *\r\n" +
-               "Access-Control-Allow-Methods: GET, POST, DELETE, OPTIONS\r\n" +
-               "Access-Control-Allow-Headers: Content-Type\r\n" +
-               "Content-Length: " + jsonBody.length() + "\r\n" +
-               "\r\n" +
-               jsonBody;
+    private HttpResponse createFileApiResponse(String jsonBody) {
+        return HttpResponse.ok("application/json", jsonBody)
+                .header("Access-Control-Allow-Origin", "*")
+                .header("Access-Control-Allow-Methods", "GET, POST, DELETE, OPTIONS")
+                .header("Access-Control-Allow-Headers", "Content-Type");
     }
     
-    private String createFileErrorResponse(int code, String message) {
+    private HttpResponse createFileErrorResponse(int code, String message) {
         String body = "{\"error\":" + code + ",\"message\":\"" + message + "\"}";
-        return "HTTP/1.1 " + code + " " + message + "\r\n" +
-               "Content-Type: application/json\r\n" +
-               "Access-Control-Allow-Origin: *\r\n" +
-               "Content-Length: " + body.length() + "\r\n" +
-               "\r\n" +
-               body;
+        return new HttpResponse(code)
+                .header("Content-Type", "application/json")
+                .header("Access-Control-Allow-Origin", "*")
+                .text(body);
     }
     
-    private String createFileCorsPreflightResponse() {
-        return "HTTP/1.1 200 OK\r\n" +
-               "Access-Control-Allow-Origin: *\r\n" +
-               "Access-Control-Allow-Methods: GET, POST, DELETE, OPTIONS\r\n" +
-               "Access-Control-Allow-Headers: Content-Type, Authorization\r\n" +
-               "Access-Control-Max-Age: 86400\r\n" +
-               "Content-Length: 0\r\n" +
-               "\r\n";
+    private HttpResponse createFileCorsPreflightResponse() {
+        return new HttpResponse(200)
+                .header("Access-Control-Allow-Origin", "*")
+                .header("Access-Control-Allow-Methods", "GET, POST, DELETE, OPTIONS")
+                .header("Access-Control-Allow-Headers", "Content-Type, Authorization")
+                .header("Access-Control-Max-Age", "86400");
     }
     
     /**
@@ -787,6 +1390,15 @@ public class FileServer {
     public void stop() {
         isRunning = false;
         executor.shutdownNow();
+        synchronized (this) {
+            if (resumableUploads != null) {
+                resumableUploads.close();
+            }
+            if (directoryIndex != null) {
+                directoryIndex.close();
+                directoryIndex = null;
+            }
+        }
         try {
             if (selector != null) selector.close();
             if (serverChannel != null) serverChannel.close();
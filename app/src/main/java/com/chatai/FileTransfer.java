@@ -0,0 +1,204 @@
+package com.chatai;
+
+import android.util.Log;
+
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Envoi de fichiers sans copie (zero-copy) via FileChannel.transferTo
+ * Partagé par les routes fichiers de WebServer (sockets bloquantes) et le download de FileServer (NIO)
+ */
+public final class FileTransfer {
+    private static final String TAG = "FileTransfer";
+
+    // Taille max par appel transferTo (sendfile est limité à ~2 GB par appel)
+    private static final long MAX_TRANSFER_CHUNK = 8L * 1024 * 1024;
+    // Part d'un envoi non bloquant par passage du sélecteur: un gros download laisse la main aux autres connexions
+    private static final long MAX_BYTES_PER_WRITE = 4L * 1024 * 1024;
+    // Buffer du chemin de repli (socket sans canal)
+    private static final int FALLBACK_BUFFER_SIZE = 65536;
+
+    private static final AtomicLong zeroCopyBytes = new AtomicLong();
+    private static final AtomicLong copiedBytes = new AtomicLong();
+
+    private FileTransfer() {
+    }
+
+    /**
+     * Envoie une portion de fichier vers la sortie: transferTo si la sortie expose un canal bloquant,
+     * sinon copie via un buffer (chemin de repli)
+     */
+    public static void send(FileChannel source, long position, long count, OutputStream out) throws IOException {
+        if (out instanceof ChannelOutputStream) {
+            ((ChannelOutputStream) out).transferFrom(source, position, count);
+            return;
+        }
+        copy(source, position, count, out);
+    }
+
+    /**
+     * Transfert complet vers un canal bloquant
+     */
+    public static void transferFully(FileChannel source, long position, long count, WritableByteChannel target) throws IOException {
+        long remaining = count;
+        long offset = position;
+        while (remaining > 0) {
+            long transferred = source.transferTo(offset, Math.min(remaining, MAX_TRANSFER_CHUNK), target);
+            if (transferred <= 0) {
+                // En mode bloquant, 0 signifie que le fichier a été tronqué
+                if (offset >= source.size()) {
+                    throw new EOFException("Fichier tronqué pendant l'envoi");
+                }
+                continue;
+            }
+            offset += transferred;
+            remaining -= transferred;
+            zeroCopyBytes.addAndGet(transferred);
+        }
+    }
+
+    /**
+     * Chemin de repli: copie par buffer réutilisé
+     */
+    private static void copy(FileChannel source, long position, long count, OutputStream out) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(FALLBACK_BUFFER_SIZE, Math.max(count, 1))];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        long remaining = count;
+        long offset = position;
+        while (remaining > 0) {
+            byteBuffer.clear();
+            byteBuffer.limit((int) Math.min(buffer.length, remaining));
+            int bytesRead = source.read(byteBuffer, offset);
+            if (bytesRead == -1) {
+                throw new EOFException("Fichier tronqué pendant l'envoi");
+            }
+            out.write(buffer, 0, bytesRead);
+            offset += bytesRead;
+            remaining -= bytesRead;
+            copiedBytes.addAndGet(bytesRead);
+        }
+    }
+
+    /**
+     * Octets envoyés via transferTo depuis le démarrage
+     */
+    public static long getZeroCopyBytes() {
+        return zeroCopyBytes.get();
+    }
+
+    /**
+     * Octets envoyés via le chemin de repli (copie par buffer)
+     */
+    public static long getCopiedBytes() {
+        return copiedBytes.get();
+    }
+
+    /**
+     * Sortie de socket qui garde une référence vers son canal (null si la socket n'en a pas) pour transferTo
+     */
+    public static class ChannelOutputStream extends FilterOutputStream {
+        private final SocketChannel channel;
+
+        public ChannelOutputStream(OutputStream out, SocketChannel channel) {
+            super(out);
+            this.channel = channel;
+        }
+
+        public SocketChannel getChannel() {
+            return channel;
+        }
+
+        /**
+         * Envoie une portion de fichier: transferTo si le canal est bloquant, sinon copie par buffer
+         */
+        public void transferFrom(FileChannel source, long position, long count) throws IOException {
+            // Les headers déjà écrits doivent partir avant le contenu
+            flush();
+            if (channel != null && channel.isBlocking()) {
+                transferFully(source, position, count, channel);
+            } else {
+                copy(source, position, count, out);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // FilterOutputStream écrit octet par octet par défaut
+            out.write(b, off, len);
+        }
+    }
+
+    /**
+     * Envoi en cours sur un canal non bloquant: headers puis portion de fichier,
+     * repris à chaque OP_WRITE jusqu'à la fin
+     */
+    public static final class Pending {
+        private final ByteBuffer head;
+        private final FileChannel source;
+        private long position;
+        private long remaining;
+
+        public Pending(ByteBuffer head, FileChannel source, long position, long count) {
+            this.head = head;
+            this.source = source;
+            this.position = position;
+            this.remaining = count;
+        }
+
+        /**
+         * Écrit autant que le canal l'accepte, dans la limite d'une part par appel
+         * @return true quand tout a été envoyé
+         */
+        public boolean writeTo(SocketChannel channel) throws IOException {
+            while (head.hasRemaining()) {
+                if (channel.write(head) == 0) {
+                    return false;
+                }
+            }
+
+            long sent = 0;
+            while (remaining > 0) {
+                if (sent >= MAX_BYTES_PER_WRITE) {
+                    // Reprise au prochain OP_WRITE (toujours prêt tant que la socket accepte)
+                    return false;
+                }
+                long transferred = source.transferTo(position, Math.min(remaining, MAX_TRANSFER_CHUNK), channel);
+                if (transferred <= 0) {
+                    if (position >= source.size()) {
+                        throw new EOFException("Fichier tronqué pendant l'envoi");
+                    }
+                    // Tampon d'envoi plein: attendre OP_WRITE
+                    return false;
+                }
+                position += transferred;
+                remaining -= transferred;
+                sent += transferred;
+                zeroCopyBytes.addAndGet(transferred);
+            }
+            return true;
+        }
+
+        /**
+         * Octets restant à envoyer (headers compris)
+         */
+        public long remaining() {
+            return head.remaining() + remaining;
+        }
+
+        public void close() {
+            try {
+                source.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Erreur fermeture fichier", e);
+            }
+        }
+    }
+}
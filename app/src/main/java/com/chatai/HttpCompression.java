@@ -0,0 +1,86 @@
+package com.chatai;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Négociation Accept-Encoding et compression gzip des réponses
+ * Les assets web ont des variantes .gz/.br générées au build (tâche compressWebAssets)
+ */
+public final class HttpCompression {
+    public static final String GZIP = "gzip";
+    public static final String BROTLI = "br";
+
+    // En dessous, les headers gzip coûtent plus qu'ils ne font gagner
+    public static final int MIN_COMPRESS_SIZE = 1024;
+
+    private HttpCompression() {
+    }
+
+    /**
+     * Vrai si le type de contenu gagne à être compressé (texte, JS, JSON, wasm...).
+     * Les formats déjà compressés (PNG, JPEG, zip, 7z, audio, vidéo) sont exclus.
+     */
+    public static boolean isCompressibleType(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.US);
+        return type.startsWith("text/")
+                || type.startsWith("application/javascript")
+                || type.startsWith("application/json")
+                || type.startsWith("application/wasm")
+                || type.startsWith("application/xml")
+                || type.startsWith("image/svg+xml");
+    }
+
+    /**
+     * Vrai si l'en-tête Accept-Encoding accepte le codage (q > 0, "*" pris en compte)
+     */
+    public static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        Boolean wildcard = null;
+        for (String token : acceptEncoding.split(",")) {
+            String[] params = token.split(";");
+            String name = params[0].trim().toLowerCase(Locale.US);
+            boolean acceptable = parseQuality(params) > 0;
+            if (name.equals(coding)) {
+                return acceptable;
+            }
+            if (name.equals("*")) {
+                wildcard = acceptable;
+            }
+        }
+        return wildcard != null && wildcard;
+    }
+
+    private static double parseQuality(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Compresse en gzip (contenu dynamique: JSON des consoles, gamelists générées)
+     */
+    public static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(data.length / 4, 256));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 8192)) {
+            gzip.write(data);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,63 @@
+package com.chatai;
+
+import java.nio.ByteBuffer;
+
+/**
+ * État d'une connexion HTTP NIO (attachée à sa SelectionKey):
+ * parser de la requête en cours et file des réponses à envoyer
+ */
+public final class HttpConnection {
+    public final HttpRequestParser parser = new HttpRequestParser();
+    public final OutboundQueue outbound = new OutboundQueue();
+
+    // Fermer la connexion dès que la file d'envoi est vide
+    private boolean closeAfterWrite;
+    // Réponse en cours de calcul sur un worker: les requêtes suivantes attendent leur tour
+    private boolean awaitingResponse;
+    // Octets reçus après la requête en attente (requêtes pipelinées)
+    private ByteBuffer pendingInput;
+    // Lecture suspendue: le corps reçu attend d'être écrit sur disque
+    private boolean inputPaused;
+
+    public boolean isCloseAfterWrite() {
+        return closeAfterWrite;
+    }
+
+    public void closeAfterWrite() {
+        closeAfterWrite = true;
+    }
+
+    public boolean isAwaitingResponse() {
+        return awaitingResponse;
+    }
+
+    public void setAwaitingResponse(boolean awaitingResponse) {
+        this.awaitingResponse = awaitingResponse;
+    }
+
+    public boolean isInputPaused() {
+        return inputPaused;
+    }
+
+    public void setInputPaused(boolean inputPaused) {
+        this.inputPaused = inputPaused;
+    }
+
+    /**
+     * Copie les octets non traités du buffer de lecture (rendu au pool ensuite)
+     */
+    public void stashInput(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer).flip();
+        pendingInput = copy;
+    }
+
+    /**
+     * Octets mis de côté par stashInput, ou null
+     */
+    public ByteBuffer takePendingInput() {
+        ByteBuffer input = pendingInput;
+        pendingInput = null;
+        return input;
+    }
+}
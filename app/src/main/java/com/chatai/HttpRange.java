@@ -0,0 +1,194 @@
+package com.chatai;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Plage d'octets HTTP (RFC 7233) et utilitaires associés
+ * Utilisé pour les réponses 206 Partial Content (reprise et seek des ROMs)
+ */
+public final class HttpRange {
+    // Au-delà, l'en-tête Range est ignoré et le fichier complet est servi (protection contre les abus)
+    private static final int MAX_RANGES = 16;
+
+    public final long start;
+    public final long end; // inclusif
+
+    public HttpRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    /**
+     * Valeur de l'en-tête Content-Range pour cette plage
+     */
+    public String toContentRange(long totalLength) {
+        return "bytes " + start + "-" + end + "/" + totalLength;
+    }
+
+    /**
+     * Parse un en-tête Range.
+     *
+     * @return null si l'en-tête est absent ou invalide (servir 200 complet),
+     *         une liste vide si aucune plage n'est satisfaisable (répondre 416),
+     *         sinon les plages triées et fusionnées
+     */
+    public static List<HttpRange> parse(String rangeHeader, long totalLength) {
+        if (rangeHeader == null) {
+            return null;
+        }
+
+        String header = rangeHeader.trim();
+        if (!header.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null; // Unité inconnue: ignorer
+        }
+
+        String[] specs = header.substring(6).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<HttpRange> ranges = new ArrayList<>();
+        for (String rawSpec : specs) {
+            String spec = rawSpec.trim();
+            if (spec.isEmpty()) {
+                continue;
+            }
+
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                long start;
+                long end;
+
+                if (first.isEmpty()) {
+                    // Suffixe: "-500" = les 500 derniers octets
+                    if (last.isEmpty()) {
+                        return null;
+                    }
+                    long suffix = Long.parseLong(last);
+                    if (suffix <= 0) {
+                        continue; // Non satisfaisable
+                    }
+                    start = Math.max(0, totalLength - suffix);
+                    end = totalLength - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    if (last.isEmpty()) {
+                        end = totalLength - 1;
+                    } else {
+                        end = Long.parseLong(last);
+                        if (end < start) {
+                            return null; // Syntaxe invalide
+                        }
+                        end = Math.min(end, totalLength - 1);
+                    }
+                }
+
+                if (start < 0) {
+                    return null;
+                }
+                if (start >= totalLength || end < start) {
+                    continue; // Non satisfaisable
+                }
+                ranges.add(new HttpRange(start, end));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        return coalesce(ranges);
+    }
+
+    /**
+     * Trie et fusionne les plages qui se chevauchent ou se touchent
+     */
+    private static List<HttpRange> coalesce(List<HttpRange> ranges) {
+        if (ranges.size() <= 1) {
+            return ranges;
+        }
+
+        Collections.sort(ranges, (a, b) -> Long.compare(a.start, b.start));
+        List<HttpRange> merged = new ArrayList<>();
+        HttpRange current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            HttpRange next = ranges.get(i);
+            if (next.start <= current.end + 1) {
+                current = new HttpRange(current.start, Math.max(current.end, next.end));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * Évalue If-Range: true si la plage demandée peut être servie (validateur identique)
+     */
+    public static boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            // Comparaison forte: les ETags faibles ne conviennent jamais
+            return !value.startsWith("W/") && value.equals(etag);
+        }
+
+        long date = parseHttpDate(value);
+        return date != -1 && (lastModified / 1000) == (date / 1000);
+    }
+
+    /**
+     * ETag fort d'un fichier basé sur sa taille et sa date de modification
+     */
+    public static String fileEtag(long length, long lastModified) {
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+    /**
+     * Formate une date au format HTTP (RFC 1123)
+     */
+    public static String formatHttpDate(long timeMillis) {
+        return httpDateFormat().format(new Date(timeMillis));
+    }
+
+    /**
+     * Parse une date HTTP, retourne -1 si invalide
+     */
+    public static long parseHttpDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return httpDateFormat().parse(value.trim()).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    private static SimpleDateFormat httpDateFormat() {
+        // SimpleDateFormat n'est pas thread-safe: une instance par appel
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+}
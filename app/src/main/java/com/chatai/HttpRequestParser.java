@@ -0,0 +1,503 @@
+package com.chatai;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parser HTTP/1.1 incrémental pour les serveurs NIO (une instance par connexion).
+ * Les octets sont fournis au fil des lectures; la requête n'est complète qu'une fois
+ * les headers et le corps (Content-Length ou chunked) entièrement reçus.
+ * Les octets suivants (requêtes pipelinées) restent dans le buffer d'entrée.
+ * Un corps peut être transmis au fil de l'eau à un BodySink (uploads) au lieu d'être gardé en mémoire.
+ */
+public final class HttpRequestParser {
+    public static final int MAX_LINE_LENGTH = 8192;
+    public static final int MAX_HEADER_COUNT = 100;
+    public static final int MAX_HEADER_BYTES = 64 * 1024;
+    public static final int DEFAULT_MAX_BODY_SIZE = 16 * 1024 * 1024;
+
+    private enum State {
+        REQUEST_LINE, HEADERS, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_DATA_END, TRAILERS, COMPLETE
+    }
+
+    /**
+     * Requête invalide ou hors limites: le code HTTP à renvoyer avant de fermer la connexion
+     */
+    public static final class HttpParseException extends IOException {
+        public final int statusCode;
+
+        public HttpParseException(int statusCode, String message) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+    }
+
+    /**
+     * Destination d'un corps reçu en streaming (les buffers ne sont valides que pendant l'appel)
+     */
+    public interface BodySink {
+        /**
+         * Consomme tous les octets restants de data
+         */
+        void write(ByteBuffer data) throws IOException;
+
+        /**
+         * Fin du corps: la requête est complète
+         */
+        void finish() throws IOException;
+
+        /**
+         * Corps incomplet (erreur ou connexion fermée): libère les ressources
+         */
+        void abort();
+    }
+
+    /**
+     * Choisit, une fois les headers reçus, si le corps part vers un BodySink
+     */
+    public interface BodySinkFactory {
+        /**
+         * @param contentLength longueur annoncée, -1 en chunked
+         * @return le sink de la requête, ou null pour garder le corps en mémoire
+         */
+        BodySink open(HttpRequestParser request, long contentLength) throws HttpParseException;
+    }
+
+    private final int maxBodySize;
+    private BodySinkFactory bodySinkFactory;
+
+    private State state = State.REQUEST_LINE;
+    private final byte[] line = new byte[MAX_LINE_LENGTH];
+    private int lineLength;
+    private boolean lineTooLong;
+    private int headerBytes;
+    private int headerCount;
+
+    private String method;
+    private String target;
+    private String version;
+    private final Map<String, String> headers = new HashMap<>();
+
+    private byte[] body;
+    private int bodyReceived;
+    private BodySink bodySink;
+    private boolean bodySinkOpen;
+    private long bodyRemaining;
+    private ByteArrayOutputStream chunkedBody;
+    private long chunkRemaining;
+    private boolean continueRequested;
+
+    public HttpRequestParser() {
+        this(DEFAULT_MAX_BODY_SIZE);
+    }
+
+    public HttpRequestParser(int maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    public void setBodySinkFactory(BodySinkFactory factory) {
+        this.bodySinkFactory = factory;
+    }
+
+    /**
+     * Consomme les octets disponibles jusqu'à la fin de la requête courante
+     * @return true si la requête est complète (les octets restants appartiennent à la suivante)
+     */
+    public boolean parse(ByteBuffer buffer) throws HttpParseException {
+        while (state != State.COMPLETE && buffer.hasRemaining()) {
+            switch (state) {
+                case BODY:
+                    readBody(buffer);
+                    break;
+                case CHUNK_DATA:
+                    readChunkData(buffer);
+                    break;
+                default:
+                    if (readLine(buffer)) {
+                        processLine();
+                    }
+                    break;
+            }
+        }
+        return state == State.COMPLETE;
+    }
+
+    public boolean isComplete() {
+        return state == State.COMPLETE;
+    }
+
+    /**
+     * Vrai une seule fois quand le client attend "100 Continue" avant d'envoyer son corps
+     */
+    public boolean takeContinueRequest() {
+        boolean requested = continueRequested;
+        continueRequested = false;
+        return requested;
+    }
+
+    /**
+     * Vrai si une requête a commencé sans être terminée
+     */
+    public boolean hasPartialRequest() {
+        return state != State.REQUEST_LINE || lineLength > 0;
+    }
+
+    /**
+     * Vrai si une requête a commencé et que ses headers ne sont pas encore complets
+     */
+    public boolean isReadingHeaders() {
+        return state == State.HEADERS || (state == State.REQUEST_LINE && lineLength > 0);
+    }
+
+    /**
+     * Prépare la connexion pour la requête suivante (un corps en streaming inachevé est abandonné)
+     */
+    public void reset() {
+        abortBodySink();
+        bodySink = null;
+        bodyRemaining = 0;
+        state = State.REQUEST_LINE;
+        lineLength = 0;
+        lineTooLong = false;
+        headerBytes = 0;
+        headerCount = 0;
+        method = null;
+        target = null;
+        version = null;
+        headers.clear();
+        body = null;
+        bodyReceived = 0;
+        chunkedBody = null;
+        chunkRemaining = 0;
+        continueRequested = false;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Valeur d'un header (nom insensible à la casse), null si absent
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.US));
+    }
+
+    /**
+     * Headers de la requête, noms en minuscules
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    public byte[] getBody() {
+        return body != null ? body : new byte[0];
+    }
+
+    /**
+     * Sink qui a reçu le corps de la requête, null si le corps est en mémoire
+     */
+    public BodySink getBodySink() {
+        return bodySink;
+    }
+
+    /**
+     * Keep-alive par défaut en HTTP/1.1, sauf "Connection: close"
+     */
+    public boolean isKeepAlive() {
+        String connection = headers.get("connection");
+        if ("HTTP/1.1".equals(version)) {
+            return connection == null || !connection.toLowerCase(Locale.US).contains("close");
+        }
+        return connection != null && connection.toLowerCase(Locale.US).contains("keep-alive");
+    }
+
+    /**
+     * Accumule une ligne terminée par LF (CR optionnel)
+     * @return true quand la ligne est complète
+     */
+    private boolean readLine(ByteBuffer buffer) throws HttpParseException {
+        while (buffer.hasRemaining()) {
+            byte c = buffer.get();
+            if (state == State.HEADERS || state == State.TRAILERS) {
+                if (++headerBytes > MAX_HEADER_BYTES) {
+                    throw new HttpParseException(431, "Headers trop volumineux");
+                }
+            }
+            if (c == '\n') {
+                if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                    lineLength--;
+                }
+                if (lineTooLong) {
+                    throw new HttpParseException(state == State.REQUEST_LINE ? 414 : 431, "Ligne trop longue");
+                }
+                return true;
+            }
+            if (lineLength < line.length) {
+                line[lineLength++] = c;
+            } else {
+                lineTooLong = true;
+            }
+        }
+        return false;
+    }
+
+    private void processLine() throws HttpParseException {
+        String text = new String(line, 0, lineLength, StandardCharsets.ISO_8859_1);
+        lineLength = 0;
+
+        switch (state) {
+            case REQUEST_LINE:
+                if (text.isEmpty()) {
+                    return; // Lignes vides tolérées avant la requête (RFC 7230 §3.5)
+                }
+                String[] parts = text.split(" ");
+                if (parts.length != 3 || parts[0].isEmpty() || parts[1].isEmpty()) {
+                    throw new HttpParseException(400, "Ligne de requête invalide");
+                }
+                if (!parts[2].startsWith("HTTP/1.")) {
+                    throw new HttpParseException(505, "Version HTTP non supportée");
+                }
+                method = parts[0];
+                // La cible est décodée en UTF-8 (les octets ont été lus en ISO-8859-1)
+                target = new String(parts[1].getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+                version = parts[2];
+                state = State.HEADERS;
+                break;
+
+            case HEADERS:
+                if (text.isEmpty()) {
+                    headersComplete();
+                    return;
+                }
+                addHeader(text);
+                break;
+
+            case CHUNK_SIZE:
+                int extension = text.indexOf(';');
+                String size = (extension >= 0 ? text.substring(0, extension) : text).trim();
+                try {
+                    chunkRemaining = Long.parseLong(size, 16);
+                } catch (NumberFormatException e) {
+                    throw new HttpParseException(400, "Taille de chunk invalide");
+                }
+                if (chunkRemaining < 0) {
+                    throw new HttpParseException(400, "Taille de chunk invalide");
+                }
+                if (bodySink == null && chunkedBody.size() + chunkRemaining > maxBodySize) {
+                    throw new HttpParseException(413, "Corps de requête trop volumineux");
+                }
+                state = chunkRemaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+                break;
+
+            case CHUNK_DATA_END:
+                if (!text.isEmpty()) {
+                    throw new HttpParseException(400, "Fin de chunk invalide");
+                }
+                state = State.CHUNK_SIZE;
+                break;
+
+            case TRAILERS:
+                if (text.isEmpty()) {
+                    if (bodySink != null) {
+                        finishBodySink();
+                    } else {
+                        body = chunkedBody.toByteArray();
+                        chunkedBody = null;
+                    }
+                    state = State.COMPLETE;
+                }
+                // Les trailers sont ignorés
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private void addHeader(String text) throws HttpParseException {
+        if (text.charAt(0) == ' ' || text.charAt(0) == '\t') {
+            throw new HttpParseException(400, "Headers repliés non supportés");
+        }
+        int colon = text.indexOf(':');
+        if (colon <= 0) {
+            throw new HttpParseException(400, "Header invalide");
+        }
+        if (++headerCount > MAX_HEADER_COUNT) {
+            throw new HttpParseException(431, "Trop de headers");
+        }
+        String name = text.substring(0, colon).trim().toLowerCase(Locale.US);
+        String value = text.substring(colon + 1).trim();
+        String previous = headers.get(name);
+        if (previous != null) {
+            if (name.equals("content-length") && !previous.equals(value)) {
+                throw new HttpParseException(400, "Content-Length multiples");
+            }
+            value = name.equals("content-length") ? previous : previous + ", " + value;
+        }
+        headers.put(name, value);
+    }
+
+    /**
+     * Détermine le framing du corps (RFC 7230 §3.3.3)
+     */
+    private void headersComplete() throws HttpParseException {
+        String transferEncoding = headers.get("transfer-encoding");
+        String contentLength = headers.get("content-length");
+
+        if (transferEncoding != null) {
+            if (contentLength != null) {
+                // Ambigu (request smuggling): refusé
+                throw new HttpParseException(400, "Content-Length et Transfer-Encoding ensemble");
+            }
+            if (!transferEncoding.trim().equalsIgnoreCase("chunked")) {
+                throw new HttpParseException(501, "Transfer-Encoding non supporté: " + transferEncoding);
+            }
+            openBodySink(-1);
+            if (bodySink == null) {
+                chunkedBody = new ByteArrayOutputStream(8192);
+            }
+            requestContinueIfExpected();
+            state = State.CHUNK_SIZE;
+            return;
+        }
+
+        long length = 0;
+        if (contentLength != null) {
+            try {
+                length = Long.parseLong(contentLength);
+            } catch (NumberFormatException e) {
+                throw new HttpParseException(400, "Content-Length invalide");
+            }
+            if (length < 0) {
+                throw new HttpParseException(400, "Content-Length invalide");
+            }
+        }
+
+        openBodySink(length);
+        if (bodySink != null) {
+            // La taille max est celle du sink
+            if (length == 0) {
+                finishBodySink();
+                state = State.COMPLETE;
+                return;
+            }
+            bodyRemaining = length;
+            requestContinueIfExpected();
+            state = State.BODY;
+            return;
+        }
+        if (length > maxBodySize) {
+            throw new HttpParseException(413, "Corps de requête trop volumineux");
+        }
+        if (length == 0) {
+            state = State.COMPLETE;
+            return;
+        }
+        body = new byte[(int) length];
+        bodyReceived = 0;
+        requestContinueIfExpected();
+        state = State.BODY;
+    }
+
+    private void requestContinueIfExpected() {
+        String expect = headers.get("expect");
+        continueRequested = expect != null && expect.equalsIgnoreCase("100-continue") && "HTTP/1.1".equals(version);
+    }
+
+    private void readBody(ByteBuffer buffer) throws HttpParseException {
+        if (bodySink != null) {
+            int count = (int) Math.min(buffer.remaining(), bodyRemaining);
+            writeToBodySink(buffer, count);
+            bodyRemaining -= count;
+            if (bodyRemaining == 0) {
+                finishBodySink();
+                state = State.COMPLETE;
+            }
+            return;
+        }
+        int count = Math.min(buffer.remaining(), body.length - bodyReceived);
+        buffer.get(body, bodyReceived, count);
+        bodyReceived += count;
+        if (bodyReceived == body.length) {
+            state = State.COMPLETE;
+        }
+    }
+
+    private void readChunkData(ByteBuffer buffer) throws HttpParseException {
+        int count = (int) Math.min(buffer.remaining(), chunkRemaining);
+        if (bodySink != null) {
+            writeToBodySink(buffer, count);
+        } else if (buffer.hasArray()) {
+            chunkedBody.write(buffer.array(), buffer.arrayOffset() + buffer.position(), count);
+            buffer.position(buffer.position() + count);
+        } else {
+            byte[] data = new byte[count];
+            buffer.get(data);
+            chunkedBody.write(data, 0, count);
+        }
+        chunkRemaining -= count;
+        if (chunkRemaining == 0) {
+            state = State.CHUNK_DATA_END;
+        }
+    }
+
+    private void openBodySink(long contentLength) throws HttpParseException {
+        if (bodySinkFactory != null) {
+            bodySink = bodySinkFactory.open(this, contentLength);
+            bodySinkOpen = bodySink != null;
+        }
+    }
+
+    /**
+     * Passe count octets du buffer au sink; une erreur d'écriture abandonne le corps
+     */
+    private void writeToBodySink(ByteBuffer buffer, int count) throws HttpParseException {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(slice.position() + count);
+        buffer.position(buffer.position() + count);
+        try {
+            bodySink.write(slice);
+        } catch (HttpParseException e) {
+            abortBodySink();
+            throw e;
+        } catch (IOException e) {
+            abortBodySink();
+            throw new HttpParseException(500, "Écriture du corps impossible: " + e.getMessage());
+        }
+    }
+
+    private void finishBodySink() throws HttpParseException {
+        try {
+            bodySinkOpen = false;
+            bodySink.finish();
+        } catch (HttpParseException e) {
+            bodySink.abort();
+            throw e;
+        } catch (IOException e) {
+            bodySink.abort();
+            throw new HttpParseException(500, "Écriture du corps impossible: " + e.getMessage());
+        }
+    }
+
+    private void abortBodySink() {
+        if (bodySinkOpen) {
+            bodySinkOpen = false;
+            bodySink.abort();
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.chatai;
+
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Réponse HTTP des serveurs NIO: statut, headers et source du corps
+ * (octets, ByteBuffer, portion de FileChannel ou writer de streaming).
+ * Le Content-Length est toujours calculé en octets; le corps part tel quel vers la file d'envoi,
+ * sans String ni base64 intermédiaire.
+ */
+public final class HttpResponse {
+    private static final String TAG = "HttpResponse";
+
+    // Taille initiale du buffer d'un morceau de streaming
+    private static final int STREAM_BUFFER_SIZE = 16384;
+
+    /**
+     * Corps généré à l'envoi, de longueur inconnue à l'avance (chunked ou fermeture de connexion).
+     * La file d'envoi le tire morceau par morceau sur OP_WRITE, une fois le morceau précédent parti:
+     * chaque appel écrit une part bornée sur le sélecteur et ne doit pas faire d'I/O bloquante.
+     * La même sortie est passée à chaque appel.
+     */
+    public interface BodyWriter {
+        /**
+         * Écrit le morceau suivant
+         * @return false quand le corps est terminé
+         */
+        boolean writeChunk(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Writer de streaming pour une liste: début, éléments par lots de ITEMS_PER_CHUNK, fin.
+     * Le texte est encodé en UTF-8; le même Writer sert d'un morceau à l'autre.
+     */
+    public abstract static class ListWriter<T> implements BodyWriter {
+        private static final int ITEMS_PER_CHUNK = 64;
+
+        private final Iterator<? extends T> items;
+        private Writer writer;
+
+        protected ListWriter(Iterable<? extends T> items) {
+            this.items = items.iterator();
+        }
+
+        protected abstract void begin(Writer out) throws IOException;
+
+        protected abstract void item(Writer out, T item) throws IOException;
+
+        protected abstract void end(Writer out) throws IOException;
+
+        @Override
+        public final boolean writeChunk(OutputStream out) throws IOException {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 8192);
+                begin(writer);
+            }
+            for (int i = 0; i < ITEMS_PER_CHUNK && items.hasNext(); i++) {
+                item(writer, items.next());
+            }
+            boolean more = items.hasNext();
+            if (!more) {
+                end(writer);
+            }
+            writer.flush();
+            return more;
+        }
+
+        /**
+         * Écrit la liste entière d'un coup (hors réponse HTTP)
+         */
+        public final void writeAll(OutputStream out) throws IOException {
+            while (writeChunk(out)) {
+                // Morceau suivant
+            }
+        }
+    }
+
+    private final int status;
+    // Noms et valeurs alternés, dans l'ordre d'ajout
+    private final List<String> headers = new ArrayList<>();
+
+    private ByteBuffer body;
+    private FileChannel file;
+    private long fileOffset;
+    private long fileLength;
+    private BodyWriter writer;
+    private boolean omitBody;
+
+    public HttpResponse(int status) {
+        this.status = status;
+    }
+
+    /**
+     * Réponse 200 avec un corps texte encodé en UTF-8
+     */
+    public static HttpResponse ok(String contentType, CharSequence text) {
+        return new HttpResponse(200).header("Content-Type", contentType).text(text);
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Définit un header (remplace une valeur existante du même nom, casse ignorée)
+     */
+    public HttpResponse header(String name, String value) {
+        for (int i = 0; i < headers.size(); i += 2) {
+            if (headers.get(i).equalsIgnoreCase(name)) {
+                headers.set(i + 1, value);
+                return this;
+            }
+        }
+        headers.add(name);
+        headers.add(value);
+        return this;
+    }
+
+    /**
+     * Valeur d'un header défini, null si absent
+     */
+    public String getHeader(String name) {
+        for (int i = 0; i < headers.size(); i += 2) {
+            if (headers.get(i).equalsIgnoreCase(name)) {
+                return headers.get(i + 1);
+            }
+        }
+        return null;
+    }
+
+    public HttpResponse body(byte[] content) {
+        return body(ByteBuffer.wrap(content));
+    }
+
+    public HttpResponse body(ByteBuffer content) {
+        clearBody();
+        this.body = content;
+        return this;
+    }
+
+    /**
+     * Corps texte encodé en UTF-8 directement depuis la séquence (pas de copie en String)
+     */
+    public HttpResponse text(CharSequence text) {
+        return body(StandardCharsets.UTF_8.encode(CharBuffer.wrap(text)));
+    }
+
+    /**
+     * Corps lu depuis une portion de fichier, envoyée en zero-copy; le canal est fermé après l'envoi
+     */
+    public HttpResponse file(FileChannel channel, long offset, long length) {
+        clearBody();
+        this.file = channel;
+        this.fileOffset = offset;
+        this.fileLength = length;
+        return this;
+    }
+
+    /**
+     * Corps produit par un writer au fil de l'envoi, morceau par morceau
+     */
+    public HttpResponse stream(BodyWriter bodyWriter) {
+        clearBody();
+        this.writer = bodyWriter;
+        return this;
+    }
+
+    /**
+     * Réponse à une requête HEAD: headers (Content-Length compris) envoyés sans le corps
+     */
+    public HttpResponse omitBody() {
+        this.omitBody = true;
+        return this;
+    }
+
+    /**
+     * Longueur du corps en octets, -1 pour un writer de streaming
+     */
+    public long getContentLength() {
+        if (writer != null) {
+            return -1;
+        }
+        if (file != null) {
+            return fileLength;
+        }
+        return body != null ? body.remaining() : 0;
+    }
+
+    /**
+     * Met la réponse (headers puis corps) dans la file d'envoi
+     * @param keepAlive la connexion doit rester ouverte après la réponse
+     * @param chunkedAllowed le client accepte Transfer-Encoding: chunked (HTTP/1.1)
+     * @return true si la connexion peut rester ouverte (faux si le corps est délimité par la fermeture)
+     */
+    public boolean writeTo(OutboundQueue queue, boolean keepAlive, boolean chunkedAllowed) throws IOException {
+        boolean chunked = writer != null && keepAlive && chunkedAllowed;
+        boolean persistent = keepAlive && (writer == null || chunked);
+        // Pas de corps pour 1xx, 204 et 304 (RFC 7230 §3.3)
+        boolean bodyAllowed = status >= 200 && status != 204 && status != 304;
+        // 101: la connexion change de protocole, le header Connection est celui fourni (Upgrade)
+        boolean switching = status == 101;
+
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(status).append(' ').append(getReasonPhrase(status)).append("\r\n");
+        for (int i = 0; i < headers.size(); i += 2) {
+            String name = headers.get(i);
+            if (name.equalsIgnoreCase("Content-Length") || name.equalsIgnoreCase("Transfer-Encoding")
+                    || (name.equalsIgnoreCase("Connection") && !switching)) {
+                continue; // Le framing est décidé ici
+            }
+            head.append(name).append(": ").append(headers.get(i + 1)).append("\r\n");
+        }
+        if (chunked) {
+            head.append("Transfer-Encoding: chunked\r\n");
+        } else if (writer == null && bodyAllowed) {
+            head.append("Content-Length: ").append(getContentLength()).append("\r\n");
+        }
+        if (!switching) {
+            head.append(persistent ? "Connection: keep-alive\r\n" : "Connection: close\r\n");
+        }
+        head.append("\r\n");
+        ByteBuffer headBuffer = StandardCharsets.ISO_8859_1.encode(CharBuffer.wrap(head));
+
+        if (!bodyAllowed || omitBody) {
+            close();
+            queue.add(headBuffer);
+        } else if (file != null) {
+            queue.addFile(new FileTransfer.Pending(headBuffer, file, fileOffset, fileLength));
+            file = null; // La file d'envoi ferme le canal
+        } else if (writer != null) {
+            queue.add(headBuffer);
+            queue.addProducer(new StreamProducer(writer, chunked));
+            writer = null;
+        } else if (body != null) {
+            queue.add(headBuffer, body.duplicate());
+        } else {
+            queue.add(headBuffer);
+        }
+        return persistent;
+    }
+
+    /**
+     * Libère le fichier d'une réponse qui ne sera pas envoyée
+     */
+    public void close() {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Erreur fermeture fichier", e);
+            }
+            file = null;
+        }
+    }
+
+    /**
+     * Texte standard d'un code de statut
+     */
+    public static String getReasonPhrase(int code) {
+        switch (code) {
+            case 100: return "Continue";
+            case 101: return "Switching Protocols";
+            case 200: return "OK";
+            case 201: return "Created";
+            case 204: return "No Content";
+            case 206: return "Partial Content";
+            case 301: return "Moved Permanently";
+            case 302: return "Found";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 408: return "Request Timeout";
+            case 409: return "Conflict";
+            case 413: return "Payload Too Large";
+            case 414: return "URI Too Long";
+            case 416: return "Range Not Satisfiable";
+            case 422: return "Unprocessable Entity";
+            case 426: return "Upgrade Required";
+            case 429: return "Too Many Requests";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 503: return "Service Unavailable";
+            case 504: return "Gateway Timeout";
+            case 505: return "HTTP Version Not Supported";
+            case 507: return "Insufficient Storage";
+            default: return "Unknown";
+        }
+    }
+
+    private void clearBody() {
+        close();
+        body = null;
+        writer = null;
+    }
+
+    /**
+     * Corps de streaming tiré par la file d'envoi: chaque appel au writer donne un morceau
+     * (encadré en chunk si besoin), produit seulement quand le précédent est parti
+     */
+    private static final class StreamProducer implements OutboundQueue.Producer {
+        private final BodyWriter writer;
+        private final ChunkSink sink = new ChunkSink();
+        private final OutputStream out;
+        private boolean finished;
+
+        StreamProducer(BodyWriter writer, boolean chunked) {
+            this.writer = writer;
+            this.out = chunked ? new ChunkedOutputStream(sink) : sink;
+        }
+
+        @Override
+        public ByteBuffer next() throws IOException {
+            while (!finished && sink.size() == 0) {
+                boolean more;
+                try {
+                    more = writer.writeChunk(out);
+                } catch (RuntimeException e) {
+                    throw new IOException("Erreur du writer de streaming", e);
+                }
+                if (more) {
+                    out.flush();
+                } else {
+                    out.close(); // Chunk final si chunked
+                    finished = true;
+                }
+            }
+            return sink.size() > 0 ? sink.take() : null;
+        }
+
+        @Override
+        public void close() {
+            finished = true;
+            sink.reset();
+        }
+    }
+
+    /**
+     * Buffer d'un morceau, vidé à chaque passage vers la file d'envoi
+     */
+    private static final class ChunkSink extends ByteArrayOutputStream {
+        ChunkSink() {
+            super(STREAM_BUFFER_SIZE);
+        }
+
+        ByteBuffer take() {
+            ByteBuffer chunk = ByteBuffer.wrap(toByteArray());
+            reset();
+            return chunk;
+        }
+    }
+}
@@ -1,20 +1,34 @@
 package com.chatai;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.util.Log;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -24,7 +38,25 @@ import java.util.Map;
 public class HttpServer {
     private static final String TAG = "HttpServer";
     private static final int HTTP_PORT = 8080;
-    private static final int BUFFER_SIZE = 4096;
+    private static final int BUFFER_SIZE = 16384;
+    private static final int MAX_POOLED_BUFFERS = 64;
+    
+    // Routes bloquantes (appels réseau sortants) exécutées sur les workers, avec leur délai max
+    private static final long WEATHER_TIMEOUT_MS = 15000;
+    private static final long SEARCH_TIMEOUT_MS = 20000;
+    private static final long AI_QUERY_TIMEOUT_MS = 30000;
+    // Listings de répertoires (un stat par entrée): sur un worker, sans compter dans les appels sortants
+    private static final long LISTING_TIMEOUT_MS = 10000;
+    // Workers (le sélecteur a son propre thread); un worker reste libre pour les uploads et listings
+    // quand tous les appels sortants sont en cours
+    private static final int WORKER_THREADS = 4;
+    private static final int MAX_UPSTREAM_CALLS = 3;
+    private static final int RETRY_AFTER_SECONDS = 5;
+    // Admission et expiration des connexions (keep-alive)
+    private static final int MAX_CONNECTIONS = 256;
+    private static final int MAX_CONNECTIONS_PER_IP = 32;
+    private static final long HEADER_TIMEOUT_MS = 10000;
+    private static final long IDLE_TIMEOUT_MS = 30000;
     
     private Context context;
     private ServerSocketChannel serverChannel;
@@ -34,12 +66,27 @@ public class HttpServer {
     private SecureConfig secureConfig;
     private ChatDatabase chatDatabase;
     private FileServer fileServer;
+    private WebSocketServer webSocketServer;
+    private WebServer webServer;
+    private final AssetCache assetCache;
+    private final BufferPool bufferPool = new BufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    
+    // Étage asynchrone: réponses des workers rendues au thread du sélecteur
+    private final ScheduledExecutorService timeoutScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Semaphore upstreamPermits = new Semaphore(MAX_UPSTREAM_CALLS);
+    private final ConcurrentLinkedQueue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private final AtomicLong asyncDispatched = new AtomicLong();
+    private final AtomicLong asyncTimeouts = new AtomicLong();
+    private final AtomicLong asyncRejected = new AtomicLong();
+    private final ConnectionManager connectionManager = new ConnectionManager("HTTP",
+            MAX_CONNECTIONS, MAX_CONNECTIONS_PER_IP, HEADER_TIMEOUT_MS, IDLE_TIMEOUT_MS);
     
     public HttpServer(Context context) {
         this.context = context;
+        this.assetCache = AssetCache.getInstance(context);
         this.secureConfig = new SecureConfig(context);
-        this.chatDatabase = new ChatDatabase(context);
-        this.executor = Executors.newFixedThreadPool(4);
+        this.chatDatabase = ChatDatabase.getInstance(context);
+        this.executor = createWorkerPool();
     }
     
     /**
@@ -49,6 +96,20 @@ public class HttpServer {
         this.fileServer = fileServer;
     }
     
+    /**
+     * Définit la référence au WebSocketServer (compteurs exposés par /api/status)
+     */
+    public void setWebSocketServer(WebSocketServer webSocketServer) {
+        this.webSocketServer = webSocketServer;
+    }
+    
+    /**
+     * Définit la référence au WebServer (index des gamelists exposé par /api/status)
+     */
+    public void setWebServer(WebServer webServer) {
+        this.webServer = webServer;
+    }
+    
     /**
      * Démarre le serveur HTTP
      */
@@ -64,15 +125,33 @@ public class HttpServer {
             }
         }
         
-        executor.execute(() -> {
+        if (executor.isShutdown()) {
+            executor = createWorkerPool(); // Redémarrage après stop()
+        }
+        // Boucle du sélecteur sur son propre thread: les workers restent tous disponibles
+        Thread selectorThread = new Thread(() -> {
             try {
                 startServer();
             } catch (Exception e) {
                 Log.e(TAG, "Erreur démarrage serveur HTTP", e);
             }
+        }, "HttpServer-selector");
+        selectorThread.start();
+    }
+    
+    /**
+     * Pool des workers: routes bloquantes, listings et écriture des uploads
+     */
+    private static ExecutorService createWorkerPool() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(WORKER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "HttpServer-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         });
     }
     
+    
     private void startServer() throws IOException {
         // Lire le port depuis la configuration utilisateur
         int configuredPort = secureConfig.getIntSetting("http_port", HTTP_PORT);
@@ -107,7 +186,8 @@ public class HttpServer {
         // Boucle principale du serveur
         while (isRunning) {
             try {
-                selector.select();
+                selector.select(connectionManager.getSelectTimeout());
+                runSelectorTasks();
                 Set<SelectionKey> selectedKeys = selector.selectedKeys();
                 Iterator<SelectionKey> iterator = selectedKeys.iterator();
 
@@ -115,12 +195,21 @@ public class HttpServer {
                     SelectionKey key = iterator.next();
                     iterator.remove();
 
+                    if (!key.isValid()) {
+                        continue;
+                    }
                     if (key.isAcceptable()) {
                         handleAccept(key);
-                    } else if (key.isReadable()) {
+                        continue;
+                    }
+                    if (key.isWritable()) {
+                        handleWrite(key);
+                    }
+                    if (key.isValid() && key.isReadable()) {
                         handleRead(key);
                     }
                 }
+                connectionManager.expire(this::handleTimeout);
             } catch (IOException e) {
                 Log.e(TAG, "Erreur dans la boucle du sélecteur HTTP", e);
                 stop();
@@ -131,64 +220,408 @@ public class HttpServer {
     private void handleAccept(SelectionKey key) throws IOException {
         ServerSocketChannel server = (ServerSocketChannel) key.channel();
         SocketChannel clientChannel = server.accept();
+        if (clientChannel == null) {
+            return;
+        }
+        if (!connectionManager.admit(clientChannel)) {
+            return; // 503 envoyé, socket fermée
+        }
         clientChannel.configureBlocking(false);
-        clientChannel.register(selector, SelectionKey.OP_READ);
+        // Un état par connexion: requête assemblée au fil des lectures, réponses en file d'envoi
+        HttpConnection connection = new HttpConnection();
+        SelectionKey clientKey = clientChannel.register(selector, SelectionKey.OP_READ, connection);
+        connection.parser.setBodySinkFactory((request, contentLength) -> openUploadSink(clientKey, request, contentLength));
+        connectionManager.register(clientKey);
         Log.d(TAG, "Nouvelle connexion HTTP: " + clientChannel.getRemoteAddress());
     }
     
     private void handleRead(SelectionKey key) throws IOException {
         SocketChannel clientChannel = (SocketChannel) key.channel();
-        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        HttpConnection connection = (HttpConnection) key.attachment();
+        HttpRequestParser parser = connection.parser;
+        ByteBuffer buffer = bufferPool.acquire();
         
         try {
             int bytesRead = clientChannel.read(buffer);
             if (bytesRead == -1) {
-                clientChannel.close();
-                key.cancel();
+                closeConnection(key);
                 return;
             }
-            
             buffer.flip();
-            byte[] data = new byte[bytesRead];
-            buffer.get(data);
-            String request = new String(data, "UTF-8");
+            connectionManager.touch(key);
             
-            Log.d(TAG, "Requête HTTP reçue: " + request.substring(0, Math.min(100, request.length())));
-            
-            String response = processHttpRequest(request);
-            sendHttpResponse(clientChannel, response);
+            processInput(key, connection, buffer);
+            updatePhase(key, connection);
+            flushConnection(key, connection);
             
         } catch (IOException e) {
             Log.w(TAG, "Client HTTP déconnecté: " + clientChannel.getRemoteAddress());
-            clientChannel.close();
-            key.cancel();
+            closeConnection(key);
+        } finally {
+            bufferPool.release(buffer);
         }
     }
     
-    private String processHttpRequest(String request) {
+    /**
+     * Traite les requêtes complètes du buffer; une requête partielle attend les lectures suivantes.
+     * Une route bloquante part sur un worker: les octets suivants sont mis de côté jusqu'à sa réponse
+     * pour garder l'ordre des réponses. Après une réponse non persistante, le reste est ignoré.
+     */
+    private void processInput(SelectionKey key, HttpConnection connection, ByteBuffer buffer) throws IOException {
+        HttpRequestParser parser = connection.parser;
         try {
-            // Parser la requête HTTP basique
-            String[] lines = request.split("\n");
-            if (lines.length == 0) {
-                return createHttpErrorResponse(400, "Bad Request");
+            while (!connection.isCloseAfterWrite() && parser.parse(buffer)) {
+                Log.d(TAG, "Requête HTTP reçue: " + parser.getMethod() + " " + parser.getTarget() +
+                        " (" + parser.getBody().length + " octets de corps)");
+                boolean keepAlive = parser.isKeepAlive();
+                boolean chunkedAllowed = "HTTP/1.1".equals(parser.getVersion());
+                long timeoutMs = getAsyncTimeoutMs(parser.getMethod(), parser.getTarget());
+                boolean upstream = timeoutMs > 0;
+                if (!upstream && isListingRoute(parser.getMethod(), parser.getTarget())) {
+                    timeoutMs = LISTING_TIMEOUT_MS;
+                }
+                if (timeoutMs > 0 && dispatchAsync(key, connection, parser, timeoutMs, upstream, keepAlive, chunkedAllowed)) {
+                    parser.reset();
+                    if (buffer.hasRemaining()) {
+                        connection.stashInput(buffer);
+                    }
+                    return;
+                }
+                if (parser.getBodySink() instanceof AsyncBodySink) {
+                    awaitUpload(key, connection, (AsyncBodySink) parser.getBodySink(), keepAlive, chunkedAllowed);
+                    parser.reset();
+                    if (buffer.hasRemaining()) {
+                        connection.stashInput(buffer);
+                    }
+                    return;
+                }
+                if (timeoutMs == 0) {
+                    sendHttpResponse(connection, processHttpRequest(parser.getMethod(), parser.getTarget(),
+                            parser.getHeaders(), parser.getBody()), keepAlive, chunkedAllowed);
+                }
+                parser.reset();
             }
             
-            String requestLine = lines[0];
-            String[] parts = requestLine.split(" ");
-            if (parts.length < 2) {
-                return createHttpErrorResponse(400, "Bad Request");
+            if (parser.takeContinueRequest()) {
+                connection.outbound.add(ByteBuffer.wrap("HTTP/1.1 100 Continue\r\n\r\n".getBytes("ISO-8859-1")));
             }
-            
-            String method = parts[0];
-            String path = parts[1];
-            
+        } catch (HttpRequestParser.HttpParseException e) {
+            Log.w(TAG, "Requête HTTP invalide (" + e.statusCode + "): " + e.getMessage());
+            sendHttpResponse(connection, createHttpErrorResponse(e.statusCode, e.getMessage()), false, false);
+        }
+    }
+    
+    /**
+     * Uploads en streaming (PUT /api/files/upload/{nom}, POST multipart) écrits dans le stockage du FileServer
+     * par un worker: un disque lent ne bloque pas le sélecteur
+     */
+    private HttpRequestParser.BodySink openUploadSink(SelectionKey key, HttpRequestParser request, long contentLength)
+            throws HttpRequestParser.HttpParseException {
+        HttpRequestParser.BodySink sink = fileServer != null ? fileServer.openUploadSink(request, contentLength) : null;
+        return sink != null ? new AsyncBodySink(sink, executor, bufferPool, new UploadReadControl(key)) : null;
+    }
+    
+    /**
+     * Corps d'upload reçu: la réponse part quand le worker a fini de l'écrire.
+     * Les requêtes pipelinées attendent comme pour dispatchAsync.
+     */
+    private void awaitUpload(SelectionKey key, HttpConnection connection, AsyncBodySink upload,
+                             boolean keepAlive, boolean chunkedAllowed) {
+        connection.setInputPaused(false);
+        connection.setAwaitingResponse(true);
+        upload.whenComplete(error -> completeAsync(key, error != null
+                ? createHttpErrorResponse(error.statusCode, error.getMessage())
+                : fileServer.handleStreamingUpload((StreamingUpload) upload.getDelegate()), keepAlive, chunkedAllowed));
+    }
+    
+    /**
+     * Suspend la lecture d'une connexion tant que son corps d'upload attend le disque
+     */
+    private final class UploadReadControl implements AsyncBodySink.Listener {
+        private final SelectionKey key;
+        
+        UploadReadControl(SelectionKey key) {
+            this.key = key;
+        }
+        
+        @Override
+        public void suspendReading() {
+            ((HttpConnection) key.attachment()).setInputPaused(true);
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            connectionManager.setPhase(key, ConnectionManager.Phase.BUSY);
+        }
+        
+        @Override
+        public void resumeReading() {
+            runOnSelector(() -> {
+                HttpConnection connection = (HttpConnection) key.attachment();
+                if (!key.isValid() || !connection.isInputPaused()) {
+                    return; // Connexion fermée ou corps déjà terminé
+                }
+                connection.setInputPaused(false);
+                connectionManager.touch(key);
+                updatePhase(key, connection);
+                try {
+                    flushConnection(key, connection);
+                } catch (IOException e) {
+                    Log.w(TAG, "Reprise de lecture impossible: " + e.getMessage());
+                    try {
+                        closeConnection(key);
+                    } catch (IOException ignored) {
+                    }
+                }
+            });
+        }
+    }
+    
+    /**
+     * Phase d'expiration de la connexion selon son état: headers en cours de réception (délai fixe),
+     * réponse ou écriture d'upload attendue d'un worker (pas d'expiration) ou inactivité
+     */
+    private void updatePhase(SelectionKey key, HttpConnection connection) {
+        if (connection.isAwaitingResponse() || connection.isInputPaused()) {
+            connectionManager.setPhase(key, ConnectionManager.Phase.BUSY);
+        } else if (connection.parser.isReadingHeaders()) {
+            connectionManager.setPhase(key, ConnectionManager.Phase.HEADER);
+        } else {
+            connectionManager.setPhase(key, ConnectionManager.Phase.ACTIVE);
+        }
+    }
+    
+    /**
+     * Connexion expirée: 408 si une requête était en cours de réception, sinon fermeture simple
+     */
+    private void handleTimeout(SelectionKey key, ConnectionManager.Phase phase) {
+        HttpConnection connection = (HttpConnection) key.attachment();
+        try {
+            if (phase == ConnectionManager.Phase.HEADER && connection.parser.hasPartialRequest()
+                    && connection.outbound.isEmpty()) {
+                sendHttpResponse(connection, createHttpErrorResponse(408, "Request Timeout"), false, false);
+                connection.outbound.writeTo((SocketChannel) key.channel());
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "Envoi 408 impossible: " + e.getMessage());
+        }
+        try {
+            closeConnection(key);
+        } catch (IOException e) {
+            Log.w(TAG, "Erreur fermeture connexion expirée", e);
+        }
+    }
+    
+    /**
+     * Délai max des routes qui font des appels réseau sortants (0 = traitée sur le sélecteur)
+     */
+    private static long getAsyncTimeoutMs(String method, String target) {
+        String path = target.contains("?") ? target.substring(0, target.indexOf('?')) : target;
+        if (method.equals("GET") && path.startsWith("/api/weather/")) {
+            return WEATHER_TIMEOUT_MS;
+        }
+        if (method.equals("GET") && path.equals("/api/search")) {
+            return SEARCH_TIMEOUT_MS;
+        }
+        if (method.equals("POST") && path.equals("/api/ai/query")) {
+            return AI_QUERY_TIMEOUT_MS;
+        }
+        return 0;
+    }
+    
+    /**
+     * Routes qui peuvent lister un répertoire (/files, /browse, dossier de site sans index.html)
+     */
+    private static boolean isListingRoute(String method, String target) {
+        String path = target.contains("?") ? target.substring(0, target.indexOf('?')) : target;
+        if (method.equals("GET")) {
+            return path.equals("/files") || path.startsWith("/files/") || path.equals("/browse") || path.equals("/browse/");
+        }
+        return method.equals("POST") && (path.startsWith("/sites/") || path.startsWith("/user-sites/"));
+    }
+    
+    /**
+     * Exécute la requête sur un worker; la réponse (ou un 504 à l'expiration du délai)
+     * est rendue au sélecteur. Au-delà de MAX_UPSTREAM_CALLS appels sortants, un 503 est mis en file à la place.
+     * @param upstream la route fait un appel réseau sortant (compté dans MAX_UPSTREAM_CALLS)
+     * @return true si la requête est partie sur un worker
+     */
+    private boolean dispatchAsync(SelectionKey key, HttpConnection connection, HttpRequestParser parser, long timeoutMs,
+                                  boolean upstream, boolean keepAlive, boolean chunkedAllowed) throws IOException {
+        final String method = parser.getMethod();
+        final String target = parser.getTarget();
+        final Map<String, String> requestHeaders = new HashMap<>(parser.getHeaders());
+        final byte[] body = parser.getBody();
+        
+        if (upstream && !upstreamPermits.tryAcquire()) {
+            asyncRejected.incrementAndGet();
+            Log.w(TAG, "Trop d'appels externes en cours, requête refusée: " + target);
+            sendHttpResponse(connection, createRetryLaterResponse(), keepAlive, chunkedAllowed);
+            return false;
+        }
+        
+        final AtomicBoolean completed = new AtomicBoolean();
+        final AtomicBoolean started = new AtomicBoolean();
+        final Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                started.set(true);
+                try {
+                    if (completed.get()) {
+                        return; // Délai déjà expiré avant le démarrage
+                    }
+                    HttpResponse response = processHttpRequest(method, target, requestHeaders, body);
+                    if (completed.compareAndSet(false, true)) {
+                        completeAsync(key, response, keepAlive, chunkedAllowed);
+                    }
+                } finally {
+                    if (upstream) {
+                        upstreamPermits.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (upstream) {
+                upstreamPermits.release();
+            }
+            asyncRejected.incrementAndGet();
+            sendHttpResponse(connection, createRetryLaterResponse(), keepAlive, chunkedAllowed);
+            return false;
+        }
+        
+        asyncDispatched.incrementAndGet();
+        connection.setAwaitingResponse(true);
+        timeoutScheduler.schedule(() -> {
+            if (completed.compareAndSet(false, true)) {
+                asyncTimeouts.incrementAndGet();
+                Log.w(TAG, "Délai dépassé (" + timeoutMs + " ms): " + method + " " + target);
+                if (started.get()) {
+                    // Le permis est rendu quand le worker se termine réellement
+                    task.cancel(true);
+                }
+                completeAsync(key, createHttpErrorResponse(504, "Gateway Timeout"), keepAlive, chunkedAllowed);
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS);
+        return true;
+    }
+    
+    /**
+     * Appelé depuis un worker: la réponse est mise en file par le thread du sélecteur
+     */
+    private void completeAsync(SelectionKey key, HttpResponse response, boolean keepAlive, boolean chunkedAllowed) {
+        runOnSelector(() -> deliverAsyncResponse(key, response, keepAlive, chunkedAllowed));
+    }
+    
+    private void runOnSelector(Runnable task) {
+        selectorTasks.add(task);
+        Selector currentSelector = selector;
+        if (currentSelector != null) {
+            currentSelector.wakeup();
+        }
+    }
+    
+    private void runSelectorTasks() {
+        Runnable task;
+        while ((task = selectorTasks.poll()) != null) {
+            task.run();
+        }
+    }
+    
+    /**
+     * Met en file la réponse d'un worker puis reprend les requêtes pipelinées mises de côté
+     */
+    private void deliverAsyncResponse(SelectionKey key, HttpResponse response, boolean keepAlive, boolean chunkedAllowed) {
+        if (!key.isValid()) {
+            response.close(); // Client parti entre-temps
+            return;
+        }
+        HttpConnection connection = (HttpConnection) key.attachment();
+        try {
+            sendHttpResponse(connection, response, keepAlive, chunkedAllowed);
+            connection.setAwaitingResponse(false);
+            ByteBuffer pendingInput = connection.takePendingInput();
+            if (pendingInput != null) {
+                processInput(key, connection, pendingInput);
+            }
+            updatePhase(key, connection);
+            flushConnection(key, connection);
+        } catch (IOException e) {
+            Log.w(TAG, "Envoi réponse asynchrone impossible: " + e.getMessage());
+            try {
+                closeConnection(key);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+    
+    /**
+     * Statistiques de l'étage asynchrone
+     */
+    public String getAsyncStats() {
+        return "dispatched=" + asyncDispatched.get() + ", timeouts=" + asyncTimeouts.get() +
+                ", rejected=" + asyncRejected.get() + ", upstreamAvailable=" + upstreamPermits.availablePermits();
+    }
+    
+    /**
+     * Connexions ouvertes, refusées et expirées (JSON)
+     */
+    public String getConnectionStats() {
+        return connectionManager.getStats();
+    }
+    
+    public int getOpenConnections() {
+        return connectionManager.getOpenConnections();
+    }
+    
+    /**
+     * Reprend l'envoi des réponses en attente quand la socket redevient inscriptible
+     */
+    private void handleWrite(SelectionKey key) throws IOException {
+        HttpConnection connection = (HttpConnection) key.attachment();
+        try {
+            connectionManager.touch(key);
+            flushConnection(key, connection);
+        } catch (IOException e) {
+            Log.w(TAG, "Envoi HTTP interrompu: " + e.getMessage());
+            closeConnection(key);
+        }
+    }
+    
+    /**
+     * Envoie sans bloquer ce que la socket accepte; le reste attend OP_WRITE.
+     * La lecture est suspendue tant que le client ne consomme pas ses réponses.
+     */
+    private void flushConnection(SelectionKey key, HttpConnection connection) throws IOException {
+        boolean readAllowed = !connection.isCloseAfterWrite() && !connection.isAwaitingResponse()
+                && !connection.isInputPaused();
+        boolean drained = connection.outbound.flush(key, readAllowed);
+        if (drained && connection.isCloseAfterWrite()) {
+            closeConnection(key);
+        }
+    }
+    
+    private void closeConnection(SelectionKey key) throws IOException {
+        Object attachment = key.attachment();
+        if (attachment instanceof HttpConnection) {
+            HttpConnection connection = (HttpConnection) attachment;
+            connection.outbound.clear();
+            connection.parser.reset(); // Supprime un upload inachevé
+        }
+        connectionManager.unregister(key);
+        key.cancel();
+        key.channel().close();
+    }
+    
+    /**
+     * Route une requête complète (sur le sélecteur, ou sur un worker pour les routes bloquantes)
+     * @param requestHeaders headers de la requête, noms en minuscules
+     */
+    private HttpResponse processHttpRequest(String method, String path, Map<String, String> requestHeaders, byte[] requestBody) {
+        try {
             Log.d(TAG, "Requête: " + method + " " + path);
             
             // Router les requêtes
             if (method.equals("GET")) {
-                return handleGetRequest(path);
+                return handleGetRequest(path, requestHeaders);
             } else if (method.equals("POST")) {
-                String body = extractRequestBody(request);
+                String body = new String(requestBody, "UTF-8");
                 return handlePostRequest(path, body);
             } else if (method.equals("OPTIONS")) {
                 // Gestion des requêtes CORS preflight
@@ -203,7 +636,7 @@ public class HttpServer {
         }
     }
     
-    private String handleGetRequest(String path) {
+    private HttpResponse handleGetRequest(String path, Map<String, String> requestHeaders) {
         // Décoder l'URL complète d'abord
         String decodedPath = path;
         try {
@@ -241,7 +674,7 @@ public class HttpServer {
         
         // API Endpoints
         if (cleanPath.equals("/api/status")) {
-            return createApiResponse("{\"status\":\"active\",\"server\":\"ChatAI HTTP Server\",\"version\":\"1.0\"}");
+            return createApiResponse(getStatusJson());
         }
         else if (cleanPath.startsWith("/api/create-site/")) {
             String siteName = cleanPath.substring("/api/create-site/".length());
@@ -276,14 +709,14 @@ public class HttpServer {
             return createApiResponse("{\"health\":\"ok\",\"database\":\"connected\",\"cache\":\"active\"}");
         }
         else if (cleanPath.equals("/api/files/list")) {
-            return handleListFiles();
+            return handleListFiles(getQueryString(path));
         }
         else if (cleanPath.equals("/api/files/storage/info")) {
             return handleStorageInfo();
         }
         else if (cleanPath.startsWith("/api/files/download/")) {
             String fileName = cleanPath.substring("/api/files/download/".length());
-            return handleDownloadFile(fileName);
+            return handleDownloadFile(fileName, requestHeaders);
         }
         else if (cleanPath.startsWith("/api/files/info/")) {
             String fileName = cleanPath.substring("/api/files/info/".length());
@@ -311,23 +744,23 @@ public class HttpServer {
         }
         // Fichiers statiques (interface web)
         else if (cleanPath.equals("/") || cleanPath.equals("/index.html")) {
-            return handleStaticFile("/webapp/index.html");
+            return handleStaticFile("/webapp/index.html", requestHeaders);
         }
         else if (cleanPath.startsWith("/webapp/")) {
-            return handleStaticFile(cleanPath);
+            return handleStaticFile(cleanPath, requestHeaders);
         }
         else if (cleanPath.equals("/system.html")) {
-            return handleStaticFile("/webapp/system.html");
+            return handleStaticFile("/webapp/system.html", requestHeaders);
         }
         else if (cleanPath.equals("/chat.js")) {
-            return handleStaticFile("/webapp/chat.js");
+            return handleStaticFile("/webapp/chat.js", requestHeaders);
         }
         else {
             return createHttpErrorResponse(404, "Not Found");
         }
     }
     
-    private String handlePostRequest(String path, String body) {
+    private HttpResponse handlePostRequest(String path, String body) {
         // Extraire le path sans les paramètres de query string
         String cleanPath = path;
         if (path.contains("?")) {
@@ -360,13 +793,13 @@ public class HttpServer {
             return handleUserSite(sitePath);
         }
         else {
-            return "HTTP/1.1 404 Not Found\r\n\r\n";
+            return new HttpResponse(404);
         }
     }
     
     // ========== HANDLERS API ==========
     
-    private String handleWeatherRequest(String city) {
+    private HttpResponse handleWeatherRequest(String city) {
         try {
             String safeCity = SecurityUtils.sanitizeInput(city);
             
@@ -403,7 +836,7 @@ public class HttpServer {
      * Generic web search endpoint - returns raw search results
      * GET /api/search?q=bitcoin price
      */
-    private String handleGenericSearchRequest(String query) {
+    private HttpResponse handleGenericSearchRequest(String query) {
         try {
             if (query == null || query.trim().isEmpty()) {
                 return createHttpErrorResponse(400, "Missing query parameter 'q'");
@@ -516,7 +949,7 @@ public class HttpServer {
     /**
      * Fallback si web_search échoue - données simulées
      */
-    private String handleWeatherFallback(String city) {
+    private HttpResponse handleWeatherFallback(String city) {
         int temp = (int)(Math.random() * 25) + 5;
         String[] conditions = {"Ensoleillé ☀️", "Nuageux ☁️", "Pluvieux 🌧️", "Partiellement nuageux ⛅"};
         String condition = conditions[(int)(Math.random() * conditions.length)];
@@ -634,7 +1067,7 @@ public class HttpServer {
         }
     }
     
-    private String handleRandomJokeRequest() {
+    private HttpResponse handleRandomJokeRequest() {
         String[] jokes = {
             "Pourquoi les plongeurs plongent-ils toujours en arrière ? Parce que sinon, ils tombent dans le bateau !",
             "Comment appelle-t-on un chat tombé dans un pot de peinture ? Un chat-mallow !",
@@ -648,7 +1081,7 @@ public class HttpServer {
         return createApiResponse(response);
     }
     
-    private String handleTipsRequest(String category) {
+    private HttpResponse handleTipsRequest(String category) {
         Map<String, String> tips = new HashMap<>();
         tips.put("productivity", "🍅 Technique Pomodoro : 25 min travail, 5 min pause");
         tips.put("health", "💧 Buvez un verre d'eau dès le réveil");
@@ -661,7 +1094,7 @@ public class HttpServer {
         return createApiResponse(response);
     }
     
-    private String handleTranslationRequest(String body) {
+    private HttpResponse handleTranslationRequest(String body) {
         try {
             // Parser JSON simple (pour l'exemple)
             String text = extractJsonValue(body, "text");
@@ -682,7 +1115,7 @@ public class HttpServer {
         }
     }
     
-    private String handleChatRequest(String body) {
+    private HttpResponse handleChatRequest(String body) {
         try {
             String message = extractJsonValue(body, "message");
             String personality = extractJsonValue(body, "personality");
@@ -702,7 +1135,7 @@ public class HttpServer {
         }
     }
     
-    private String handleAIQueryRequest(String body) {
+    private HttpResponse handleAIQueryRequest(String body) {
         try {
             String query = extractJsonValue(body, "query");
             if (query == null) {
@@ -733,11 +1166,11 @@ public class HttpServer {
     
     // ========== HANDLERS FICHIERS ==========
     
-    private String handleListFiles() {
+    private HttpResponse handleListFiles(String queryString) {
         try {
-            // Utiliser le FileServer pour lister les fichiers
+            // Utiliser le FileServer pour lister les fichiers (pagination, tri et filtre passés tels quels)
             if (fileServer != null) {
-                return fileServer.handleListFiles();
+                return fileServer.handleListFiles(queryString);
             } else {
                 return createHttpErrorResponse(503, "File server not available");
             }
@@ -747,7 +1180,7 @@ public class HttpServer {
         }
     }
     
-    private String handleStorageInfo() {
+    private HttpResponse handleStorageInfo() {
         try {
             if (fileServer != null) {
                 return fileServer.handleStorageInfo();
@@ -760,10 +1193,10 @@ public class HttpServer {
         }
     }
     
-    private String handleDownloadFile(String fileName) {
+    private HttpResponse handleDownloadFile(String fileName, Map<String, String> requestHeaders) {
         try {
             if (fileServer != null) {
-                return fileServer.handleDownloadFile(fileName);
+                return fileServer.handleDownloadFile(fileName, requestHeaders, false);
             } else {
                 return createHttpErrorResponse(503, "File server not available");
             }
@@ -773,7 +1206,7 @@ public class HttpServer {
         }
     }
     
-    private String handleFileInfo(String fileName) {
+    private HttpResponse handleFileInfo(String fileName) {
         try {
             if (fileServer != null) {
                 return fileServer.handleFileInfo(fileName);
@@ -786,7 +1219,7 @@ public class HttpServer {
         }
     }
     
-    private String handleUploadFile(String body) {
+    private HttpResponse handleUploadFile(String body) {
         try {
             if (fileServer != null) {
                 return fileServer.handleUploadFile(body);
@@ -799,7 +1232,7 @@ public class HttpServer {
         }
     }
     
-    private String handleChangeStorage(String body) {
+    private HttpResponse handleChangeStorage(String body) {
         try {
             if (fileServer != null) {
                 return fileServer.handleChangeStorage(body);
@@ -814,11 +1247,6 @@ public class HttpServer {
     
     // ========== UTILITAIRES HTTP ==========
     
-    private String extractRequestBody(String request) {
-        String[] parts = request.split("\r\n\r\n");
-        return parts.length > 1 ? parts[1] : "";
-    }
-    
     private String extractJsonValue(String json, String key) {
         try {
             String pattern = "\"" + key + "\"\\s*:\\s*\"([^\"]+)\"";
@@ -833,101 +1261,158 @@ public class HttpServer {
         }
     }
     
-    private void sendHttpResponse(SocketChannel clientChannel, String response) {
+    /**
+     * État du serveur et compteurs des serveurs liés: connexions de chaque serveur NIO,
+     * WebSocket (permessage-deflate et diffusions), WebServer (index des gamelists),
+     * runtime du processus (GC, envois de fichiers) pour les mesures de tools/bench
+     */
+    private String getStatusJson() {
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\"status\":\"active\",\"server\":\"ChatAI HTTP Server\",\"version\":\"1.0\"");
+        WebSocketServer ws = webSocketServer;
+        FileServer files = fileServer;
+        json.append(",\"connections\":{\"http\":").append(getConnectionStats());
+        if (files != null) {
+            json.append(",\"files\":").append(files.getConnectionStats());
+        }
+        if (ws != null) {
+            json.append(",\"websocket\":").append(ws.getConnectionStats());
+        }
+        json.append('}');
+        if (ws != null) {
+            json.append(",\"websocket\":{\"compression\":").append(ws.getCompressionStats())
+                    .append(",\"broadcast\":").append(ws.getBroadcastStats()).append('}');
+        }
+        WebServer web = webServer;
+        if (web != null) {
+            json.append(",\"gamelistIndex\":").append(web.getGamelistIndexStats());
+        }
+        Runtime runtime = Runtime.getRuntime();
+        json.append(String.format(Locale.US,
+                ",\"runtime\":{\"gcCount\":%d,\"gcTimeMs\":%d,\"blockingGcCount\":%d,\"heapUsed\":%d,\"heapMax\":%d," +
+                "\"zeroCopyBytes\":%d,\"copiedBytes\":%d}",
+                getRuntimeStat("art.gc.gc-count"), getRuntimeStat("art.gc.gc-time"),
+                getRuntimeStat("art.gc.blocking-gc-count"), runtime.totalMemory() - runtime.freeMemory(),
+                runtime.maxMemory(), FileTransfer.getZeroCopyBytes(), FileTransfer.getCopiedBytes()));
+        return json.append('}').toString();
+    }
+    
+    /**
+     * Compteur ART (Debug.getRuntimeStat), -1 s'il n'est pas disponible
+     */
+    private static long getRuntimeStat(String name) {
         try {
-            ByteBuffer buffer = ByteBuffer.wrap(response.getBytes("UTF-8"));
-            clientChannel.write(buffer);
-            clientChannel.close();
-        } catch (IOException e) {
-            Log.e(TAG, "Erreur envoi réponse HTTP", e);
+            String value = android.os.Debug.getRuntimeStat(name);
+            return value != null ? Long.parseLong(value) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
     
-    private String createApiResponse(String jsonBody) {
-        return "HTTP/1.1 200 OK\r\n" +
-               "Content-Type: application/json\r\n" +
-               "Access-Control-Allow-Origin: *\r\n" +
-               "Access-Control-Allow-Methods: GET, POST, OPTIONS\r\n" +
-               "Access-Control-Allow-Headers: Content-Type\r\n" +
-               "Content-Length: " + jsonBody.length() + "\r\n" +
-               "\r\n" +
-               jsonBody;
+    /**
+     * Met la réponse en file d'envoi (headers et corps en buffers distincts, envoyés en un write() groupé).
+     * Si la connexion ne peut pas rester ouverte, elle est fermée une fois la file vidée.
+     */
+    private void sendHttpResponse(HttpConnection connection, HttpResponse response,
+                                  boolean keepAlive, boolean chunkedAllowed) throws IOException {
+        if (!response.writeTo(connection.outbound, keepAlive, chunkedAllowed)) {
+            connection.closeAfterWrite();
+        }
     }
     
-    private String createHttpErrorResponse(int code, String message) {
-        String errorHtml = createErrorHtml(code, message);
-        return "HTTP/1.1 " + code + " " + getStatusText(code) + "\r\n" +
-               "Content-Type: text/html; charset=utf-8\r\n" +
-               "Access-Control-Allow-Origin: *\r\n" +
-               "Content-Length: " + errorHtml.length() + "\r\n" +
-               "\r\n" +
-               errorHtml;
+    private HttpResponse createApiResponse(String jsonBody) {
+        return HttpResponse.ok("application/json", jsonBody)
+                .header("Access-Control-Allow-Origin", "*")
+                .header("Access-Control-Allow-Methods", "GET, POST, OPTIONS")
+                .header("Access-Control-Allow-Headers", "Content-Type");
     }
     
-    private String createCorsPreflightResponse() {
-        return "HTTP/1.1 200 OK\r\n" +
-               "Access-Control-Allow-Origin: *\r\n" +
-               "Access-Control-Allow-Methods: GET, POST, OPTIONS\r\n" +
-               "Access-Control-Allow-Headers: Content-Type, Authorization\r\n" +
-               "Access-Control-Max-Age: 86400\r\n" +
-               "Content-Length: 0\r\n" +
-               "\r\n";
+    private HttpResponse createHttpErrorResponse(int code, String message) {
+        return new HttpResponse(code)
+                .header("Content-Type", "text/html; charset=utf-8")
+                .header("Access-Control-Allow-Origin", "*")
+                .text(createErrorHtml(code, message));
     }
     
     /**
-     * Gère les fichiers statiques (interface web) avec compression et cache
+     * 503 avec Retry-After quand trop d'appels externes sont en cours
      */
-    private String handleStaticFile(String path) {
+    private HttpResponse createRetryLaterResponse() {
+        return createHttpErrorResponse(503, "Service temporairement saturé")
+                .header("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+    }
+    
+    private HttpResponse createCorsPreflightResponse() {
+        return new HttpResponse(200)
+                .header("Access-Control-Allow-Origin", "*")
+                .header("Access-Control-Allow-Methods", "GET, POST, OPTIONS")
+                .header("Access-Control-Allow-Headers", "Content-Type, Authorization")
+                .header("Access-Control-Max-Age", "86400");
+    }
+    
+    /**
+     * Gère les fichiers statiques (interface web) depuis le cache d'assets, avec ETag et revalidation 304.
+     * La variante précompressée (.br/.gz générée au build) est servie si le client l'accepte.
+     */
+    private HttpResponse handleStaticFile(String path, Map<String, String> requestHeaders) {
         try {
-            // Lire le fichier depuis les assets
-            java.io.InputStream inputStream = context.getAssets().open(path.substring(1)); // Enlever le premier /
-            java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
-            
-            int nRead;
-            byte[] data = new byte[1024];
-            while ((nRead = inputStream.read(data, 0, data.length)) != -1) {
-                buffer.write(data, 0, nRead);
-            }
-            
-            byte[] fileContent = buffer.toByteArray();
-            inputStream.close();
+            String assetPath = path.substring(1); // Enlever le premier /
             
             // Déterminer le type MIME
             String mimeType = getMimeType(path);
             
-            // Vérifier si c'est un fichier binaire
-            boolean isBinary = isBinaryFile(path);
+            AssetCache.Asset asset = null;
+            String contentEncoding = null;
+            boolean compressible = HttpCompression.isCompressibleType(mimeType);
+            if (compressible) {
+                String acceptEncoding = requestHeaders.get("accept-encoding");
+                if (HttpCompression.accepts(acceptEncoding, HttpCompression.BROTLI)) {
+                    asset = assetCache.getIfExists(assetPath + ".br");
+                    contentEncoding = HttpCompression.BROTLI;
+                }
+                if (asset == null && HttpCompression.accepts(acceptEncoding, HttpCompression.GZIP)) {
+                    asset = assetCache.getIfExists(assetPath + ".gz");
+                    contentEncoding = HttpCompression.GZIP;
+                }
+            }
+            if (asset == null) {
+                // Lire le fichier original depuis le cache d'assets (FileNotFoundException si absent)
+                asset = assetCache.get(assetPath);
+                contentEncoding = null;
+            }
+            
+            HttpResponse response;
+            if (AssetCache.isNotModified(asset, requestHeaders.get("if-none-match"), requestHeaders.get("if-modified-since"))) {
+                response = new HttpResponse(304);
+            } else {
+                // Texte ou binaire: les octets de l'asset sont envoyés tels quels
+                response = new HttpResponse(200)
+                        .header("Content-Type", mimeType);
+                if (asset.content != null) {
+                    response.body(asset.content);
+                } else {
+                    setLargeAssetBody(response, asset);
+                }
+                if (contentEncoding != null) {
+                    response.header("Content-Encoding", contentEncoding);
+                }
+            }
+            if (compressible) {
+                response.header("Vary", "Accept-Encoding");
+            }
             
-            // Créer la réponse HTTP avec headers optimisés
-            StringBuilder response = new StringBuilder();
-            response.append("HTTP/1.1 200 OK\r\n");
-            response.append("Content-Type: ").append(mimeType).append("\r\n");
-            response.append("Access-Control-Allow-Origin: *\r\n");
+            // Validateurs stables (version de l'APK + hash du contenu)
+            response.header("Access-Control-Allow-Origin", "*")
+                    .header("ETag", asset.etag)
+                    .header("Last-Modified", HttpRange.formatHttpDate(asset.lastModified));
             
             // Headers de cache pour les fichiers statiques
             if (path.endsWith(".css") || path.endsWith(".js") || path.endsWith(".png") || path.endsWith(".jpg")) {
-                response.append("Cache-Control: public, max-age=3600\r\n");
-                response.append("ETag: \"").append(System.currentTimeMillis()).append("\"\r\n");
-            }
-            
-            // Gestion des fichiers binaires vs texte
-            if (isBinary) {
-                // Pour les fichiers binaires, envoyer les bytes directement
-                response.append("Content-Length: ").append(fileContent.length).append("\r\n");
-                response.append("\r\n");
-                // Note: Dans un vrai serveur, on enverrait les bytes directement
-                // Ici on convertit en base64 pour la compatibilité
-                String base64Content = java.util.Base64.getEncoder().encodeToString(fileContent);
-                response.append(base64Content);
+                response.header("Cache-Control", "public, max-age=3600");
             } else {
-                // Pour les fichiers texte, envoyer le contenu directement
-                String content = new String(fileContent, "UTF-8");
-                response.append("Content-Length: ").append(content.length()).append("\r\n");
-                response.append("\r\n");
-                response.append(content);
+                response.header("Cache-Control", "no-cache");
             }
-            
-            return response.toString();
+            return response;
                    
         } catch (Exception e) {
             Log.e(TAG, "Erreur lecture fichier statique: " + path, e);
@@ -935,6 +1420,49 @@ public class HttpServer {
         }
     }
     
+    /**
+     * Asset hors cache (trop gros): portion de l'APK en zero-copy s'il y est stocké sans compression,
+     * sinon relu par blocs au fil de l'envoi
+     */
+    private static void setLargeAssetBody(HttpResponse response, AssetCache.Asset asset) throws IOException {
+        AssetFileDescriptor descriptor = asset.openFd();
+        if (descriptor != null) {
+            // Le canal ferme le descripteur après l'envoi
+            response.file(descriptor.createInputStream().getChannel(), descriptor.getStartOffset(), descriptor.getLength());
+        } else {
+            response.stream(new AssetStreamWriter(asset));
+        }
+    }
+    
+    /**
+     * Asset compressé dans l'APK, décompressé par blocs de taille fixe (un bloc par morceau envoyé)
+     */
+    private static final class AssetStreamWriter implements HttpResponse.BodyWriter {
+        private static final int CHUNK_SIZE = 16384;
+        
+        private final AssetCache.Asset asset;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private InputStream in;
+        
+        AssetStreamWriter(AssetCache.Asset asset) {
+            this.asset = asset;
+        }
+        
+        @Override
+        public boolean writeChunk(java.io.OutputStream out) throws IOException {
+            if (in == null) {
+                in = asset.open();
+            }
+            int bytesRead = in.read(buffer);
+            if (bytesRead == -1) {
+                in.close();
+                return false;
+            }
+            out.write(buffer, 0, bytesRead);
+            return true;
+        }
+    }
+    
     /**
      * Détermine le type MIME d'un fichier (version étendue)
      */
@@ -1190,28 +1718,7 @@ public class HttpServer {
      * Obtient le texte de statut HTTP
      */
     private String getStatusText(int code) {
-        switch (code) {
-            case 200:
-                return "OK";
-            case 201:
-                return "Created";
-            case 400:
-                return "Bad Request";
-            case 401:
-                return "Unauthorized";
-            case 403:
-                return "Forbidden";
-            case 404:
-                return "Not Found";
-            case 405:
-                return "Method Not Allowed";
-            case 500:
-                return "Internal Server Error";
-            case 503:
-                return "Service Unavailable";
-            default:
-                return "Unknown";
-        }
+        return HttpResponse.getReasonPhrase(code);
     }
     
     /**
@@ -1242,300 +1749,286 @@ public class HttpServer {
     /**
      * Crée un directory listing standard comme Apache/Nginx
      */
-    private String createUserSitesHTML(String title, java.io.File[] sites) {
-        StringBuilder html = new StringBuilder();
+    private HttpResponse createUserSitesHTML(String title, java.util.List<DirectoryIndex.Entry> sites) {
+        return new HttpResponse(200)
+                .header("Content-Type", "text/html; charset=utf-8")
+                .header("Access-Control-Allow-Origin", "*")
+                .header("Cache-Control", "public, max-age=300")
+                .stream(new UserSitesWriter(title, sites));
+    }
+    
+    /**
+     * Page des sites utilisateur, une carte par site, écrite au fil de l'envoi
+     * (attributs relevés avant la réponse: aucun stat sur le sélecteur)
+     */
+    private final class UserSitesWriter extends HttpResponse.ListWriter<DirectoryIndex.Entry> {
+        private final String title;
+        private final java.text.SimpleDateFormat dateFormat = new java.text.SimpleDateFormat("dd/MM/yyyy HH:mm");
+        private boolean empty = true;
         
-        html.append("<!DOCTYPE html>\n");
-        html.append("<html lang=\"fr\">\n");
-        html.append("<head>\n");
-        html.append("    <meta charset=\"UTF-8\">\n");
-        html.append("    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n");
-        html.append("    <title>🌐 ").append(title).append("</title>\n");
-        html.append("    <style>\n");
-        html.append("        body {\n");
-        html.append("            font-family: 'Courier New', monospace;\n");
-        html.append("            background: #000;\n");
-        html.append("            color: #ff3333;\n");
-        html.append("            margin: 0;\n");
-        html.append("            padding: 20px;\n");
-        html.append("        }\n");
-        html.append("        .header {\n");
-        html.append("            background: linear-gradient(135deg, rgba(255, 51, 51, 0.1), rgba(255, 51, 51, 0.05));\n");
-        html.append("            border: 2px solid #ff3333;\n");
-        html.append("            border-radius: 8px;\n");
-        html.append("            padding: 15px;\n");
-        html.append("            margin-bottom: 20px;\n");
-        html.append("            text-align: center;\n");
-        html.append("        }\n");
-        html.append("        .header h1 {\n");
-        html.append("            margin: 0;\n");
-        html.append("            text-shadow: 0 0 10px #ff3333;\n");
-        html.append("        }\n");
-        html.append("        .sites-grid {\n");
-        html.append("            display: grid;\n");
-        html.append("            grid-template-columns: repeat(auto-fill, minmax(300px, 1fr));\n");
-        html.append("            gap: 20px;\n");
-        html.append("        }\n");
-        html.append("        .site-card {\n");
-        html.append("            background: rgba(0, 0, 0, 0.8);\n");
-        html.append("            border: 1px solid #ff3333;\n");
-        html.append("            border-radius: 8px;\n");
-        html.append("            padding: 20px;\n");
-        html.append("            transition: all 0.3s ease;\n");
-        html.append("            cursor: pointer;\n");
-        html.append("        }\n");
-        html.append("        .site-card:hover {\n");
-        html.append("            background: rgba(255, 51, 51, 0.1);\n");
-        html.append("            transform: translateY(-5px);\n");
-        html.append("            box-shadow: 0 10px 25px rgba(255, 51, 51, 0.3);\n");
-        html.append("        }\n");
-        html.append("        .site-icon {\n");
-        html.append("            font-size: 48px;\n");
-        html.append("            margin-bottom: 15px;\n");
-        html.append("        }\n");
-        html.append("        .site-name {\n");
-        html.append("            font-size: 1.5em;\n");
-        html.append("            font-weight: bold;\n");
-        html.append("            margin-bottom: 10px;\n");
-        html.append("        }\n");
-        html.append("        .site-info {\n");
-        html.append("            color: #ff6666;\n");
-        html.append("            font-size: 0.9em;\n");
-        html.append("        }\n");
-        html.append("        a {\n");
-        html.append("            color: #ff3333;\n");
-        html.append("            text-decoration: none;\n");
-        html.append("        }\n");
-        html.append("        a:hover {\n");
-        html.append("            color: #ff6666;\n");
-        html.append("            text-shadow: 0 0 5px #ff3333;\n");
-        html.append("        }\n");
-        html.append("    </style>\n");
-        html.append("</head>\n");
-        html.append("<body>\n");
-        html.append("    <div class=\"header\">\n");
-        html.append("        <h1>🌐 ").append(title).append("</h1>\n");
-        html.append("        <p>Hébergement de sites web personnalisés</p>\n");
-        html.append("    </div>\n");
-        html.append("    <div class=\"sites-grid\">\n");
+        UserSitesWriter(String title, java.util.List<DirectoryIndex.Entry> sites) {
+            super(sites);
+            this.title = title;
+        }
+        
+        @Override
+        protected void begin(java.io.Writer html) throws IOException {
+            html.append("<!DOCTYPE html>\n");
+            html.append("<html lang=\"fr\">\n");
+            html.append("<head>\n");
+            html.append("    <meta charset=\"UTF-8\">\n");
+            html.append("    <meta name=\"viewport\" content=\"width=device-width, initial-scale=1.0\">\n");
+            html.append("    <title>🌐 ").append(title).append("</title>\n");
+            html.append("    <style>\n");
+            html.append("        body {\n");
+            html.append("            font-family: 'Courier New', monospace;\n");
+            html.append("            background: #000;\n");
+            html.append("            color: #ff3333;\n");
+            html.append("            margin: 0;\n");
+            html.append("            padding: 20px;\n");
+            html.append("        }\n");
+            html.append("        .header {\n");
+            html.append("            background: linear-gradient(135deg, rgba(255, 51, 51, 0.1), rgba(255, 51, 51, 0.05));\n");
+            html.append("            border: 2px solid #ff3333;\n");
+            html.append("            border-radius: 8px;\n");
+            html.append("            padding: 15px;\n");
+            html.append("            margin-bottom: 20px;\n");
+            html.append("            text-align: center;\n");
+            html.append("        }\n");
+            html.append("        .header h1 {\n");
+            html.append("            margin: 0;\n");
+            html.append("            text-shadow: 0 0 10px #ff3333;\n");
+            html.append("        }\n");
+            html.append("        .sites-grid {\n");
+            html.append("            display: grid;\n");
+            html.append("            grid-template-columns: repeat(auto-fill, minmax(300px, 1fr));\n");
+            html.append("            gap: 20px;\n");
+            html.append("        }\n");
+            html.append("        .site-card {\n");
+            html.append("            background: rgba(0, 0, 0, 0.8);\n");
+            html.append("            border: 1px solid #ff3333;\n");
+            html.append("            border-radius: 8px;\n");
+            html.append("            padding: 20px;\n");
+            html.append("            transition: all 0.3s ease;\n");
+            html.append("            cursor: pointer;\n");
+            html.append("        }\n");
+            html.append("        .site-card:hover {\n");
+            html.append("            background: rgba(255, 51, 51, 0.1);\n");
+            html.append("            transform: translateY(-5px);\n");
+            html.append("            box-shadow: 0 10px 25px rgba(255, 51, 51, 0.3);\n");
+            html.append("        }\n");
+            html.append("        .site-icon {\n");
+            html.append("            font-size: 48px;\n");
+            html.append("            margin-bottom: 15px;\n");
+            html.append("        }\n");
+            html.append("        .site-name {\n");
+            html.append("            font-size: 1.5em;\n");
+            html.append("            font-weight: bold;\n");
+            html.append("            margin-bottom: 10px;\n");
+            html.append("        }\n");
+            html.append("        .site-info {\n");
+            html.append("            color: #ff6666;\n");
+            html.append("            font-size: 0.9em;\n");
+            html.append("        }\n");
+            html.append("        a {\n");
+            html.append("            color: #ff3333;\n");
+            html.append("            text-decoration: none;\n");
+            html.append("        }\n");
+            html.append("        a:hover {\n");
+            html.append("            color: #ff6666;\n");
+            html.append("            text-shadow: 0 0 5px #ff3333;\n");
+            html.append("        }\n");
+            html.append("    </style>\n");
+            html.append("</head>\n");
+            html.append("<body>\n");
+            html.append("    <div class=\"header\">\n");
+            html.append("        <h1>🌐 ").append(title).append("</h1>\n");
+            html.append("        <p>Hébergement de sites web personnalisés</p>\n");
+            html.append("    </div>\n");
+            html.append("    <div class=\"sites-grid\">\n");
+        }
         
-        if (sites.length == 0) {
-            html.append("        <div class=\"site-card\">\n");
-            html.append("            <div class=\"site-icon\">📂</div>\n");
-            html.append("            <div class=\"site-name\">Aucun site trouvé</div>\n");
-            html.append("            <div class=\"site-info\">Créez votre premier site dans le dossier sites/</div>\n");
+        @Override
+        protected void item(java.io.Writer html, DirectoryIndex.Entry site) throws IOException {
+            empty = false;
+            String siteName = site.name;
+            String siteType = site.isDirectory ? "📁 Dossier" : "📄 Fichier";
+            String siteSize = site.isDirectory ? "" : formatFileSize(site.size);
+            String siteDate = dateFormat.format(new java.util.Date(site.lastModified));
+            
+            html.append("        <div class=\"site-card\" onclick=\"openSite('").append(siteName).append("')\">\n");
+            html.append("            <div class=\"site-icon\">").append(site.isDirectory ? "🌐" : "📄").append("</div>\n");
+            html.append("            <div class=\"site-name\">").append(siteName).append("</div>\n");
+            html.append("            <div class=\"site-info\">\n");
+            html.append("                <div>").append(siteType).append("</div>\n");
+            if (!siteSize.isEmpty()) {
+                html.append("                <div>Taille: ").append(siteSize).append("</div>\n");
+            }
+            html.append("                <div>Modifié: ").append(siteDate).append("</div>\n");
+            html.append("            </div>\n");
             html.append("        </div>\n");
-        } else {
-            for (java.io.File site : sites) {
-                String siteName = site.getName();
-                String siteType = site.isDirectory() ? "📁 Dossier" : "📄 Fichier";
-                String siteSize = site.isDirectory() ? "" : formatFileSize(site.length());
-                String siteDate = new java.text.SimpleDateFormat("dd/MM/yyyy HH:mm").format(new java.util.Date(site.lastModified()));
-                
-                html.append("        <div class=\"site-card\" onclick=\"openSite('").append(siteName).append("')\">\n");
-                html.append("            <div class=\"site-icon\">").append(site.isDirectory() ? "🌐" : "📄").append("</div>\n");
-                html.append("            <div class=\"site-name\">").append(siteName).append("</div>\n");
-                html.append("            <div class=\"site-info\">\n");
-                html.append("                <div>").append(siteType).append("</div>\n");
-                if (!siteSize.isEmpty()) {
-                    html.append("                <div>Taille: ").append(siteSize).append("</div>\n");
-                }
-                html.append("                <div>Modifié: ").append(siteDate).append("</div>\n");
-                html.append("            </div>\n");
+        }
+        
+        @Override
+        protected void end(java.io.Writer html) throws IOException {
+            if (empty) {
+                html.append("        <div class=\"site-card\">\n");
+                html.append("            <div class=\"site-icon\">📂</div>\n");
+                html.append("            <div class=\"site-name\">Aucun site trouvé</div>\n");
+                html.append("            <div class=\"site-info\">Créez votre premier site dans le dossier sites/</div>\n");
                 html.append("        </div>\n");
             }
+            
+            html.append("    </div>\n");
+            html.append("    <script>\n");
+            html.append("        function openSite(siteName) {\n");
+            html.append("            window.location.href = '/sites/' + siteName;\n");
+            html.append("        }\n");
+            html.append("    </script>\n");
+            html.append("</body>\n");
+            html.append("</html>\n");
         }
-        
-        html.append("    </div>\n");
-        html.append("    <script>\n");
-        html.append("        function openSite(siteName) {\n");
-        html.append("            window.location.href = '/sites/' + siteName;\n");
-        html.append("        }\n");
-        html.append("    </script>\n");
-        html.append("</body>\n");
-        html.append("</html>\n");
-        
-        return "HTTP/1.1 200 OK\r\n" +
-               "Content-Type: text/html; charset=utf-8\r\n" +
-               "Access-Control-Allow-Origin: *\r\n" +
-               "Cache-Control: public, max-age=300\r\n" +
-               "Content-Length: " + html.length() + "\r\n" +
-               "\r\n" +
-               html.toString();
     }
     
     /**
      * Crée un directory listing standard comme Apache/Nginx
      */
-    private String createStandardDirectoryListing(String title, java.io.File[] sites) {
-        StringBuilder html = new StringBuilder();
+    private HttpResponse createStandardDirectoryListing(String title, java.util.List<DirectoryIndex.Entry> sites) {
+        // Pages HTML, puis répertoires, puis autres fichiers
+        java.util.List<DirectoryIndex.Entry> htmlFiles = new java.util.ArrayList<>();
+        java.util.List<DirectoryIndex.Entry> directories = new java.util.ArrayList<>();
+        java.util.List<DirectoryIndex.Entry> otherFiles = new java.util.ArrayList<>();
+        for (DirectoryIndex.Entry site : sites) {
+            if (site.isDirectory) {
+                directories.add(site);
+            } else if (site.name.endsWith(".html")) {
+                htmlFiles.add(site);
+            } else {
+                otherFiles.add(site);
+            }
+        }
         
-        html.append("<!DOCTYPE html>\n");
-        html.append("<html>\n");
-        html.append("<head>\n");
-        html.append("    <meta charset=\"utf-8\">\n");
-        html.append("    <title>Index of /sites</title>\n");
-        html.append("    <style>\n");
-        html.append("        body { font-family: Arial, sans-serif; margin: 20px; }\n");
-        html.append("        h1 { color: #333; }\n");
-        html.append("        table { border-collapse: collapse; width: 100%; }\n");
-        html.append("        th, td { padding: 8px; text-align: left; border-bottom: 1px solid #ddd; }\n");
-        html.append("        th { background-color: #f2f2f2; }\n");
-        html.append("        a { text-decoration: none; color: #0066cc; }\n");
-        html.append("        a:hover { text-decoration: underline; }\n");
-        html.append("        .dir { font-weight: bold; }\n");
-        html.append("        .file { }\n");
-        html.append("        .html { font-weight: bold; color: #cc6600; }\n");
-        html.append("        .html:hover { color: #ff8800; }\n");
-        html.append("    </style>\n");
-        html.append("</head>\n");
-        html.append("<body>\n");
-        html.append("<h1>Index of /sites</h1>\n");
-        html.append("<table>\n");
-        html.append("<tr><th>Name</th><th>Last modified</th><th>Size</th><th>Description</th></tr>\n");
+        return new HttpResponse(200)
+                .header("Content-Type", "text/html; charset=utf-8")
+                .header("Access-Control-Allow-Origin", "*")
+                .header("Cache-Control", "public, max-age=300")
+                .stream(new DirectoryListingWriter(htmlFiles, directories, otherFiles));
+    }
+    
+    /**
+     * Tableau du listing, une ligne par entrée, avec un titre en tête de chaque groupe
+     */
+    private final class DirectoryListingWriter extends HttpResponse.ListWriter<DirectoryIndex.Entry> {
+        private final int htmlCount;
+        private final int directoryCount;
+        private final int otherCount;
+        private final java.text.SimpleDateFormat dateFormat = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm");
+        private int index;
         
-        if (sites != null && sites.length > 0) {
-            // Séparer les fichiers HTML, répertoires et autres fichiers
-            java.util.List<java.io.File> htmlFiles = new java.util.ArrayList<>();
-            java.util.List<java.io.File> directories = new java.util.ArrayList<>();
-            java.util.List<java.io.File> otherFiles = new java.util.ArrayList<>();
-            
-            for (java.io.File site : sites) {
-                if (site.isDirectory()) {
-                    directories.add(site);
-                } else if (site.getName().endsWith(".html")) {
-                    htmlFiles.add(site);
-                } else {
-                    otherFiles.add(site);
-                }
-            }
+        DirectoryListingWriter(java.util.List<DirectoryIndex.Entry> htmlFiles, java.util.List<DirectoryIndex.Entry> directories,
+                               java.util.List<DirectoryIndex.Entry> otherFiles) {
+            super(concat(htmlFiles, directories, otherFiles));
+            this.htmlCount = htmlFiles.size();
+            this.directoryCount = directories.size();
+            this.otherCount = otherFiles.size();
+        }
+        
+        @Override
+        protected void begin(java.io.Writer html) throws IOException {
+            html.append("<!DOCTYPE html>\n");
+            html.append("<html>\n");
+            html.append("<head>\n");
+            html.append("    <meta charset=\"utf-8\">\n");
+            html.append("    <title>Index of /sites</title>\n");
+            html.append("    <style>\n");
+            html.append("        body { font-family: Arial, sans-serif; margin: 20px; }\n");
+            html.append("        h1 { color: #333; }\n");
+            html.append("        table { border-collapse: collapse; width: 100%; }\n");
+            html.append("        th, td { padding: 8px; text-align: left; border-bottom: 1px solid #ddd; }\n");
+            html.append("        th { background-color: #f2f2f2; }\n");
+            html.append("        a { text-decoration: none; color: #0066cc; }\n");
+            html.append("        a:hover { text-decoration: underline; }\n");
+            html.append("        .dir { font-weight: bold; }\n");
+            html.append("        .file { }\n");
+            html.append("        .html { font-weight: bold; color: #cc6600; }\n");
+            html.append("        .html:hover { color: #ff8800; }\n");
+            html.append("    </style>\n");
+            html.append("</head>\n");
+            html.append("<body>\n");
+            html.append("<h1>Index of /sites</h1>\n");
+            html.append("<table>\n");
+            html.append("<tr><th>Name</th><th>Last modified</th><th>Size</th><th>Description</th></tr>\n");
             
-            // Header pour les fichiers HTML
-            if (!htmlFiles.isEmpty()) {
-                html.append("<tr><td colspan=\"4\" style=\"background-color: #f0f8ff; font-weight: bold; padding: 10px; border-top: 2px solid #0066cc;\">📄 Pages HTML</td></tr>\n");
+            if (htmlCount + directoryCount + otherCount == 0) {
+                html.append("<tr><td colspan=\"4\">Aucun fichier trouvé</td></tr>\n");
             }
-            
-            // Lister les fichiers HTML
-            for (java.io.File site : htmlFiles) {
-                String name = site.getName();
-                boolean isDirectory = site.isDirectory();
-                String link = isDirectory ? name + "/" : name;
-                String size = isDirectory ? "-" : formatFileSize(site.length());
-                String cssClass = isDirectory ? "dir" : "html";
-                
-                // Date de modification
-                java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm");
-                String mtime = sdf.format(new java.util.Date(site.lastModified()));
-                
-                // Encoder l'URL pour les espaces et caractères spéciaux, mais préserver le / final des répertoires
-                String encodedLink;
-                try {
-                    if (isDirectory && link.endsWith("/")) {
-                        // Pour les répertoires, encoder tout sauf le / final
-                        String nameToEncode = link.substring(0, link.length() - 1);
-                        encodedLink = java.net.URLEncoder.encode(nameToEncode, "UTF-8") + "/";
-                    } else {
-                        encodedLink = java.net.URLEncoder.encode(link, "UTF-8");
-                    }
-                } catch (java.io.UnsupportedEncodingException e) {
-                    encodedLink = link; // Fallback si UTF-8 n'est pas supporté
+        }
+        
+        @Override
+        protected void item(java.io.Writer html, DirectoryIndex.Entry site) throws IOException {
+            String cssClass;
+            if (index < htmlCount) {
+                if (index == 0) {
+                    html.append("<tr><td colspan=\"4\" style=\"background-color: #f0f8ff; font-weight: bold; padding: 10px; border-top: 2px solid #0066cc;\">📄 Pages HTML</td></tr>\n");
                 }
-                html.append("<tr><td><a href=\"").append(encodedLink).append("\" class=\"").append(cssClass).append("\">").append(name).append("</a></td><td>").append(mtime).append("</td><td>").append(size).append("</td><td></td></tr>\n");
-            }
-            
-            // Header pour les répertoires
-            if (!directories.isEmpty()) {
-                html.append("<tr><td colspan=\"4\" style=\"background-color: #e8f5e8; font-weight: bold; padding: 10px; border-top: 2px solid #28a745;\">📁 Répertoires</td></tr>\n");
-            }
-            
-            // Lister les répertoires
-            for (java.io.File site : directories) {
-                String name = site.getName();
-                boolean isDirectory = site.isDirectory();
-                String link = isDirectory ? name + "/" : name;
-                String size = isDirectory ? "-" : formatFileSize(site.length());
-                String cssClass = isDirectory ? "dir" : "file";
-                
-                // Date de modification
-                java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm");
-                String mtime = sdf.format(new java.util.Date(site.lastModified()));
-                
-                // Encoder l'URL pour les espaces et caractères spéciaux, mais préserver le / final des répertoires
-                String encodedLink;
-                try {
-                    if (isDirectory && link.endsWith("/")) {
-                        // Pour les répertoires, encoder tout sauf le / final
-                        String nameToEncode = link.substring(0, link.length() - 1);
-                        encodedLink = java.net.URLEncoder.encode(nameToEncode, "UTF-8") + "/";
-                    } else {
-                        encodedLink = java.net.URLEncoder.encode(link, "UTF-8");
-                    }
-                } catch (java.io.UnsupportedEncodingException e) {
-                    encodedLink = link; // Fallback si UTF-8 n'est pas supporté
+                cssClass = "html";
+            } else if (index < htmlCount + directoryCount) {
+                if (index == htmlCount) {
+                    html.append("<tr><td colspan=\"4\" style=\"background-color: #e8f5e8; font-weight: bold; padding: 10px; border-top: 2px solid #28a745;\">📁 Répertoires</td></tr>\n");
                 }
-                html.append("<tr><td><a href=\"").append(encodedLink).append("\" class=\"").append(cssClass).append("\">").append(name).append("</a></td><td>").append(mtime).append("</td><td>").append(size).append("</td><td></td></tr>\n");
+                cssClass = "dir";
+            } else {
+                if (index == htmlCount + directoryCount) {
+                    html.append("<tr><td colspan=\"4\" style=\"background-color: #f8f8f8; font-weight: bold; padding: 10px; border-top: 2px solid #666;\">📁 Autres fichiers</td></tr>\n");
+                }
+                cssClass = "file";
             }
+            index++;
             
-            // Header pour les autres fichiers
-            if (!otherFiles.isEmpty()) {
-                html.append("<tr><td colspan=\"4\" style=\"background-color: #f8f8f8; font-weight: bold; padding: 10px; border-top: 2px solid #666;\">📁 Autres fichiers</td></tr>\n");
-            }
+            String name = site.name;
+            boolean isDirectory = site.isDirectory;
+            String size = isDirectory ? "-" : formatFileSize(site.size);
+            String mtime = dateFormat.format(new java.util.Date(site.lastModified));
             
-            // Lister les autres fichiers
-            for (java.io.File site : otherFiles) {
-                String name = site.getName();
-                boolean isDirectory = site.isDirectory();
-                String link = isDirectory ? name + "/" : name;
-                String size = isDirectory ? "-" : formatFileSize(site.length());
-                String cssClass = isDirectory ? "dir" : "file";
-                
-                // Date de modification
-                java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm");
-                String mtime = sdf.format(new java.util.Date(site.lastModified()));
-                
-                // Encoder l'URL pour les espaces et caractères spéciaux, mais préserver le / final des répertoires
-                String encodedLink;
-                try {
-                    if (isDirectory && link.endsWith("/")) {
-                        // Pour les répertoires, encoder tout sauf le / final
-                        String nameToEncode = link.substring(0, link.length() - 1);
-                        encodedLink = java.net.URLEncoder.encode(nameToEncode, "UTF-8") + "/";
-                    } else {
-                        encodedLink = java.net.URLEncoder.encode(link, "UTF-8");
-                    }
-                } catch (java.io.UnsupportedEncodingException e) {
-                    encodedLink = link; // Fallback si UTF-8 n'est pas supporté
-                }
-                html.append("<tr><td><a href=\"").append(encodedLink).append("\" class=\"").append(cssClass).append("\">").append(name).append("</a></td><td>").append(mtime).append("</td><td>").append(size).append("</td><td></td></tr>\n");
+            // Encoder l'URL pour les espaces et caractères spéciaux, mais préserver le / final des répertoires
+            String encodedLink;
+            try {
+                encodedLink = java.net.URLEncoder.encode(name, "UTF-8") + (isDirectory ? "/" : "");
+            } catch (java.io.UnsupportedEncodingException e) {
+                encodedLink = isDirectory ? name + "/" : name; // Fallback si UTF-8 n'est pas supporté
             }
-        } else {
-            html.append("<tr><td colspan=\"4\">Aucun fichier trouvé</td></tr>\n");
+            html.append("<tr><td><a href=\"").append(encodedLink).append("\" class=\"").append(cssClass).append("\">").append(name).append("</a></td><td>").append(mtime).append("</td><td>").append(size).append("</td><td></td></tr>\n");
         }
         
-        html.append("</table>\n");
-        html.append("</body>\n");
-        html.append("</html>\n");
-        
-        return "HTTP/1.1 200 OK\r\n" +
-               "Content-Type: text/html; charset=utf-8\r\n" +
-               "Access-Control-Allow-Origin: *\r\n" +
-               "Cache-Control: public, max-age=300\r\n" +
-               "Content-Length: " + html.length() + "\r\n" +
-               "\r\n" +
-               html.toString();
+        @Override
+        protected void end(java.io.Writer html) throws IOException {
+            html.append("</table>\n");
+            html.append("</body>\n");
+            html.append("</html>\n");
+        }
+    }
+    
+    private static java.util.List<DirectoryIndex.Entry> concat(java.util.List<DirectoryIndex.Entry> first,
+                                                               java.util.List<DirectoryIndex.Entry> second,
+                                                               java.util.List<DirectoryIndex.Entry> third) {
+        java.util.List<DirectoryIndex.Entry> all = new java.util.ArrayList<>(first.size() + second.size() + third.size());
+        all.addAll(first);
+        all.addAll(second);
+        all.addAll(third);
+        return all;
     }
     
     /**
      * Gère l'affichage du directory listing
      */
-    private String handleDirectoryListing() {
+    private HttpResponse handleDirectoryListing() {
         return handleDirectoryListing("");
     }
     
     /**
      * Gère l'affichage des sites utilisateur
      */
-    private String handleUserSitesListing() {
+    private HttpResponse handleUserSitesListing() {
         try {
             // Obtenir le répertoire des sites utilisateur
             String sitesPath = getSitesDirectory();
@@ -1545,9 +2038,9 @@ public class HttpServer {
                 sitesDir.mkdirs();
             }
             
-            java.io.File[] sites = sitesDir.listFiles();
-            if (sites == null || sites.length == 0) {
-                return createUserSitesHTML("Aucun site utilisateur trouvé", new java.io.File[0]);
+            java.util.List<DirectoryIndex.Entry> sites = DirectoryIndex.scan(sitesDir);
+            if (sites.isEmpty()) {
+                return createUserSitesHTML("Aucun site utilisateur trouvé", sites);
             }
             
             return createStandardDirectoryListing("Sites Utilisateur", sites);
@@ -1561,7 +2054,7 @@ public class HttpServer {
     /**
      * Gère l'accès à un site utilisateur spécifique - Version simple
      */
-    private String handleUserSite(String sitePath) {
+    private HttpResponse handleUserSite(String sitePath) {
         try {
             // Résoudre les chemins relatifs avec ../
             String resolvedPath = resolveRelativePath(sitePath);
@@ -1578,7 +2071,7 @@ public class HttpServer {
             
             if (!siteFile.exists()) {
                 Log.w(TAG, "Fichier non trouvé: " + siteFile.getAbsolutePath());
-                return "HTTP/1.1 404 Not Found\r\n\r\n";
+                return new HttpResponse(404);
             }
             
             if (siteFile.isDirectory()) {
@@ -1591,19 +2084,17 @@ public class HttpServer {
                     return listUserSiteDirectory(siteFile, sitePath);
                 }
                 } else {
-                    // Servir le fichier directement
+                    // Servir le fichier directement (octets bruts, texte ou binaire)
                     if (isBinaryFile(siteFile.getName())) {
-                        // Pour les fichiers binaires, utiliser la nouvelle méthode
                         return serveStaticFileDirect(siteFile);
                     } else {
-                        // Pour les fichiers texte, utiliser serveFileSimple
                         return serveFileSimple(siteFile);
                     }
                 }
             
         } catch (Exception e) {
             Log.e(TAG, "Erreur accès site utilisateur: " + sitePath, e);
-            return "HTTP/1.1 500 Internal Server Error\r\n\r\n";
+            return new HttpResponse(500);
         }
     }
     
@@ -1653,9 +2144,9 @@ public class HttpServer {
     /**
      * Gère l'upload de fichiers
      */
-    private String handleFileUpload() {
+    private HttpResponse handleFileUpload() {
         try {
-            // Pour l'instant, retourner une page d'upload simple
+            // Formulaire multipart envoyé à /api/files/upload: fichier écrit en streaming dans le stockage du FileServer
             StringBuilder html = new StringBuilder();
             html.append("<!DOCTYPE html>\n");
             html.append("<html>\n");
@@ -1683,28 +2174,23 @@ public class HttpServer {
             html.append("                <li>Créez un dossier avec votre site web</li>\n");
             html.append("                <li>Compressez-le en fichier ZIP</li>\n");
             html.append("                <li>Uploadez le fichier ZIP ci-dessous</li>\n");
-            html.append("                <li>Votre site sera automatiquement décompressé</li>\n");
+            html.append("                <li>Le fichier est enregistré dans le dossier des sites (<code>ChatAI-Files/sites</code>)</li>\n");
             html.append("            </ol>\n");
             html.append("        </div>\n");
             html.append("        <div class=\"upload-area\">\n");
             html.append("            <h3>📁 Sélectionnez votre fichier ZIP</h3>\n");
-            html.append("            <form action=\"/api/upload-process\" method=\"post\" enctype=\"multipart/form-data\">\n");
+            html.append("            <form action=\"/api/files/upload\" method=\"post\" enctype=\"multipart/form-data\">\n");
             html.append("                <input type=\"file\" name=\"sitefile\" accept=\".zip\" required>\n");
             html.append("                <br><br>\n");
             html.append("                <button type=\"submit\">🚀 Uploader le Site</button>\n");
             html.append("            </form>\n");
             html.append("        </div>\n");
-            html.append("        <p><strong>Note :</strong> Pour l'instant, utilisez l'API <code>/api/create-site/nom</code> pour créer des sites simples.</p>\n");
             html.append("    </div>\n");
             html.append("</body>\n");
             html.append("</html>\n");
             
-            return "HTTP/1.1 200 OK\r\n" +
-                   "Content-Type: text/html; charset=utf-8\r\n" +
-                   "Access-Control-Allow-Origin: *\r\n" +
-                   "Content-Length: " + html.length() + "\r\n" +
-                   "\r\n" +
-                   html.toString();
+            return HttpResponse.ok("text/html; charset=utf-8", html)
+                    .header("Access-Control-Allow-Origin", "*");
                    
         } catch (Exception e) {
             Log.e(TAG, "Erreur upload page", e);
@@ -1712,41 +2198,10 @@ public class HttpServer {
         }
     }
     
-    /**
-     * Crée un message d'aide pour les fichiers binaires
-     */
-    private String createBinaryFileMessage(String fileName) {
-        StringBuilder message = new StringBuilder();
-        message.append("\n\n");
-        message.append("<!-- ========================================== -->\n");
-        message.append("<!-- FICHIER BINAIRE NON SUPPORTÉ PAR HTTPSERVER -->\n");
-        message.append("<!-- ========================================== -->\n");
-        message.append("<div style=\"background: #fff3cd; border: 1px solid #ffeaa7; padding: 15px; margin: 20px; border-radius: 5px;\">\n");
-        message.append("    <h3 style=\"color: #856404; margin-top: 0;\">⚠️ Fichier binaire détecté</h3>\n");
-        message.append("    <p><strong>Fichier :</strong> ").append(fileName).append("</p>\n");
-        message.append("    <p><strong>Problème :</strong> HttpServer (port 8080) ne peut pas servir les fichiers binaires (images, vidéos, etc.)</p>\n");
-        message.append("    <p><strong>Solution :</strong> Utilisez WebServer (port 8888) pour les fichiers binaires</p>\n");
-        message.append("    <div style=\"background: #d1ecf1; padding: 10px; border-radius: 3px; margin: 10px 0;\">\n");
-        message.append("        <p><strong>🔗 URL alternative :</strong></p>\n");
-        message.append("        <code style=\"background: #f8f9fa; padding: 5px; border-radius: 3px;\">http://10.19.95.217:8888/web2/").append(fileName).append("</code>\n");
-        message.append("    </div>\n");
-        message.append("    <div style=\"background: #d4edda; padding: 10px; border-radius: 3px; margin: 10px 0;\">\n");
-        message.append("        <p><strong>📋 Rôles des serveurs :</strong></p>\n");
-        message.append("        <ul style=\"margin: 5px 0;\">\n");
-        message.append("            <li><strong>HttpServer (8080) :</strong> Pages HTML, API REST, interface KITT</li>\n");
-        message.append("            <li><strong>WebServer (8888) :</strong> Fichiers statiques, images, CSS, JS</li>\n");
-        message.append("        </ul>\n");
-        message.append("    </div>\n");
-        message.append("</div>\n");
-        message.append("<!-- ========================================== -->\n");
-        
-        return message.toString();
-    }
-    
     /**
      * Crée une redirection vers WebServer pour les sites
      */
-    private String createWebServerRedirect(String sitePath) {
+    private HttpResponse createWebServerRedirect(String sitePath) {
         // Obtenir l'IP dynamique du device
         String deviceIP = getDeviceIP();
         if (deviceIP.equals("NO_NETWORK")) {
@@ -1754,12 +2209,6 @@ public class HttpServer {
         }
         
         StringBuilder html = new StringBuilder();
-        html.append("HTTP/1.1 302 Found\r\n");
-        html.append("Location: http://").append(deviceIP).append(":8888/").append(sitePath).append("\r\n");
-        html.append("Content-Type: text/html; charset=utf-8\r\n");
-        html.append("Access-Control-Allow-Origin: *\r\n");
-        html.append("\r\n");
-        
         html.append("<!DOCTYPE html>\n");
         html.append("<html><head><title>Redirection vers WebServer</title></head>\n");
         html.append("<body style=\"font-family: Arial, sans-serif; text-align: center; padding: 50px;\">\n");
@@ -1770,7 +2219,11 @@ public class HttpServer {
         html.append("    <script>setTimeout(function(){ window.location.href='http://").append(deviceIP).append(":8888/").append(sitePath).append("'; }, 3000);</script>\n");
         html.append("</body></html>\n");
         
-        return html.toString();
+        return new HttpResponse(302)
+                .header("Location", "http://" + deviceIP + ":8888/" + sitePath)
+                .header("Content-Type", "text/html; charset=utf-8")
+                .header("Access-Control-Allow-Origin", "*")
+                .text(html);
     }
     
     /**
@@ -1896,122 +2349,51 @@ public class HttpServer {
     }
     
     /**
-     * Sert un fichier statique avec gestion directe des bytes (architecture WebServer)
+     * Sert un fichier statique: contenu envoyé en zero-copy depuis le fichier
      */
-    private String serveStaticFileDirect(java.io.File file) {
+    private HttpResponse serveStaticFileDirect(java.io.File file) {
         try {
-            // Lire le fichier en bytes (comme WebServer)
-            byte[] fileBytes = java.nio.file.Files.readAllBytes(file.toPath());
+            FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+            long length = channel.size();
+            Log.d(TAG, "Serving static file: " + file.getName() + " (" + length + " bytes)");
             
-            // Déterminer le type MIME
-            String mimeType = getMimeType(file.getName());
-            
-            // Headers HTTP
-            StringBuilder response = new StringBuilder();
-            response.append("HTTP/1.1 200 OK\r\n");
-            response.append("Content-Type: ").append(mimeType).append("\r\n");
-            response.append("Content-Length: ").append(fileBytes.length).append("\r\n");
-            response.append("Server: ChatAI-HttpServer/1.0 (Android)\r\n");
-            response.append("Access-Control-Allow-Origin: *\r\n");
-            response.append("Cache-Control: public, max-age=3600\r\n");
-            response.append("\r\n");
-            
-            // Note: Cette méthode retourne seulement les headers
-            // Le contenu binaire sera géré par le serveur HTTP directement
-            Log.d(TAG, "Serving static file: " + file.getName() + " (" + fileBytes.length + " bytes)");
-            
-            // Pour les fichiers binaires, on ne peut pas les ajouter à une String
-            // Cette méthode retourne seulement les headers, le contenu binaire
-            // sera géré par le serveur HTTP directement
-            return response.toString() + createBinaryFileMessage(file.getName());
+            return new HttpResponse(200)
+                    .header("Content-Type", getMimeType(file.getName()))
+                    .header("Server", "ChatAI-HttpServer/1.0 (Android)")
+                    .header("Access-Control-Allow-Origin", "*")
+                    .header("Cache-Control", "public, max-age=3600")
+                    .file(channel, 0, length);
             
         } catch (Exception e) {
             Log.e(TAG, "Erreur lecture fichier statique: " + file.getAbsolutePath(), e);
-            return "HTTP/1.1 500 Internal Server Error\r\n\r\n";
-        }
-    }
-    
-    /**
-     * Sert un fichier binaire utilisateur
-     */
-    private String serveBinaryFile(java.io.File file) {
-        try {
-            // Lire le fichier binaire
-            byte[] fileBytes = java.nio.file.Files.readAllBytes(file.toPath());
-            
-            // Headers HTTP pour fichier binaire
-            String mimeType = getMimeType(file.getName());
-            StringBuilder response = new StringBuilder();
-            response.append("HTTP/1.1 200 OK\r\n");
-            response.append("Content-Type: ").append(mimeType).append("\r\n");
-            response.append("Content-Length: ").append(fileBytes.length).append("\r\n");
-            response.append("Access-Control-Allow-Origin: *\r\n");
-            response.append("Cache-Control: public, max-age=3600\r\n");
-            response.append("\r\n");
-            
-            // Pour les fichiers binaires, on ne peut pas les ajouter à une String
-            // Cette méthode retourne seulement les headers, le contenu binaire
-            // sera géré par le serveur HTTP directement
-            Log.d(TAG, "Serving binary file: " + file.getName() + " (" + fileBytes.length + " bytes)");
-            
-            // Note: Cette méthode ne peut pas retourner le contenu binaire dans une String
-            // Il faudrait modifier l'architecture pour gérer les bytes directement
-            return response.toString() + createBinaryFileMessage(file.getName());
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Erreur lecture fichier binaire: " + file.getAbsolutePath(), e);
-            return "HTTP/1.1 500 Internal Server Error\r\n\r\n";
+            return new HttpResponse(500);
         }
     }
     
     /**
      * Sert un fichier utilisateur - Version ultra-simple
      */
-    private String serveFileSimple(java.io.File file) {
+    private HttpResponse serveFileSimple(java.io.File file) {
         try {
-            // Lire le fichier brut
-            byte[] fileBytes = java.nio.file.Files.readAllBytes(file.toPath());
-            
-            // Headers HTTP minimaux
-            String mimeType = getMimeType(file.getName());
-            StringBuilder response = new StringBuilder();
-            response.append("HTTP/1.1 200 OK\r\n");
-            response.append("Content-Type: ").append(mimeType).append("\r\n");
-            response.append("Content-Length: ").append(fileBytes.length).append("\r\n");
-            response.append("\r\n");
-            
-            // Pour les fichiers binaires, on ne peut pas les ajouter à une String
-            // Mais on va essayer quand même (même si c'est corrompu)
-            if (isBinaryFile(file.getName())) {
-                Log.w(TAG, "Serving binary file with potential corruption: " + file.getName());
-                // Essayer de servir le contenu binaire même si c'est corrompu
-                try {
-                    response.append(new String(fileBytes, java.nio.charset.StandardCharsets.UTF_8));
-                } catch (Exception e) {
-                    Log.e(TAG, "Erreur conversion binaire: " + e.getMessage());
-                }
-                return response.toString();
-            }
-            
-            // Ajouter le contenu brut (seulement pour les fichiers texte)
-            response.append(new String(fileBytes, java.nio.charset.StandardCharsets.UTF_8));
-            
-            return response.toString();
+            FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+            return new HttpResponse(200)
+                    .header("Content-Type", getMimeType(file.getName()))
+                    .file(channel, 0, channel.size());
             
         } catch (Exception e) {
             Log.e(TAG, "Erreur lecture fichier: " + file.getAbsolutePath(), e);
-            return "HTTP/1.1 500 Internal Server Error\r\n\r\n";
+            return new HttpResponse(500);
         }
     }
     
     /**
      * Liste le contenu d'un dossier de site utilisateur
      */
-    private String listUserSiteDirectory(java.io.File directory, String sitePath) {
+    private HttpResponse listUserSiteDirectory(java.io.File directory, String sitePath) {
         try {
-            java.io.File[] files = directory.listFiles();
-            if (files == null || files.length == 0) {
-                return createStandardDirectoryListing("Dossier vide: " + sitePath, new java.io.File[0]);
+            java.util.List<DirectoryIndex.Entry> files = DirectoryIndex.scan(directory);
+            if (files.isEmpty()) {
+                return createStandardDirectoryListing("Dossier vide: " + sitePath, files);
             }
             
             return createStandardDirectoryListing("Contenu: " + sitePath, files);
@@ -2022,14 +2404,11 @@ public class HttpServer {
         }
     }
     
-    private String handleDirectoryListing(String subPath) {
+    private HttpResponse handleDirectoryListing(String subPath) {
         try {
             // Utiliser le FileServer pour obtenir la liste des fichiers
             if (fileServer != null) {
-                // Utiliser la nouvelle méthode qui retourne seulement le JSON
-                String filesJson = fileServer.getFilesJson();
-                
-                return createSimpleDirectoryListing(filesJson, subPath);
+                return createSimpleDirectoryListing(subPath);
             } else {
                 return createHttpErrorResponse(503, "File server not available");
             }
@@ -2039,37 +2418,10 @@ public class HttpServer {
         }
     }
     
-    /**
-     * Extrait le JSON de la réponse HTTP
-     */
-    private String extractJsonFromResponse(String httpResponse) {
-        try {
-            // Chercher la ligne vide qui sépare les headers du body
-            int emptyLineIndex = httpResponse.indexOf("\r\n\r\n");
-            if (emptyLineIndex != -1) {
-                // Extraire le JSON après les headers
-                return httpResponse.substring(emptyLineIndex + 4);
-            }
-            
-            // Fallback: chercher le début du JSON
-            int jsonStart = httpResponse.indexOf("{");
-            if (jsonStart != -1) {
-                return httpResponse.substring(jsonStart);
-            }
-            
-            // Si rien trouvé, retourner la réponse complète
-            return httpResponse;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Erreur extraction JSON", e);
-            return httpResponse;
-        }
-    }
-    
     /**
      * Crée un listing de répertoire simple - utilise directement le FileServer
      */
-    private String createSimpleDirectoryListing(String filesJson, String subPath) {
+    private HttpResponse createSimpleDirectoryListing(String subPath) {
         try {
             // Obtenir les fichiers du répertoire actuel
             String currentPath = getSitesDirectory();
@@ -2082,10 +2434,7 @@ public class HttpServer {
                 return createHttpErrorResponse(404, "Directory not found");
             }
             
-            java.io.File[] files = currentDir.listFiles();
-            if (files == null) {
-                files = new java.io.File[0];
-            }
+            java.util.List<DirectoryIndex.Entry> files = DirectoryIndex.scan(currentDir);
             
             // Utiliser le nouveau format standard
             return createStandardDirectoryListing("Directory: " + subPath, files);
@@ -2096,200 +2445,10 @@ public class HttpServer {
         }
     }
     
-
-    /**
-     * Crée une page HTML simple pour l'affichage des fichiers
-     */
-    private String createDirectoryListingHTML(String filesJson, String subPath) {
-        StringBuilder html = new StringBuilder();
-        
-        html.append("<!DOCTYPE html>\n");
-        html.append("<html>\n");
-        html.append("<head>\n");
-        html.append("    <meta charset=\"UTF-8\">\n");
-        html.append("    <title>Directory Listing</title>\n");
-        html.append("    <style>\n");
-        html.append("        body {\n");
-        html.append("            font-family: 'Courier New', monospace;\n");
-        html.append("            background: #000;\n");
-        html.append("            color: #ff3333;\n");
-        html.append("            margin: 0;\n");
-        html.append("            padding: 20px;\n");
-        html.append("        }\n");
-        html.append("        .header {\n");
-        html.append("            background: linear-gradient(135deg, rgba(255, 51, 51, 0.1), rgba(255, 51, 51, 0.05));\n");
-        html.append("            border: 2px solid #ff3333;\n");
-        html.append("            border-radius: 8px;\n");
-        html.append("            padding: 15px;\n");
-        html.append("            margin-bottom: 20px;\n");
-        html.append("            text-align: center;\n");
-        html.append("        }\n");
-        html.append("        .header h1 {\n");
-        html.append("            margin: 0;\n");
-        html.append("            text-shadow: 0 0 10px #ff3333;\n");
-        html.append("        }\n");
-        html.append("        .file-list {\n");
-        html.append("            background: rgba(0, 0, 0, 0.8);\n");
-        html.append("            border: 1px solid #ff3333;\n");
-        html.append("            border-radius: 8px;\n");
-        html.append("            padding: 10px;\n");
-        html.append("        }\n");
-        html.append("        .file-item {\n");
-        html.append("            display: flex;\n");
-        html.append("            align-items: center;\n");
-        html.append("            padding: 8px;\n");
-        html.append("            margin: 2px 0;\n");
-        html.append("            border-radius: 4px;\n");
-        html.append("            transition: all 0.3s ease;\n");
-        html.append("            cursor: pointer;\n");
-        html.append("        }\n");
-        html.append("        .file-item:hover {\n");
-        html.append("            background: rgba(255, 51, 51, 0.1);\n");
-        html.append("            transform: translateX(5px);\n");
-        html.append("        }\n");
-        html.append("        .file-icon {\n");
-        html.append("            margin-right: 10px;\n");
-        html.append("            font-size: 18px;\n");
-        html.append("        }\n");
-        html.append("        .file-name {\n");
-        html.append("            flex: 1;\n");
-        html.append("            font-weight: bold;\n");
-        html.append("        }\n");
-        html.append("        .file-size {\n");
-        html.append("            margin-right: 10px;\n");
-        html.append("            color: #ff6666;\n");
-        html.append("            font-size: 12px;\n");
-        html.append("        }\n");
-        html.append("        .file-date {\n");
-        html.append("            color: #ff6666;\n");
-        html.append("            font-size: 12px;\n");
-        html.append("        }\n");
-        html.append("        a {\n");
-        html.append("            color: #ff3333;\n");
-        html.append("            text-decoration: none;\n");
-        html.append("        }\n");
-        html.append("        a:hover {\n");
-        html.append("            color: #ff6666;\n");
-        html.append("            text-shadow: 0 0 5px #ff3333;\n");
-        html.append("        }\n");
-        html.append("        .breadcrumb {\n");
-        html.append("            margin-bottom: 15px;\n");
-        html.append("            padding: 5px;\n");
-        html.append("            background: rgba(255, 51, 51, 0.05);\n");
-        html.append("            border-radius: 4px;\n");
-        html.append("        }\n");
-        html.append("        .stats {\n");
-        html.append("            background: rgba(255, 51, 51, 0.05);\n");
-        html.append("            padding: 10px;\n");
-        html.append("            border-radius: 4px;\n");
-        html.append("            margin-bottom: 15px;\n");
-        html.append("            font-size: 12px;\n");
-        html.append("            color: #ff6666;\n");
-        html.append("        }\n");
-        html.append("    </style>\n");
-        html.append("</head>\n");
-        html.append("<body>\n");
-        html.append("    <div class=\"header\">\n");
-        html.append("        <h1>🚗 KITT File Explorer</h1>\n");
-        html.append("        <p>Directory: ").append(subPath.isEmpty() ? "/" : subPath).append("</p>\n");
-        html.append("    </div>\n");
-        
-        // Breadcrumb navigation
-        if (!subPath.isEmpty()) {
-            html.append("    <div class=\"breadcrumb\">\n");
-            html.append("        <a href=\"/files\">📁 .. (Parent Directory)</a>\n");
-            html.append("    </div>\n");
-        }
-        
-        // JavaScript pour parser et afficher les fichiers
-        html.append("    <div id=\"fileList\">\n");
-        html.append("        <div class=\"file-item\">\n");
-        html.append("            <span class=\"file-icon\">⏳</span>\n");
-        html.append("            <span class=\"file-name\">Chargement des fichiers...</span>\n");
-        html.append("        </div>\n");
-        html.append("    </div>\n");
-        html.append("    <script>\n");
-        html.append("        const filesData = ").append(filesJson).append(";\n");
-        html.append("        const subPath = '").append(subPath).append("';\n");
-        html.append("        \n");
-        html.append("        function formatFileSize(bytes) {\n");
-        html.append("            if (bytes === 0) return '0 B';\n");
-        html.append("            const k = 1024;\n");
-        html.append("            const sizes = ['B', 'KB', 'MB', 'GB'];\n");
-        html.append("            const i = Math.floor(Math.log(bytes) / Math.log(k));\n");
-        html.append("            return parseFloat((bytes / Math.pow(k, i)).toFixed(1)) + ' ' + sizes[i];\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        function formatDate(timestamp) {\n");
-        html.append("            return new Date(timestamp).toLocaleDateString('fr-FR');\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        function getFileIcon(fileName, isDirectory) {\n");
-        html.append("            if (isDirectory) return '📁';\n");
-        html.append("            const ext = fileName.split('.').pop().toLowerCase();\n");
-        html.append("            const icons = {\n");
-        html.append("                'html': '🌐', 'htm': '🌐', 'css': '🎨', 'js': '⚡', 'json': '📋',\n");
-        html.append("                'xml': '📄', 'txt': '📝', 'md': '📝', 'jpg': '🖼️', 'jpeg': '🖼️',\n");
-        html.append("                'png': '🖼️', 'gif': '🖼️', 'svg': '🖼️', 'mp4': '🎬', 'avi': '🎬',\n");
-        html.append("                'mkv': '🎬', 'mp3': '🎵', 'wav': '🎵', 'ogg': '🎵', 'zip': '📦',\n");
-        html.append("                'rar': '📦', '7z': '📦', 'pdf': '📕', 'doc': '📄', 'docx': '📄'\n");
-        html.append("            };\n");
-        html.append("            return icons[ext] || '📄';\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        function displayFiles() {\n");
-        html.append("            const fileList = document.getElementById('fileList');\n");
-        html.append("            \n");
-        html.append("            if (!filesData.files || filesData.files.length === 0) {\n");
-        html.append("                fileList.innerHTML = '<div class=\"file-item\"><span class=\"file-icon\">📂</span><span class=\"file-name\">Directory is empty</span></div>';\n");
-        html.append("                return;\n");
-        html.append("            }\n");
-        html.append("            \n");
-        html.append("            let html = '<div class=\"stats\">📊 ' + filesData.files.length + ' éléments dans ' + filesData.storagePath + '</div>';\n");
-        html.append("            \n");
-        html.append("            filesData.files.forEach(file => {\n");
-        html.append("                const icon = getFileIcon(file.name, file.isDirectory);\n");
-        html.append("                const size = file.isDirectory ? '' : formatFileSize(file.size);\n");
-        html.append("                const date = formatDate(file.lastModified);\n");
-        html.append("                const relativePath = subPath.endsWith('/') ? subPath + file.name : subPath + '/' + file.name;\n");
-        html.append("                \n");
-        html.append("                html += '<div class=\"file-item\" onclick=\"handleFileClick(\\'' + file.name + '\\', ' + file.isDirectory + ')\">';\n");
-        html.append("                html += '<span class=\"file-icon\">' + icon + '</span>';\n");
-        html.append("                html += '<a href=\"' + (file.isDirectory ? '/files/' + file.name : '/api/files/download/' + file.name) + '\" class=\"file-name\">' + file.name + '</a>';\n");
-        html.append("                if (size) html += '<span class=\"file-size\">' + size + '</span>';\n");
-        html.append("                html += '<span class=\"file-date\">' + date + '</span>';\n");
-        html.append("                html += '</div>';\n");
-        html.append("            });\n");
-        html.append("            \n");
-        html.append("            fileList.innerHTML = html;\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        function handleFileClick(fileName, isDirectory) {\n");
-        html.append("            if (isDirectory) {\n");
-        html.append("                window.location.href = '/files/' + fileName;\n");
-        html.append("            } else {\n");
-        html.append("                window.open('/api/files/download/' + fileName, '_blank');\n");
-        html.append("            }\n");
-        html.append("        }\n");
-        html.append("        \n");
-        html.append("        // Afficher les fichiers au chargement\n");
-        html.append("        displayFiles();\n");
-        html.append("    </script>\n");
-        html.append("</body>\n");
-        html.append("</html>\n");
-        
-        return "HTTP/1.1 200 OK\r\n" +
-               "Content-Type: text/html; charset=utf-8\r\n" +
-               "Access-Control-Allow-Origin: *\r\n" +
-               "Cache-Control: public, max-age=300\r\n" +
-               "Content-Length: " + html.length() + "\r\n" +
-               "\r\n" +
-               html.toString();
-    }
-    
     public void stop() {
         isRunning = false;
         executor.shutdownNow();
+        timeoutScheduler.shutdownNow();
         try {
             if (selector != null) selector.close();
             if (serverChannel != null) serverChannel.close();
@@ -408,8 +408,10 @@ public class MainActivity extends FragmentActivity implements com.chatai.fragmen
             webServer.start();
             Log.i(TAG, "Serveur web démarré sur le port 8888");
             
-            // Lier le FileServer au HttpServer
+            // Lier les autres serveurs au HttpServer
             httpServer.setFileServer(fileServer);
+            httpServer.setWebSocketServer(webSocketServer);
+            httpServer.setWebServer(webServer);
             
             // Injecter les serveurs dans l'interface web
             WebAppInterface.setServers(httpServer, webSocketServer, aiService, fileServer);
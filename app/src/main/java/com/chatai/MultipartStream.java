@@ -0,0 +1,233 @@
+package com.chatai;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parser multipart/form-data (RFC 7578) incrémental: les octets arrivent au fil des lectures,
+ * le contenu des parties est transmis au handler sans jamais être gardé en entier.
+ * Seule une fenêtre fixe est conservée pour détecter un délimiteur à cheval sur deux lectures.
+ */
+public final class MultipartStream {
+    private static final int WINDOW_SIZE = 64 * 1024;
+    private static final int MAX_PART_HEADER_BYTES = 8192;
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+
+    /**
+     * Reçoit les parties dans l'ordre; les buffers de partData ne sont valides que pendant l'appel
+     */
+    public interface PartHandler {
+        /**
+         * @param headers headers de la partie, noms en minuscules
+         */
+        void startPart(Map<String, String> headers) throws IOException;
+
+        void partData(ByteBuffer data) throws IOException;
+
+        void endPart() throws IOException;
+    }
+
+    private enum State {
+        PREAMBLE, AFTER_DELIMITER, HEADERS, DATA, EPILOGUE
+    }
+
+    private final byte[] delimiter;
+    private final PartHandler handler;
+    // Octets reçus non encore traités: window[start, end)
+    private final byte[] window;
+    private int start;
+    private int end;
+    private State state = State.PREAMBLE;
+
+    public MultipartStream(String boundary, PartHandler handler) {
+        // Le délimiteur inclut le CRLF qui le précède; le premier est ajouté en tête du flux
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.handler = handler;
+        this.window = new byte[WINDOW_SIZE + delimiter.length];
+        window[end++] = '\r';
+        window[end++] = '\n';
+    }
+
+    /**
+     * Boundary d'un Content-Type multipart/form-data, null pour un autre type
+     */
+    public static String getBoundary(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.US).startsWith("multipart/form-data")) {
+            return null;
+        }
+        for (String param : contentType.split(";")) {
+            param = param.trim();
+            if (param.toLowerCase(Locale.US).startsWith("boundary=")) {
+                String boundary = param.substring("boundary=".length());
+                if (boundary.length() >= 2 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+                // RFC 2046: 1 à 70 caractères
+                return boundary.isEmpty() || boundary.length() > 70 ? null : boundary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Paramètre d'un header Content-Disposition (name, filename), null si absent
+     */
+    public static String getDispositionParameter(String disposition, String name) {
+        if (disposition == null) {
+            return null;
+        }
+        for (String param : disposition.split(";")) {
+            param = param.trim();
+            int equals = param.indexOf('=');
+            if (equals > 0 && param.substring(0, equals).trim().equalsIgnoreCase(name)) {
+                String value = param.substring(equals + 1).trim();
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Consomme tous les octets de data
+     */
+    public void write(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            if (end == window.length) {
+                compact();
+            }
+            int count = Math.min(data.remaining(), window.length - end);
+            data.get(window, end, count);
+            end += count;
+            process();
+        }
+    }
+
+    /**
+     * Fin du corps: le délimiteur final doit avoir été reçu
+     */
+    public void finish() throws IOException {
+        if (state != State.EPILOGUE) {
+            throw new HttpRequestParser.HttpParseException(400, "Corps multipart incomplet");
+        }
+    }
+
+    private void process() throws IOException {
+        while (true) {
+            switch (state) {
+                case PREAMBLE:
+                case DATA: {
+                    int found = indexOf(delimiter, start, end);
+                    if (found < 0) {
+                        // Garder de quoi reconnaître un délimiteur coupé en deux
+                        int safeEnd = Math.max(start, end - (delimiter.length - 1));
+                        emit(safeEnd);
+                        return;
+                    }
+                    emit(found);
+                    if (state == State.DATA) {
+                        handler.endPart();
+                    }
+                    start = found + delimiter.length;
+                    state = State.AFTER_DELIMITER;
+                    break;
+                }
+
+                case AFTER_DELIMITER:
+                    if (end - start < 2) {
+                        return;
+                    }
+                    if (window[start] == '-' && window[start + 1] == '-') {
+                        state = State.EPILOGUE;
+                    } else if (window[start] == '\r' && window[start + 1] == '\n') {
+                        state = State.HEADERS;
+                    } else {
+                        throw new HttpRequestParser.HttpParseException(400, "Délimiteur multipart invalide");
+                    }
+                    start += 2;
+                    break;
+
+                case HEADERS: {
+                    int headersEnd;
+                    if (end - start >= 2 && window[start] == '\r' && window[start + 1] == '\n') {
+                        headersEnd = start; // Partie sans headers
+                    } else {
+                        headersEnd = indexOf(HEADER_END, start, end);
+                    }
+                    if (headersEnd < 0) {
+                        if (end - start > MAX_PART_HEADER_BYTES) {
+                            throw new HttpRequestParser.HttpParseException(431, "Headers multipart trop volumineux");
+                        }
+                        return;
+                    }
+                    handler.startPart(parseHeaders(start, headersEnd));
+                    start = headersEnd + (headersEnd == start ? 2 : HEADER_END.length);
+                    state = State.DATA;
+                    break;
+                }
+
+                default:
+                    // Épilogue ignoré
+                    start = end;
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Transmet window[start, to) au handler (contenu d'une partie) ou l'ignore (préambule)
+     */
+    private void emit(int to) throws IOException {
+        if (to > start && state == State.DATA) {
+            handler.partData(ByteBuffer.wrap(window, start, to - start));
+        }
+        start = Math.max(start, to);
+    }
+
+    private Map<String, String> parseHeaders(int from, int to) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        // Les navigateurs envoient les noms de fichiers en UTF-8
+        String text = new String(window, from, to - from, StandardCharsets.UTF_8);
+        for (String line : text.split("\r\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new HttpRequestParser.HttpParseException(400, "Header multipart invalide");
+            }
+            headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+        }
+        return headers;
+    }
+
+    private void compact() {
+        System.arraycopy(window, start, window, 0, end - start);
+        end -= start;
+        start = 0;
+    }
+
+    private int indexOf(byte[] pattern, int from, int to) {
+        int last = to - pattern.length;
+        byte first = pattern[0];
+        for (int i = from; i <= last; i++) {
+            if (window[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < pattern.length && window[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,198 @@
+package com.chatai;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * File d'envoi d'une connexion NIO: buffers, portions de fichiers et corps générés envoyés dans l'ordre,
+ * sans jamais bloquer le sélecteur. Ce que la socket n'accepte pas attend le prochain OP_WRITE.
+ * Au-dessus du seuil haut, la lecture du client est suspendue jusqu'au seuil bas.
+ */
+public final class OutboundQueue {
+    public static final long DEFAULT_HIGH_WATERMARK = 256 * 1024;
+    public static final long DEFAULT_LOW_WATERMARK = 64 * 1024;
+
+    // Nombre max de buffers passés à un seul write() groupé
+    private static final int MAX_GATHER = 16;
+    // Part tirée des corps générés par passage du sélecteur: une réponse rapide laisse la main aux autres connexions
+    private static final long MAX_PRODUCED_PER_WRITE = 256 * 1024;
+
+    /**
+     * Corps tiré à la demande: le morceau suivant n'est produit qu'une fois tout ce qui le précède envoyé,
+     * la mémoire reste donc bornée à un morceau quelle que soit la taille de la réponse
+     */
+    public interface Producer {
+        /**
+         * Morceau suivant (appelé sur le sélecteur, ne doit pas bloquer), null quand le corps est terminé
+         */
+        ByteBuffer next() throws IOException;
+
+        /**
+         * Libère la source (corps terminé ou connexion fermée)
+         */
+        void close();
+    }
+
+    private final long highWatermark;
+    private final long lowWatermark;
+    // ByteBuffer, FileTransfer.Pending ou Producer
+    private final ArrayDeque<Object> segments = new ArrayDeque<>();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private long queuedBytes;
+    private boolean readSuspended;
+
+    public OutboundQueue() {
+        this(DEFAULT_HIGH_WATERMARK, DEFAULT_LOW_WATERMARK);
+    }
+
+    public OutboundQueue(long highWatermark, long lowWatermark) {
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+    }
+
+    /**
+     * Ajoute des buffers (headers, corps...) en fin de file
+     */
+    public void add(ByteBuffer... buffers) {
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.hasRemaining()) {
+                segments.addLast(buffer);
+                queuedBytes += buffer.remaining();
+            }
+        }
+    }
+
+    /**
+     * Ajoute un envoi de fichier (headers + contenu en zero-copy); le fichier est fermé une fois envoyé
+     */
+    public void addFile(FileTransfer.Pending file) {
+        segments.addLast(file);
+        queuedBytes += file.remaining();
+    }
+
+    /**
+     * Ajoute un corps généré à la demande; il ne compte dans les octets en attente que morceau par morceau
+     */
+    public void addProducer(Producer producer) {
+        segments.addLast(producer);
+    }
+
+    /**
+     * Écrit autant que la socket l'accepte; les buffers consécutifs partent en un seul write() groupé
+     * @return true si la file est vide
+     */
+    public boolean writeTo(SocketChannel channel) throws IOException {
+        long produced = 0;
+        while (!segments.isEmpty()) {
+            Object head = segments.peekFirst();
+
+            if (head instanceof Producer) {
+                // Tout ce qui précède est parti: on tire le morceau suivant
+                if (produced >= MAX_PRODUCED_PER_WRITE) {
+                    return false;
+                }
+                Producer producer = (Producer) head;
+                ByteBuffer chunk = producer.next();
+                if (chunk == null) {
+                    producer.close();
+                    segments.pollFirst();
+                } else if (chunk.hasRemaining()) {
+                    produced += chunk.remaining();
+                    segments.addFirst(chunk);
+                    queuedBytes += chunk.remaining();
+                }
+                continue;
+            }
+
+            if (head instanceof FileTransfer.Pending) {
+                FileTransfer.Pending file = (FileTransfer.Pending) head;
+                long before = file.remaining();
+                boolean done = file.writeTo(channel);
+                queuedBytes -= before - file.remaining();
+                if (!done) {
+                    return false;
+                }
+                file.close();
+                segments.pollFirst();
+                continue;
+            }
+
+            int count = 0;
+            for (Object segment : segments) {
+                if (!(segment instanceof ByteBuffer) || count == MAX_GATHER) {
+                    break;
+                }
+                gather[count++] = (ByteBuffer) segment;
+            }
+            long written = channel.write(gather, 0, count);
+            Arrays.fill(gather, 0, count, null);
+            queuedBytes -= written;
+            while (segments.peekFirst() instanceof ByteBuffer && !((ByteBuffer) segments.peekFirst()).hasRemaining()) {
+                segments.pollFirst();
+            }
+            if (segments.peekFirst() == head) {
+                // Le premier buffer n'est pas parti en entier: tampon d'envoi plein
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Envoie ce qui peut l'être puis ajuste l'intérêt de la clé: OP_WRITE tant que la file n'est pas vide,
+     * OP_READ suspendu au-dessus du seuil haut (ou si readAllowed est faux) et repris sous le seuil bas
+     * @return true si la file est vide
+     */
+    public boolean flush(SelectionKey key, boolean readAllowed) throws IOException {
+        boolean drained = writeTo((SocketChannel) key.channel());
+
+        if (queuedBytes >= highWatermark) {
+            readSuspended = true;
+        } else if (queuedBytes <= lowWatermark) {
+            readSuspended = false;
+        }
+
+        int ops = key.interestOps();
+        ops = drained ? ops & ~SelectionKey.OP_WRITE : ops | SelectionKey.OP_WRITE;
+        ops = readAllowed && !readSuspended ? ops | SelectionKey.OP_READ : ops & ~SelectionKey.OP_READ;
+        key.interestOps(ops);
+        return drained;
+    }
+
+    public boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    /**
+     * Octets en attente (buffers et fichiers)
+     */
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * Vrai tant que la lecture est suspendue par le seuil haut
+     */
+    public boolean isReadSuspended() {
+        return readSuspended;
+    }
+
+    /**
+     * Abandonne les envois en attente (connexion fermée), ferme les fichiers et les corps générés
+     */
+    public void clear() {
+        for (Object segment : segments) {
+            if (segment instanceof FileTransfer.Pending) {
+                ((FileTransfer.Pending) segment).close();
+            } else if (segment instanceof Producer) {
+                ((Producer) segment).close();
+            }
+        }
+        segments.clear();
+        queuedBytes = 0;
+    }
+}
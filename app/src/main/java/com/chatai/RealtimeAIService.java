@@ -3,10 +3,22 @@ package com.chatai;
 import android.content.Context;
 import android.util.Log;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -43,12 +55,100 @@ public class RealtimeAIService {
         "facebook/blenderbot_small-90M"
     };
     
+    // Cache mémoire devant SQLite, borné en entrées et en caractères
+    private static final int MEMORY_CACHE_MAX_ENTRIES = 256;
+    private static final long MEMORY_CACHE_MAX_CHARS = 512 * 1024;
+    
+    // LinkedHashMap en ordre d'accès = LRU
+    private final LinkedHashMap<String, String> memoryCache = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryCacheChars = 0;
+    // Requêtes en cours par clé: les demandes identiques simultanées partagent le même appel amont
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong databaseHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong coalescedRequests = new AtomicLong();
+    
+    // Flux de réponses: démarrés, terminés, annulés, en erreur; délai jusqu'au premier fragment
+    private final AtomicLong streamsStarted = new AtomicLong();
+    private final AtomicLong streamsCompleted = new AtomicLong();
+    private final AtomicLong streamsCancelled = new AtomicLong();
+    private final AtomicLong streamsFailed = new AtomicLong();
+    private final AtomicLong firstTokenTotalMs = new AtomicLong();
+    private final AtomicLong firstTokenSamples = new AtomicLong();
+    private volatile long lastFirstTokenMs = -1;
+    
+    /**
+     * Reçoit une réponse en streaming (appelé depuis un thread du service, dans l'ordre)
+     */
+    public interface StreamListener {
+        /** Fragment de texte, déjà nettoyé */
+        void onDelta(String delta);
+        
+        /** Fin du flux, appelé une seule fois, y compris après une annulation */
+        void onDone(StreamResult result);
+    }
+    
+    /**
+     * Bilan d'un flux; ttftMs vaut -1 si aucun fragment n'a été produit
+     */
+    public static final class StreamResult {
+        public static final String COMPLETE = "complete";
+        public static final String CANCELLED = "cancelled";
+        public static final String ERROR = "error";
+        
+        public final String status;
+        public final String source;
+        public final long ttftMs;
+        public final long totalMs;
+        public final int deltas;
+        public final int chars;
+        public final String error;
+        
+        StreamResult(String status, String source, long ttftMs, long totalMs, int deltas, int chars, String error) {
+            this.status = status;
+            this.source = source;
+            this.ttftMs = ttftMs;
+            this.totalMs = totalMs;
+            this.deltas = deltas;
+            this.chars = chars;
+            this.error = error;
+        }
+    }
+    
+    /**
+     * Flux en cours: cancel() coupe l'appel amont, le listener reçoit ensuite onDone(CANCELLED)
+     */
+    public static final class StreamHandle {
+        private volatile boolean cancelled;
+        private volatile Call call;
+        
+        public void cancel() {
+            cancelled = true;
+            Call current = call;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+        
+        public boolean isCancelled() {
+            return cancelled;
+        }
+        
+        void setCall(Call newCall) {
+            call = newCall;
+            if (cancelled) {
+                newCall.cancel(); // Annulé pendant la création de l'appel
+            }
+        }
+    }
+    
     public RealtimeAIService(Context context, HttpServer httpServer, WebSocketServer webSocketServer) {
         this.context = context;
         this.httpServer = httpServer;
         this.webSocketServer = webSocketServer;
         this.secureConfig = new SecureConfig(context);
-        this.chatDatabase = new ChatDatabase(context);
+        this.chatDatabase = ChatDatabase.getInstance(context);
         this.executor = Executors.newFixedThreadPool(4);
         
         // Initialiser le client HTTP
@@ -56,48 +156,383 @@ public class RealtimeAIService {
             .connectTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
             .readTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
             .build();
+        
+        // Les clients WebSocket peuvent demander une réponse en streaming
+        if (webSocketServer != null) {
+            webSocketServer.setStreamingService(this);
+        }
     }
     
     /**
-     * Traite une requête IA en temps réel
+     * Traite une requête IA en temps réel: cache mémoire, puis requête partagée avec les demandes
+     * identiques déjà en cours, sinon un seul calcul (SQLite puis services d'IA)
      */
     public CompletableFuture<String> processAIRequest(String message, String personality) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // Vérifier le cache d'abord
-                String cacheKey = message + "_" + personality;
-                String cachedResponse = chatDatabase.getCachedResponse(cacheKey);
+        String cacheKey = message + "_" + personality;
+        String memoryResponse = getFromMemoryCache(cacheKey);
+        if (memoryResponse != null) {
+            memoryHits.incrementAndGet();
+            return CompletableFuture.completedFuture(memoryResponse);
+        }
+        
+        CompletableFuture<String> request = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(cacheKey, request);
+        if (existing != null) {
+            coalescedRequests.incrementAndGet();
+            Log.d(TAG, "Requête identique déjà en cours, réponse partagée");
+            // Copie: un appelant qui annule ne touche pas aux autres
+            return existing.thenApply(response -> response);
+        }
+        
+        try {
+            executor.execute(() -> {
+                try {
+                    request.complete(computeResponse(message, personality, cacheKey));
+                } catch (Exception e) {
+                    request.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(cacheKey, request);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Service arrêté
+            inFlight.remove(cacheKey, request);
+            request.completeExceptionally(e);
+        }
+        return request.thenApply(response -> response);
+    }
+    
+    private String computeResponse(String message, String personality, String cacheKey) {
+        try {
+            // Vérifier le cache d'abord
+            String cachedResponse = chatDatabase.getCachedResponse(cacheKey);
+            if (cachedResponse != null) {
+                Log.d(TAG, "Réponse trouvée dans le cache");
+                databaseHits.incrementAndGet();
+                putInMemoryCache(cacheKey, cachedResponse);
+                return cachedResponse;
+            }
+            cacheMisses.incrementAndGet();
+            
+            // Obtenir le token API sécurisé
+            String apiToken = secureConfig.getApiToken();
+            if (apiToken == null || apiToken.isEmpty()) {
+                return getFallbackResponse(message, personality);
+            }
+            
+            // Essayer différents services d'IA
+            String response = tryHuggingFaceAPI(message, personality, apiToken);
+            if (response == null) {
+                response = tryOpenAIAPI(message, personality, apiToken);
+            }
+            
+            if (response == null) {
+                response = getFallbackResponse(message, personality);
+            }
+            
+            // Sauvegarder dans le cache
+            chatDatabase.cacheAIResponse(cacheKey, response);
+            putInMemoryCache(cacheKey, response);
+            
+            return response;
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Erreur traitement requête IA", e);
+            return getErrorResponse(e.getMessage());
+        }
+    }
+    
+    /**
+     * Réponse en mémoire (la marque comme la plus récente), null si absente
+     */
+    private String getFromMemoryCache(String cacheKey) {
+        synchronized (memoryCache) {
+            return memoryCache.get(cacheKey);
+        }
+    }
+    
+    private void putInMemoryCache(String cacheKey, String response) {
+        long chars = cacheKey.length() + response.length();
+        if (chars > MEMORY_CACHE_MAX_CHARS / 4) {
+            return; // Trop grosse: reste seulement dans SQLite
+        }
+        synchronized (memoryCache) {
+            String previous = memoryCache.put(cacheKey, response);
+            if (previous != null) {
+                memoryCacheChars -= cacheKey.length() + previous.length();
+            }
+            memoryCacheChars += chars;
+            Iterator<Map.Entry<String, String>> iterator = memoryCache.entrySet().iterator();
+            while ((memoryCache.size() > MEMORY_CACHE_MAX_ENTRIES || memoryCacheChars > MEMORY_CACHE_MAX_CHARS)
+                    && iterator.hasNext()) {
+                Map.Entry<String, String> eldest = iterator.next();
+                memoryCacheChars -= eldest.getKey().length() + eldest.getValue().length();
+                iterator.remove();
+            }
+        }
+    }
+    
+    /**
+     * Traite une requête IA en streaming: les fragments sont transmis au listener dès leur arrivée
+     * (SSE ou NDJSON amont) au lieu d'attendre la réponse complète
+     */
+    public StreamHandle streamAIRequest(String message, String personality, StreamListener listener) {
+        StreamHandle handle = new StreamHandle();
+        streamsStarted.incrementAndGet();
+        executor.execute(() -> runStream(message, personality, listener, handle));
+        return handle;
+    }
+    
+    private void runStream(String message, String personality, StreamListener listener, StreamHandle handle) {
+        StreamState state = new StreamState(listener, handle, personality);
+        try {
+            // Cache: la réponse complète part en un seul fragment
+            String cacheKey = message + "_" + personality;
+            String cachedResponse = getFromMemoryCache(cacheKey);
+            if (cachedResponse != null) {
+                memoryHits.incrementAndGet();
+            } else {
+                cachedResponse = chatDatabase.getCachedResponse(cacheKey);
                 if (cachedResponse != null) {
-                    Log.d(TAG, "Réponse trouvée dans le cache");
-                    return cachedResponse;
+                    databaseHits.incrementAndGet();
+                    putInMemoryCache(cacheKey, cachedResponse);
+                } else {
+                    cacheMisses.incrementAndGet();
                 }
-                
-                // Obtenir le token API sécurisé
-                String apiToken = secureConfig.getApiToken();
-                if (apiToken == null || apiToken.isEmpty()) {
-                    return getFallbackResponse(message, personality);
+            }
+            if (cachedResponse != null) {
+                state.emitRaw(cachedResponse);
+                state.finish(StreamResult.COMPLETE, "cache", null);
+                return;
+            }
+            
+            String source = null;
+            String apiToken = secureConfig.getApiToken();
+            if (apiToken != null && !apiToken.isEmpty()) {
+                if (streamUpstream(buildHuggingFaceRequest(message, personality, apiToken, true), "huggingface", state)) {
+                    source = "huggingface";
+                } else if (!handle.isCancelled()
+                        && streamUpstream(buildOpenAIRequest(message, apiToken, true), "openai", state)) {
+                    source = "openai";
                 }
-                
-                // Essayer différents services d'IA
-                String response = tryHuggingFaceAPI(message, personality, apiToken);
-                if (response == null) {
-                    response = tryOpenAIAPI(message, personality, apiToken);
+            }
+            if (handle.isCancelled()) {
+                state.finish(StreamResult.CANCELLED, source, null);
+                return;
+            }
+            if (source == null) {
+                source = "fallback";
+                state.emitRaw(getFallbackResponse(message, personality));
+            } else {
+                state.emitSuffix();
+            }
+            
+            chatDatabase.cacheAIResponse(cacheKey, state.getResponse());
+            putInMemoryCache(cacheKey, state.getResponse());
+            state.finish(StreamResult.COMPLETE, source, null);
+            
+        } catch (Exception e) {
+            if (handle.isCancelled()) {
+                state.finish(StreamResult.CANCELLED, null, null);
+            } else {
+                Log.e(TAG, "Erreur streaming requête IA", e);
+                state.finish(StreamResult.ERROR, null, e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Appelle un service amont et transmet ses fragments
+     * @return false si le service n'a rien produit (on essaie le suivant)
+     * @throws IOException coupure après des fragments déjà transmis, ou annulation
+     */
+    private boolean streamUpstream(Request request, String source, StreamState state) throws IOException {
+        if (state.handle.isCancelled()) {
+            return false;
+        }
+        Call call = httpClient.newCall(request);
+        state.handle.setCall(call);
+        try (Response response = call.execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                Log.w(TAG, "Streaming " + source + " indisponible: " + response.code());
+                return false;
+            }
+            
+            String contentType = response.header("Content-Type");
+            if (contentType == null || !(contentType.contains("event-stream") || contentType.contains("ndjson"))) {
+                // Modèle sans streaming: texte complet en un seul fragment (personnalité ajoutée comme en streaming)
+                String responseBody = response.body().string();
+                String text = "openai".equals(source)
+                    ? extractOpenAIText(responseBody)
+                    : extractHuggingFaceText(responseBody);
+                if (text == null || text.trim().isEmpty()) {
+                    return false;
                 }
-                
-                if (response == null) {
-                    response = getFallbackResponse(message, personality);
+                state.emit(text.trim());
+                return true;
+            }
+            
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(response.body().byteStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null && !state.handle.isCancelled()) {
+                // SSE: seules les lignes data: portent un événement; NDJSON: un objet par ligne
+                if (line.startsWith("data:")) {
+                    line = line.substring(5);
+                } else if (line.startsWith(":") || line.startsWith("event:") || line.startsWith("id:")
+                        || line.startsWith("retry:")) {
+                    continue;
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if ("[DONE]".equals(line)) {
+                    break;
                 }
-                
-                // Sauvegarder dans le cache
-                chatDatabase.cacheAIResponse(cacheKey, response);
-                
-                return response;
-                
+                JSONObject event = new JSONObject(line);
+                String delta = extractDelta(event);
+                if (delta != null && !delta.isEmpty()) {
+                    state.emit(delta);
+                }
+                if (event.optBoolean("done", false)) {
+                    break;
+                }
+            }
+            return state.hasOutput();
+        } catch (JSONException e) {
+            throw new IOException("Événement " + source + " invalide", e);
+        } catch (IOException e) {
+            if (!state.hasOutput() && !state.handle.isCancelled()) {
+                Log.w(TAG, "Streaming " + source + " interrompu: " + e.getMessage());
+                return false;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Texte d'un événement de streaming: OpenAI (choices[0].delta.content), serveur d'inférence
+     * Hugging Face (token.text) ou NDJSON de type Ollama (response, message.content)
+     */
+    private static String extractDelta(JSONObject event) {
+        JSONArray choices = event.optJSONArray("choices");
+        if (choices != null) {
+            JSONObject choice = choices.optJSONObject(0);
+            JSONObject delta = choice != null ? choice.optJSONObject("delta") : null;
+            return delta != null ? delta.optString("content", null) : null;
+        }
+        JSONObject token = event.optJSONObject("token");
+        if (token != null) {
+            return token.optBoolean("special", false) ? null : token.optString("text", null);
+        }
+        JSONObject message = event.optJSONObject("message");
+        if (message != null) {
+            return message.optString("content", null);
+        }
+        return event.optString("response", null);
+    }
+    
+    /**
+     * Fragments d'un flux: personnalité autour du texte amont, numérotation et mesures
+     */
+    private final class StreamState {
+        final StreamListener listener;
+        final StreamHandle handle;
+        final String personality;
+        final long startTime = System.nanoTime();
+        final StringBuilder response = new StringBuilder();
+        long firstDeltaTime;
+        int deltas;
+        
+        StreamState(StreamListener listener, StreamHandle handle, String personality) {
+            this.listener = listener;
+            this.handle = handle;
+            this.personality = personality;
+        }
+        
+        boolean hasOutput() {
+            return deltas > 0;
+        }
+        
+        String getResponse() {
+            return response.toString();
+        }
+        
+        /**
+         * Fragment amont: nettoyé sans perdre ses espaces, précédé du début de personnalité
+         * (le premier perd ses espaces de tête, comme la réponse complète)
+         */
+        void emit(String delta) {
+            String clean = sanitizeFragment(delta);
+            if (deltas == 0) {
+                clean = getPersonalityPrefix(personality) + clean.replaceFirst("^\\s+", "");
+            }
+            emitRaw(clean);
+        }
+        
+        void emitSuffix() {
+            String suffix = getPersonalitySuffix(personality);
+            if (!suffix.isEmpty()) {
+                emitRaw(suffix);
+            }
+        }
+        
+        void emitRaw(String text) {
+            if (text.isEmpty() || handle.isCancelled()) {
+                return;
+            }
+            if (deltas == 0) {
+                firstDeltaTime = System.nanoTime();
+            }
+            deltas++;
+            response.append(text);
+            listener.onDelta(text);
+        }
+        
+        void finish(String status, String source, String error) {
+            long ttftMs = deltas > 0 ? (firstDeltaTime - startTime) / 1000000 : -1;
+            long totalMs = (System.nanoTime() - startTime) / 1000000;
+            switch (status) {
+                case StreamResult.COMPLETE:
+                    streamsCompleted.incrementAndGet();
+                    break;
+                case StreamResult.CANCELLED:
+                    streamsCancelled.incrementAndGet();
+                    break;
+                default:
+                    streamsFailed.incrementAndGet();
+                    break;
+            }
+            if (ttftMs >= 0) {
+                firstTokenTotalMs.addAndGet(ttftMs);
+                firstTokenSamples.incrementAndGet();
+                lastFirstTokenMs = ttftMs;
+            }
+            Log.d(TAG, "Flux " + status + " (" + source + "): premier fragment " + ttftMs + " ms, total "
+                + totalMs + " ms, " + deltas + " fragments");
+            try {
+                listener.onDone(new StreamResult(status, source, ttftMs, totalMs, deltas, response.length(), error));
             } catch (Exception e) {
-                Log.e(TAG, "Erreur traitement requête IA", e);
-                return getErrorResponse(e.getMessage());
+                Log.e(TAG, "Erreur fin de flux", e);
             }
-        }, executor);
+        }
+    }
+    
+    /**
+     * Nettoie un fragment comme sanitizeInput, en gardant les espaces qui le séparent des voisins
+     */
+    private static String sanitizeFragment(String fragment) {
+        int start = 0;
+        int end = fragment.length();
+        while (start < end && Character.isWhitespace(fragment.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(fragment.charAt(end - 1))) {
+            end--;
+        }
+        return fragment.substring(0, start) + SecurityUtils.sanitizeInput(fragment.substring(start, end))
+            + fragment.substring(end);
     }
     
     /**
@@ -105,23 +540,7 @@ public class RealtimeAIService {
      */
     private String tryHuggingFaceAPI(String message, String personality, String apiToken) {
         try {
-            String model = getModelForPersonality(personality);
-            String url = HUGGINGFACE_API_URL + model;
-            
-            String requestBody = String.format(
-                "{\"inputs\":\"%s\",\"parameters\":{\"max_length\":150,\"temperature\":0.7}}",
-                SecurityUtils.sanitizeInput(message)
-            );
-            
-            MediaType JSON = MediaType.get("application/json; charset=utf-8");
-            RequestBody body = RequestBody.create(requestBody, JSON);
-            
-            Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + apiToken)
-                .addHeader("Content-Type", "application/json")
-                .post(body)
-                .build();
+            Request request = buildHuggingFaceRequest(message, personality, apiToken, false);
             
             Response response = httpClient.newCall(request).execute();
             
@@ -144,20 +563,7 @@ public class RealtimeAIService {
      */
     private String tryOpenAIAPI(String message, String personality, String apiToken) {
         try {
-            String requestBody = String.format(
-                "{\"model\":\"gpt-3.5-turbo\",\"messages\":[{\"role\":\"user\",\"content\":\"%s\"}],\"max_tokens\":150}",
-                SecurityUtils.sanitizeInput(message)
-            );
-            
-            MediaType JSON = MediaType.get("application/json; charset=utf-8");
-            RequestBody body = RequestBody.create(requestBody, JSON);
-            
-            Request request = new Request.Builder()
-                .url(OPENAI_API_URL)
-                .addHeader("Authorization", "Bearer " + apiToken)
-                .addHeader("Content-Type", "application/json")
-                .post(body)
-                .build();
+            Request request = buildOpenAIRequest(message, apiToken, false);
             
             Response response = httpClient.newCall(request).execute();
             
@@ -175,16 +581,65 @@ public class RealtimeAIService {
         }
     }
     
+    /**
+     * Requête Hugging Face; en streaming, le serveur d'inférence renvoie les tokens en SSE
+     */
+    private Request buildHuggingFaceRequest(String message, String personality, String apiToken, boolean stream) {
+        String model = getModelForPersonality(personality);
+        String url = HUGGINGFACE_API_URL + model;
+        
+        String requestBody = String.format(
+            "{\"inputs\":\"%s\",\"parameters\":{\"max_length\":150,\"temperature\":0.7}%s}",
+            SecurityUtils.sanitizeInput(message),
+            stream ? ",\"stream\":true" : ""
+        );
+        return buildPostRequest(url, apiToken, requestBody, stream);
+    }
+    
+    /**
+     * Requête OpenAI; en streaming, les fragments arrivent en SSE (choices[0].delta.content)
+     */
+    private Request buildOpenAIRequest(String message, String apiToken, boolean stream) {
+        String requestBody = String.format(
+            "{\"model\":\"gpt-3.5-turbo\",\"messages\":[{\"role\":\"user\",\"content\":\"%s\"}],\"max_tokens\":150%s}",
+            SecurityUtils.sanitizeInput(message),
+            stream ? ",\"stream\":true" : ""
+        );
+        return buildPostRequest(OPENAI_API_URL, apiToken, requestBody, stream);
+    }
+    
+    private Request buildPostRequest(String url, String apiToken, String requestBody, boolean stream) {
+        MediaType JSON = MediaType.get("application/json; charset=utf-8");
+        RequestBody body = RequestBody.create(requestBody, JSON);
+        
+        Request.Builder builder = new Request.Builder()
+            .url(url)
+            .addHeader("Authorization", "Bearer " + apiToken)
+            .addHeader("Content-Type", "application/json");
+        if (stream) {
+            builder.addHeader("Accept", "text/event-stream, application/x-ndjson, application/json");
+        }
+        return builder.post(body).build();
+    }
+    
     /**
      * Parse la réponse Hugging Face
      */
     private String parseHuggingFaceResponse(String responseBody, String personality) {
+        String generatedText = extractHuggingFaceText(responseBody);
+        return generatedText != null ? enhanceWithPersonality(generatedText, personality) : null;
+    }
+    
+    /**
+     * Texte généré d'une réponse Hugging Face, sans personnalité
+     */
+    private String extractHuggingFaceText(String responseBody) {
         try {
             // Parser JSON simple pour extraire le texte généré
             if (responseBody.contains("generated_text")) {
                 String generatedText = extractJsonValue(responseBody, "generated_text");
                 if (generatedText != null && !generatedText.isEmpty()) {
-                    return enhanceWithPersonality(generatedText, personality);
+                    return generatedText;
                 }
             }
             return null;
@@ -198,12 +653,20 @@ public class RealtimeAIService {
      * Parse la réponse OpenAI
      */
     private String parseOpenAIResponse(String responseBody, String personality) {
+        String content = extractOpenAIText(responseBody);
+        return content != null ? enhanceWithPersonality(content, personality) : null;
+    }
+    
+    /**
+     * Contenu d'une réponse OpenAI, sans personnalité
+     */
+    private String extractOpenAIText(String responseBody) {
         try {
             if (responseBody.contains("choices")) {
                 // Parser JSON pour extraire le contenu de la réponse
                 String content = extractJsonValue(responseBody, "content");
                 if (content != null && !content.isEmpty()) {
-                    return enhanceWithPersonality(content, personality);
+                    return content;
                 }
             }
             return null;
@@ -217,21 +680,40 @@ public class RealtimeAIService {
      * Améliore la réponse avec la personnalité
      */
     private String enhanceWithPersonality(String response, String personality) {
-        String cleanResponse = SecurityUtils.sanitizeInput(response);
-        
+        return getPersonalityPrefix(personality) + SecurityUtils.sanitizeInput(response) + getPersonalitySuffix(personality);
+    }
+    
+    /**
+     * Début ajouté à la réponse selon la personnalité (envoyé avec le premier fragment en streaming)
+     */
+    private String getPersonalityPrefix(String personality) {
         switch (personality.toLowerCase()) {
-            case "casual":
-                return cleanResponse + " 😊";
             case "friendly":
-                return "Salut ! " + cleanResponse + " 😄";
+                return "Salut ! ";
             case "professional":
-                return "Voici ma réponse professionnelle : " + cleanResponse;
+                return "Voici ma réponse professionnelle : ";
             case "creative":
-                return "🎨 " + cleanResponse + " ✨";
+                return "🎨 ";
+            default:
+                return "";
+        }
+    }
+    
+    /**
+     * Fin ajoutée à la réponse selon la personnalité (dernier fragment en streaming)
+     */
+    private String getPersonalitySuffix(String personality) {
+        switch (personality.toLowerCase()) {
+            case "casual":
+                return " 😊";
+            case "friendly":
+                return " 😄";
+            case "creative":
+                return " ✨";
             case "funny":
-                return cleanResponse + " 😂 (C'est de l'humour, hein !)";
+                return " 😂 (C'est de l'humour, hein !)";
             default:
-                return cleanResponse;
+                return "";
         }
     }
     
@@ -326,11 +808,23 @@ public class RealtimeAIService {
      * Obtient les statistiques du service
      */
     public String getStats() {
-        return String.format(
-            "{\"status\":\"%s\",\"cache_entries\":%d,\"executor_active\":%s}",
+        long samples = firstTokenSamples.get();
+        int memoryEntries;
+        synchronized (memoryCache) {
+            memoryEntries = memoryCache.size();
+        }
+        return String.format(java.util.Locale.US,
+            "{\"status\":\"%s\",\"cache_entries\":%d,\"executor_active\":%s," +
+            "\"cache\":{\"memory_hits\":%d,\"database_hits\":%d,\"misses\":%d,\"coalesced\":%d,\"in_flight\":%d,\"database\":%s}," +
+            "\"streams\":{\"started\":%d,\"completed\":%d,\"cancelled\":%d,\"failed\":%d," +
+            "\"avg_ttft_ms\":%d,\"last_ttft_ms\":%d}}",
             isHealthy() ? "healthy" : "unhealthy",
-            chatDatabase != null ? 1 : 0, // Simplifié
-            !executor.isShutdown()
+            memoryEntries,
+            !executor.isShutdown(),
+            memoryHits.get(), databaseHits.get(), cacheMisses.get(), coalescedRequests.get(), inFlight.size(),
+            chatDatabase.getCacheStats(),
+            streamsStarted.get(), streamsCompleted.get(), streamsCancelled.get(), streamsFailed.get(),
+            samples > 0 ? firstTokenTotalMs.get() / samples : -1, lastFirstTokenMs
         );
     }
 }
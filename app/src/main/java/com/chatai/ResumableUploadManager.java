@@ -0,0 +1,587 @@
+package com.chatai;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.json.JSONObject;
+
+/**
+ * Uploads reprenables pour les gros fichiers (images disque, ROMs) envoyés au FileServer.
+ * Protocole: création d'une session, PUT de morceaux avec Content-Range (et X-Chunk-SHA256),
+ * consultation des plages reçues, puis finalisation avec vérification du SHA-256 complet
+ * et renommage atomique vers le répertoire de stockage.
+ * Les morceaux sont écrits à leur position (écritures positionnelles sur un FileChannel partagé) par les workers
+ * du FileServer: plusieurs connexions peuvent envoyer des morceaux différents en parallèle, dans n'importe quel ordre.
+ * L'état des sessions est conservé sur disque: une connexion coupée ou un redémarrage ne perd rien.
+ */
+public final class ResumableUploadManager {
+    private static final String TAG = "ResumableUploadManager";
+
+    public static final long DEFAULT_CHUNK_SIZE = 8L * 1024 * 1024;
+    public static final long MAX_CHUNK_SIZE = 64L * 1024 * 1024;
+    private static final long SESSION_EXPIRY_MS = 24L * 60 * 60 * 1000;
+    // Sous-répertoire caché du stockage (même système de fichiers: le renommage final est atomique)
+    private static final String UPLOAD_DIR = ".uploads";
+    private static final int HASH_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Session d'upload: fichier partiel et plages reçues
+     */
+    public static final class Session {
+        public final String id;
+        public final String fileName;
+        public final long size;
+        // SHA-256 attendu (hex minuscule), null si le client ne l'a pas fourni
+        public final String expectedSha256;
+        final File dataFile;
+        final File metaFile;
+        // Plages reçues et vérifiées: début -> fin (exclue), fusionnées
+        private final TreeMap<Long, Long> ranges = new TreeMap<>();
+        private long lastActivity = System.currentTimeMillis();
+        private boolean finalizing;
+        private FileChannel channel;
+
+        Session(String id, String fileName, long size, String expectedSha256, File directory) {
+            this.id = id;
+            this.fileName = fileName;
+            this.size = size;
+            this.expectedSha256 = expectedSha256;
+            this.dataFile = new File(directory, id + ".part");
+            this.metaFile = new File(directory, id + ".meta");
+        }
+
+        public synchronized long getReceivedBytes() {
+            long total = 0;
+            for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+                total += range.getValue() - range.getKey();
+            }
+            return total;
+        }
+
+        public synchronized boolean isComplete() {
+            Map.Entry<Long, Long> first = ranges.firstEntry();
+            return first != null && first.getKey() == 0 && first.getValue() == size;
+        }
+
+        /**
+         * État de la session en JSON: plages reçues au format [début, fin incluse]
+         */
+        public synchronized String toJson() {
+            StringBuilder json = new StringBuilder(128);
+            json.append("{\"uploadId\":\"").append(id).append("\",\"fileName\":").append(JSONObject.quote(fileName))
+                    .append(",\"size\":").append(size)
+                    .append(",\"received\":").append(getReceivedBytes())
+                    .append(",\"complete\":").append(isComplete())
+                    .append(",\"chunkSize\":").append(DEFAULT_CHUNK_SIZE)
+                    .append(",\"ranges\":[");
+            boolean first = true;
+            for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                json.append('[').append(range.getKey()).append(',').append(range.getValue() - 1).append(']');
+                first = false;
+            }
+            return json.append("]}").toString();
+        }
+
+        synchronized void addRange(long start, long end) {
+            // Fusion avec les plages voisines ou chevauchantes
+            Map.Entry<Long, Long> before = ranges.floorEntry(start);
+            if (before != null && before.getValue() >= start) {
+                start = before.getKey();
+                end = Math.max(end, before.getValue());
+            }
+            Iterator<Map.Entry<Long, Long>> it = ranges.tailMap(start, true).entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Long> next = it.next();
+                if (next.getKey() > end) {
+                    break;
+                }
+                end = Math.max(end, next.getValue());
+                it.remove();
+            }
+            ranges.put(start, end);
+        }
+
+        /**
+         * Retire [start, end[ des plages reçues (morceau réécrit puis rejeté: ces octets ne sont plus fiables)
+         */
+        synchronized void removeRange(long start, long end) {
+            Map.Entry<Long, Long> before = ranges.lowerEntry(start);
+            if (before != null && before.getValue() > start) {
+                ranges.put(before.getKey(), start);
+                if (before.getValue() > end) {
+                    ranges.put(end, before.getValue());
+                    return;
+                }
+            }
+            long tail = -1;
+            Iterator<Map.Entry<Long, Long>> it = ranges.subMap(start, true, end, false).entrySet().iterator();
+            while (it.hasNext()) {
+                tail = Math.max(tail, it.next().getValue());
+                it.remove();
+            }
+            if (tail > end) {
+                ranges.put(end, tail);
+            }
+        }
+
+        synchronized FileChannel getChannel() throws IOException {
+            if (finalizing) {
+                throw new HttpRequestParser.HttpParseException(409, "Upload en cours de finalisation");
+            }
+            if (channel == null) {
+                channel = new RandomAccessFile(dataFile, "rw").getChannel();
+            }
+            return channel;
+        }
+
+        synchronized void closeChannel() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Erreur fermeture upload " + id, e);
+                }
+                channel = null;
+            }
+        }
+    }
+
+    /**
+     * Reçoit un morceau et l'écrit à sa position; la plage n'est enregistrée qu'une fois
+     * le morceau complet et son checksum vérifié
+     */
+    public final class ChunkSink implements HttpRequestParser.BodySink {
+        public final Session session;
+        private final long start;
+        private final long end;
+        private final String expectedSha256;
+        private final MessageDigest digest;
+        private long position;
+        private String sha256;
+
+        ChunkSink(Session session, long start, long end, String expectedSha256) throws IOException {
+            this.session = session;
+            this.start = start;
+            this.end = end;
+            this.expectedSha256 = expectedSha256;
+            this.digest = newDigest();
+            this.position = start;
+        }
+
+        @Override
+        public void write(ByteBuffer data) throws IOException {
+            digest.update(data.duplicate());
+            FileChannel channel = session.getChannel();
+            while (data.hasRemaining()) {
+                position += channel.write(data, position);
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (position != end) {
+                throw new HttpRequestParser.HttpParseException(400, "Morceau incomplet");
+            }
+            sha256 = StreamingUpload.toHex(digest.digest());
+            if (expectedSha256 != null && !expectedSha256.equals(sha256)) {
+                Log.w(TAG, "Checksum invalide pour " + session.id + " [" + start + "-" + end + "[");
+                forgetWrittenBytes();
+                throw new HttpRequestParser.HttpParseException(422, "Checksum du morceau invalide");
+            }
+            session.addRange(start, end);
+            session.lastActivity = System.currentTimeMillis();
+            saveMeta(session);
+        }
+
+        @Override
+        public void abort() {
+            // Plage non enregistrée: elle sera renvoyée
+            forgetWrittenBytes();
+        }
+
+        /**
+         * Les octets déjà écrits ont pu remplacer une plage reçue auparavant: elle devra être renvoyée
+         */
+        private void forgetWrittenBytes() {
+            if (position == start) {
+                return;
+            }
+            session.removeRange(start, position);
+            position = start;
+            try {
+                saveMeta(session);
+            } catch (IOException e) {
+                Log.w(TAG, "Enregistrement de l'état impossible: " + session.id, e);
+            }
+        }
+
+        /**
+         * SHA-256 du morceau reçu
+         */
+        public String getSha256() {
+            return sha256;
+        }
+    }
+
+    private final File storageDirectory;
+    private final File uploadDirectory;
+    private final Map<String, Session> sessions = new HashMap<>();
+
+    public ResumableUploadManager(File storageDirectory) {
+        this.storageDirectory = storageDirectory;
+        this.uploadDirectory = new File(storageDirectory, UPLOAD_DIR);
+    }
+
+    public File getStorageDirectory() {
+        return storageDirectory;
+    }
+
+    /**
+     * Crée une session, ou reprend la session existante si le même fichier (SHA-256 et taille) est en cours
+     */
+    public synchronized Session create(String fileName, long size, String sha256) throws HttpRequestParser.HttpParseException {
+        String safeName = StreamingUpload.safeFileName(fileName);
+        if (safeName == null) {
+            throw new HttpRequestParser.HttpParseException(400, "Nom de fichier invalide");
+        }
+        if (size <= 0) {
+            throw new HttpRequestParser.HttpParseException(400, "Taille invalide");
+        }
+        if (sha256 != null) {
+            sha256 = sha256.toLowerCase(Locale.US);
+            if (!sha256.matches("[0-9a-f]{64}")) {
+                throw new HttpRequestParser.HttpParseException(400, "SHA-256 invalide");
+            }
+        }
+        removeExpiredSessions();
+
+        // Identifiant dérivé du contenu quand il est connu: recréer la session la reprend
+        String id = sha256 != null ? sha256.substring(0, 32) + Long.toHexString(size) : UUID.randomUUID().toString().replace("-", "");
+        Session existing = get(id);
+        if (existing != null && existing.fileName.equals(safeName)) {
+            Log.i(TAG, "Reprise de l'upload " + id + " (" + existing.getReceivedBytes() + "/" + size + " octets)");
+            return existing;
+        }
+
+        if (!uploadDirectory.isDirectory() && !uploadDirectory.mkdirs()) {
+            throw new HttpRequestParser.HttpParseException(500, "Répertoire d'upload indisponible");
+        }
+        if (size > storageDirectory.getUsableSpace()) {
+            throw new HttpRequestParser.HttpParseException(507, "Espace de stockage insuffisant");
+        }
+        Session session = new Session(id, safeName, size, sha256, uploadDirectory);
+        try {
+            // Réserve la taille finale: les morceaux peuvent arriver dans le désordre
+            try (RandomAccessFile file = new RandomAccessFile(session.dataFile, "rw")) {
+                file.setLength(size);
+            }
+            saveMeta(session);
+        } catch (IOException e) {
+            Log.e(TAG, "Création upload impossible", e);
+            deleteFiles(session);
+            throw new HttpRequestParser.HttpParseException(500, "Création de l'upload impossible");
+        }
+        sessions.put(id, session);
+        Log.i(TAG, "Upload créé: " + id + " -> " + safeName + " (" + size + " octets)");
+        return session;
+    }
+
+    /**
+     * Session en cours (chargée depuis le disque au besoin), null si inconnue
+     */
+    public synchronized Session get(String id) {
+        if (id == null || !id.matches("[0-9a-f]{1,64}")) {
+            return null;
+        }
+        Session session = sessions.get(id);
+        if (session == null) {
+            session = loadMeta(id);
+            if (session != null) {
+                sessions.put(id, session);
+            }
+        }
+        return session;
+    }
+
+    /**
+     * Prépare la réception d'un morceau "Content-Range: bytes début-fin/total"
+     * @param chunkSha256 SHA-256 attendu du morceau (header X-Chunk-SHA256), null si absent
+     */
+    public ChunkSink openChunk(String id, String contentRange, long contentLength, String chunkSha256)
+            throws HttpRequestParser.HttpParseException {
+        Session session = get(id);
+        if (session == null) {
+            throw new HttpRequestParser.HttpParseException(404, "Upload inconnu");
+        }
+        synchronized (session) {
+            if (session.finalizing) {
+                throw new HttpRequestParser.HttpParseException(409, "Upload en cours de finalisation");
+            }
+        }
+        if (contentLength < 0) {
+            throw new HttpRequestParser.HttpParseException(411, "Content-Length requis");
+        }
+
+        long[] range = parseContentRange(contentRange, session.size);
+        long start = range[0];
+        long end = range[1] + 1;
+        if (end - start != contentLength) {
+            throw new HttpRequestParser.HttpParseException(400, "Content-Range et Content-Length incohérents");
+        }
+        if (contentLength > MAX_CHUNK_SIZE) {
+            throw new HttpRequestParser.HttpParseException(413, "Morceau trop volumineux (max " + MAX_CHUNK_SIZE + " octets)");
+        }
+        String expected = chunkSha256 != null ? chunkSha256.trim().toLowerCase(Locale.US) : null;
+        try {
+            return new ChunkSink(session, start, end, expected);
+        } catch (IOException e) {
+            throw new HttpRequestParser.HttpParseException(500, "Ouverture de l'upload impossible");
+        }
+    }
+
+    /**
+     * Vérifie le fichier complet (SHA-256) et le renomme dans le stockage. Lit tout le fichier:
+     * à appeler hors du thread du sélecteur.
+     * @return SHA-256 du fichier final
+     */
+    public String finish(String id) throws HttpRequestParser.HttpParseException {
+        Session session = get(id);
+        if (session == null) {
+            throw new HttpRequestParser.HttpParseException(404, "Upload inconnu");
+        }
+        synchronized (session) {
+            if (session.finalizing) {
+                throw new HttpRequestParser.HttpParseException(409, "Upload en cours de finalisation");
+            }
+            if (!session.isComplete()) {
+                throw new HttpRequestParser.HttpParseException(409, "Upload incomplet (" + session.getReceivedBytes() + "/" + session.size + " octets)");
+            }
+            session.finalizing = true;
+        }
+
+        try {
+            session.closeChannel();
+            String sha256 = hashFile(session.dataFile);
+            if (session.expectedSha256 != null && !session.expectedSha256.equals(sha256)) {
+                // Contenu corrompu quelque part: tout est à renvoyer
+                synchronized (session) {
+                    session.ranges.clear();
+                }
+                saveMeta(session);
+                Log.w(TAG, "SHA-256 final invalide pour " + id);
+                throw new HttpRequestParser.HttpParseException(422, "SHA-256 du fichier invalide, upload à recommencer");
+            }
+
+            File target = new File(storageDirectory, session.fileName);
+            if (target.exists() && !target.delete()) {
+                throw new HttpRequestParser.HttpParseException(409, "Impossible de remplacer " + session.fileName);
+            }
+            if (!session.dataFile.renameTo(target)) {
+                throw new HttpRequestParser.HttpParseException(500, "Renommage impossible");
+            }
+            if (!session.metaFile.delete()) {
+                Log.w(TAG, "État non supprimé: " + session.metaFile);
+            }
+            synchronized (this) {
+                sessions.remove(id);
+            }
+            Log.i(TAG, "Upload finalisé: " + session.fileName + " (" + session.size + " octets)");
+            return sha256;
+        } catch (IOException e) {
+            if (e instanceof HttpRequestParser.HttpParseException) {
+                throw (HttpRequestParser.HttpParseException) e;
+            }
+            Log.e(TAG, "Finalisation impossible", e);
+            throw new HttpRequestParser.HttpParseException(500, "Finalisation impossible");
+        } finally {
+            synchronized (session) {
+                session.finalizing = false;
+            }
+        }
+    }
+
+    /**
+     * Abandonne une session et supprime ses fichiers
+     */
+    public synchronized boolean abort(String id) {
+        Session session = get(id);
+        if (session == null) {
+            return false;
+        }
+        sessions.remove(id);
+        session.closeChannel();
+        deleteFiles(session);
+        Log.i(TAG, "Upload abandonné: " + id);
+        return true;
+    }
+
+    /**
+     * Ferme les fichiers ouverts (changement de stockage, arrêt du serveur); les sessions restent sur disque
+     */
+    public synchronized void close() {
+        for (Session session : sessions.values()) {
+            session.closeChannel();
+        }
+        sessions.clear();
+    }
+
+    private void removeExpiredSessions() {
+        File[] metas = uploadDirectory.listFiles((dir, name) -> name.endsWith(".meta"));
+        if (metas == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File meta : metas) {
+            if (now - meta.lastModified() > SESSION_EXPIRY_MS) {
+                String id = meta.getName().substring(0, meta.getName().length() - ".meta".length());
+                Session session = sessions.remove(id);
+                if (session != null) {
+                    if (session.finalizing || now - session.lastActivity <= SESSION_EXPIRY_MS) {
+                        sessions.put(id, session);
+                        continue;
+                    }
+                    session.closeChannel();
+                }
+                Log.i(TAG, "Upload expiré supprimé: " + id);
+                if (!meta.delete() || !new File(uploadDirectory, id + ".part").delete()) {
+                    Log.w(TAG, "Suppression incomplète de l'upload " + id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Écrit l'état de la session (fichier temporaire puis renommage)
+     */
+    private void saveMeta(Session session) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("fileName", session.fileName);
+        properties.setProperty("size", Long.toString(session.size));
+        if (session.expectedSha256 != null) {
+            properties.setProperty("sha256", session.expectedSha256);
+        }
+        StringBuilder ranges = new StringBuilder();
+        synchronized (session) {
+            for (Map.Entry<Long, Long> range : session.ranges.entrySet()) {
+                if (ranges.length() > 0) {
+                    ranges.append(',');
+                }
+                ranges.append(range.getKey()).append('-').append(range.getValue());
+            }
+        }
+        properties.setProperty("ranges", ranges.toString());
+
+        File temp = new File(session.metaFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            properties.store(out, null);
+        }
+        if (!temp.renameTo(session.metaFile)) {
+            throw new IOException("Enregistrement de l'état impossible: " + session.metaFile);
+        }
+    }
+
+    private Session loadMeta(String id) {
+        File metaFile = new File(uploadDirectory, id + ".meta");
+        if (!metaFile.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(metaFile)) {
+            properties.load(in);
+            Session session = new Session(id, properties.getProperty("fileName"),
+                    Long.parseLong(properties.getProperty("size")), properties.getProperty("sha256"), uploadDirectory);
+            if (!session.dataFile.isFile()) {
+                return null;
+            }
+            String ranges = properties.getProperty("ranges", "");
+            for (String range : ranges.split(",")) {
+                int dash = range.indexOf('-');
+                if (dash > 0) {
+                    session.addRange(Long.parseLong(range.substring(0, dash)), Long.parseLong(range.substring(dash + 1)));
+                }
+            }
+            return session;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "État d'upload illisible: " + metaFile, e);
+            return null;
+        }
+    }
+
+    private static void deleteFiles(Session session) {
+        if ((session.dataFile.exists() && !session.dataFile.delete())
+                || (session.metaFile.exists() && !session.metaFile.delete())) {
+            Log.w(TAG, "Fichiers d'upload non supprimés: " + session.id);
+        }
+    }
+
+    /**
+     * "bytes début-fin/total" -> {début, fin incluse}
+     */
+    private static long[] parseContentRange(String header, long size) throws HttpRequestParser.HttpParseException {
+        if (header == null || !header.trim().toLowerCase(Locale.US).startsWith("bytes ")) {
+            throw new HttpRequestParser.HttpParseException(400, "Content-Range requis");
+        }
+        String spec = header.trim().substring("bytes ".length()).trim();
+        int dash = spec.indexOf('-');
+        int slash = spec.indexOf('/');
+        if (dash <= 0 || slash < dash) {
+            throw new HttpRequestParser.HttpParseException(400, "Content-Range invalide");
+        }
+        try {
+            long start = Long.parseLong(spec.substring(0, dash).trim());
+            long end = Long.parseLong(spec.substring(dash + 1, slash).trim());
+            String total = spec.substring(slash + 1).trim();
+            if (!total.equals("*") && Long.parseLong(total) != size) {
+                throw new HttpRequestParser.HttpParseException(400, "Taille totale différente de la session");
+            }
+            if (start < 0 || end < start || end >= size) {
+                throw new HttpRequestParser.HttpParseException(416, "Plage hors du fichier");
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            throw new HttpRequestParser.HttpParseException(400, "Content-Range invalide");
+        }
+    }
+
+    private static String hashFile(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return StreamingUpload.toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 indisponible", e);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.chatai;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Upload écrit sur disque au fil de la réception (PUT brut ou multipart/form-data):
+ * mémoire constante quelle que soit la taille, SHA-256 calculé pendant l'écriture.
+ * Chaque fichier est écrit dans un fichier temporaire caché puis renommé une fois complet;
+ * un upload interrompu ne laisse rien derrière lui.
+ */
+public final class StreamingUpload implements HttpRequestParser.BodySink, MultipartStream.PartHandler {
+    private static final String TAG = "StreamingUpload";
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    // Champs texte d'un formulaire multipart (hors fichiers), gardés en mémoire
+    private static final int MAX_FIELD_SIZE = 8192;
+
+    /**
+     * Fichier reçu en entier
+     */
+    public static final class UploadedFile {
+        public final String fileName;
+        public final File file;
+        public final long size;
+        public final String sha256;
+
+        UploadedFile(String fileName, File file, long size, String sha256) {
+            this.fileName = fileName;
+            this.file = file;
+            this.size = size;
+            this.sha256 = sha256;
+        }
+    }
+
+    private final File directory;
+    private final long maxBytes;
+    private final MultipartStream multipart;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    private final List<UploadedFile> files = new ArrayList<>();
+    private final Map<String, String> fields = new HashMap<>();
+    private long totalBytes;
+
+    // Fichier en cours d'écriture
+    private String currentName;
+    private File currentTemp;
+    private FileChannel currentChannel;
+    private MessageDigest currentDigest;
+    private long currentSize;
+    // Champ texte multipart en cours
+    private String currentField;
+    private boolean skippingPart;
+    private ByteArrayOutputStream currentFieldValue;
+
+    private StreamingUpload(File directory, long maxBytes, String boundary) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.multipart = boundary != null ? new MultipartStream(boundary, this) : null;
+    }
+
+    /**
+     * Corps brut écrit tel quel dans fileName (PUT)
+     */
+    public static StreamingUpload raw(File directory, String fileName, long maxBytes) throws IOException {
+        StreamingUpload upload = new StreamingUpload(directory, maxBytes, null);
+        upload.openFile(fileName);
+        return upload;
+    }
+
+    /**
+     * Formulaire multipart: chaque partie avec un filename devient un fichier
+     */
+    public static StreamingUpload multipart(File directory, String boundary, long maxBytes) {
+        return new StreamingUpload(directory, maxBytes, boundary);
+    }
+
+    /**
+     * Nom de fichier utilisable dans le répertoire de stockage, null s'il est vide ou réservé
+     */
+    public static String safeFileName(String fileName) {
+        if (fileName == null) {
+            return null;
+        }
+        // Certains navigateurs envoient le chemin complet
+        int slash = Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\'));
+        String name = SecurityUtils.sanitizeFileName(fileName.substring(slash + 1));
+        if (name.isEmpty() || name.equals(".") || name.equals("..")) {
+            return null;
+        }
+        return name;
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        if (multipart != null) {
+            multipart.write(data);
+        } else {
+            writeFileData(data);
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (multipart != null) {
+            multipart.finish();
+        } else {
+            closeFile();
+        }
+        Log.i(TAG, "Upload terminé: " + files.size() + " fichier(s), " + totalBytes + " octets");
+    }
+
+    @Override
+    public void abort() {
+        if (currentChannel != null) {
+            try {
+                currentChannel.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Erreur fermeture upload", e);
+            }
+            currentChannel = null;
+        }
+        if (currentTemp != null && currentTemp.exists() && !currentTemp.delete()) {
+            Log.w(TAG, "Fichier temporaire non supprimé: " + currentTemp);
+        }
+        currentTemp = null;
+        Log.w(TAG, "Upload interrompu après " + totalBytes + " octets");
+    }
+
+    @Override
+    public void startPart(Map<String, String> headers) throws IOException {
+        String disposition = headers.get("content-disposition");
+        String fileName = MultipartStream.getDispositionParameter(disposition, "filename");
+        if (fileName != null && fileName.isEmpty()) {
+            // <input type=file> laissé vide: le navigateur envoie une part sans nom, on l'ignore
+            skippingPart = true;
+        } else if (fileName != null) {
+            String safeName = safeFileName(fileName);
+            if (safeName == null) {
+                throw new HttpRequestParser.HttpParseException(400, "Nom de fichier invalide");
+            }
+            openFile(safeName);
+        } else {
+            currentField = MultipartStream.getDispositionParameter(disposition, "name");
+            currentFieldValue = new ByteArrayOutputStream();
+        }
+    }
+
+    @Override
+    public void partData(ByteBuffer data) throws IOException {
+        if (currentChannel != null) {
+            writeFileData(data);
+            return;
+        }
+        if (skippingPart) {
+            data.position(data.limit());
+            return;
+        }
+        if (currentFieldValue.size() + data.remaining() > MAX_FIELD_SIZE) {
+            throw new HttpRequestParser.HttpParseException(413, "Champ de formulaire trop volumineux");
+        }
+        while (data.hasRemaining()) {
+            currentFieldValue.write(data.get());
+        }
+    }
+
+    @Override
+    public void endPart() throws IOException {
+        if (currentChannel != null) {
+            closeFile();
+        } else if (currentField != null) {
+            fields.put(currentField, new String(currentFieldValue.toByteArray(), StandardCharsets.UTF_8));
+        }
+        currentField = null;
+        currentFieldValue = null;
+        skippingPart = false;
+    }
+
+    /**
+     * Fichiers reçus, dans l'ordre du formulaire
+     */
+    public List<UploadedFile> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * Champs texte du formulaire multipart
+     */
+    public Map<String, String> getFields() {
+        return Collections.unmodifiableMap(fields);
+    }
+
+    private void openFile(String fileName) throws IOException {
+        currentName = fileName;
+        currentTemp = new File(directory, "." + fileName + ".upload");
+        currentChannel = new FileOutputStream(currentTemp).getChannel();
+        currentSize = 0;
+        try {
+            currentDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 indisponible", e);
+        }
+    }
+
+    /**
+     * Copie dans le buffer d'écriture (taille fixe), vidé sur disque quand il est plein
+     */
+    private void writeFileData(ByteBuffer data) throws IOException {
+        totalBytes += data.remaining();
+        if (totalBytes > maxBytes) {
+            throw new HttpRequestParser.HttpParseException(413, "Upload trop volumineux (max " + maxBytes + " octets)");
+        }
+        currentSize += data.remaining();
+        currentDigest.update(data.duplicate());
+
+        while (data.hasRemaining()) {
+            if (!writeBuffer.hasRemaining()) {
+                flushWriteBuffer();
+            }
+            int count = Math.min(data.remaining(), writeBuffer.remaining());
+            ByteBuffer part = data.duplicate();
+            part.limit(part.position() + count);
+            writeBuffer.put(part);
+            data.position(data.position() + count);
+        }
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            currentChannel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    /**
+     * Termine le fichier courant: écriture du reste, puis remplacement de la cible par le temporaire
+     */
+    private void closeFile() throws IOException {
+        flushWriteBuffer();
+        currentChannel.close();
+        currentChannel = null;
+
+        File target = new File(directory, currentName);
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Impossible de remplacer " + currentName);
+        }
+        if (!currentTemp.renameTo(target)) {
+            throw new IOException("Impossible de renommer " + currentTemp.getName());
+        }
+        currentTemp = null;
+        files.add(new UploadedFile(currentName, target, currentSize, toHex(currentDigest.digest())));
+        Log.d(TAG, "Fichier reçu: " + currentName + " (" + currentSize + " octets)");
+    }
+
+    /**
+     * Empreinte en hexadécimal minuscule
+     */
+    static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+}
@@ -1,16 +1,42 @@
 package com.chatai;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.os.FileObserver;
+import android.util.JsonWriter;
 import android.util.Log;
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Serveur Web simple et efficace pour servir des fichiers statiques
@@ -21,6 +47,31 @@ public class WebServer {
     private static final String TAG = "WebServer";
     private static final int PORT = 8888;
     private static final String SITES_DIR = "/storage/emulated/0/ChatAI-Files/sites";
+    private static final String GAME_DATA_DIR = "/storage/emulated/0/GameLibrary-Data";
+    
+    // Limites par défaut du moteur de service (EmulatorJS lance des dizaines de requêtes en parallèle)
+    private static final int DEFAULT_MAX_CONNECTIONS = 64;
+    private static final int DEFAULT_MAX_WORKERS = 8;
+    private static final int DEFAULT_ACCEPT_BACKLOG = 128;
+    private static final int SOCKET_TIMEOUT_MS = 30000;
+    private static final int WORKER_KEEP_ALIVE_SECONDS = 30;
+    
+    // Connexions persistantes HTTP/1.1 (comme KeepAliveTimeout/MaxKeepAliveRequests)
+    private static final int DEFAULT_KEEP_ALIVE_TIMEOUT_MS = 5000;
+    private static final int DEFAULT_MAX_KEEP_ALIVE_REQUESTS = 100;
+    private static final int KEEP_ALIVE_POLL_MS = 200;
+    private static final int MAX_REQUEST_LINE_LENGTH = 8192;
+    private static final int MAX_REQUEST_HEADERS = 100;
+    
+    // Framing d'une réponse pour writeResponseHead (une valeur >= 0 est un Content-Length)
+    private static final long BODY_NONE = -1;        // 304: pas de corps
+    private static final long BODY_CHUNKED = -2;     // Transfer-Encoding: chunked
+    private static final long BODY_UNTIL_CLOSE = -3; // Corps délimité par la fermeture (HTTP/1.0)
+    
+    // Revérification max des mtimes du catalogue (les sous-répertoires ne sont pas observés)
+    private static final long CATALOG_RECHECK_MS = 2000;
+    // Au-delà, un gamelist généré est servi depuis son fichier d'index au lieu de la mémoire
+    private static final long MAX_IN_MEMORY_GAMELIST = 1024 * 1024;
     
     // Options configurables (comme Apache/Nginx)
     private boolean autoindex = true;
@@ -29,13 +80,40 @@ public class WebServer {
     private boolean showIcons = true;
     private String customCSS = "";
     
+    // Limites de concurrence (comme MaxClients/worker_connections)
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int maxWorkers = DEFAULT_MAX_WORKERS;
+    private int acceptBacklog = DEFAULT_ACCEPT_BACKLOG;
+    private int keepAliveTimeoutMs = DEFAULT_KEEP_ALIVE_TIMEOUT_MS;
+    private int maxKeepAliveRequests = DEFAULT_MAX_KEEP_ALIVE_REQUESTS;
+    
     private Context context;
     private ServerSocket serverSocket;
-    private boolean isRunning = false;
+    private volatile boolean isRunning = false;
     private Thread serverThread;
+    private ThreadPoolExecutor workerPool;
+    private Semaphore connectionSlots;
+    private final Set<Socket> activeConnections = ConcurrentHashMap.newKeySet();
+    
+    // Assets de l'APK en mémoire (partagé avec HttpServer)
+    private final AssetCache assetCache;
+    
+    // Catalogue /api/consoles sérialisé une fois, invalidé par FileObserver ou par les mtimes
+    private final Object catalogLock = new Object();
+    private final AtomicBoolean catalogDirty = new AtomicBoolean(true);
+    private volatile CachedJson consolesCatalog;
+    private volatile long catalogCheckedAt;
+    private FileObserver gameDataObserver;
+    
+    // Index des gamelist.json générés, par console (mémoire + copie dans le cache de l'app)
+    private final Map<String, GamelistEntry> gamelistIndex = new ConcurrentHashMap<>();
+    private final AtomicLong gamelistIndexHits = new AtomicLong();
+    private final AtomicLong gamelistRebuilds = new AtomicLong();
+    private final AtomicLong gamelistTimeSavedMs = new AtomicLong();
     
     public WebServer(Context context) {
         this.context = context;
+        this.assetCache = AssetCache.getInstance(context);
     }
     
     // Méthodes de configuration (comme Apache/Nginx)
@@ -59,6 +137,49 @@ public class WebServer {
         this.customCSS = css;
     }
     
+    /**
+     * Nombre maximum de connexions simultanées (en cours + en attente d'un worker).
+     * Au-delà, le serveur répond 503 immédiatement. Pris en compte au prochain start().
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(1, maxConnections);
+    }
+    
+    /**
+     * Nombre maximum de threads de traitement. Pris en compte au prochain start().
+     */
+    public void setMaxWorkers(int maxWorkers) {
+        this.maxWorkers = Math.max(1, maxWorkers);
+    }
+    
+    /**
+     * Taille de la file d'attente TCP du socket d'écoute. Pris en compte au prochain start().
+     */
+    public void setAcceptBacklog(int acceptBacklog) {
+        this.acceptBacklog = Math.max(1, acceptBacklog);
+    }
+    
+    /**
+     * Durée max d'inactivité d'une connexion persistante entre deux requêtes
+     */
+    public void setKeepAliveTimeout(int timeoutMs) {
+        this.keepAliveTimeoutMs = Math.max(0, timeoutMs);
+    }
+    
+    /**
+     * Nombre max de requêtes servies sur une même connexion (1 = pas de keep-alive)
+     */
+    public void setMaxKeepAliveRequests(int maxRequests) {
+        this.maxKeepAliveRequests = Math.max(1, maxRequests);
+    }
+    
+    /**
+     * Nombre de connexions actuellement ouvertes (en cours de traitement ou en attente)
+     */
+    public int getActiveConnectionCount() {
+        return activeConnections.size();
+    }
+    
     /**
      * Démarre le serveur web
      */
@@ -75,26 +196,33 @@ public class WebServer {
         }
         
         try {
-            serverSocket = new ServerSocket(PORT);
+            // Socket issue d'un canal (mode bloquant) pour permettre transferTo vers le client
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverSocket = serverChannel.socket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(PORT), acceptBacklog);
+            workerPool = createWorkerPool();
+            connectionSlots = new Semaphore(Math.max(maxConnections, maxWorkers));
             isRunning = true;
             
             serverThread = new Thread(() -> {
-                Log.i(TAG, "Serveur web démarré sur le port " + PORT);
+                Log.i(TAG, "Serveur web démarré sur le port " + PORT + " (workers: " + maxWorkers +
+                        ", connexions max: " + maxConnections + ", backlog: " + acceptBacklog + ")");
                 
                 while (isRunning && !serverSocket.isClosed()) {
                     try {
                         Socket clientSocket = serverSocket.accept();
-                        // Traiter chaque connexion dans un thread séparé
-                        new Thread(() -> handleClient(clientSocket)).start();
+                        dispatchClient(clientSocket);
                     } catch (IOException e) {
                         if (isRunning) {
                             Log.e(TAG, "Erreur acceptation connexion", e);
                         }
                     }
                 }
-            });
+            }, "WebServer-accept");
             
             serverThread.start();
+            startGameDataObserver();
             Log.i(TAG, "Serveur web prêt sur http://localhost:" + PORT);
             
         } catch (IOException e) {
@@ -103,6 +231,80 @@ public class WebServer {
         }
     }
     
+    /**
+     * Crée le pool de workers borné (les threads inactifs sont libérés)
+     */
+    private ThreadPoolExecutor createWorkerPool() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "WebServer-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        
+        // La file est bornée en pratique par connectionSlots
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxWorkers, maxWorkers,
+                WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+    
+    /**
+     * Confie une connexion acceptée au pool de workers, ou la refuse (503) si la limite est atteinte
+     */
+    private void dispatchClient(Socket clientSocket) {
+        if (!connectionSlots.tryAcquire()) {
+            Log.w(TAG, "Limite de connexions atteinte (" + maxConnections + "), connexion refusée");
+            rejectClient(clientSocket);
+            return;
+        }
+        
+        activeConnections.add(clientSocket);
+        try {
+            workerPool.execute(() -> {
+                try {
+                    handleClient(clientSocket);
+                } finally {
+                    activeConnections.remove(clientSocket);
+                    connectionSlots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Pool arrêté pendant l'acceptation
+            activeConnections.remove(clientSocket);
+            connectionSlots.release();
+            closeQuietly(clientSocket);
+        }
+    }
+    
+    /**
+     * Répond 503 sans occuper de worker puis ferme la connexion
+     */
+    private void rejectClient(Socket clientSocket) {
+        try {
+            clientSocket.setSoTimeout(1000);
+            String message = "Server Busy";
+            OutputStream outputStream = clientSocket.getOutputStream();
+            writeResponseHead(outputStream, "503 Service Unavailable",
+                    "Content-Type: text/plain\r\n" +
+                    "Retry-After: 1\r\n", message.length());
+            outputStream.write(message.getBytes("UTF-8"));
+            outputStream.flush();
+        } catch (IOException e) {
+            Log.d(TAG, "Erreur envoi 503: " + e.getMessage());
+        } finally {
+            closeQuietly(clientSocket);
+        }
+    }
+    
+    private void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Erreur fermeture socket", e);
+        }
+    }
+    
     /**
      * Arrête le serveur web
      */
@@ -125,9 +327,39 @@ public class WebServer {
             serverThread.interrupt();
         }
         
+        if (workerPool != null) {
+            workerPool.shutdownNow();
+        }
+        
+        if (gameDataObserver != null) {
+            gameDataObserver.stopWatching();
+            gameDataObserver = null;
+        }
+        
+        // Débloquer les workers en attente sur des sockets
+        for (Socket socket : activeConnections) {
+            closeQuietly(socket);
+        }
+        activeConnections.clear();
+        
         Log.i(TAG, "Serveur web arrêté");
     }
     
+    /**
+     * Surveille GameLibrary-Data: tout ajout/suppression/renommage de console invalide le catalogue
+     */
+    private void startGameDataObserver() {
+        int mask = FileObserver.CREATE | FileObserver.DELETE | FileObserver.MOVED_FROM |
+                FileObserver.MOVED_TO | FileObserver.CLOSE_WRITE | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+        gameDataObserver = new FileObserver(GAME_DATA_DIR, mask) {
+            @Override
+            public void onEvent(int event, String path) {
+                catalogDirty.set(true);
+            }
+        };
+        gameDataObserver.startWatching();
+    }
+    
     /**
      * Vérifie si le serveur est en cours d'exécution
      */
@@ -136,44 +368,100 @@ public class WebServer {
     }
     
     /**
-     * Gère une connexion client
+     * Gère une connexion client (persistante en HTTP/1.1, requêtes pipelinées traitées dans l'ordre)
      */
     private void handleClient(Socket clientSocket) {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-             OutputStream outputStream = clientSocket.getOutputStream()) {
-            
-            // Lire la requête HTTP
-            String requestLine = reader.readLine();
-            if (requestLine == null) {
-                return;
-            }
+        try (InputStream inputStream = new BufferedInputStream(clientSocket.getInputStream());
+             KeepAliveStream outputStream = new KeepAliveStream(
+                     new BufferedOutputStream(clientSocket.getOutputStream(), 8192), clientSocket.getChannel())) {
             
-            Log.d(TAG, "Requête: " + requestLine);
+            // Un client lent ne doit pas bloquer un worker indéfiniment
+            clientSocket.setSoTimeout(SOCKET_TIMEOUT_MS);
             
-            // Extraire le chemin de la requête
-            String[] parts = requestLine.split(" ");
-            if (parts.length < 2) {
-                sendErrorResponse(outputStream, 400, "Bad Request");
-                return;
+            int requestCount = 0;
+            while (isRunning) {
+                if (requestCount > 0 && !awaitNextRequest(clientSocket, inputStream)) {
+                    return;
+                }
+                
+                // Lire la requête HTTP
+                String requestLine = readRequestLine(inputStream);
+                if (requestLine == null) {
+                    return;
+                }
+                if (requestLine.isEmpty()) {
+                    continue; // CRLF tolérés entre deux requêtes (RFC 7230 §3.5)
+                }
+                
+                requestCount++;
+                if (!handleRequest(inputStream, outputStream, requestLine, requestCount)) {
+                    return;
+                }
             }
-            
-            String method = parts[0];
-            String path = parts[1];
-            
-            // Accepter GET et HEAD
-            if (!"GET".equals(method) && !"HEAD".equals(method)) {
-                sendErrorResponse(outputStream, 405, "Method Not Allowed");
-                return;
+        } catch (SocketTimeoutException e) {
+            Log.d(TAG, "Timeout client: " + e.getMessage());
+        } catch (IOException e) {
+            Log.e(TAG, "Erreur traitement client", e);
+        } finally {
+            closeQuietly(clientSocket);
+        }
+    }
+    
+    /**
+     * Traite une requête sur la connexion
+     * @return true si la connexion peut servir la requête suivante
+     */
+    private boolean handleRequest(InputStream inputStream, KeepAliveStream outputStream,
+                                  String requestLine, int requestCount) throws IOException {
+        Log.d(TAG, "Requête: " + requestLine);
+        
+        // Lire les headers HTTP (noms en minuscules)
+        Map<String, String> requestHeaders = new HashMap<>();
+        String line;
+        while ((line = readRequestLine(inputStream)) != null && !line.isEmpty()) {
+            if (requestHeaders.size() >= MAX_REQUEST_HEADERS) {
+                throw new IOException("Trop de headers dans la requête");
             }
-            
-            // Lire les headers HTTP et extraire le Host
-            String hostHeader = null;
-            String line;
-            while ((line = reader.readLine()) != null && !line.isEmpty()) {
-                if (line.toLowerCase().startsWith("host:")) {
-                    hostHeader = line.substring(5).trim();
-                }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                requestHeaders.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
             }
+        }
+        if (line == null) {
+            return false;
+        }
+        
+        // Extraire le chemin de la requête
+        String[] parts = requestLine.split(" ");
+        String method = parts.length > 0 ? parts[0] : "";
+        String version = parts.length > 2 ? parts[2] : "HTTP/1.0";
+        
+        // Keep-alive: HTTP/1.1 sauf "Connection: close", pas de keep-alive si d'autres clients attendent un worker
+        String connection = requestHeaders.get("connection");
+        boolean keepAlive = "HTTP/1.1".equals(version)
+                && (connection == null || !connection.toLowerCase(Locale.US).contains("close"))
+                && requestCount < maxKeepAliveRequests
+                && workerPool.getQueue().isEmpty();
+        
+        // Ignorer le corps éventuel pour rester aligné sur la requête suivante
+        if (requestHeaders.containsKey("transfer-encoding")) {
+            keepAlive = false; // Corps chunked non supporté: on répond puis on ferme
+        } else if (!skipRequestBody(inputStream, requestHeaders.get("content-length"))) {
+            keepAlive = false;
+        }
+        
+        String keepAliveHeader = "Keep-Alive: timeout=" + (keepAliveTimeoutMs / 1000) +
+                ", max=" + (maxKeepAliveRequests - requestCount) + "\r\n";
+        outputStream.beginResponse("HEAD".equals(method), "HTTP/1.1".equals(version), keepAlive, keepAliveHeader);
+        
+        if (parts.length < 2) {
+            sendErrorResponse(outputStream, 400, "Bad Request");
+        } else if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            // Accepter GET et HEAD
+            sendErrorResponse(outputStream, 405, "Method Not Allowed");
+        } else {
+            String path = parts[1];
+            String hostHeader = requestHeaders.get("host");
             
             // Déterminer si on doit envoyer les headers COEP/COOP
             // Seulement pour localhost (Chrome les refuse sur les IPs non-HTTPS)
@@ -181,23 +469,108 @@ public class WebServer {
                 (hostHeader.startsWith("localhost") || hostHeader.startsWith("127.0.0.1")));
             
             // Servir le fichier avec ou sans headers COEP/COOP selon l'hôte
-            serveFile(outputStream, path, method, enableSharedArrayBuffer);
-            
-        } catch (IOException e) {
-            Log.e(TAG, "Erreur traitement client", e);
+            serveFile(outputStream, path, method, requestHeaders, enableSharedArrayBuffer);
+        }
+        
+        return outputStream.finishResponse();
+    }
+    
+    /**
+     * Attend la requête suivante d'une connexion persistante.
+     * Rend le worker si d'autres connexions attendent ou si le délai d'inactivité expire.
+     */
+    private boolean awaitNextRequest(Socket clientSocket, InputStream inputStream) throws IOException {
+        long deadline = System.currentTimeMillis() + keepAliveTimeoutMs;
+        try {
+            while (isRunning) {
+                // Requête pipelinée déjà reçue
+                if (inputStream.available() > 0) {
+                    return true;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || !workerPool.getQueue().isEmpty()) {
+                    return false;
+                }
+                
+                clientSocket.setSoTimeout((int) Math.min(remaining, KEEP_ALIVE_POLL_MS));
+                inputStream.mark(1);
+                try {
+                    if (inputStream.read() == -1) {
+                        return false;
+                    }
+                    inputStream.reset();
+                    return true;
+                } catch (SocketTimeoutException e) {
+                    // Toujours inactif, on revérifie la file d'attente
+                }
+            }
+            return false;
         } finally {
-            try {
-                clientSocket.close();
-            } catch (IOException e) {
-                Log.e(TAG, "Erreur fermeture socket", e);
+            if (!clientSocket.isClosed()) {
+                clientSocket.setSoTimeout(SOCKET_TIMEOUT_MS);
+            }
+        }
+    }
+    
+    /**
+     * Lit une ligne de requête (terminée par LF, CR facultatif)
+     * @return null si la connexion est fermée avant toute donnée
+     */
+    private String readRequestLine(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = inputStream.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            if (line.size() >= MAX_REQUEST_LINE_LENGTH) {
+                throw new IOException("Ligne de requête trop longue");
+            }
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, "UTF-8");
+    }
+    
+    /**
+     * Consomme le corps annoncé par Content-Length
+     * @return false si le corps est invalide ou incomplet (la connexion doit être fermée)
+     */
+    private boolean skipRequestBody(InputStream inputStream, String contentLength) throws IOException {
+        if (contentLength == null) {
+            return true;
+        }
+        long remaining;
+        try {
+            remaining = Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        while (remaining > 0) {
+            long skipped = inputStream.skip(remaining);
+            if (skipped <= 0) {
+                if (inputStream.read() == -1) {
+                    return false;
+                }
+                skipped = 1;
             }
+            remaining -= skipped;
         }
+        return remaining == 0;
     }
     
     /**
-     * Sert un fichier (version simple sans Range Requests)
+     * Sert un fichier (les routes fichiers supportent les Range Requests)
      */
-    private void serveFile(OutputStream outputStream, String path, String method, boolean enableSharedArrayBuffer) throws IOException {
+    private void serveFile(OutputStream outputStream, String path, String method, Map<String, String> requestHeaders, boolean enableSharedArrayBuffer) throws IOException {
         try {
             // Nettoyer le chemin
             String cleanPath = path;
@@ -210,19 +583,19 @@ public class WebServer {
             
             // Vérifier si c'est une requête pour l'émulateur relax
             if (cleanPath.startsWith("/relax/")) {
-                serveRelaxFile(outputStream, cleanPath, method, enableSharedArrayBuffer);
+                serveRelaxFile(outputStream, cleanPath, method, requestHeaders, enableSharedArrayBuffer);
                 return;
             }
             
             // Vérifier si c'est une requête pour la bibliothèque de jeux
             if (cleanPath.startsWith("/gamelibrary/")) {
-                serveGameLibraryFile(outputStream, cleanPath, method, enableSharedArrayBuffer);
+                serveGameLibraryFile(outputStream, cleanPath, method, requestHeaders, enableSharedArrayBuffer);
                 return;
             }
             
             // Vérifier si c'est une requête pour les données partagées (GameLibrary-Data)
             if (cleanPath.startsWith("/gamedata/")) {
-                serveGameDataFile(outputStream, cleanPath, method, enableSharedArrayBuffer);
+                serveGameDataFile(outputStream, cleanPath, method, requestHeaders, enableSharedArrayBuffer);
                 return;
             }
 
@@ -239,12 +612,12 @@ public class WebServer {
             
             if (Files.isDirectory(filePath)) {
                 // Lister le répertoire
-                serveDirectory(outputStream, filePath, cleanPath);
+                serveDirectory(outputStream, filePath, cleanPath, requestHeaders);
                 return;
             }
             
             // Servir le fichier
-            serveStaticFile(outputStream, filePath);
+            serveStaticFile(outputStream, filePath, method, requestHeaders);
             
         } catch (Exception e) {
             Log.e(TAG, "Erreur service fichier: " + path, e);
@@ -255,39 +628,17 @@ public class WebServer {
     /**
      * Sert les fichiers de l'émulateur relax depuis les assets
      */
-    private void serveRelaxFile(OutputStream outputStream, String path, String method, boolean enableSharedArrayBuffer) throws IOException {
+    private void serveRelaxFile(OutputStream outputStream, String path, String method, Map<String, String> requestHeaders, boolean enableSharedArrayBuffer) throws IOException {
         try {
             // Extraire le chemin du fichier (enlever /relax/)
             String assetPath = path.substring(7); // Enlever "/relax/"
             
-            // Ouvrir le fichier depuis les assets
-            InputStream inputStream = context.getAssets().open("relax/" + assetPath);
-            
-            // Déterminer le type de contenu
-            String contentType = getContentType(assetPath);
-            
-            // Lire le contenu du fichier
-            byte[] content = new byte[inputStream.available()];
-            inputStream.read(content);
-            inputStream.close();
-            
-            // Envoyer la réponse HTTP avec headers SharedArrayBuffer conditionnels
-            String response = "HTTP/1.1 200 OK\r\n" +
-                            "Content-Type: " + contentType + "\r\n" +
-                            "Content-Length: " + content.length + "\r\n" +
-                            "Access-Control-Allow-Origin: *\r\n" +
+            // Envoyer l'asset (variante compressée si acceptée) avec headers SharedArrayBuffer conditionnels
+            String extraHeaders = "Access-Control-Allow-Origin: *\r\n" +
                             "Access-Control-Allow-Methods: GET, POST, OPTIONS\r\n" +
                             "Access-Control-Allow-Headers: Content-Type\r\n" +
-                            getSharedArrayBufferHeaders(enableSharedArrayBuffer) +
-                            "\r\n";
-            
-            outputStream.write(response.getBytes());
-            
-            // Pour les requêtes HEAD, ne pas envoyer le contenu
-            if (!"HEAD".equals(method)) {
-                outputStream.write(content);
-            }
-            outputStream.flush();
+                            getSharedArrayBufferHeaders(enableSharedArrayBuffer);
+            sendAsset(outputStream, "relax/" + assetPath, getContentType(assetPath), method, requestHeaders, extraHeaders);
             
             Log.d(TAG, "Served relax file: " + assetPath);
             
@@ -301,7 +652,7 @@ public class WebServer {
      * Sert les fichiers depuis GameLibrary-Data (répertoire partagé)
      * Utilisé par la route /gamedata/
      */
-    private void serveGameDataFile(OutputStream outputStream, String path, String method, boolean enableSharedArrayBuffer) throws IOException {
+    private void serveGameDataFile(OutputStream outputStream, String path, String method, Map<String, String> requestHeaders, boolean enableSharedArrayBuffer) throws IOException {
         try {
             // Extraire le chemin du fichier (enlever /gamedata/)
             String filePath = path.substring(10); // Enlever "/gamedata/"
@@ -313,6 +664,20 @@ public class WebServer {
                 Log.w(TAG, "Failed to decode URL: " + filePath);
             }
             
+            // Entrée d'archive: <console>/<archive>!/<entrée> (sans extraction sur disque)
+            int archiveSeparator = filePath.indexOf("!/");
+            if (archiveSeparator > 0) {
+                File archive = resolveGameDataFile(filePath.substring(0, archiveSeparator));
+                if (archive == null) {
+                    Log.w(TAG, "Archive hors de GameLibrary-Data refusée: " + filePath);
+                    sendErrorResponse(outputStream, 403, "Forbidden");
+                    return;
+                }
+                serveArchiveEntry(outputStream, archive, filePath.substring(archiveSeparator + 2), method, requestHeaders,
+                        getSharedArrayBufferHeaders(enableSharedArrayBuffer));
+                return;
+            }
+            
             // Cas spécial: auto-générer gamelist.json si demandé mais absent
             if (filePath.endsWith("/gamelist.json")) {
                 // Extraire le chemin de la console (ex: "fbneo" ou "fbneo/sega")
@@ -322,14 +687,19 @@ public class WebServer {
                 
                 if (!file.exists()) {
                     Log.i(TAG, "gamelist.json not found via /gamedata/, generating automatically for: " + consoleName);
-                    serveAutoGeneratedGamelist(outputStream, consoleName, method);
+                    serveAutoGeneratedGamelist(outputStream, consoleName, method, requestHeaders);
                     return;
                 }
             }
             
             // Construire le chemin complet vers GameLibrary-Data
             String fullPath = "/storage/emulated/0/GameLibrary-Data/" + filePath;
-            File file = new File(fullPath);
+            File file = resolveGameDataFile(filePath);
+            if (file == null) {
+                Log.w(TAG, "Chemin hors de GameLibrary-Data refusé: " + filePath);
+                sendErrorResponse(outputStream, 403, "Forbidden");
+                return;
+            }
             
             if (!file.exists()) {
                 Log.w(TAG, "File not found in GameLibrary-Data: " + fullPath);
@@ -339,37 +709,15 @@ public class WebServer {
             
             if (file.isDirectory()) {
                 // Pour les répertoires, retourner un listing HTML simple
-                serveDirectoryListing(outputStream, file, path);
+                serveDirectoryListing(outputStream, file, path, requestHeaders);
                 return;
             }
             
-            // Déterminer le type de contenu
-            String contentType = getContentType(filePath);
-            
-            // Envoyer la réponse HTTP avec headers SharedArrayBuffer conditionnels
-            String response = "HTTP/1.1 200 OK\r\n" +
-                    "Content-Type: " + contentType + "\r\n" +
-                    "Content-Length: " + file.length() + "\r\n" +
-                    "Access-Control-Allow-Origin: *\r\n" +
-                    getSharedArrayBufferHeaders(enableSharedArrayBuffer) +
-                    "\r\n";
-            
-            outputStream.write(response.getBytes());
-            
-            // Pour les requêtes HEAD, ne pas envoyer le contenu
-            if (!"HEAD".equals(method)) {
-                // Streaming avec buffer 64KB pour les gros fichiers (ROMs PSX/Sega CD 450+ MB)
-                FileInputStream fileInputStream = new FileInputStream(file);
-                byte[] buffer = new byte[65536]; // 64KB buffer pour performance
-                int bytesRead;
-                
-                while ((bytesRead = fileInputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
-                }
-                
-                fileInputStream.close();
-            }
-            outputStream.flush();
+            // Envoyer le fichier (Range supporté pour reprise/seek) avec headers SharedArrayBuffer conditionnels
+            String extraHeaders = "Access-Control-Allow-Origin: *\r\n" +
+                    "Access-Control-Expose-Headers: Accept-Ranges, Content-Range, Content-Length, ETag\r\n" +
+                    getSharedArrayBufferHeaders(enableSharedArrayBuffer);
+            sendFile(outputStream, file, getContentType(filePath), method, requestHeaders, extraHeaders);
             
             Log.d(TAG, "Served GameLibrary-Data file: " + fullPath);
             
@@ -380,74 +728,337 @@ public class WebServer {
     }
     
     /**
-     * Génère automatiquement un gamelist.json à partir des ROMs du répertoire
+     * Sert une entrée d'un .zip/.7z de GameLibrary-Data sans l'extraire.
+     * Entrée stockée: zero-copy depuis l'archive (Range supporté); deflate/7z: décompressée à la volée,
+     * Content-Length pris dans l'index de l'archive. Entrée vide: liste JSON des entrées.
      */
-    private void serveAutoGeneratedGamelist(OutputStream outputStream, String consoleName, String method) throws IOException {
+    private void serveArchiveEntry(OutputStream outputStream, File archive, String entryName, String method,
+                                   Map<String, String> requestHeaders, String sharedArrayBufferHeaders) throws IOException {
+        if (!archive.isFile() || !ArchiveIndex.isArchive(archive.getName())) {
+            sendErrorResponse(outputStream, 404, "Not Found");
+            return;
+        }
+        
+        ArchiveIndex index;
+        try {
+            index = ArchiveIndex.get(archive);
+        } catch (IOException e) {
+            Log.w(TAG, "Archive illisible: " + archive + " (" + e.getMessage() + ")");
+            sendErrorResponse(outputStream, 422, "Unreadable archive");
+            return;
+        }
+        
+        String extraHeaders = "Access-Control-Allow-Origin: *\r\n" +
+                "Access-Control-Expose-Headers: Accept-Ranges, Content-Range, Content-Length, ETag\r\n" +
+                sharedArrayBufferHeaders;
+        
+        if (entryName.isEmpty()) {
+            sendArchiveListing(outputStream, index, method, requestHeaders, extraHeaders);
+            return;
+        }
+        
+        ArchiveIndex.Entry entry = index.getEntry(entryName);
+        if (entry == null || entry.isDirectory()) {
+            sendErrorResponse(outputStream, 404, "Not Found");
+            return;
+        }
+        if (!index.isSupported(entry)) {
+            sendErrorResponse(outputStream, 501, "Unsupported archive entry");
+            return;
+        }
+        
+        String contentType = getContentType(entryName);
+        if (index.isStored(entry)) {
+            sendFileRegion(outputStream, archive, index.getDataOffset(entry), entry.size, index.getEtag(entry),
+                    index.lastModified, contentType, method, requestHeaders, extraHeaders);
+            Log.d(TAG, "Served stored archive entry: " + archive.getName() + "!/" + entryName);
+            return;
+        }
+        
+        // Entrée compressée: pas de Range (il faudrait décompresser depuis le début)
+        String etag = index.getEtag(entry);
+        String commonHeaders = "Accept-Ranges: none\r\n" +
+                "ETag: " + etag + "\r\n" +
+                "Last-Modified: " + HttpRange.formatHttpDate(index.lastModified) + "\r\n" +
+                extraHeaders;
+        String ifNoneMatch = requestHeaders.get("if-none-match");
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            writeResponseHead(outputStream, "304 Not Modified", commonHeaders, BODY_NONE);
+            outputStream.flush();
+            return;
+        }
+        
+        writeResponseHead(outputStream, "200 OK", "Content-Type: " + contentType + "\r\n" + commonHeaders, entry.size);
+        if (!"HEAD".equals(method)) {
+            copyArchiveEntry(index, entry, outputStream);
+        }
+        outputStream.flush();
+        Log.d(TAG, "Served inflated archive entry: " + archive.getName() + "!/" + entryName + " (" + entry.size + " bytes)");
+    }
+    
+    /**
+     * Fichier de GameLibrary-Data désigné par un chemin de requête décodé, null s'il en sort
+     * (../ ou lien symbolique vers l'extérieur): comparaison des chemins canoniques
+     */
+    private static File resolveGameDataFile(String relativePath) throws IOException {
+        File root = new File(GAME_DATA_DIR).getCanonicalFile();
+        File file = new File(root, relativePath).getCanonicalFile();
+        if (!file.equals(root) && !file.getPath().startsWith(root.getPath() + File.separator)) {
+            return null;
+        }
+        return file;
+    }
+    
+    /**
+     * Décompresse une entrée vers la sortie; une entrée tronquée ou un CRC faux coupe la connexion
+     */
+    private void copyArchiveEntry(ArchiveIndex index, ArchiveIndex.Entry entry, OutputStream outputStream) throws IOException {
+        CRC32 crc = new CRC32();
+        long remaining = entry.size;
+        try (InputStream in = index.openStream(entry)) {
+            byte[] buffer = new byte[65536];
+            while (remaining > 0) {
+                int bytesRead = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (bytesRead == -1) {
+                    throw new EOFException("Entrée d'archive tronquée: " + entry.name);
+                }
+                crc.update(buffer, 0, bytesRead);
+                outputStream.write(buffer, 0, bytesRead);
+                remaining -= bytesRead;
+            }
+        }
+        // 7z vérifie son CRC lui-même
+        if (!index.sevenZip && crc.getValue() != entry.crc) {
+            throw new IOException("CRC invalide pour " + entry.name + " dans " + index.file.getName());
+        }
+    }
+    
+    /**
+     * Liste JSON des entrées d'une archive (pour choisir la ROM à charger)
+     */
+    private void sendArchiveListing(OutputStream outputStream, ArchiveIndex index, String method,
+                                    Map<String, String> requestHeaders, String extraHeaders) throws IOException {
+        ByteArrayOutputStream listing = new ByteArrayOutputStream(1024);
+        JsonWriter json = new JsonWriter(new OutputStreamWriter(listing, StandardCharsets.UTF_8));
+        json.beginObject();
+        json.name("archive").value(index.file.getName());
+        json.name("entries").beginArray();
+        for (ArchiveIndex.Entry entry : index.getEntries()) {
+            if (entry.isDirectory() || !index.isSupported(entry)) {
+                continue;
+            }
+            json.beginObject();
+            json.name("name").value(entry.name);
+            json.name("size").value(entry.size);
+            json.name("stored").value(index.isStored(entry));
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        json.close();
+        
+        sendDynamicContent(outputStream, "application/json; charset=utf-8", listing.toByteArray(), method,
+                requestHeaders, extraHeaders);
+    }
+    
+    /**
+     * Sert le gamelist.json généré automatiquement à partir des ROMs du répertoire
+     * (depuis l'index, reconstruit seulement si le répertoire a changé)
+     */
+    private void serveAutoGeneratedGamelist(OutputStream outputStream, String consoleName, String method, Map<String, String> requestHeaders) throws IOException {
+        File consoleDir = new File(GAME_DATA_DIR, consoleName);
+        String extraHeaders = "Access-Control-Allow-Origin: *\r\n" +
+                        "Access-Control-Allow-Methods: GET, POST, OPTIONS\r\n" +
+                        "Access-Control-Allow-Headers: Content-Type\r\n";
+        
+        GamelistEntry gamelist;
         try {
-            String consolePath = "/storage/emulated/0/GameLibrary-Data/" + consoleName;
-            File consoleDir = new File(consolePath);
-            
             if (!consoleDir.exists() || !consoleDir.isDirectory()) {
                 sendErrorResponse(outputStream, 404, "Console directory not found");
                 return;
             }
-            
-            // Scanner les ROMs
-            File[] files = consoleDir.listFiles();
-            org.json.JSONArray gamesArray = new org.json.JSONArray();
-            int gameId = 1;
-            
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile() && isRomFileForAutoGen(file.getName())) {
-                        String fileName = file.getName();
-                        String baseName = getBaseNameFromFile(fileName);
-                        
-                        org.json.JSONObject game = new org.json.JSONObject();
-                        game.put("id", String.valueOf(gameId++));
-                        game.put("name", normalizeDisplayName(baseName)); // Normalisé pour affichage
-                        game.put("path", "./" + fileName); // Original pour les images
-                        game.put("desc", "Custom ROM - No description available");
-                        game.put("image", "./media/box2d/" + baseName + ".png");
-                        game.put("screenshot", "./media/screenshots/" + baseName + ".png");
-                        game.put("thumbnail", "./media/box2d/" + baseName + ".png");
-                        game.put("releasedate", "Unknown");
-                        game.put("genre", "Custom");
-                        game.put("players", "1-2");
-                        
-                        gamesArray.put(game);
-                    }
-                }
+            gamelist = getGamelistIndex(consoleName, consoleDir);
+        } catch (Exception e) {
+            Log.e(TAG, "Error generating gamelist.json", e);
+            sendErrorResponse(outputStream, 500, "Internal Server Error");
+            return;
+        }
+        
+        if (gamelist == null) {
+            // Pas d'index possible pour ce nom: génération directement vers le client.
+            // En cas d'erreur, pas de chunk final: la connexion est fermée et le client voit la troncature.
+            OutputStream body = beginStreamingResponse(outputStream, "application/json; charset=utf-8",
+                    requestHeaders, extraHeaders + "Cache-Control: no-cache\r\n");
+            if (!"HEAD".equals(method)) {
+                writeGamelist(consoleDir, body);
+            }
+            body.close();
+        } else if (gamelist.json != null) {
+            sendCachedJson(outputStream, gamelist.json, method, requestHeaders, extraHeaders);
+        } else {
+            // Gros gamelist: envoyé depuis le fichier d'index (zero-copy, Range, ETag)
+            sendFile(outputStream, gamelist.file, "application/json; charset=utf-8", method, requestHeaders,
+                    extraHeaders + "Cache-Control: no-cache\r\n");
+        }
+    }
+    
+    /**
+     * Retourne le gamelist généré d'une console depuis l'index.
+     * Reconstruit seulement si le mtime du répertoire ou son nombre de fichiers a changé.
+     * @return null si le gamelist ne peut pas être indexé (à générer en streaming)
+     */
+    private GamelistEntry getGamelistIndex(String consoleName, File consoleDir) throws IOException {
+        if (!isPersistableConsoleName(consoleName)) {
+            return null;
+        }
+        
+        String[] names = consoleDir.list();
+        String signature = consoleDir.lastModified() + ":" + (names != null ? names.length : 0);
+        
+        GamelistEntry cached = gamelistIndex.get(consoleName);
+        if (cached == null) {
+            cached = loadPersistedGamelist(consoleName, signature);
+        }
+        if (cached != null && cached.signature.equals(signature)) {
+            gamelistIndex.put(consoleName, cached);
+            gamelistIndexHits.incrementAndGet();
+            long saved = gamelistTimeSavedMs.addAndGet(cached.buildMillis);
+            // Chemin de chaque requête: le total est déjà dans /api/status, trace seulement en debug
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "gamelist.json " + consoleName + " servi depuis l'index: reconstruction évitée (" +
+                        cached.buildMillis + " ms), total économisé " + saved + " ms");
+            }
+            return cached;
+        }
+        
+        File indexDir = new File(context.getCacheDir(), "gamelists");
+        if (!indexDir.isDirectory() && !indexDir.mkdirs()) {
+            Log.w(TAG, "Répertoire d'index gamelist indisponible: " + indexDir);
+            return null;
+        }
+        
+        synchronized (gamelistIndex) {
+            cached = gamelistIndex.get(consoleName);
+            if (cached != null && cached.signature.equals(signature)) {
+                return cached;
             }
             
-            // Créer le gamelist.json
-            org.json.JSONObject gamelist = new org.json.JSONObject();
-            gamelist.put("games", gamesArray);
-            
-            String jsonContent = gamelist.toString(2);
-            String response = "HTTP/1.1 200 OK\r\n" +
-                            "Content-Type: application/json; charset=utf-8\r\n" +
-                            "Content-Length: " + jsonContent.length() + "\r\n" +
-                            "Access-Control-Allow-Origin: *\r\n" +
-                            "Access-Control-Allow-Methods: GET, POST, OPTIONS\r\n" +
-                            "Access-Control-Allow-Headers: Content-Type\r\n" +
-                            "\r\n";
-            
-            outputStream.write(response.getBytes());
-            
-            if (!"HEAD".equals(method)) {
-                outputStream.write(jsonContent.getBytes("UTF-8"));
+            // Écriture en streaming vers le fichier d'index: pas d'arbre JSON ni de copie en mémoire
+            long startTime = System.currentTimeMillis();
+            File tempFile = new File(indexDir, consoleName + ".json.tmp");
+            try (OutputStream indexOut = new FileOutputStream(tempFile)) {
+                writeGamelist(consoleDir, indexOut);
             }
-            outputStream.flush();
+            File jsonFile = new File(indexDir, consoleName + ".json");
+            if (!tempFile.renameTo(jsonFile)) {
+                tempFile.delete();
+                throw new IOException("Impossible d'écrire l'index gamelist de " + consoleName);
+            }
+            long buildMillis = System.currentTimeMillis() - startTime;
             
-            Log.i(TAG, "Served auto-generated gamelist.json for " + consoleName + " with " + gamesArray.length() + " games");
+            // Signature après le JSON: elle ne pointe jamais vers un contenu plus ancien
+            String meta = signature + "\n" + buildMillis + "\n";
+            Files.write(new File(indexDir, consoleName + ".sig").toPath(), meta.getBytes("UTF-8"));
             
+            cached = createGamelistEntry(jsonFile, signature, buildMillis);
+            gamelistIndex.put(consoleName, cached);
+            gamelistRebuilds.incrementAndGet();
+            Log.i(TAG, "gamelist.json " + consoleName + " reconstruit en " + buildMillis + " ms (" + jsonFile.length() + " octets)");
+            return cached;
+        }
+    }
+    
+    /**
+     * Écrit le gamelist.json d'une console en streaming (une entrée à la fois)
+     */
+    private void writeGamelist(File consoleDir, OutputStream outputStream) throws IOException {
+        JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 8192));
+        json.beginObject();
+        json.name("games").beginArray();
+        
+        // Scanner les ROMs
+        File[] files = consoleDir.listFiles();
+        int gameId = 1;
+        
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && isRomFileForAutoGen(file.getName())) {
+                    String fileName = file.getName();
+                    String baseName = getBaseNameFromFile(fileName);
+                    
+                    json.beginObject();
+                    json.name("id").value(String.valueOf(gameId++));
+                    json.name("name").value(normalizeDisplayName(baseName)); // Normalisé pour affichage
+                    json.name("path").value("./" + fileName); // Original pour les images
+                    json.name("desc").value("Custom ROM - No description available");
+                    json.name("image").value("./media/box2d/" + baseName + ".png");
+                    json.name("screenshot").value("./media/screenshots/" + baseName + ".png");
+                    json.name("thumbnail").value("./media/box2d/" + baseName + ".png");
+                    json.name("releasedate").value("Unknown");
+                    json.name("genre").value("Custom");
+                    json.name("players").value("1-2");
+                    json.endObject();
+                }
+            }
+        }
+        
+        json.endArray();
+        json.endObject();
+        json.flush(); // La sortie reste ouverte: fermée par l'appelant
+    }
+    
+    /**
+     * Relit un gamelist généré lors d'une exécution précédente si sa signature est toujours valide
+     */
+    private GamelistEntry loadPersistedGamelist(String consoleName, String signature) {
+        File indexDir = new File(context.getCacheDir(), "gamelists");
+        File signatureFile = new File(indexDir, consoleName + ".sig");
+        File jsonFile = new File(indexDir, consoleName + ".json");
+        if (!signatureFile.isFile() || !jsonFile.isFile()) {
+            return null;
+        }
+        
+        try {
+            String[] meta = new String(Files.readAllBytes(signatureFile.toPath()), "UTF-8").split("\n");
+            if (meta.length < 2 || !meta[0].equals(signature)) {
+                return null;
+            }
+            return createGamelistEntry(jsonFile, signature, Long.parseLong(meta[1].trim()));
         } catch (Exception e) {
-            Log.e(TAG, "Error generating gamelist.json", e);
-            sendErrorResponse(outputStream, 500, "Internal Server Error");
+            Log.w(TAG, "Index gamelist illisible pour " + consoleName + ": " + e.getMessage());
+            return null;
         }
     }
     
+    /**
+     * Entrée d'index pour un fichier gamelist: chargé en mémoire (avec gzip et ETag) s'il est petit
+     */
+    private GamelistEntry createGamelistEntry(File jsonFile, String signature, long buildMillis) throws IOException {
+        CachedJson json = null;
+        if (jsonFile.length() <= MAX_IN_MEMORY_GAMELIST) {
+            json = new CachedJson(Files.readAllBytes(jsonFile.toPath()), signature, buildMillis);
+        }
+        return new GamelistEntry(jsonFile, signature, buildMillis, json);
+    }
+    
+    /**
+     * Le nom de console sert de nom de fichier dans le cache: pas de séparateur ni de ".."
+     */
+    private static boolean isPersistableConsoleName(String consoleName) {
+        return consoleName.matches("[A-Za-z0-9_-][A-Za-z0-9._-]*") && !consoleName.contains("..");
+    }
+    
+    /**
+     * Statistiques de l'index des gamelists générés (JSON): temps de génération évité au total et par requête servie depuis l'index
+     */
+    public String getGamelistIndexStats() {
+        long hits = gamelistIndexHits.get();
+        long saved = gamelistTimeSavedMs.get();
+        return String.format(Locale.US,
+                "{\"consoles\":%d,\"hits\":%d,\"rebuilds\":%d,\"timeSavedMs\":%d,\"avgSavedMsPerHit\":%.1f}",
+                gamelistIndex.size(), hits, gamelistRebuilds.get(), saved, hits > 0 ? (double) saved / hits : 0);
+    }
+    
     /**
      * Vérifie si un fichier est un ROM (pour la génération automatique)
      */
@@ -512,38 +1123,32 @@ public class WebServer {
     }
     
     /**
-     * Sert un listing simple d'un répertoire (pour le scanner AUTO SCAN)
+     * Sert un listing simple d'un répertoire (pour le scanner AUTO SCAN), envoyé en streaming
      */
-    private void serveDirectoryListing(OutputStream outputStream, File directory, String path) throws IOException {
-        StringBuilder html = new StringBuilder();
-        html.append("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\"><title>Directory Listing</title></head><body>\n");
-        html.append("<h1>Directory: ").append(path).append("</h1>\n");
-        html.append("<ul>\n");
+    private void serveDirectoryListing(OutputStream outputStream, File directory, String path, Map<String, String> requestHeaders) throws IOException {
+        String extraHeaders = "Access-Control-Allow-Origin: *\r\n" +
+                        "Access-Control-Allow-Methods: GET, POST, OPTIONS\r\n" +
+                        "Access-Control-Allow-Headers: Content-Type\r\n";
+        
+        // Fermé seulement en cas de succès (sinon pas de chunk final, voir beginStreamingResponse)
+        Writer html = new BufferedWriter(new OutputStreamWriter(
+                beginStreamingResponse(outputStream, "text/html; charset=UTF-8", requestHeaders, extraHeaders),
+                StandardCharsets.UTF_8), 8192);
+        html.write("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\"><title>Directory Listing</title></head><body>\n");
+        html.write("<h1>Directory: " + path + "</h1>\n");
+        html.write("<ul>\n");
         
         File[] files = directory.listFiles();
         if (files != null) {
             for (File file : files) {
                 if (file.isFile()) {
-                    html.append("<li><a href=\"").append(file.getName()).append("\">")
-                        .append(file.getName()).append("</a></li>\n");
+                    html.write("<li><a href=\"" + file.getName() + "\">" + file.getName() + "</a></li>\n");
                 }
             }
         }
         
-        html.append("</ul>\n</body></html>");
-        
-        String htmlContent = html.toString();
-        String response = "HTTP/1.1 200 OK\r\n" +
-                        "Content-Type: text/html; charset=UTF-8\r\n" +
-                        "Content-Length: " + htmlContent.length() + "\r\n" +
-                        "Access-Control-Allow-Origin: *\r\n" +
-                        "Access-Control-Allow-Methods: GET, POST, OPTIONS\r\n" +
-                        "Access-Control-Allow-Headers: Content-Type\r\n" +
-                        "\r\n";
-        
-        outputStream.write(response.getBytes());
-        outputStream.write(htmlContent.getBytes());
-        outputStream.flush();
+        html.write("</ul>\n</body></html>");
+        html.close();
         
         Log.d(TAG, "Served directory listing: " + path);
     }
@@ -551,7 +1156,7 @@ public class WebServer {
     /**
      * Sert les fichiers de la bibliothèque de jeux depuis les assets
      */
-    private void serveGameLibraryFile(OutputStream outputStream, String path, String method, boolean enableSharedArrayBuffer) throws IOException {
+    private void serveGameLibraryFile(OutputStream outputStream, String path, String method, Map<String, String> requestHeaders, boolean enableSharedArrayBuffer) throws IOException {
         try {
             // Extraire le chemin du fichier (enlever /gamelibrary/)
             String assetPath = path.substring(13); // Enlever "/gamelibrary/"
@@ -574,26 +1179,26 @@ public class WebServer {
                 String potentialConsole = assetPath.substring(0, assetPath.indexOf('/'));
                 // Verifier si c'est un repertoire de console valide
                 if (isConsoleDirectory(potentialConsole)) {
-                    serveConsoleFile(outputStream, assetPath, method, enableSharedArrayBuffer);
+                    serveConsoleFile(outputStream, assetPath, method, requestHeaders, enableSharedArrayBuffer);
                     return;
                 }
             }
             
             // API endpoint pour lister les consoles disponibles
             if (assetPath.equals("api/consoles")) {
-                serveConsolesAPI(outputStream, method);
+                serveConsolesAPI(outputStream, method, requestHeaders);
                 return;
             }
             
             // Gestion spéciale pour gamelist.json - servir depuis les assets (ancien système)
             if (assetPath.equals("gamelist.json")) {
-                serveGamelistJson(outputStream, method);
+                serveGamelistJson(outputStream, method, requestHeaders);
                 return;
             }
             
             // Pour tous les fichiers HTML et JS, essayer de charger depuis le stockage d'abord
             if (assetPath.endsWith(".html") || assetPath.endsWith(".js")) {
-                if (tryServeFromStorage(outputStream, assetPath, method, enableSharedArrayBuffer)) {
+                if (tryServeFromStorage(outputStream, assetPath, method, requestHeaders, enableSharedArrayBuffer)) {
                     return; // Fichier servi depuis le stockage
                 }
                 // Sinon, continuer pour servir depuis les assets
@@ -602,34 +1207,12 @@ public class WebServer {
             // Construire le chemin complet vers l'asset
             String fullAssetPath = "gamelibrary/" + assetPath;
             
-            // Ouvrir le fichier depuis les assets
-            InputStream inputStream = context.getAssets().open(fullAssetPath);
-            
-            // Déterminer le type de contenu
-            String contentType = getContentType(assetPath);
-            
-            // Lire le contenu du fichier
-            byte[] content = new byte[inputStream.available()];
-            inputStream.read(content);
-            inputStream.close();
-            
-            // Envoyer la réponse HTTP avec headers SharedArrayBuffer conditionnels
-            String response = "HTTP/1.1 200 OK\r\n" +
-                            "Content-Type: " + contentType + "\r\n" +
-                            "Content-Length: " + content.length + "\r\n" +
-                            "Access-Control-Allow-Origin: *\r\n" +
+            // Envoyer l'asset (variante compressée si acceptée) avec headers SharedArrayBuffer conditionnels
+            String extraHeaders = "Access-Control-Allow-Origin: *\r\n" +
                             "Access-Control-Allow-Methods: GET, POST, OPTIONS\r\n" +
                             "Access-Control-Allow-Headers: Content-Type\r\n" +
-                            getSharedArrayBufferHeaders(enableSharedArrayBuffer) +
-                            "\r\n";
-            
-            outputStream.write(response.getBytes());
-            
-            // Pour les requêtes HEAD, ne pas envoyer le contenu
-            if (!"HEAD".equals(method)) {
-                outputStream.write(content);
-            }
-            outputStream.flush();
+                            getSharedArrayBufferHeaders(enableSharedArrayBuffer);
+            sendAsset(outputStream, fullAssetPath, getContentType(assetPath), method, requestHeaders, extraHeaders);
             
             Log.d(TAG, "Served game library file: " + fullAssetPath);
 
@@ -743,7 +1326,7 @@ public class WebServer {
      * Essayer de servir un fichier HTML depuis le stockage interne
      * Retourne true si le fichier a été servi, false sinon
      */
-    private boolean tryServeFromStorage(OutputStream outputStream, String fileName, String method, boolean enableSharedArrayBuffer) {
+    private boolean tryServeFromStorage(OutputStream outputStream, String fileName, String method, Map<String, String> requestHeaders, boolean enableSharedArrayBuffer) {
         try {
             // Chemin vers le fichier personnalisé dans le stockage (ChatAI-Files/sites/gamelibrary/)
             String storagePath = "/storage/emulated/0/ChatAI-Files/sites/gamelibrary/" + fileName;
@@ -760,33 +1343,9 @@ public class WebServer {
                     contentType = "text/css; charset=UTF-8";
                 }
                 
-                // HEAD request - juste envoyer le header avec headers SharedArrayBuffer conditionnels
-                if ("HEAD".equals(method)) {
-                    String response = "HTTP/1.1 200 OK\r\n" +
-                                    "Content-Type: " + contentType + "\r\n" +
-                                    "Content-Length: " + htmlFile.length() + "\r\n" +
-                                    getSharedArrayBufferHeaders(enableSharedArrayBuffer) +
-                                    "Connection: close\r\n\r\n";
-                    outputStream.write(response.getBytes());
-                    outputStream.flush();
-                    return true;
-                }
-                
-                // Lire le fichier depuis le stockage
-                FileInputStream fis = new FileInputStream(htmlFile);
-                byte[] content = new byte[(int) htmlFile.length()];
-                fis.read(content);
-                fis.close();
-                
-                // Envoyer la réponse HTTP avec headers SharedArrayBuffer conditionnels
-                String response = "HTTP/1.1 200 OK\r\n" +
-                                "Content-Type: " + contentType + "\r\n" +
-                                "Content-Length: " + content.length + "\r\n" +
-                                getSharedArrayBufferHeaders(enableSharedArrayBuffer) +
-                                "Connection: close\r\n\r\n";
-                outputStream.write(response.getBytes());
-                outputStream.write(content);
-                outputStream.flush();
+                // Envoyer le fichier (HEAD et Range gérés) avec headers SharedArrayBuffer conditionnels
+                sendFile(outputStream, htmlFile, contentType, method, requestHeaders,
+                        getSharedArrayBufferHeaders(enableSharedArrayBuffer));
                 
                 Log.d(TAG, "Served custom " + fileName + " from storage");
                 return true;
@@ -798,7 +1357,7 @@ public class WebServer {
         return false; // Fichier non trouvé ou erreur, utiliser les assets
     }
     
-    private void serveConsoleFile(OutputStream outputStream, String assetPath, String method, boolean enableSharedArrayBuffer) throws IOException {
+    private void serveConsoleFile(OutputStream outputStream, String assetPath, String method, Map<String, String> requestHeaders, boolean enableSharedArrayBuffer) throws IOException {
         try {
             // Déterminer la console et le nom du fichier
             // assetPath est du format: "nes/file.zip" ou "snes/gamelist.json" ou "n64/file.z64"
@@ -812,7 +1371,7 @@ public class WebServer {
                 
                 if (!file.exists()) {
                     Log.i(TAG, "gamelist.json not found, generating automatically from ROMs for: " + console);
-                    serveAutoGeneratedGamelist(outputStream, console, method);
+                    serveAutoGeneratedGamelist(outputStream, console, method, requestHeaders);
                     return;
                 }
             }
@@ -830,33 +1389,13 @@ public class WebServer {
                 return;
             }
             
-            // Déterminer le type de contenu
-            String contentType = getContentType(fileName);
-            
-            // Envoyer la réponse HTTP avec headers SharedArrayBuffer conditionnels
-            String response = "HTTP/1.1 200 OK\r\n" +
-                            "Content-Type: " + contentType + "\r\n" +
-                            "Content-Length: " + file.length() + "\r\n" +
-                            "Access-Control-Allow-Origin: *\r\n" +
+            // Envoyer le fichier (Range supporté) avec headers SharedArrayBuffer conditionnels
+            String extraHeaders = "Access-Control-Allow-Origin: *\r\n" +
                             "Access-Control-Allow-Methods: GET, POST, OPTIONS\r\n" +
-                            "Access-Control-Allow-Headers: Content-Type\r\n" +
-                            getSharedArrayBufferHeaders(enableSharedArrayBuffer) +
-                            "\r\n";
-            
-            outputStream.write(response.getBytes());
-            
-            // Pour les requêtes HEAD, ne pas envoyer le contenu
-            if (!"HEAD".equals(method)) {
-                // Streamer le fichier par morceaux (évite OutOfMemoryError pour gros fichiers)
-                java.io.FileInputStream fileInputStream = new java.io.FileInputStream(file);
-                byte[] buffer = new byte[8192]; // Buffer de 8KB
-                int bytesRead;
-                while ((bytesRead = fileInputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
-                }
-                fileInputStream.close();
-            }
-            outputStream.flush();
+                            "Access-Control-Allow-Headers: Content-Type, Range\r\n" +
+                            "Access-Control-Expose-Headers: Accept-Ranges, Content-Range, Content-Length, ETag\r\n" +
+                            getSharedArrayBufferHeaders(enableSharedArrayBuffer);
+            sendFile(outputStream, file, getContentType(fileName), method, requestHeaders, extraHeaders);
             
             Log.d(TAG, "Served console file: " + console + "/" + fileName + " (" + file.length() + " bytes)");
 
@@ -948,16 +1487,12 @@ public class WebServer {
             html.append("</div>\n");
             html.append("</body></html>\n");
             
-            String htmlContent = html.toString();
-            String response = "HTTP/1.1 200 OK\r\n" +
-                            "Content-Type: text/html; charset=UTF-8\r\n" +
-                            "Content-Length: " + htmlContent.getBytes("UTF-8").length + "\r\n" +
-                            "Access-Control-Allow-Origin: *\r\n" +
-                            "\r\n";
-            
-            outputStream.write(response.getBytes());
+            byte[] htmlBytes = html.toString().getBytes("UTF-8");
+            writeResponseHead(outputStream, "200 OK",
+                    "Content-Type: text/html; charset=UTF-8\r\n" +
+                    "Access-Control-Allow-Origin: *\r\n", htmlBytes.length);
             if (!"HEAD".equals(method)) {
-                outputStream.write(htmlContent.getBytes("UTF-8"));
+                outputStream.write(htmlBytes);
             }
             outputStream.flush();
             
@@ -970,74 +1505,183 @@ public class WebServer {
     }
     
     /**
-     * API endpoint qui retourne la liste des consoles disponibles
-     * Scanne automatiquement les répertoires dans gamelibrary/
+     * API endpoint qui retourne la liste des consoles disponibles
+     * Scanne automatiquement les répertoires dans gamelibrary/
+     */
+    private void serveConsolesAPI(OutputStream outputStream, String method, Map<String, String> requestHeaders) throws IOException {
+        try {
+            CachedJson catalog = getConsolesCatalog();
+            String extraHeaders = "Access-Control-Allow-Origin: *\r\n" +
+                            "Access-Control-Allow-Methods: GET, POST, OPTIONS\r\n" +
+                            "Access-Control-Allow-Headers: Content-Type\r\n";
+            sendCachedJson(outputStream, catalog, method, requestHeaders, extraHeaders);
+            
+            Log.d(TAG, "Served consoles API (" + catalog.bytes.length + " bytes, etag " + catalog.etag + ")");
+
+        } catch (Exception e) {
+            Log.e(TAG, "Erreur lors du service de l'API consoles", e);
+            sendErrorResponse(outputStream, 500, "Internal Server Error");
+        }
+    }
+    
+    /**
+     * Retourne le catalogue des consoles, reconstruit seulement si GameLibrary-Data a changé
+     * (événement FileObserver ou mtimes des répertoires/console.json différents)
+     */
+    private CachedJson getConsolesCatalog() throws Exception {
+        CachedJson catalog = consolesCatalog;
+        if (catalog != null && !catalogDirty.get()
+                && System.currentTimeMillis() - catalogCheckedAt < CATALOG_RECHECK_MS) {
+            return catalog;
+        }
+        
+        synchronized (catalogLock) {
+            catalog = consolesCatalog;
+            catalogDirty.set(false);
+            String signature = computeCatalogSignature();
+            catalogCheckedAt = System.currentTimeMillis();
+            if (catalog != null && catalog.signature.equals(signature)) {
+                return catalog;
+            }
+            
+            long startTime = System.currentTimeMillis();
+            byte[] catalogBytes = buildConsolesCatalog();
+            catalog = new CachedJson(catalogBytes, signature, System.currentTimeMillis() - startTime);
+            consolesCatalog = catalog;
+            Log.i(TAG, "Catalogue consoles reconstruit en " + catalog.buildMillis + " ms");
+            return catalog;
+        }
+    }
+    
+    /**
+     * Signature du catalogue: mtime de chaque répertoire de console (ajout/suppression de ROMs ou de gamelist.json)
+     * et de son console.json. Un stat par fichier au lieu d'un listing complet et d'une lecture JSON.
+     */
+    private String computeCatalogSignature() {
+        File gamelibraryDir = new File(GAME_DATA_DIR);
+        File[] directories = gamelibraryDir.listFiles(File::isDirectory);
+        if (directories == null) {
+            return "";
+        }
+        
+        java.util.Arrays.sort(directories);
+        StringBuilder signature = new StringBuilder();
+        for (File dir : directories) {
+            signature.append(dir.getName()).append(':')
+                    .append(dir.lastModified()).append(':')
+                    .append(new File(dir, "console.json").lastModified()).append('|');
+        }
+        return signature.toString();
+    }
+    
+    /**
+     * Scanne GameLibrary-Data et sérialise le catalogue des consoles
+     * (écrit console par console, sans arbre JSON global)
      */
-    private void serveConsolesAPI(OutputStream outputStream, String method) throws IOException {
-        try {
-            org.json.JSONArray consolesArray = new org.json.JSONArray();
-            
-            // Scanner les répertoires dans GameLibrary-Data
-            java.io.File gamelibraryDir = new java.io.File("/storage/emulated/0/GameLibrary-Data");
+    private byte[] buildConsolesCatalog() throws Exception {
+        ByteArrayOutputStream catalog = new ByteArrayOutputStream(8192);
+        JsonWriter json = new JsonWriter(new OutputStreamWriter(catalog, StandardCharsets.UTF_8));
+        json.beginObject();
+        json.name("consoles").beginArray();
+        int consoleCount = 0;
+        
+        // Scanner les répertoires dans GameLibrary-Data
+        java.io.File gamelibraryDir = new java.io.File(GAME_DATA_DIR);
+        
+        if (gamelibraryDir.exists() && gamelibraryDir.isDirectory()) {
+            java.io.File[] directories = gamelibraryDir.listFiles(java.io.File::isDirectory);
             
-            if (gamelibraryDir.exists() && gamelibraryDir.isDirectory()) {
-                java.io.File[] directories = gamelibraryDir.listFiles(java.io.File::isDirectory);
-                
-                if (directories != null) {
-                    for (java.io.File dir : directories) {
-                        String dirName = dir.getName();
-                        
-                        // Ignorer les répertoires système
-                        if (dirName.equals("data") || dirName.equals("emulatorjs") || dirName.equals("vmnes") || dirName.equals("playlists")) {
-                            continue;
-                        }
-                        
-                        // Vérifier si gamelist.json existe OU si le répertoire contient des ROMs
-                        java.io.File gamelistFile = new java.io.File(dir, "gamelist.json");
-                        boolean hasGamelist = gamelistFile.exists();
-                        boolean hasRoms = hasRomFiles(dir);
+            if (directories != null) {
+                for (java.io.File dir : directories) {
+                    String dirName = dir.getName();
+                    
+                    // Ignorer les répertoires système
+                    if (dirName.equals("data") || dirName.equals("emulatorjs") || dirName.equals("vmnes") || dirName.equals("playlists")) {
+                        continue;
+                    }
+                    
+                    // Vérifier si gamelist.json existe OU si le répertoire contient des ROMs
+                    java.io.File gamelistFile = new java.io.File(dir, "gamelist.json");
+                    boolean hasGamelist = gamelistFile.exists();
+                    boolean hasRoms = hasRomFiles(dir);
+                    
+                    if (hasGamelist || hasRoms) {
+                        org.json.JSONObject consoleInfo = detectConsoleConfig(dir, dirName);
                         
-                        if (hasGamelist || hasRoms) {
-                            org.json.JSONObject consoleInfo = detectConsoleConfig(dir, dirName);
-                            
-                            if (consoleInfo != null) {
-                                // Ajouter un flag pour indiquer le mode AUTO SCAN
-                                consoleInfo.put("autoScan", !hasGamelist);
-                                consolesArray.put(consoleInfo);
-                                String mode = hasGamelist ? "gamelist.json" : "AUTO SCAN";
-                                Log.d(TAG, "Console detected: " + dirName + " (" + consoleInfo.optString("fullName") + ") - Mode: " + mode);
-                            }
+                        if (consoleInfo != null) {
+                            // Ajouter un flag pour indiquer le mode AUTO SCAN
+                            consoleInfo.put("autoScan", !hasGamelist);
+                            writeJsonValue(json, consoleInfo);
+                            consoleCount++;
+                            String mode = hasGamelist ? "gamelist.json" : "AUTO SCAN";
+                            Log.d(TAG, "Console detected: " + dirName + " (" + consoleInfo.optString("fullName") + ") - Mode: " + mode);
                         }
                     }
                 }
             }
-            
-            org.json.JSONObject response = new org.json.JSONObject();
-            response.put("consoles", consolesArray);
-            
-            String jsonContent = response.toString();
-            byte[] jsonBytes = jsonContent.getBytes("UTF-8");
-            String httpResponse = "HTTP/1.1 200 OK\r\n" +
-                            "Content-Type: application/json; charset=utf-8\r\n" +
-                            "Content-Length: " + jsonBytes.length + "\r\n" +
-                            "Access-Control-Allow-Origin: *\r\n" +
-                            "Access-Control-Allow-Methods: GET, POST, OPTIONS\r\n" +
-                            "Access-Control-Allow-Headers: Content-Type\r\n" +
-                            "\r\n";
-            
-            outputStream.write(httpResponse.getBytes());
-            
-            if (!"HEAD".equals(method)) {
-                outputStream.write(jsonBytes);
+        }
+        
+        json.endArray();
+        json.endObject();
+        json.close();
+        
+        Log.d(TAG, "Consoles catalog built: " + consoleCount + " consoles found");
+        return catalog.toByteArray();
+    }
+    
+    /**
+     * Écrit une valeur org.json (objet, tableau ou scalaire) dans un JsonWriter
+     */
+    private static void writeJsonValue(JsonWriter json, Object value) throws IOException {
+        if (value == null || value == org.json.JSONObject.NULL) {
+            json.nullValue();
+        } else if (value instanceof org.json.JSONObject) {
+            org.json.JSONObject object = (org.json.JSONObject) value;
+            json.beginObject();
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                json.name(key);
+                writeJsonValue(json, object.opt(key));
+            }
+            json.endObject();
+        } else if (value instanceof org.json.JSONArray) {
+            org.json.JSONArray array = (org.json.JSONArray) value;
+            json.beginArray();
+            for (int i = 0; i < array.length(); i++) {
+                writeJsonValue(json, array.opt(i));
             }
+            json.endArray();
+        } else if (value instanceof Boolean) {
+            json.value((Boolean) value);
+        } else if (value instanceof Number) {
+            json.value((Number) value);
+        } else {
+            json.value(value.toString());
+        }
+    }
+    
+    /**
+     * Envoie un JSON mis en cache: variante gzip précalculée si acceptée, 304 si l'ETag correspond
+     */
+    private void sendCachedJson(OutputStream outputStream, CachedJson json, String method,
+                                Map<String, String> requestHeaders, String extraHeaders) throws IOException {
+        boolean useGzip = json.gzipBytes != null
+                && HttpCompression.accepts(requestHeaders.get("accept-encoding"), HttpCompression.GZIP);
+        String etag = useGzip ? json.gzipEtag : json.etag;
+        extraHeaders += "Vary: Accept-Encoding\r\n" +
+                "ETag: " + etag + "\r\n" +
+                "Cache-Control: no-cache\r\n";
+        
+        String ifNoneMatch = requestHeaders.get("if-none-match");
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            writeResponseHead(outputStream, "304 Not Modified", extraHeaders, BODY_NONE);
             outputStream.flush();
-            
-            Log.d(TAG, "Served consoles API: " + consolesArray.length() + " consoles found");
-
-        } catch (Exception e) {
-            Log.e(TAG, "Erreur lors du service de l'API consoles", e);
-            sendErrorResponse(outputStream, 500, "Internal Server Error");
+            return;
         }
+        
+        sendContent(outputStream, "application/json; charset=utf-8", useGzip ? json.gzipBytes : json.bytes,
+                useGzip ? HttpCompression.GZIP : null, method, extraHeaders);
     }
     
     /**
@@ -1722,32 +2366,13 @@ public class WebServer {
     /**
      * Sert le fichier gamelist.json depuis les assets
      */
-    private void serveGamelistJson(OutputStream outputStream, String method) throws IOException {
+    private void serveGamelistJson(OutputStream outputStream, String method, Map<String, String> requestHeaders) throws IOException {
         try {
-            // Ouvrir le fichier gamelist.json depuis les assets
-            InputStream inputStream = context.getAssets().open("gamelist.json");
-            
-            // Lire le contenu du fichier
-            byte[] content = new byte[inputStream.available()];
-            inputStream.read(content);
-            inputStream.close();
-            
-            // Envoyer la réponse HTTP
-            String response = "HTTP/1.1 200 OK\r\n" +
-                            "Content-Type: application/json\r\n" +
-                            "Content-Length: " + content.length + "\r\n" +
-                            "Access-Control-Allow-Origin: *\r\n" +
+            // Envoyer le fichier gamelist.json depuis les assets
+            String extraHeaders = "Access-Control-Allow-Origin: *\r\n" +
                             "Access-Control-Allow-Methods: GET, POST, OPTIONS\r\n" +
-                            "Access-Control-Allow-Headers: Content-Type\r\n" +
-                            "\r\n";
-            
-            outputStream.write(response.getBytes());
-            
-            // Pour les requêtes HEAD, ne pas envoyer le contenu
-            if (!"HEAD".equals(method)) {
-                outputStream.write(content);
-            }
-            outputStream.flush();
+                            "Access-Control-Allow-Headers: Content-Type\r\n";
+            sendAsset(outputStream, "gamelist.json", "application/json", method, requestHeaders, extraHeaders);
             
             Log.d(TAG, "Served gamelist.json");
 
@@ -1810,15 +2435,11 @@ public class WebServer {
             html.append("</tbody></table>\n");
             html.append("</body></html>\n");
             
-            String htmlContent = html.toString();
-            String response = "HTTP/1.1 200 OK\r\n" +
-                            "Content-Type: text/html\r\n" +
-                            "Content-Length: " + htmlContent.length() + "\r\n" +
-                            "Access-Control-Allow-Origin: *\r\n" +
-                            "\r\n";
-            
-            outputStream.write(response.getBytes());
-            outputStream.write(htmlContent.getBytes());
+            byte[] htmlBytes = html.toString().getBytes("UTF-8");
+            writeResponseHead(outputStream, "200 OK",
+                    "Content-Type: text/html; charset=UTF-8\r\n" +
+                    "Access-Control-Allow-Origin: *\r\n", htmlBytes.length);
+            outputStream.write(htmlBytes);
             outputStream.flush();
             
             Log.d(TAG, "Served game library directory listing: " + directoryPath);
@@ -1883,6 +2504,12 @@ public class WebServer {
             return "application/octet-stream";
         } else if (filename.endsWith(".css")) {
             return "text/css; charset=utf-8";
+        } else if (filename.endsWith(".wasm")) {
+            return "application/wasm";
+        } else if (filename.endsWith(".svg")) {
+            return "image/svg+xml";
+        } else if (filename.endsWith(".txt")) {
+            return "text/plain; charset=utf-8";
         } else if (filename.endsWith(".png")) {
             return "image/png";
         } else if (filename.endsWith(".jpg") || filename.endsWith(".jpeg")) {
@@ -1905,66 +2532,295 @@ public class WebServer {
     /**
      * Sert un fichier statique avec gestion directe des bytes
      */
-    private void serveStaticFile(OutputStream outputStream, Path filePath) throws IOException {
-        // Lire le fichier en bytes
-        byte[] fileBytes = Files.readAllBytes(filePath);
+    private void serveStaticFile(OutputStream outputStream, Path filePath, String method, Map<String, String> requestHeaders) throws IOException {
+        File file = filePath.toFile();
         
         // Déterminer le type MIME
         String mimeType = getMimeType(filePath.getFileName().toString());
         
-        // Headers HTTP
+        // Headers HTTP spécifiques au site
         StringBuilder headers = new StringBuilder();
-        headers.append("HTTP/1.1 200 OK\r\n");
-        headers.append("Content-Type: ").append(mimeType).append("\r\n");
-        headers.append("Content-Length: ").append(fileBytes.length).append("\r\n");
         headers.append("Server: ChatAI-WebServer/1.0 (Android)\r\n");
         addCorsAndSharedArrayBufferHeaders(headers);
         headers.append("Cache-Control: public, max-age=3600\r\n");
-        headers.append("\r\n");
         
-        // Envoyer les headers
-        outputStream.write(headers.toString().getBytes("UTF-8"));
+        // Envoyer le contenu du fichier (bytes bruts, Range supporté)
+        sendFile(outputStream, file, mimeType, method, requestHeaders, headers.toString());
+        
+        Log.d(TAG, "File served: " + filePath.getFileName() + " (" + file.length() + " bytes)");
+    }
+    
+    /**
+     * Envoie un fichier avec support des Range Requests (RFC 7233):
+     * 200 complet, 206 plage unique, 206 multipart/byteranges, 416 non satisfaisable.
+     * Gère HEAD, If-Range, ETag et Last-Modified.
+     */
+    private void sendFile(OutputStream outputStream, File file, String contentType, String method,
+                          Map<String, String> requestHeaders, String extraHeaders) throws IOException {
+        long lastModified = file.lastModified();
+        sendFileRegion(outputStream, file, 0, file.length(), HttpRange.fileEtag(file.length(), lastModified), lastModified,
+                contentType, method, requestHeaders, extraHeaders);
+    }
+    
+    /**
+     * Envoie une portion d'un fichier comme une ressource complète (fichier entier ou entrée stockée d'une archive),
+     * avec le même support Range/ETag que sendFile
+     */
+    private void sendFileRegion(OutputStream outputStream, File file, long regionOffset, long resourceLength, String etag,
+                                long lastModified, String contentType, String method,
+                                Map<String, String> requestHeaders, String extraHeaders) throws IOException {
+        boolean headOnly = "HEAD".equals(method);
+        
+        String commonHeaders = "Accept-Ranges: bytes\r\n" +
+                "ETag: " + etag + "\r\n" +
+                "Last-Modified: " + HttpRange.formatHttpDate(lastModified) + "\r\n" +
+                extraHeaders;
+        
+        String ifNoneMatch = requestHeaders.get("if-none-match");
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            writeResponseHead(outputStream, "304 Not Modified", commonHeaders, BODY_NONE);
+            outputStream.flush();
+            return;
+        }
+        
+        // If-Range: si le fichier a changé, ignorer Range et renvoyer le fichier complet
+        List<HttpRange> ranges = null;
+        if (HttpRange.ifRangeMatches(requestHeaders.get("if-range"), etag, lastModified)) {
+            ranges = HttpRange.parse(requestHeaders.get("range"), resourceLength);
+        }
+        
+        if (ranges == null) {
+            // Fichier complet
+            writeResponseHead(outputStream, "200 OK", "Content-Type: " + contentType + "\r\n" + commonHeaders,
+                    resourceLength);
+            if (!headOnly) {
+                copyFileRange(file, regionOffset, resourceLength, outputStream);
+            }
+            outputStream.flush();
+            return;
+        }
+        
+        if (ranges.isEmpty()) {
+            // Aucune plage satisfaisable
+            writeResponseHead(outputStream, "416 Range Not Satisfiable",
+                    "Content-Range: bytes */" + resourceLength + "\r\n" + commonHeaders, 0);
+            outputStream.flush();
+            Log.d(TAG, "Range non satisfaisable: " + requestHeaders.get("range") + " (" + resourceLength + " bytes)");
+            return;
+        }
+        
+        if (ranges.size() == 1) {
+            // Plage unique
+            HttpRange range = ranges.get(0);
+            writeResponseHead(outputStream, "206 Partial Content",
+                    "Content-Type: " + contentType + "\r\n" +
+                    "Content-Range: " + range.toContentRange(resourceLength) + "\r\n" +
+                    commonHeaders, range.length());
+            if (!headOnly) {
+                copyFileRange(file, regionOffset + range.start, range.length(), outputStream);
+            }
+            outputStream.flush();
+            return;
+        }
+        
+        // Plages multiples: multipart/byteranges, longueur calculée à l'avance
+        String boundary = "CHATAI_BYTERANGES_" + Long.toHexString(System.nanoTime());
+        String[] partHeaders = new String[ranges.size()];
+        long contentLength = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            HttpRange range = ranges.get(i);
+            partHeaders[i] = "\r\n--" + boundary + "\r\n" +
+                    "Content-Type: " + contentType + "\r\n" +
+                    "Content-Range: " + range.toContentRange(resourceLength) + "\r\n" +
+                    "\r\n";
+            contentLength += partHeaders[i].length() + range.length();
+        }
+        String closingBoundary = "\r\n--" + boundary + "--\r\n";
+        contentLength += closingBoundary.length();
         
-        // Envoyer le contenu du fichier (bytes bruts)
-        outputStream.write(fileBytes);
+        writeResponseHead(outputStream, "206 Partial Content",
+                "Content-Type: multipart/byteranges; boundary=" + boundary + "\r\n" + commonHeaders, contentLength);
+        if (!headOnly) {
+            for (int i = 0; i < ranges.size(); i++) {
+                HttpRange range = ranges.get(i);
+                outputStream.write(partHeaders[i].getBytes("UTF-8"));
+                copyFileRange(file, regionOffset + range.start, range.length(), outputStream);
+            }
+            outputStream.write(closingBoundary.getBytes("UTF-8"));
+        }
         outputStream.flush();
+    }
+    
+    /**
+     * Envoie un asset de l'APK (via le cache), en variante précompressée (.br/.gz générée au build)
+     * si le client l'accepte. Répond 304 si la copie du client est à jour.
+     */
+    private void sendAsset(OutputStream outputStream, String assetPath, String contentType, String method,
+                           Map<String, String> requestHeaders, String extraHeaders) throws IOException {
+        AssetCache.Asset asset = null;
+        String contentEncoding = null;
+        
+        if (HttpCompression.isCompressibleType(contentType)) {
+            extraHeaders += "Vary: Accept-Encoding\r\n";
+            String acceptEncoding = requestHeaders.get("accept-encoding");
+            if (HttpCompression.accepts(acceptEncoding, HttpCompression.BROTLI)) {
+                asset = assetCache.getIfExists(assetPath + ".br");
+                contentEncoding = HttpCompression.BROTLI;
+            }
+            if (asset == null && HttpCompression.accepts(acceptEncoding, HttpCompression.GZIP)) {
+                asset = assetCache.getIfExists(assetPath + ".gz");
+                contentEncoding = HttpCompression.GZIP;
+            }
+        }
+        if (asset == null) {
+            // Asset original (FileNotFoundException si absent)
+            asset = assetCache.get(assetPath);
+            contentEncoding = null;
+        }
+        
+        // Revalidation systématique: 304 sans corps si l'ETag correspond
+        extraHeaders += "ETag: " + asset.etag + "\r\n" +
+                "Last-Modified: " + HttpRange.formatHttpDate(asset.lastModified) + "\r\n" +
+                "Cache-Control: no-cache\r\n";
+        if (AssetCache.isNotModified(asset, requestHeaders.get("if-none-match"), requestHeaders.get("if-modified-since"))) {
+            writeResponseHead(outputStream, "304 Not Modified", extraHeaders, BODY_NONE);
+            outputStream.flush();
+            return;
+        }
+        if (asset.content == null) {
+            sendLargeAsset(outputStream, asset, contentType, contentEncoding, method, extraHeaders);
+            return;
+        }
         
-        Log.d(TAG, "File served: " + filePath.getFileName() + " (" + fileBytes.length + " bytes)");
+        sendContent(outputStream, contentType, asset.content, contentEncoding, method, extraHeaders);
     }
     
     /**
-     * Sert un répertoire (listing)
+     * Asset hors cache (trop gros): portion de l'APK en zero-copy s'il y est stocké sans compression,
+     * sinon copié par blocs depuis l'APK
      */
-    private void serveDirectory(OutputStream outputStream, Path dirPath, String urlPath) throws IOException {
-        StringBuilder html = new StringBuilder();
-        html.append("<!DOCTYPE html>\n");
-        html.append("<html><head><title>Index of ").append(urlPath).append("</title>\n");
+    private void sendLargeAsset(OutputStream outputStream, AssetCache.Asset asset, String contentType,
+                                String contentEncoding, String method, String extraHeaders) throws IOException {
+        writeResponseHead(outputStream, "200 OK",
+                "Content-Type: " + contentType + "\r\n" +
+                (contentEncoding != null ? "Content-Encoding: " + contentEncoding + "\r\n" : "") +
+                extraHeaders, asset.length);
+        if ("HEAD".equals(method)) {
+            outputStream.flush();
+            return;
+        }
         
-        // CSS personnalisé (comme Apache)
-        if (!customCSS.isEmpty()) {
-            html.append("<style>").append(customCSS).append("</style>\n");
+        AssetFileDescriptor descriptor = asset.openFd();
+        if (descriptor != null) {
+            try (FileChannel channel = descriptor.createInputStream().getChannel()) {
+                FileTransfer.send(channel, descriptor.getStartOffset(), descriptor.getLength(), outputStream);
+            }
         } else {
-            // CSS par défaut
-            html.append("<style>")
-                .append("body{font-family:Arial,sans-serif;margin:20px;}")
-                .append("table{width:100%;border-collapse:collapse;}")
-                .append("th,td{padding:8px;text-align:left;border-bottom:1px solid #ddd;}")
-                .append("th{background-color:#f2f2f2;}")
-                .append("a{text-decoration:none;color:#0066cc;}")
-                .append("a:hover{text-decoration:underline;}")
-                .append("</style>\n");
+            try (InputStream in = asset.open()) {
+                byte[] buffer = new byte[65536];
+                int bytesRead;
+                while ((bytesRead = in.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, bytesRead);
+                }
+            }
+        }
+        outputStream.flush();
+    }
+    
+    /**
+     * Envoie un contenu généré, compressé à la volée en gzip si le client l'accepte
+     */
+    private void sendDynamicContent(OutputStream outputStream, String contentType, byte[] content, String method,
+                                    Map<String, String> requestHeaders, String extraHeaders) throws IOException {
+        String contentEncoding = null;
+        if (HttpCompression.isCompressibleType(contentType)) {
+            extraHeaders += "Vary: Accept-Encoding\r\n";
+            if (content.length >= HttpCompression.MIN_COMPRESS_SIZE
+                    && HttpCompression.accepts(requestHeaders.get("accept-encoding"), HttpCompression.GZIP)) {
+                content = HttpCompression.gzip(content);
+                contentEncoding = HttpCompression.GZIP;
+            }
+        }
+        sendContent(outputStream, contentType, content, contentEncoding, method, extraHeaders);
+    }
+    
+    /**
+     * Envoie une réponse 200 avec un corps en mémoire
+     */
+    private void sendContent(OutputStream outputStream, String contentType, byte[] content, String contentEncoding,
+                             String method, String extraHeaders) throws IOException {
+        writeResponseHead(outputStream, "200 OK",
+                "Content-Type: " + contentType + "\r\n" +
+                (contentEncoding != null ? "Content-Encoding: " + contentEncoding + "\r\n" : "") +
+                extraHeaders, content.length);
+        
+        // Pour les requêtes HEAD, ne pas envoyer le contenu
+        if (!"HEAD".equals(method)) {
+            outputStream.write(content);
         }
+        outputStream.flush();
+    }
+    
+    /**
+     * Commence une réponse 200 de longueur inconnue et retourne son corps: chunked pour HTTP/1.1,
+     * sinon délimité par la fermeture de la connexion. Compressé en gzip à la volée si le client l'accepte.
+     * Le corps doit être fermé pour terminer la réponse (la connexion reste ouverte); en cas d'erreur,
+     * ne pas le fermer: sans chunk final, le client voit la troncature.
+     */
+    private OutputStream beginStreamingResponse(OutputStream outputStream, String contentType,
+                                                Map<String, String> requestHeaders, String extraHeaders) throws IOException {
+        boolean chunked = outputStream instanceof KeepAliveStream && ((KeepAliveStream) outputStream).acceptsChunked();
+        boolean useGzip = HttpCompression.isCompressibleType(contentType)
+                && HttpCompression.accepts(requestHeaders.get("accept-encoding"), HttpCompression.GZIP);
         
-        html.append("</head><body>\n");
-        html.append("<h1>Index of ").append(urlPath).append("</h1>\n");
-        html.append("<hr>\n");
-        html.append("<table>\n");
-        html.append("<tr><th>Name</th><th>Last modified</th><th>Size</th></tr>\n");
+        writeResponseHead(outputStream, "200 OK",
+                "Content-Type: " + contentType + "\r\n" +
+                (useGzip ? "Content-Encoding: gzip\r\n" : "") +
+                (HttpCompression.isCompressibleType(contentType) ? "Vary: Accept-Encoding\r\n" : "") +
+                extraHeaders, chunked ? BODY_CHUNKED : BODY_UNTIL_CLOSE);
         
+        OutputStream body;
+        if (chunked) {
+            body = new ChunkedOutputStream(outputStream);
+        } else {
+            // HTTP/1.0: fin du corps = fermeture, faite par la boucle de connexion
+            body = new FilterOutputStream(outputStream) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+                
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
+        return useGzip ? new GZIPOutputStream(body, 8192) : body;
+    }
+    
+    /**
+     * Envoie une portion de fichier vers la sortie
+     * Zero-copy (transferTo) pour les gros fichiers (ROMs PSX/Sega CD 450+ MB), sans passer par le heap
+     */
+    private void copyFileRange(File file, long offset, long length, OutputStream outputStream) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel fileChannel = randomAccessFile.getChannel()) {
+            FileTransfer.send(fileChannel, offset, length, outputStream);
+        }
+    }
+    
+    /**
+     * Sert un répertoire (listing), envoyé en streaming ligne par ligne
+     */
+    private void serveDirectory(OutputStream outputStream, Path dirPath, String urlPath, Map<String, String> requestHeaders) throws IOException {
+        // Trier les entrées avant d'envoyer les headers (une erreur de listing reste une page valide)
+        java.util.List<Path> files = new java.util.ArrayList<>();
         try {
             // Tri selon les options (comme Apache/Nginx)
-            java.util.List<Path> files = new java.util.ArrayList<>();
-            Files.list(dirPath).forEach(files::add);
+            try (java.util.stream.Stream<Path> entries = Files.list(dirPath)) {
+                entries.forEach(files::add);
+            }
             
             if (foldersFirst) {
                 files.sort((a, b) -> {
@@ -1977,62 +2833,79 @@ public class WebServer {
             } else {
                 files.sort((a, b) -> a.getFileName().toString().compareToIgnoreCase(b.getFileName().toString()));
             }
-            
-            files.forEach(file -> {
-                try {
-                    String name = file.getFileName().toString();
-                    String lastModified = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.US)
-                        .format(new Date(Files.getLastModifiedTime(file).toMillis()));
-                    long size = Files.isDirectory(file) ? -1 : Files.size(file);
-                    
-                    html.append("<tr><td>");
-                    if (Files.isDirectory(file)) {
-                        html.append("<a href=\"").append(name).append("/\">").append(name).append("/</a>");
-                    } else {
-                        html.append("<a href=\"").append(name).append("\">").append(name).append("</a>");
-                    }
-                    html.append("</td><td>").append(lastModified).append("</td><td>");
-                    if (size == -1) {
-                        html.append("-");
-                    } else {
-                        if (exactSize) {
-                            html.append(size).append(" bytes");
-                        } else {
-                            html.append(formatFileSize(size));
-                        }
-                    }
-                    html.append("</td></tr>\n");
-                } catch (IOException e) {
-                    Log.e(TAG, "Erreur listing file: " + file, e);
-                }
-            });
         } catch (IOException e) {
             Log.e(TAG, "Erreur listing directory: " + dirPath, e);
         }
         
-        html.append("</table>\n");
-        html.append("<hr>\n");
+        String extraHeaders = "Server: ChatAI-WebServer/1.0 (Android)\r\n" +
+                "Access-Control-Allow-Origin: *\r\n";
         
-        // Pied de page avec infos serveur (comme Apache/Nginx)
-        html.append("<address>ChatAI WebServer/1.0 (Android) Server at ")
-            .append("localhost Port ").append(PORT).append("</address>\n");
-        html.append("</body></html>\n");
+        // Fermé seulement en cas de succès (sinon pas de chunk final, voir beginStreamingResponse)
+        Writer html = new BufferedWriter(new OutputStreamWriter(
+                beginStreamingResponse(outputStream, "text/html; charset=utf-8", requestHeaders, extraHeaders),
+                StandardCharsets.UTF_8), 8192);
+        html.write("<!DOCTYPE html>\n");
+        html.write("<html><head><title>Index of " + urlPath + "</title>\n");
         
-        byte[] htmlBytes = html.toString().getBytes("UTF-8");
+        // CSS personnalisé (comme Apache)
+        if (!customCSS.isEmpty()) {
+            html.write("<style>" + customCSS + "</style>\n");
+        } else {
+            // CSS par défaut
+            html.write("<style>" +
+                "body{font-family:Arial,sans-serif;margin:20px;}" +
+                "table{width:100%;border-collapse:collapse;}" +
+                "th,td{padding:8px;text-align:left;border-bottom:1px solid #ddd;}" +
+                "th{background-color:#f2f2f2;}" +
+                "a{text-decoration:none;color:#0066cc;}" +
+                "a:hover{text-decoration:underline;}" +
+                "</style>\n");
+        }
         
-        // Headers HTTP
-        StringBuilder headers = new StringBuilder();
-        headers.append("HTTP/1.1 200 OK\r\n");
-        headers.append("Content-Type: text/html; charset=utf-8\r\n");
-        headers.append("Content-Length: ").append(htmlBytes.length).append("\r\n");
-        headers.append("Server: ChatAI-WebServer/1.0 (Android)\r\n");
-        headers.append("Access-Control-Allow-Origin: *\r\n");
-        headers.append("\r\n");
+        html.write("</head><body>\n");
+        html.write("<h1>Index of " + urlPath + "</h1>\n");
+        html.write("<hr>\n");
+        html.write("<table>\n");
+        html.write("<tr><th>Name</th><th>Last modified</th><th>Size</th></tr>\n");
         
-        // Envoyer la réponse
-        outputStream.write(headers.toString().getBytes("UTF-8"));
-        outputStream.write(htmlBytes);
-        outputStream.flush();
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.US);
+        for (Path file : files) {
+            try {
+                String name = file.getFileName().toString();
+                String lastModified = dateFormat.format(new Date(Files.getLastModifiedTime(file).toMillis()));
+                long size = Files.isDirectory(file) ? -1 : Files.size(file);
+                
+                StringBuilder row = new StringBuilder(128);
+                row.append("<tr><td>");
+                if (size == -1) {
+                    row.append("<a href=\"").append(name).append("/\">").append(name).append("/</a>");
+                } else {
+                    row.append("<a href=\"").append(name).append("\">").append(name).append("</a>");
+                }
+                row.append("</td><td>").append(lastModified).append("</td><td>");
+                if (size == -1) {
+                    row.append("-");
+                } else {
+                    if (exactSize) {
+                        row.append(size).append(" bytes");
+                    } else {
+                        row.append(formatFileSize(size));
+                    }
+                }
+                row.append("</td></tr>\n");
+                html.write(row.toString());
+            } catch (IOException e) {
+                Log.e(TAG, "Erreur listing file: " + file, e);
+            }
+        }
+        
+        html.write("</table>\n");
+        html.write("<hr>\n");
+        
+        // Pied de page avec infos serveur (comme Apache/Nginx)
+        html.write("<address>ChatAI WebServer/1.0 (Android) Server at localhost Port " + PORT + "</address>\n");
+        html.write("</body></html>\n");
+        html.close();
     }
     
     /**
@@ -2059,27 +2932,52 @@ public class WebServer {
                      "<script>window.location.href='" + location + "';</script>" +
                      "</body></html>";
         
-        String response = "HTTP/1.1 302 Found\r\n" +
-                       "Location: " + location + "\r\n" +
-                       "Content-Type: text/html; charset=utf-8\r\n" +
-                       "Content-Length: " + html.getBytes("UTF-8").length + "\r\n" +
-                       "\r\n" + html;
-        outputStream.write(response.getBytes("UTF-8"));
+        byte[] htmlBytes = html.getBytes("UTF-8");
+        writeResponseHead(outputStream, "302 Found",
+                "Location: " + location + "\r\n" +
+                "Content-Type: text/html; charset=utf-8\r\n", htmlBytes.length);
+        outputStream.write(htmlBytes);
         outputStream.flush();
     }
     
     /**
-     * Envoie une réponse d'erreur
+     * Envoie une réponse d'erreur. Si la réponse a déjà commencé, un second statut corromprait le flux:
+     * la connexion est fermée à la place (le client voit la réponse tronquée).
      */
     private void sendErrorResponse(OutputStream outputStream, int statusCode, String message) throws IOException {
-        String response = "HTTP/1.1 " + statusCode + " " + message + "\r\n" +
-                       "Content-Type: text/plain\r\n" +
-                       "Content-Length: " + message.length() + "\r\n" +
-                       "\r\n" + message;
-        outputStream.write(response.getBytes("UTF-8"));
+        if (outputStream instanceof KeepAliveStream && ((KeepAliveStream) outputStream).isCommitted()) {
+            Log.w(TAG, "Erreur " + statusCode + " après le début de la réponse, fermeture de la connexion");
+            ((KeepAliveStream) outputStream).abortResponse();
+            return;
+        }
+        byte[] body = message.getBytes("UTF-8");
+        writeResponseHead(outputStream, statusCode + " " + message, "Content-Type: text/plain; charset=utf-8\r\n",
+                body.length);
+        outputStream.write(body);
         outputStream.flush();
     }
     
+    /**
+     * Écrit la ligne de statut et les headers d'une réponse avec son framing: Content-Length si bodyLength >= 0,
+     * sinon BODY_CHUNKED, BODY_UNTIL_CLOSE ou BODY_NONE. Les headers Connection/Keep-Alive sont ajoutés par la connexion.
+     */
+    private static void writeResponseHead(OutputStream outputStream, String status, String headers,
+                                          long bodyLength) throws IOException {
+        StringBuilder head = new StringBuilder(64 + headers.length());
+        head.append("HTTP/1.1 ").append(status).append("\r\n").append(headers);
+        if (bodyLength >= 0) {
+            head.append("Content-Length: ").append(bodyLength).append("\r\n");
+        } else if (bodyLength == BODY_CHUNKED) {
+            head.append("Transfer-Encoding: chunked\r\n");
+        }
+        if (outputStream instanceof KeepAliveStream) {
+            ((KeepAliveStream) outputStream).writeHead(head, bodyLength);
+        } else {
+            head.append("Connection: close\r\n\r\n");
+            outputStream.write(head.toString().getBytes("UTF-8"));
+        }
+    }
+    
     /**
      * Détermine le type MIME d'un fichier
      */
@@ -2125,4 +3023,165 @@ public class WebServer {
         if (bytes < 1024 * 1024 * 1024) return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
         return String.format("%.1f GB", bytes / (1024.0 * 1024.0 * 1024.0));
     }
+    
+    /**
+     * Sortie d'une connexion persistante. Chaque réponse déclare son framing dans writeHead
+     * (Content-Length, chunked, fermeture ou pas de corps); la connexion n'est réutilisée que si le corps
+     * envoyé y correspond. Le corps des réponses HEAD est supprimé.
+     */
+    private static final class KeepAliveStream extends FileTransfer.ChannelOutputStream {
+        private boolean headOnly;
+        private boolean chunkedAllowed;
+        private boolean keepAliveRequested;
+        private String keepAliveHeader;
+        
+        private boolean committed;
+        private boolean aborted;
+        private boolean keepAlive;
+        private long bodyLength;
+        private long bodyWritten;
+        
+        KeepAliveStream(OutputStream out, SocketChannel channel) {
+            super(out, channel);
+        }
+        
+        void beginResponse(boolean headOnly, boolean chunkedAllowed, boolean keepAliveRequested, String keepAliveHeader) {
+            this.headOnly = headOnly;
+            this.chunkedAllowed = chunkedAllowed;
+            this.keepAliveRequested = keepAliveRequested;
+            this.keepAliveHeader = keepAliveHeader;
+            committed = false;
+            aborted = false;
+            keepAlive = false;
+            bodyLength = BODY_UNTIL_CLOSE;
+            bodyWritten = 0;
+        }
+        
+        /**
+         * Vrai si le client comprend Transfer-Encoding: chunked (HTTP/1.1)
+         */
+        boolean acceptsChunked() {
+            return chunkedAllowed;
+        }
+        
+        /**
+         * Vrai si les headers de la réponse courante sont partis
+         */
+        boolean isCommitted() {
+            return committed;
+        }
+        
+        /**
+         * Abandonne la réponse commencée: la connexion sera fermée
+         */
+        void abortResponse() {
+            aborted = true;
+        }
+        
+        /**
+         * Envoie les headers (sans la ligne vide finale) en y ajoutant Connection/Keep-Alive
+         */
+        void writeHead(StringBuilder head, long bodyLength) throws IOException {
+            if (committed) {
+                throw new IOException("Headers de réponse déjà envoyés");
+            }
+            committed = true;
+            this.bodyLength = bodyLength;
+            keepAlive = keepAliveRequested && bodyLength != BODY_UNTIL_CLOSE;
+            if (keepAlive) {
+                head.append("Connection: keep-alive\r\n").append(keepAliveHeader);
+            } else {
+                head.append("Connection: close\r\n");
+            }
+            head.append("\r\n");
+            out.write(head.toString().getBytes("UTF-8"));
+        }
+        
+        /**
+         * Termine la réponse courante
+         * @return true si la connexion peut être réutilisée
+         */
+        boolean finishResponse() throws IOException {
+            flush();
+            if (!committed || !keepAlive || aborted) {
+                return false;
+            }
+            if (headOnly || bodyLength == BODY_CHUNKED || bodyWritten == Math.max(0, bodyLength)) {
+                return true;
+            }
+            Log.w(TAG, "Corps de réponse incohérent (" + bodyWritten + "/" + bodyLength + " octets), fermeture");
+            return false;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!committed) {
+                throw new IOException("Corps envoyé avant les headers");
+            }
+            if (headOnly) {
+                return; // HEAD: headers uniquement
+            }
+            out.write(b, off, len);
+            bodyWritten += len;
+        }
+        
+        @Override
+        public void transferFrom(FileChannel source, long position, long count) throws IOException {
+            if (!committed) {
+                throw new IOException("Corps envoyé avant les headers");
+            }
+            if (headOnly) {
+                return;
+            }
+            super.transferFrom(source, position, count);
+            bodyWritten += count;
+        }
+    }
+    
+    /**
+     * JSON généré sérialisé une seule fois, avec sa variante gzip et ses ETags
+     */
+    private static final class CachedJson {
+        final byte[] bytes;
+        final byte[] gzipBytes; // null si trop petit pour être compressé
+        final String etag;
+        final String gzipEtag;
+        final String signature;
+        final long buildMillis; // Coût de la reconstruction évitée à chaque hit
+        
+        CachedJson(byte[] bytes, String signature, long buildMillis) throws IOException {
+            this.bytes = bytes;
+            this.buildMillis = buildMillis;
+            this.gzipBytes = bytes.length >= HttpCompression.MIN_COMPRESS_SIZE ? HttpCompression.gzip(bytes) : null;
+            this.signature = signature;
+            
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            String tag = Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(bytes.length);
+            this.etag = "\"" + tag + "\"";
+            this.gzipEtag = "\"" + tag + "-gz\"";
+        }
+    }
+    
+    /**
+     * Entrée de l'index des gamelists: fichier dans le cache de l'app, gardé en mémoire s'il est petit
+     */
+    private static final class GamelistEntry {
+        final File file;
+        final String signature;
+        final long buildMillis; // Coût de la reconstruction évitée à chaque hit
+        final CachedJson json; // null: servi depuis le fichier
+        
+        GamelistEntry(File file, String signature, long buildMillis, CachedJson json) {
+            this.file = file;
+            this.signature = signature;
+            this.buildMillis = buildMillis;
+            this.json = json;
+        }
+    }
 }
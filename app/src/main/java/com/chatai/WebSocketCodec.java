@@ -0,0 +1,485 @@
+package com.chatai;
+
+import android.util.Base64;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * Protocole WebSocket (RFC 6455): handshake HTTP, encodage des trames serveur (non masquées)
+ * et décodage incrémental des trames client (masquées, fragmentées, trames de contrôle,
+ * compressées si permessage-deflate est négocié).
+ */
+public final class WebSocketCodec {
+    public static final int OPCODE_CONTINUATION = 0x0;
+    public static final int OPCODE_TEXT = 0x1;
+    public static final int OPCODE_BINARY = 0x2;
+    public static final int OPCODE_CLOSE = 0x8;
+    public static final int OPCODE_PING = 0x9;
+    public static final int OPCODE_PONG = 0xA;
+
+    public static final int CLOSE_NORMAL = 1000;
+    public static final int CLOSE_GOING_AWAY = 1001;
+    public static final int CLOSE_PROTOCOL_ERROR = 1002;
+    public static final int CLOSE_UNSUPPORTED_DATA = 1003;
+    public static final int CLOSE_NO_STATUS = 1005;
+    public static final int CLOSE_INVALID_PAYLOAD = 1007;
+    public static final int CLOSE_POLICY_VIOLATION = 1008;
+    public static final int CLOSE_MESSAGE_TOO_BIG = 1009;
+    public static final int CLOSE_INTERNAL_ERROR = 1011;
+
+    public static final int MAX_CONTROL_PAYLOAD = 125;
+    // RSV1: message compressé (permessage-deflate)
+    private static final int RSV1 = 0x40;
+    // En-tête de trame client le plus long: 2 + 8 (longueur) + 4 (masque)
+    public static final int MAX_HEADER_SIZE = 14;
+
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    /**
+     * Violation du protocole: le code de fermeture à envoyer avant de couper la connexion
+     */
+    public static final class ProtocolException extends IOException {
+        public final int closeCode;
+
+        public ProtocolException(int closeCode, String message) {
+            super(message);
+            this.closeCode = closeCode;
+        }
+    }
+
+    /**
+     * Reçoit les messages et trames de contrôle décodés; les buffers ne sont valides que pendant l'appel
+     */
+    public interface FrameHandler {
+        /**
+         * Message complet (fragments réassemblés), OPCODE_TEXT ou OPCODE_BINARY
+         */
+        void onMessage(int opcode, ByteBuffer payload) throws IOException;
+
+        void onPing(ByteBuffer payload) throws IOException;
+
+        void onPong(ByteBuffer payload) throws IOException;
+
+        /**
+         * @param code CLOSE_NO_STATUS si la trame ne porte pas de code
+         */
+        void onClose(int code, String reason) throws IOException;
+    }
+
+    private WebSocketCodec() {
+    }
+
+    // ========== HANDSHAKE ==========
+
+    /**
+     * Réponse à une requête d'upgrade: 101 si elle est valide, sinon 400 ou 426 (la connexion sera fermée)
+     */
+    public static HttpResponse handshake(HttpRequestParser request) {
+        String upgrade = request.getHeader("upgrade");
+        String connection = request.getHeader("connection");
+        String key = request.getHeader("sec-websocket-key");
+
+        if (!"GET".equals(request.getMethod()) || !"HTTP/1.1".equals(request.getVersion())
+                || upgrade == null || !upgrade.toLowerCase(Locale.US).contains("websocket")
+                || connection == null || !hasToken(connection, "upgrade")) {
+            return new HttpResponse(426)
+                    .header("Upgrade", "websocket")
+                    .header("Content-Type", "text/plain; charset=utf-8")
+                    .text("Requête d'upgrade WebSocket attendue");
+        }
+        if (!"13".equals(request.getHeader("sec-websocket-version"))) {
+            return new HttpResponse(426)
+                    .header("Sec-WebSocket-Version", "13")
+                    .header("Content-Type", "text/plain; charset=utf-8")
+                    .text("Version WebSocket non supportée");
+        }
+        if (key == null || !isValidKey(key.trim())) {
+            return new HttpResponse(400)
+                    .header("Content-Type", "text/plain; charset=utf-8")
+                    .text("Sec-WebSocket-Key invalide");
+        }
+
+        return new HttpResponse(101)
+                .header("Upgrade", "websocket")
+                .header("Connection", "Upgrade")
+                .header("Sec-WebSocket-Accept", acceptKey(key.trim()));
+    }
+
+    /**
+     * Sec-WebSocket-Accept: base64(SHA-1(clé + GUID))
+     */
+    public static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] hash = sha1.digest((key + ACCEPT_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.encodeToString(hash, Base64.NO_WRAP);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 indisponible", e);
+        }
+    }
+
+    private static boolean isValidKey(String key) {
+        try {
+            // 16 octets aléatoires encodés en base64
+            return Base64.decode(key, Base64.DEFAULT).length == 16;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean hasToken(String header, String token) {
+        for (String value : header.split(",")) {
+            if (value.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ========== ENCODAGE ==========
+
+    /**
+     * Trame serveur complète (FIN, non masquée) dans un seul buffer prêt à envoyer
+     */
+    public static ByteBuffer encodeFrame(int opcode, ByteBuffer payload) {
+        return encodeFrame(opcode, payload, false);
+    }
+
+    /**
+     * @param compressed charge utile compressée par permessage-deflate (bit RSV1)
+     */
+    public static ByteBuffer encodeFrame(int opcode, ByteBuffer payload, boolean compressed) {
+        int length = payload.remaining();
+        ByteBuffer frame = ByteBuffer.allocate(headerSize(length) + length);
+        frame.put((byte) (0x80 | (compressed ? RSV1 : 0) | opcode));
+        if (length <= 125) {
+            frame.put((byte) length);
+        } else if (length <= 0xFFFF) {
+            frame.put((byte) 126).putShort((short) length);
+        } else {
+            frame.put((byte) 127).putLong(length);
+        }
+        frame.put(payload.duplicate());
+        frame.flip();
+        return frame;
+    }
+
+    public static ByteBuffer encodeText(CharSequence text) {
+        return encodeFrame(OPCODE_TEXT, StandardCharsets.UTF_8.encode(CharBuffer.wrap(text)));
+    }
+
+    /**
+     * Trame de fermeture: code puis raison en UTF-8 (tronquée pour tenir dans une trame de contrôle)
+     */
+    public static ByteBuffer encodeClose(int code, String reason) {
+        byte[] reasonBytes = reason != null ? reason.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int reasonLength = Math.min(reasonBytes.length, MAX_CONTROL_PAYLOAD - 2);
+        ByteBuffer payload = ByteBuffer.allocate(2 + reasonLength);
+        payload.putShort((short) code).put(reasonBytes, 0, reasonLength).flip();
+        return encodeFrame(OPCODE_CLOSE, payload);
+    }
+
+    private static int headerSize(int payloadLength) {
+        return payloadLength <= 125 ? 2 : payloadLength <= 0xFFFF ? 4 : 10;
+    }
+
+    // ========== DÉCODAGE ==========
+
+    /**
+     * Texte d'un message: UTF-8 strict, sinon fermeture 1007
+     */
+    public static String decodeText(ByteBuffer payload) throws ProtocolException {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(payload.duplicate())
+                    .toString();
+        } catch (CharacterCodingException e) {
+            throw new ProtocolException(CLOSE_INVALID_PAYLOAD, "Texte UTF-8 invalide");
+        }
+    }
+
+    /**
+     * Démasque buffer[from, to) sur place, sans allocation: 8 octets par opération puis le reste octet par octet
+     * @param maskOffset position de buffer[from] dans la charge utile de la trame (rotation du masque)
+     */
+    static void unmask(ByteBuffer buffer, int from, int to, int mask, long maskOffset) {
+        int rotated = Integer.rotateLeft(mask, 8 * (int) (maskOffset & 3));
+        long mask64 = ((long) rotated << 32) | (rotated & 0xFFFFFFFFL);
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            buffer.putLong(i, buffer.getLong(i) ^ mask64);
+        }
+        for (; i < to; i++) {
+            int shift = 24 - 8 * ((i - from) & 3);
+            buffer.put(i, (byte) (buffer.get(i) ^ (rotated >>> shift)));
+        }
+    }
+
+    private static boolean isControl(int opcode) {
+        return (opcode & 0x8) != 0;
+    }
+
+    /**
+     * Décodeur incrémental des trames d'un client (une instance par connexion).
+     * Les charges utiles sont démasquées sur place dans le buffer de lecture; un message
+     * tenant dans une seule lecture est transmis sans copie, les autres sont réassemblés
+     * dans un buffer propre à la connexion.
+     */
+    public static final class Decoder {
+        // Buffer de réassemblage gardé entre les messages tant qu'il reste modeste
+        private static final int INITIAL_MESSAGE_CAPACITY = 4096;
+        private static final int RETAINED_MESSAGE_CAPACITY = 64 * 1024;
+
+        private final int maxMessageSize;
+
+        // Trame en cours (readingHeader: en attente de son en-tête)
+        private boolean readingHeader = true;
+        private boolean frameFin;
+        private int frameOpcode;
+        private int frameMask;
+        private long frameLength;
+        private long frameOffset;
+
+        // Message fragmenté en cours: opcode de la première trame, 0 sinon
+        private int messageOpcode;
+        // Extension négociée (null sinon) et compression du message en cours
+        private WebSocketDeflate deflate;
+        private boolean messageCompressed;
+        private ByteBuffer message;
+        private boolean closed;
+
+        public Decoder(int maxMessageSize) {
+            this.maxMessageSize = maxMessageSize;
+        }
+
+        /**
+         * permessage-deflate négocié: RSV1 accepté sur la première trame d'un message
+         */
+        public void setDeflate(WebSocketDeflate deflate) {
+            this.deflate = deflate;
+        }
+
+        /**
+         * Consomme les trames complètes de in; un en-tête ou une trame de contrôle incomplets restent
+         * dans le buffer (le buffer de lecture doit pouvoir contenir MAX_HEADER_SIZE + MAX_CONTROL_PAYLOAD octets)
+         */
+        public void decode(ByteBuffer in, FrameHandler handler) throws IOException {
+            while (!closed) {
+                if (readingHeader && !readHeader(in)) {
+                    return;
+                }
+
+                if (isControl(frameOpcode)) {
+                    // Au plus 125 octets: attendus en entier
+                    if (in.remaining() < frameLength) {
+                        return;
+                    }
+                    int start = in.position();
+                    int end = start + (int) frameLength;
+                    unmask(in, start, end, frameMask, 0);
+                    ByteBuffer payload = in.duplicate();
+                    payload.limit(end);
+                    in.position(end);
+                    readingHeader = true;
+                    dispatchControl(payload.slice(), handler);
+                    continue;
+                }
+
+                int count = (int) Math.min(frameLength - frameOffset, in.remaining());
+                if (count == 0 && frameOffset < frameLength) {
+                    return;
+                }
+                int start = in.position();
+                unmask(in, start, start + count, frameMask, frameOffset);
+                boolean whole = frameOffset == 0 && count == frameLength;
+                frameOffset += count;
+
+                ByteBuffer data = in.duplicate();
+                data.limit(start + count);
+                in.position(start + count);
+
+                boolean lastFragment = frameFin && frameOffset == frameLength;
+                if (whole && frameFin && frameOpcode != OPCODE_CONTINUATION) {
+                    // Message entier dans le buffer de lecture: pas de copie
+                    int opcode = messageOpcode;
+                    messageOpcode = 0;
+                    readingHeader = true;
+                    deliver(opcode, data.slice(), handler);
+                    continue;
+                }
+
+                appendToMessage(data);
+                if (frameOffset == frameLength) {
+                    readingHeader = true;
+                }
+                if (lastFragment) {
+                    message.flip();
+                    int opcode = messageOpcode;
+                    messageOpcode = 0;
+                    try {
+                        deliver(opcode, message, handler);
+                    } finally {
+                        releaseMessage();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Lit un en-tête complet, sinon laisse in intact
+         * @return false s'il manque des octets
+         */
+        private boolean readHeader(ByteBuffer in) throws ProtocolException {
+            if (in.remaining() < 2) {
+                return false;
+            }
+            int position = in.position();
+            int b0 = in.get(position) & 0xFF;
+            int b1 = in.get(position + 1) & 0xFF;
+            int shortLength = b1 & 0x7F;
+            int lengthBytes = shortLength == 126 ? 2 : shortLength == 127 ? 8 : 0;
+            boolean masked = (b1 & 0x80) != 0;
+            int headerSize = 2 + lengthBytes + (masked ? 4 : 0);
+            if (in.remaining() < headerSize) {
+                return false;
+            }
+
+            boolean fin = (b0 & 0x80) != 0;
+            int opcode = b0 & 0x0F;
+            int rsv = b0 & 0x70;
+            boolean compressed = rsv == RSV1 && deflate != null && (opcode == OPCODE_TEXT || opcode == OPCODE_BINARY);
+            if (rsv != 0 && !compressed) {
+                throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Bits RSV sans extension négociée");
+            }
+            if (!masked) {
+                throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Trame client non masquée");
+            }
+            long length = shortLength;
+            if (lengthBytes == 2) {
+                length = in.getShort(position + 2) & 0xFFFF;
+            } else if (lengthBytes == 8) {
+                length = in.getLong(position + 2);
+                if (length < 0) {
+                    throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Longueur de trame invalide");
+                }
+            }
+
+            if (isControl(opcode)) {
+                if (opcode != OPCODE_CLOSE && opcode != OPCODE_PING && opcode != OPCODE_PONG) {
+                    throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Opcode inconnu: " + opcode);
+                }
+                if (!fin || length > MAX_CONTROL_PAYLOAD) {
+                    throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Trame de contrôle fragmentée ou trop longue");
+                }
+            } else if (opcode == OPCODE_CONTINUATION) {
+                if (messageOpcode == 0) {
+                    throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Continuation sans message en cours");
+                }
+            } else if (opcode == OPCODE_TEXT || opcode == OPCODE_BINARY) {
+                if (messageOpcode != 0) {
+                    throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Nouveau message avant la fin du précédent");
+                }
+            } else {
+                throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Opcode inconnu: " + opcode);
+            }
+            if (!isControl(opcode)) {
+                long messageSize = (message != null ? message.position() : 0) + length;
+                if (messageSize > maxMessageSize) {
+                    throw new ProtocolException(CLOSE_MESSAGE_TOO_BIG, "Message trop volumineux (max " + maxMessageSize + " octets)");
+                }
+                if (opcode != OPCODE_CONTINUATION) {
+                    messageOpcode = opcode;
+                    messageCompressed = compressed;
+                }
+            }
+
+            frameFin = fin;
+            frameOpcode = opcode;
+            frameLength = length;
+            frameOffset = 0;
+            frameMask = in.getInt(position + 2 + lengthBytes);
+            in.position(position + headerSize);
+            readingHeader = false;
+            return true;
+        }
+
+        /**
+         * Transmet un message complet, décompressé s'il avait RSV1
+         */
+        private void deliver(int opcode, ByteBuffer payload, FrameHandler handler) throws IOException {
+            if (messageCompressed) {
+                messageCompressed = false;
+                payload = deflate.decompress(payload, maxMessageSize);
+            }
+            handler.onMessage(opcode, payload);
+        }
+
+        private void dispatchControl(ByteBuffer payload, FrameHandler handler) throws IOException {
+            switch (frameOpcode) {
+                case OPCODE_PING:
+                    handler.onPing(payload);
+                    break;
+                case OPCODE_PONG:
+                    handler.onPong(payload);
+                    break;
+                default:
+                    closed = true;
+                    if (payload.remaining() == 0) {
+                        handler.onClose(CLOSE_NO_STATUS, "");
+                        break;
+                    }
+                    if (payload.remaining() == 1) {
+                        throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Trame de fermeture tronquée");
+                    }
+                    int code = payload.getShort() & 0xFFFF;
+                    if (!isValidCloseCode(code)) {
+                        throw new ProtocolException(CLOSE_PROTOCOL_ERROR, "Code de fermeture invalide: " + code);
+                    }
+                    handler.onClose(code, decodeText(payload));
+                    break;
+            }
+        }
+
+        /**
+         * Codes qu'un client peut envoyer (RFC 6455 §7.4)
+         */
+        private static boolean isValidCloseCode(int code) {
+            if (code >= 3000 && code <= 4999) {
+                return true;
+            }
+            return code >= 1000 && code <= 1011 && code != 1004 && code != 1005 && code != 1006;
+        }
+
+        private void appendToMessage(ByteBuffer data) {
+            if (message == null) {
+                message = ByteBuffer.allocate(Math.max(INITIAL_MESSAGE_CAPACITY, data.remaining()));
+            } else if (message.remaining() < data.remaining()) {
+                int needed = message.position() + data.remaining();
+                int capacity = (int) Math.min(maxMessageSize, Math.max((long) message.capacity() * 2, needed));
+                ByteBuffer grown = ByteBuffer.allocate(capacity);
+                message.flip();
+                grown.put(message);
+                message = grown;
+            }
+            message.put(data);
+        }
+
+        private void releaseMessage() {
+            if (message.capacity() > RETAINED_MESSAGE_CAPACITY) {
+                message = null;
+            } else {
+                message.clear();
+            }
+        }
+    }
+}
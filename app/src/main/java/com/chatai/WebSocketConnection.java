@@ -0,0 +1,275 @@
+package com.chatai;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * État d'une connexion WebSocket NIO (attachée à sa SelectionKey): requête d'upgrade,
+ * puis décodeur de trames, buffer de lecture direct et file d'envoi.
+ * Les trames attendent dans une file bornée et ne passent dans la file d'envoi que quand elle se vide:
+ * un client lent perd ses diffusions les plus anciennes (les statuts sont fusionnés) au lieu de retenir les autres.
+ */
+public final class WebSocketConnection {
+    // Doit contenir au moins un en-tête et une trame de contrôle complète
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    // Limites de la file d'attente d'un client
+    private static final int MAX_PENDING_FRAMES = 256;
+    private static final long MAX_PENDING_BYTES = 1024 * 1024;
+    // Les trames en attente passent dans la file d'envoi tant qu'elle contient moins que ce seuil
+    private static final long OUTBOUND_FILL_BYTES = 64 * 1024;
+
+    /**
+     * Sort d'une trame quand le client ne suit pas
+     */
+    public enum Delivery {
+        // Réponse au client (pong, réponse à un message): jamais abandonnée
+        REPLY,
+        // Diffusion: la plus ancienne est abandonnée
+        BROADCAST,
+        // Statut (frappe, état): seule la dernière valeur d'un même type est gardée
+        STATUS
+    }
+
+    private static final class PendingFrame {
+        ByteBuffer frame;
+        final Delivery delivery;
+        final String coalesceKey;
+
+        PendingFrame(ByteBuffer frame, Delivery delivery, String coalesceKey) {
+            this.frame = frame;
+            this.delivery = delivery;
+            this.coalesceKey = coalesceKey;
+        }
+    }
+
+    public final String clientId;
+    // Requête d'upgrade: pas de corps attendu
+    public final HttpRequestParser handshake = new HttpRequestParser(0);
+    public final WebSocketCodec.Decoder decoder;
+    public final OutboundQueue outbound = new OutboundQueue();
+    // Les charges utiles y sont démasquées sur place
+    public final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    private final ArrayDeque<PendingFrame> pending = new ArrayDeque<>();
+    private long pendingBytes;
+    private long droppedFrames;
+    private long coalescedFrames;
+
+    // Réponses IA en streaming demandées par ce client, par identifiant
+    private final Map<String, RealtimeAIService.StreamHandle> streams = new HashMap<>();
+
+    // permessage-deflate négocié au handshake, null sinon
+    private WebSocketDeflate deflate;
+    private WebSocketCodec.FrameHandler handler;
+    private boolean open;
+    // Trame de fermeture envoyée: plus rien d'autre ne part
+    private boolean closeSent;
+    private boolean closeAfterWrite;
+    // Keepalive: dernière réception et ping envoyé sans réponse depuis
+    private long lastReceived = System.currentTimeMillis();
+    private boolean pingOutstanding;
+
+    public WebSocketConnection(String clientId, int maxMessageSize) {
+        this.clientId = clientId;
+        this.decoder = new WebSocketCodec.Decoder(maxMessageSize);
+    }
+
+    public WebSocketCodec.FrameHandler getHandler() {
+        return handler;
+    }
+
+    public void setHandler(WebSocketCodec.FrameHandler handler) {
+        this.handler = handler;
+    }
+
+    public WebSocketDeflate getDeflate() {
+        return deflate;
+    }
+
+    public void setDeflate(WebSocketDeflate deflate) {
+        this.deflate = deflate;
+        decoder.setDeflate(deflate);
+    }
+
+    /**
+     * Handshake terminé: les octets reçus sont des trames
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    public void setOpen() {
+        open = true;
+    }
+
+    public boolean isCloseSent() {
+        return closeSent;
+    }
+
+    /**
+     * Octets reçus du client (trame quelconque, pong compris)
+     */
+    public void markReceived(long now) {
+        lastReceived = now;
+        pingOutstanding = false;
+    }
+
+    /**
+     * Vrai si le client n'a rien envoyé depuis l'intervalle et n'a pas encore été pingé
+     */
+    public boolean needsPing(long now, long intervalMs) {
+        return open && !closeSent && !pingOutstanding && now - lastReceived >= intervalMs;
+    }
+
+    public void markPingSent() {
+        pingOutstanding = true;
+    }
+
+    /**
+     * Ajoute une trame à envoyer (thread du sélecteur); le buffer peut être partagé entre clients
+     * @param coalesceKey type de statut fusionné (Delivery.STATUS), null sinon
+     * @return false si le client est trop lent: la file déborde et ne contient plus que des réponses
+     */
+    public boolean enqueue(ByteBuffer frame, Delivery delivery, String coalesceKey) {
+        if (closeSent) {
+            return true;
+        }
+        if (delivery == Delivery.STATUS && coalesceKey != null) {
+            for (PendingFrame queued : pending) {
+                if (coalesceKey.equals(queued.coalesceKey)) {
+                    pendingBytes += frame.remaining() - queued.frame.remaining();
+                    queued.frame = frame;
+                    coalescedFrames++;
+                    return true;
+                }
+            }
+        }
+        pending.addLast(new PendingFrame(frame, delivery, coalesceKey));
+        pendingBytes += frame.remaining();
+        fillOutbound();
+
+        while (pending.size() > MAX_PENDING_FRAMES || pendingBytes > MAX_PENDING_BYTES) {
+            if (!dropOldest()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Passe les trames en attente dans la file d'envoi tant qu'elle est peu remplie
+     */
+    public void fillOutbound() {
+        while (!pending.isEmpty() && outbound.getQueuedBytes() < OUTBOUND_FILL_BYTES) {
+            PendingFrame next = pending.pollFirst();
+            pendingBytes -= next.frame.remaining();
+            outbound.add(next.frame);
+        }
+    }
+
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public long getCoalescedFrames() {
+        return coalescedFrames;
+    }
+
+    /**
+     * Abandonne la plus ancienne trame qui n'est pas une réponse
+     */
+    private boolean dropOldest() {
+        Iterator<PendingFrame> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            PendingFrame queued = iterator.next();
+            if (queued.delivery != Delivery.REPLY) {
+                iterator.remove();
+                pendingBytes -= queued.frame.remaining();
+                droppedFrames++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Met la trame de fermeture en file après les trames en attente; la connexion sera fermée une fois la file vidée
+     */
+    public void sendClose(int code, String reason) {
+        if (!closeSent) {
+            while (!pending.isEmpty()) {
+                outbound.add(pending.pollFirst().frame);
+            }
+            pendingBytes = 0;
+            closeSent = true;
+            outbound.add(WebSocketCodec.encodeClose(code, reason));
+        }
+        closeAfterWrite = true;
+    }
+
+    /**
+     * Client trop lent: les trames en attente sont abandonnées avant la fermeture
+     */
+    public void discardPending() {
+        droppedFrames += pending.size();
+        pending.clear();
+        pendingBytes = 0;
+    }
+
+    public int getStreamCount() {
+        return streams.size();
+    }
+
+    public boolean hasStream(String id) {
+        return streams.containsKey(id);
+    }
+
+    public void addStream(String id, RealtimeAIService.StreamHandle handle) {
+        streams.put(id, handle);
+    }
+
+    /**
+     * Flux terminé (trame finale mise en file)
+     */
+    public void removeStream(String id) {
+        streams.remove(id);
+    }
+
+    /**
+     * Annule un flux, ou tous si id est null; ils restent suivis jusqu'à leur trame finale
+     * @return nombre de flux annulés
+     */
+    public int cancelStreams(String id) {
+        int cancelled = 0;
+        for (Map.Entry<String, RealtimeAIService.StreamHandle> entry : streams.entrySet()) {
+            if (id == null || id.equals(entry.getKey())) {
+                entry.getValue().cancel();
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Connexion perdue: les flux sont annulés et oubliés (plus personne pour la trame finale)
+     */
+    public void releaseStreams() {
+        cancelStreams(null);
+        streams.clear();
+    }
+
+    public boolean isCloseAfterWrite() {
+        return closeAfterWrite;
+    }
+
+    public void closeAfterWrite() {
+        closeAfterWrite = true;
+    }
+}
@@ -0,0 +1,326 @@
+package com.chatai;
+
+import android.os.Debug;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Extension permessage-deflate (RFC 7692) d'une connexion WebSocket: négociation, compression des
+ * messages envoyés et décompression des messages reçus (thread du sélecteur uniquement).
+ * Deflater, Inflater et leurs buffers sont créés au premier message puis réutilisés; avec la reprise
+ * de contexte, chaque message s'appuie sur les précédents (l'enveloppe JSON répétée ne coûte presque plus rien).
+ */
+public final class WebSocketDeflate {
+    private static final String TAG = "WebSocketDeflate";
+
+    public static final String EXTENSION = "permessage-deflate";
+    // Messages plus petits envoyés tels quels: le gain ne paie pas le coût CPU
+    public static final int MIN_COMPRESS_SIZE = 128;
+    private static final int COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+    // Fenêtre fixe de java.util.zip
+    private static final int WINDOW_BITS = 15;
+    // Fin d'un bloc vide (SYNC_FLUSH), retirée à l'envoi et rajoutée à la réception
+    private static final byte[] TAIL = {0, 0, (byte) 0xFF, (byte) 0xFF};
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+    private static final int RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Compteurs partagés par les connexions d'un serveur
+     */
+    public static final class Stats {
+        private final AtomicLong compressed = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong incompressible = new AtomicLong();
+        private final AtomicLong bytesIn = new AtomicLong();
+        private final AtomicLong bytesOut = new AtomicLong();
+        private final AtomicLong deflateCpuNanos = new AtomicLong();
+        private final AtomicLong inflated = new AtomicLong();
+        private final AtomicLong inflatedIn = new AtomicLong();
+        private final AtomicLong inflatedOut = new AtomicLong();
+        private final AtomicLong inflateCpuNanos = new AtomicLong();
+
+        /**
+         * Ratio = taille compressée / taille d'origine; coût CPU moyen par message en microsecondes
+         */
+        public String toJson() {
+            long compressedCount = compressed.get();
+            long inflatedCount = inflated.get();
+            return String.format(Locale.US,
+                    "{\"compressed\":%d,\"skipped\":%d,\"incompressible\":%d,\"bytes_in\":%d,\"bytes_out\":%d," +
+                    "\"ratio\":%.3f,\"avg_deflate_us\":%.1f,\"inflated\":%d,\"inflate_ratio\":%.3f,\"avg_inflate_us\":%.1f}",
+                    compressedCount, skipped.get(), incompressible.get(), bytesIn.get(), bytesOut.get(),
+                    ratio(bytesOut.get(), bytesIn.get()), perMessageMicros(deflateCpuNanos.get(), compressedCount + incompressible.get()),
+                    inflatedCount, ratio(inflatedIn.get(), inflatedOut.get()), perMessageMicros(inflateCpuNanos.get(), inflatedCount));
+        }
+
+        private static double ratio(long part, long whole) {
+            return whole > 0 ? (double) part / whole : 1.0;
+        }
+
+        private static double perMessageMicros(long nanos, long count) {
+            return count > 0 ? nanos / 1000.0 / count : 0;
+        }
+    }
+
+    private final boolean serverNoContextTakeover;
+    private final boolean clientNoContextTakeover;
+    private final Stats stats;
+
+    private Deflater deflater;
+    private Inflater inflater;
+    private byte[] deflateOutput;
+    private byte[] inflateInput;
+    private byte[] inflateOutput;
+    // Le client a décompressé des données que ce deflater n'a pas vues: repartir d'un contexte vide
+    private boolean contextStale;
+
+    private WebSocketDeflate(boolean serverNoContextTakeover, boolean clientNoContextTakeover, Stats stats) {
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.clientNoContextTakeover = clientNoContextTakeover;
+        this.stats = stats;
+    }
+
+    /**
+     * Compresseur sans contexte pour les diffusions: la même trame compressée convient à tous les clients
+     */
+    public static WebSocketDeflate forBroadcast(Stats stats) {
+        return new WebSocketDeflate(true, false, stats);
+    }
+
+    /**
+     * Accepte la première offre permessage-deflate utilisable du header Sec-WebSocket-Extensions
+     * @return null si le client n'en propose pas (ou seulement avec une fenêtre serveur réduite)
+     */
+    public static WebSocketDeflate negotiate(String extensions, Stats stats) {
+        if (extensions == null) {
+            return null;
+        }
+        for (String offer : extensions.split(",")) {
+            String[] parts = offer.split(";");
+            if (!EXTENSION.equalsIgnoreCase(parts[0].trim())) {
+                continue;
+            }
+            boolean serverNoContext = false;
+            boolean clientNoContext = false;
+            boolean valid = true;
+            boolean clientWindowSeen = false;
+            for (int i = 1; i < parts.length && valid; i++) {
+                String parameter = parts[i].trim();
+                int equals = parameter.indexOf('=');
+                String name = (equals >= 0 ? parameter.substring(0, equals) : parameter).trim().toLowerCase(Locale.US);
+                String value = equals >= 0 ? parameter.substring(equals + 1).trim().replace("\"", "") : null;
+                switch (name) {
+                    case "server_no_context_takeover":
+                        valid = !serverNoContext && value == null;
+                        serverNoContext = true;
+                        break;
+                    case "client_no_context_takeover":
+                        valid = !clientNoContext && value == null;
+                        clientNoContext = true;
+                        break;
+                    case "server_max_window_bits":
+                        // Deflater ne sait pas réduire sa fenêtre: offre refusée sauf 15
+                        valid = String.valueOf(WINDOW_BITS).equals(value);
+                        break;
+                    case "client_max_window_bits":
+                        // L'Inflater (fenêtre de 15) lit toute fenêtre plus petite
+                        valid = !clientWindowSeen && (value == null || isWindowBits(value));
+                        clientWindowSeen = true;
+                        break;
+                    default:
+                        valid = false;
+                        break;
+                }
+            }
+            if (valid) {
+                return new WebSocketDeflate(serverNoContext, clientNoContext, stats);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isWindowBits(String value) {
+        try {
+            int bits = Integer.parseInt(value);
+            return bits >= 8 && bits <= 15;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Valeur du header Sec-WebSocket-Extensions de la réponse 101
+     */
+    public String getResponseHeader() {
+        StringBuilder header = new StringBuilder(EXTENSION);
+        if (serverNoContextTakeover) {
+            header.append("; server_no_context_takeover");
+        }
+        if (clientNoContextTakeover) {
+            header.append("; client_no_context_takeover");
+        }
+        return header.toString();
+    }
+
+    /**
+     * Une trame compressée par un autre (diffusion) s'intercale dans le flux du client:
+     * le prochain message repart d'un contexte vide
+     */
+    public void invalidateContext() {
+        contextStale = true;
+    }
+
+    /**
+     * Compresse un message sortant
+     * @return charge utile compressée, valide jusqu'au prochain appel; null si le message part sans compression
+     *         (sous le seuil, ou plus gros une fois compressé)
+     */
+    public ByteBuffer compress(ByteBuffer payload) {
+        int length = payload.remaining();
+        if (length < MIN_COMPRESS_SIZE) {
+            stats.skipped.incrementAndGet();
+            return null;
+        }
+        long cpuStart = cpuTimeNanos();
+        if (deflater == null) {
+            deflater = new Deflater(COMPRESSION_LEVEL, true);
+        } else if (contextStale) {
+            deflater.reset();
+        }
+        contextStale = false;
+        if (deflateOutput == null || deflateOutput.length > RETAINED_BUFFER_SIZE) {
+            deflateOutput = new byte[INITIAL_BUFFER_SIZE];
+        }
+
+        if (payload.hasArray()) {
+            deflater.setInput(payload.array(), payload.arrayOffset() + payload.position(), length);
+        } else {
+            byte[] copy = new byte[length];
+            payload.duplicate().get(copy);
+            deflater.setInput(copy);
+        }
+        int size = 0;
+        while (true) {
+            if (size == deflateOutput.length) {
+                deflateOutput = Arrays.copyOf(deflateOutput, deflateOutput.length * 2);
+            }
+            size += deflater.deflate(deflateOutput, size, deflateOutput.length - size, Deflater.SYNC_FLUSH);
+            if (size < deflateOutput.length) {
+                break; // Sortie non remplie: tout est compressé et vidé
+            }
+        }
+        if (serverNoContextTakeover) {
+            deflater.reset();
+        }
+        int compressedLength = size - TAIL.length;
+        long cpu = cpuTimeNanos() - cpuStart;
+        stats.deflateCpuNanos.addAndGet(cpu);
+
+        if (compressedLength >= length) {
+            // Envoyé tel quel: le client ne verra pas ces octets, le contexte du deflater est faux
+            contextStale = true;
+            stats.incompressible.incrementAndGet();
+            return null;
+        }
+        stats.compressed.incrementAndGet();
+        stats.bytesIn.addAndGet(length);
+        stats.bytesOut.addAndGet(compressedLength);
+        Log.v(TAG, "Message compressé: " + length + " -> " + compressedLength + " octets, " + (cpu / 1000) + " µs CPU");
+        return ByteBuffer.wrap(deflateOutput, 0, compressedLength);
+    }
+
+    /**
+     * Décompresse un message reçu avec RSV1
+     * @return message décompressé, valide jusqu'au prochain appel
+     * @throws WebSocketCodec.ProtocolException données invalides (1007) ou message décompressé trop gros (1009)
+     */
+    public ByteBuffer decompress(ByteBuffer payload, int maxSize) throws WebSocketCodec.ProtocolException {
+        long cpuStart = cpuTimeNanos();
+        int length = payload.remaining();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        if (inflateInput == null || inflateInput.length < length + TAIL.length || inflateInput.length > RETAINED_BUFFER_SIZE) {
+            inflateInput = new byte[Math.max(INITIAL_BUFFER_SIZE, length + TAIL.length)];
+        }
+        if (inflateOutput == null || inflateOutput.length > RETAINED_BUFFER_SIZE) {
+            inflateOutput = new byte[INITIAL_BUFFER_SIZE];
+        }
+        payload.duplicate().get(inflateInput, 0, length);
+        System.arraycopy(TAIL, 0, inflateInput, length, TAIL.length);
+
+        inflater.setInput(inflateInput, 0, length + TAIL.length);
+        int size = 0;
+        try {
+            while (true) {
+                if (size == inflateOutput.length) {
+                    if (size > maxSize) {
+                        throw new WebSocketCodec.ProtocolException(WebSocketCodec.CLOSE_MESSAGE_TOO_BIG,
+                                "Message décompressé trop volumineux (max " + maxSize + " octets)");
+                    }
+                    inflateOutput = Arrays.copyOf(inflateOutput, (int) Math.min((long) maxSize + 1, inflateOutput.length * 2L));
+                }
+                int count = inflater.inflate(inflateOutput, size, inflateOutput.length - size);
+                size += count;
+                if (inflater.finished()) {
+                    // Bloc final: le message suivant commence un nouveau flux
+                    inflater.reset();
+                    break;
+                }
+                if (count == 0) {
+                    if (inflater.needsInput()) {
+                        break;
+                    }
+                    throw new WebSocketCodec.ProtocolException(WebSocketCodec.CLOSE_INVALID_PAYLOAD, "Données compressées invalides");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new WebSocketCodec.ProtocolException(WebSocketCodec.CLOSE_INVALID_PAYLOAD, "Données compressées invalides");
+        }
+        if (size > maxSize) {
+            throw new WebSocketCodec.ProtocolException(WebSocketCodec.CLOSE_MESSAGE_TOO_BIG,
+                    "Message décompressé trop volumineux (max " + maxSize + " octets)");
+        }
+        if (clientNoContextTakeover) {
+            inflater.reset();
+        }
+        stats.inflated.incrementAndGet();
+        stats.inflatedIn.addAndGet(length);
+        stats.inflatedOut.addAndGet(size);
+        stats.inflateCpuNanos.addAndGet(cpuTimeNanos() - cpuStart);
+        return ByteBuffer.wrap(inflateOutput, 0, size);
+    }
+
+    /**
+     * Libère la mémoire native (connexion fermée); l'instance peut resservir, tout sera recréé
+     */
+    public void release() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+        deflateOutput = null;
+        inflateInput = null;
+        inflateOutput = null;
+        contextStale = false;
+    }
+
+    /**
+     * Temps CPU du thread courant (temps écoulé si la plateforme ne le fournit pas)
+     */
+    private static long cpuTimeNanos() {
+        long cpu = Debug.threadCpuTimeNanos();
+        return cpu >= 0 ? cpu : System.nanoTime();
+    }
+}
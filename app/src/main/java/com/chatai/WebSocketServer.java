@@ -9,20 +9,38 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
+import java.util.Locale;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+import org.json.JSONObject;
 
 /**
- * Serveur WebSocket natif pour communication temps réel
+ * Serveur WebSocket natif pour communication temps réel (RFC 6455)
  * Gère les connexions multiples et la communication bidirectionnelle
  */
 public class WebSocketServer {
     private static final String TAG = "WebSocketServer";
     private static final int PORT = 8081; // Changé pour éviter le conflit
-    private static final int BUFFER_SIZE = 1024;
+    // Message réassemblé le plus gros accepté (fermeture 1009 au-delà)
+    private static final int MAX_MESSAGE_SIZE = 1024 * 1024;
+    // Admission et expiration des connexions: handshake attendu dans le délai, puis inactivité bornée.
+    // Un client silencieux reçoit un ping à mi-délai; son pong compte comme activité.
+    private static final int MAX_CONNECTIONS = 128;
+    private static final int MAX_CONNECTIONS_PER_IP = 16;
+    private static final long HANDSHAKE_TIMEOUT_MS = 10000;
+    private static final long IDLE_TIMEOUT_MS = 120000;
+    private static final long PING_INTERVAL_MS = IDLE_TIMEOUT_MS / 2;
+    private static final long PING_CHECK_MS = 5000;
+    // Réponses IA en streaming simultanées par client
+    private static final int MAX_STREAMS_PER_CONNECTION = 2;
     
     private Context context;
     private ServerSocketChannel serverChannel;
@@ -31,6 +49,26 @@ public class WebSocketServer {
     private boolean isRunning = false;
     private ConcurrentHashMap<SocketChannel, String> clients;
     private SecureConfig secureConfig;
+    // Envois demandés par d'autres threads (diffusion), exécutés par le thread du sélecteur
+    private final ConcurrentLinkedQueue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    // Diffusions: trames encodées, remises aux clients, abandonnées/fusionnées chez les clients lents
+    private final AtomicLong broadcastEncodes = new AtomicLong();
+    private final AtomicLong broadcastDeliveries = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong coalescedFrames = new AtomicLong();
+    private final AtomicLong slowClientsClosed = new AtomicLong();
+    private final AtomicLong fanOuts = new AtomicLong();
+    private final AtomicLong fanOutNanos = new AtomicLong();
+    // Service des réponses IA en streaming (messages ai_stream), null tant qu'il n'est pas créé
+    private volatile RealtimeAIService streamingService;
+    private final AtomicLong streamIds = new AtomicLong();
+    // Prochain parcours des clients à pinger (thread du sélecteur)
+    private long nextPingCheck;
+    // permessage-deflate: compteurs communs et compresseur des diffusions (thread du sélecteur)
+    private final WebSocketDeflate.Stats compressionStats = new WebSocketDeflate.Stats();
+    private final WebSocketDeflate broadcastDeflate = WebSocketDeflate.forBroadcast(compressionStats);
+    private final ConnectionManager connectionManager = new ConnectionManager("WebSocket",
+            MAX_CONNECTIONS, MAX_CONNECTIONS_PER_IP, HANDSHAKE_TIMEOUT_MS, IDLE_TIMEOUT_MS);
     
     public WebSocketServer(Context context) {
         this.context = context;
@@ -39,6 +77,13 @@ public class WebSocketServer {
         this.executor = Executors.newFixedThreadPool(4);
     }
     
+    /**
+     * Branche le service IA qui répond aux demandes de streaming des clients
+     */
+    public void setStreamingService(RealtimeAIService service) {
+        this.streamingService = service;
+    }
+    
     /**
      * Démarre le serveur WebSocket
      */
@@ -95,7 +140,7 @@ public class WebSocketServer {
         // Boucle principale du serveur
         while (isRunning) {
             try {
-                selector.select();
+                selector.select(connectionManager.getSelectTimeout());
                 Set<SelectionKey> selectedKeys = selector.selectedKeys();
                 Iterator<SelectionKey> iterator = selectedKeys.iterator();
                 
@@ -103,14 +148,23 @@ public class WebSocketServer {
                     SelectionKey key = iterator.next();
                     iterator.remove();
                     
+                    if (!key.isValid()) {
+                        continue;
+                    }
                     if (key.isAcceptable()) {
                         handleAccept(key);
-                    } else if (key.isReadable()) {
+                        continue;
+                    }
+                    if (key.isReadable()) {
                         handleRead(key);
-                    } else if (key.isWritable()) {
+                    }
+                    if (key.isValid() && key.isWritable()) {
                         handleWrite(key);
                     }
                 }
+                runSelectorTasks();
+                sendKeepalivePings();
+                connectionManager.expire((key, phase) -> handleTimeout(key));
             } catch (Exception e) {
                 Log.e(TAG, "Erreur dans la boucle serveur", e);
             }
@@ -118,52 +172,313 @@ public class WebSocketServer {
     }
     
     /**
-     * Gère les nouvelles connexions
+     * Gère les nouvelles connexions (handshake attendu avant tout message)
      */
     private void handleAccept(SelectionKey key) throws IOException {
         ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
         SocketChannel clientChannel = serverChannel.accept();
+        if (clientChannel == null) {
+            return;
+        }
+        if (!connectionManager.admit(clientChannel)) {
+            return; // 503 envoyé, socket fermée
+        }
         clientChannel.configureBlocking(false);
-        clientChannel.register(selector, SelectionKey.OP_READ);
+        WebSocketConnection connection = new WebSocketConnection("Client_" + System.currentTimeMillis(), MAX_MESSAGE_SIZE);
+        SelectionKey clientKey = clientChannel.register(selector, SelectionKey.OP_READ, connection);
+        connection.setHandler(new ClientFrameHandler(clientKey));
+        connectionManager.register(clientKey);
+        Log.d(TAG, "Nouvelle connexion: " + clientChannel.getRemoteAddress());
+    }
+    
+    /**
+     * Lit ce qui est disponible: requête d'upgrade tant que le handshake n'est pas fait, trames ensuite
+     */
+    private void handleRead(SelectionKey key) {
+        SocketChannel clientChannel = (SocketChannel) key.channel();
+        WebSocketConnection connection = (WebSocketConnection) key.attachment();
+        ByteBuffer buffer = connection.readBuffer;
+        
+        int bytesRead;
+        try {
+            bytesRead = clientChannel.read(buffer);
+        } catch (IOException e) {
+            // Connexion réinitialisée: retirer le client tout de suite
+            handleClientDisconnect(key);
+            return;
+        }
+        if (bytesRead == -1) {
+            // Client déconnecté
+            handleClientDisconnect(key);
+            return;
+        }
+        connectionManager.touch(key);
+        connection.markReceived(System.currentTimeMillis());
+        
+        buffer.flip();
+        try {
+            if (!connection.isOpen()) {
+                processHandshake(key, connection, buffer);
+            }
+            if (connection.isOpen() && !connection.isCloseAfterWrite()) {
+                connection.decoder.decode(buffer, connection.getHandler());
+            }
+        } catch (WebSocketCodec.ProtocolException e) {
+            Log.w(TAG, "Erreur protocole (" + e.closeCode + "): " + e.getMessage());
+            connection.sendClose(e.closeCode, e.getMessage());
+        } catch (HttpRequestParser.HttpParseException e) {
+            Log.w(TAG, "Handshake invalide (" + e.statusCode + "): " + e.getMessage());
+            queueResponse(connection, new HttpResponse(e.statusCode)
+                    .header("Content-Type", "text/plain; charset=utf-8")
+                    .text(e.getMessage()));
+            connection.closeAfterWrite();
+        } catch (IOException e) {
+            Log.e(TAG, "Erreur traitement trame", e);
+            connection.sendClose(WebSocketCodec.CLOSE_INTERNAL_ERROR, "Erreur serveur");
+        } finally {
+            buffer.compact();
+        }
+        if (connection.isCloseAfterWrite()) {
+            buffer.clear(); // Plus rien à lire
+        }
+        flush(key);
+    }
+    
+    /**
+     * Requête d'upgrade complète: 101 et message de bienvenue, ou erreur HTTP puis fermeture
+     */
+    private void processHandshake(SelectionKey key, WebSocketConnection connection, ByteBuffer buffer) throws IOException {
+        if (!connection.handshake.parse(buffer)) {
+            return;
+        }
+        HttpResponse response = WebSocketCodec.handshake(connection.handshake);
+        WebSocketDeflate deflate = null;
+        if (response.getStatus() == 101) {
+            deflate = WebSocketDeflate.negotiate(connection.handshake.getHeader("sec-websocket-extensions"), compressionStats);
+            if (deflate != null) {
+                response.header("Sec-WebSocket-Extensions", deflate.getResponseHeader());
+            }
+        }
+        queueResponse(connection, response);
+        if (response.getStatus() != 101) {
+            Log.w(TAG, "Upgrade refusé (" + response.getStatus() + ")");
+            connection.closeAfterWrite();
+            return;
+        }
         
-        clients.put(clientChannel, "Client_" + System.currentTimeMillis());
+        connection.setDeflate(deflate);
+        connection.setOpen();
+        connectionManager.setPhase(key, ConnectionManager.Phase.ACTIVE);
+        SocketChannel clientChannel = (SocketChannel) key.channel();
+        clients.put(clientChannel, connection.clientId);
         Log.i(TAG, "Nouveau client connecté: " + clientChannel.getRemoteAddress());
         
         // Envoyer message de bienvenue
-        sendWelcomeMessage(clientChannel);
+        sendWelcomeMessage(key);
+    }
+    
+    private void queueResponse(WebSocketConnection connection, HttpResponse response) {
+        try {
+            response.writeTo(connection.outbound, true, false);
+        } catch (IOException e) {
+            Log.e(TAG, "Erreur réponse handshake", e);
+            connection.closeAfterWrite();
+        }
     }
     
     /**
-     * Gère la lecture des messages
+     * Gère l'écriture des messages: reprend l'envoi de la file quand la socket redevient inscriptible
      */
-    private void handleRead(SelectionKey key) throws IOException {
-        SocketChannel clientChannel = (SocketChannel) key.channel();
-        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private void handleWrite(SelectionKey key) {
+        connectionManager.touch(key);
+        flush(key);
+    }
+    
+    /**
+     * Envoie sans bloquer ce que la socket accepte; ferme la connexion quand la trame de fermeture est partie
+     */
+    private void flush(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        WebSocketConnection connection = (WebSocketConnection) key.attachment();
+        try {
+            boolean drained;
+            do {
+                connection.fillOutbound();
+                drained = connection.outbound.flush(key, !connection.isCloseAfterWrite());
+            } while (drained && connection.hasPending());
+            if (drained && connection.isCloseAfterWrite()) {
+                handleClientDisconnect(key);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Envoi interrompu: " + e.getMessage());
+            handleClientDisconnect(key);
+        }
+    }
+    
+    /**
+     * Trames d'un client après le handshake
+     */
+    private final class ClientFrameHandler implements WebSocketCodec.FrameHandler {
+        private final SelectionKey key;
+        
+        ClientFrameHandler(SelectionKey key) {
+            this.key = key;
+        }
         
-        int bytesRead = clientChannel.read(buffer);
-        if (bytesRead > 0) {
-            buffer.flip();
-            String message = new String(buffer.array(), 0, bytesRead);
+        @Override
+        public void onMessage(int opcode, ByteBuffer payload) throws IOException {
+            if (opcode != WebSocketCodec.OPCODE_TEXT) {
+                throw new WebSocketCodec.ProtocolException(WebSocketCodec.CLOSE_UNSUPPORTED_DATA, "Messages binaires non supportés");
+            }
+            String message = WebSocketCodec.decodeText(payload);
+            
+            // Demande ou arrêt d'une réponse IA en streaming
+            if (handleStreamMessage(key, message)) {
+                Log.d(TAG, "Message de streaming reçu: " + SecurityUtils.hashForLogging(message));
+                return;
+            }
             
             // Traiter le message WebSocket
-            String processedMessage = processWebSocketMessage(clientChannel, message);
+            String processedMessage = processWebSocketMessage((SocketChannel) key.channel(), message);
             
             // Répondre au client
-            sendMessage(clientChannel, processedMessage);
+            sendMessage(key, processedMessage);
             
             Log.d(TAG, "Message reçu: " + SecurityUtils.hashForLogging(message));
-        } else if (bytesRead == -1) {
-            // Client déconnecté
-            handleClientDisconnect(clientChannel);
+        }
+        
+        @Override
+        public void onPing(ByteBuffer payload) {
+            enqueue(key, WebSocketCodec.encodeFrame(WebSocketCodec.OPCODE_PONG, payload),
+                    WebSocketConnection.Delivery.REPLY, null);
+        }
+        
+        @Override
+        public void onPong(ByteBuffer payload) {
+            // Réponse au ping de keepalive: l'activité a déjà été notée à la lecture
+        }
+        
+        @Override
+        public void onClose(int code, String reason) {
+            Log.d(TAG, "Fermeture demandée par le client: " + code);
+            // Renvoyer le code reçu (1000 si la trame n'en portait pas), puis fermer
+            WebSocketConnection connection = (WebSocketConnection) key.attachment();
+            connection.sendClose(code == WebSocketCodec.CLOSE_NO_STATUS ? WebSocketCodec.CLOSE_NORMAL : code, "");
         }
     }
     
     /**
-     * Gère l'écriture des messages
+     * Messages de streaming (JSON brut, avant nettoyage):
+     * {"type":"ai_stream","id":"...","message":"...","personality":"..."} démarre une réponse,
+     * transmise en trames ai_delta numérotées (seq) puis une trame ai_done avec les mesures;
+     * {"type":"ai_stop","id":"..."} l'annule (sans id: toutes celles du client)
+     * @return false si le message n'est pas une demande de streaming
      */
-    private void handleWrite(SelectionKey key) throws IOException {
-        SocketChannel clientChannel = (SocketChannel) key.channel();
-        // Logique d'écriture si nécessaire
+    private boolean handleStreamMessage(SelectionKey key, String message) {
+        if (!message.contains("ai_stream") && !message.contains("ai_stop")) {
+            return false;
+        }
+        JSONObject json;
+        try {
+            json = new JSONObject(message);
+        } catch (JSONException e) {
+            return false;
+        }
+        WebSocketConnection connection = (WebSocketConnection) key.attachment();
+        String type = json.optString("type");
+        if ("ai_stop".equals(type)) {
+            String id = json.optString("id", null);
+            int cancelled = connection.cancelStreams(id);
+            Log.d(TAG, "Arrêt demandé: " + cancelled + " flux");
+            return true;
+        }
+        if (!"ai_stream".equals(type)) {
+            return false;
+        }
+        
+        String id = json.optString("id", "");
+        if (id.isEmpty()) {
+            id = String.valueOf(streamIds.incrementAndGet());
+        }
+        String text = json.optString("message", "");
+        String personality = json.optString("personality", "default");
+        RealtimeAIService service = streamingService;
+        if (service == null || !service.isHealthy()) {
+            sendMessage(key, createStreamError(id, "Service IA indisponible"));
+        } else if (!SecurityUtils.isValidInput(text)) {
+            sendMessage(key, createStreamError(id, "Message invalide"));
+        } else if (connection.hasStream(id)) {
+            sendMessage(key, createStreamError(id, "Identifiant de flux déjà utilisé"));
+        } else if (connection.getStreamCount() >= MAX_STREAMS_PER_CONNECTION) {
+            sendMessage(key, createStreamError(id, "Trop de flux en cours"));
+        } else {
+            // Le listener passe par le sélecteur: le flux est enregistré avant sa première trame
+            connection.addStream(id, service.streamAIRequest(text, personality, new StreamForwarder(key, id)));
+        }
+        return true;
+    }
+    
+    private String createStreamError(String id, String error) {
+        return String.format(Locale.US, "{\"type\":\"ai_done\",\"id\":%s,\"seq\":0,\"status\":\"error\",\"error\":%s,\"timestamp\":%d}",
+                JSONObject.quote(id), JSONObject.quote(error), System.currentTimeMillis());
+    }
+    
+    /**
+     * Transmet un flux IA au client qui l'a demandé: trames encodées sur le thread du service,
+     * mises en file par le sélecteur, sans jamais être abandonnées (une réponse incomplète n'a pas de sens)
+     */
+    private final class StreamForwarder implements RealtimeAIService.StreamListener {
+        private final SelectionKey key;
+        private final String id;
+        private final String quotedId;
+        // Thread du service uniquement
+        private int seq;
+        
+        StreamForwarder(SelectionKey key, String id) {
+            this.key = key;
+            this.id = id;
+            this.quotedId = JSONObject.quote(id);
+        }
+        
+        @Override
+        public void onDelta(String delta) {
+            String frame = String.format(Locale.US, "{\"type\":\"ai_delta\",\"id\":%s,\"seq\":%d,\"delta\":%s}",
+                    quotedId, seq++, JSONObject.quote(delta));
+            deliver(StandardCharsets.UTF_8.encode(frame), false);
+        }
+        
+        @Override
+        public void onDone(RealtimeAIService.StreamResult result) {
+            String frame = String.format(Locale.US,
+                    "{\"type\":\"ai_done\",\"id\":%s,\"seq\":%d,\"status\":\"%s\",\"source\":%s,\"ttft_ms\":%d," +
+                    "\"total_ms\":%d,\"deltas\":%d,\"chars\":%d%s,\"timestamp\":%d}",
+                    quotedId, seq++, result.status, result.source != null ? JSONObject.quote(result.source) : "null",
+                    result.ttftMs, result.totalMs, result.deltas, result.chars,
+                    result.error != null ? ",\"error\":" + JSONObject.quote(result.error) : "",
+                    System.currentTimeMillis());
+            deliver(StandardCharsets.UTF_8.encode(frame), true);
+        }
+        
+        /**
+         * @param payload message en UTF-8, compressé (ou non) et mis en trame par le sélecteur
+         */
+        private void deliver(ByteBuffer payload, boolean last) {
+            runOnSelector(() -> {
+                if (!key.isValid()) {
+                    return; // Client parti: le flux a déjà été annulé
+                }
+                WebSocketConnection connection = (WebSocketConnection) key.attachment();
+                if (last) {
+                    connection.removeStream(id);
+                }
+                if (connection.isOpen() && !connection.isCloseSent()) {
+                    enqueue(key, encodeMessage(connection, payload), WebSocketConnection.Delivery.REPLY, null);
+                    flush(key);
+                }
+            });
+        }
     }
     
     /**
@@ -184,6 +499,7 @@ public class WebSocketServer {
             } else if (sanitizedMessage.contains("ping")) {
                 return handlePing();
             } else if (sanitizedMessage.contains("typing")) {
+                broadcastStatus("typing", clients.get(clientChannel), clientChannel);
                 return handleTypingIndicator();
             }
             
@@ -227,47 +543,203 @@ public class WebSocketServer {
     }
     
     /**
-     * Envoie un message à un client spécifique
+     * Met un message texte en file pour un client (thread du sélecteur uniquement)
      */
-    private void sendMessage(SocketChannel clientChannel, String message) {
-        try {
-            ByteBuffer buffer = ByteBuffer.wrap(message.getBytes());
-            clientChannel.write(buffer);
-            Log.d(TAG, "Message envoyé: " + SecurityUtils.hashForLogging(message));
-        } catch (IOException e) {
-            Log.e(TAG, "Erreur envoi message", e);
+    private void sendMessage(SelectionKey key, String message) {
+        WebSocketConnection connection = (WebSocketConnection) key.attachment();
+        if (!connection.isOpen()) {
+            return;
+        }
+        enqueue(key, encodeMessage(connection, StandardCharsets.UTF_8.encode(message)), WebSocketConnection.Delivery.REPLY, null);
+        Log.d(TAG, "Message envoyé: " + SecurityUtils.hashForLogging(message));
+    }
+    
+    /**
+     * Trame texte pour un client: compressée si permessage-deflate est négocié et que le message dépasse le seuil
+     */
+    private ByteBuffer encodeMessage(WebSocketConnection connection, ByteBuffer payload) {
+        WebSocketDeflate deflate = connection.getDeflate();
+        ByteBuffer compressed = deflate != null ? deflate.compress(payload) : null;
+        if (compressed != null) {
+            return WebSocketCodec.encodeFrame(WebSocketCodec.OPCODE_TEXT, compressed, true);
+        }
+        return WebSocketCodec.encodeFrame(WebSocketCodec.OPCODE_TEXT, payload);
+    }
+    
+    /**
+     * Ajoute une trame à la file d'un client; un client qui ne lit plus ses réponses est déconnecté (1008)
+     */
+    private void enqueue(SelectionKey key, ByteBuffer frame, WebSocketConnection.Delivery delivery, String coalesceKey) {
+        WebSocketConnection connection = (WebSocketConnection) key.attachment();
+        long dropped = connection.getDroppedFrames();
+        long coalesced = connection.getCoalescedFrames();
+        boolean accepted = connection.enqueue(frame, delivery, coalesceKey);
+        droppedFrames.addAndGet(connection.getDroppedFrames() - dropped);
+        coalescedFrames.addAndGet(connection.getCoalescedFrames() - coalesced);
+        if (!accepted) {
+            Log.w(TAG, "Client trop lent, déconnexion: " + connection.clientId);
+            slowClientsClosed.incrementAndGet();
+            long before = connection.getDroppedFrames();
+            connection.discardPending();
+            droppedFrames.addAndGet(connection.getDroppedFrames() - before);
+            connection.sendClose(WebSocketCodec.CLOSE_POLICY_VIOLATION, "Client trop lent");
         }
     }
     
     /**
      * Envoie un message de bienvenue
      */
-    private void sendWelcomeMessage(SocketChannel clientChannel) {
+    private void sendWelcomeMessage(SelectionKey key) {
         String welcomeMessage = createWebSocketResponse("welcome", "Connecté au serveur ChatAI");
-        sendMessage(clientChannel, welcomeMessage);
+        sendMessage(key, welcomeMessage);
     }
     
     /**
-     * Diffuse un message à tous les clients
+     * Diffuse un message à tous les clients (appelable depuis n'importe quel thread).
+     * La trame est encodée une seule fois (deux avec la version compressée); chaque client reçoit une vue du même buffer.
      */
     public void broadcastMessage(String message) {
         String safeMessage = SecurityUtils.sanitizeInput(message);
         String formattedMessage = createWebSocketResponse("broadcast", safeMessage);
-        
-        for (SocketChannel client : clients.keySet()) {
+        fanOut(StandardCharsets.UTF_8.encode(formattedMessage), WebSocketConnection.Delivery.BROADCAST, null, null);
+    }
+    
+    /**
+     * Diffuse un statut (frappe, état...): chez un client en retard, seul le dernier statut d'un même type est gardé
+     * @param except client qui ne reçoit pas le statut (son auteur), null pour tous
+     */
+    public void broadcastStatus(String type, String content, SocketChannel except) {
+        String formattedMessage = createWebSocketResponse(type, content != null ? content : "");
+        fanOut(StandardCharsets.UTF_8.encode(formattedMessage), WebSocketConnection.Delivery.STATUS, type, except);
+    }
+    
+    /**
+     * Les clients avec permessage-deflate reçoivent une trame compressée sans contexte, produite une seule fois
+     * au premier destinataire qui l'accepte
+     */
+    private void fanOut(ByteBuffer payload, WebSocketConnection.Delivery delivery, String coalesceKey, SocketChannel except) {
+        ByteBuffer shared = WebSocketCodec.encodeFrame(WebSocketCodec.OPCODE_TEXT, payload).asReadOnlyBuffer();
+        broadcastEncodes.incrementAndGet();
+        runOnSelector(() -> {
+            long start = System.nanoTime();
+            ByteBuffer sharedCompressed = null;
+            boolean compressionTried = false;
+            for (SelectionKey key : selector.keys()) {
+                if (!key.isValid() || !(key.attachment() instanceof WebSocketConnection) || key.channel() == except) {
+                    continue;
+                }
+                WebSocketConnection connection = (WebSocketConnection) key.attachment();
+                if (connection.isOpen() && !connection.isCloseSent()) {
+                    ByteBuffer frame = shared;
+                    if (connection.getDeflate() != null) {
+                        if (!compressionTried) {
+                            compressionTried = true;
+                            ByteBuffer compressed = broadcastDeflate.compress(payload);
+                            if (compressed != null) {
+                                sharedCompressed = WebSocketCodec.encodeFrame(WebSocketCodec.OPCODE_TEXT, compressed, true)
+                                        .asReadOnlyBuffer();
+                                broadcastEncodes.incrementAndGet();
+                            }
+                        }
+                        if (sharedCompressed != null) {
+                            frame = sharedCompressed;
+                            // Le client décompresse des octets que son propre deflater n'a pas vus
+                            connection.getDeflate().invalidateContext();
+                        }
+                    }
+                    enqueue(key, frame.duplicate(), delivery, coalesceKey);
+                    broadcastDeliveries.incrementAndGet();
+                    flush(key);
+                }
+            }
+            fanOuts.incrementAndGet();
+            fanOutNanos.addAndGet(System.nanoTime() - start);
+        });
+    }
+    
+    /**
+     * Exécute une tâche sur le thread du sélecteur (seul à toucher aux files d'envoi)
+     */
+    private void runOnSelector(Runnable task) {
+        Selector currentSelector = selector;
+        if (!isRunning || currentSelector == null) {
+            return;
+        }
+        selectorTasks.add(task);
+        currentSelector.wakeup();
+    }
+    
+    private void runSelectorTasks() {
+        Runnable task;
+        while ((task = selectorTasks.poll()) != null) {
             try {
-                sendMessage(client, formattedMessage);
+                task.run();
             } catch (Exception e) {
-                Log.e(TAG, "Erreur diffusion message", e);
+                Log.e(TAG, "Erreur tâche sélecteur", e);
+            }
+        }
+    }
+    
+    /**
+     * Ping des clients silencieux depuis PING_INTERVAL_MS (un navigateur ne pinge jamais de lui-même):
+     * un client vivant répond par un pong avant l'expiration du délai d'inactivité
+     */
+    private void sendKeepalivePings() {
+        long now = System.currentTimeMillis();
+        if (now < nextPingCheck) {
+            return;
+        }
+        nextPingCheck = now + PING_CHECK_MS;
+        for (SelectionKey key : selector.keys()) {
+            if (!key.isValid() || !(key.attachment() instanceof WebSocketConnection)) {
+                continue;
+            }
+            WebSocketConnection connection = (WebSocketConnection) key.attachment();
+            if (connection.needsPing(now, PING_INTERVAL_MS)) {
+                connection.markPingSent();
+                enqueue(key, WebSocketCodec.encodeFrame(WebSocketCodec.OPCODE_PING, ByteBuffer.allocate(0)),
+                        WebSocketConnection.Delivery.REPLY, null);
+                flush(key);
             }
         }
     }
     
     /**
-     * Gère la déconnexion d'un client
+     * Connexion expirée: trame de fermeture 1001 envoyée si possible (la connexion n'est plus suivie,
+     * pas d'attente d'OP_WRITE), puis déconnexion
      */
-    private void handleClientDisconnect(SocketChannel clientChannel) {
+    private void handleTimeout(SelectionKey key) {
+        if (key.isValid() && key.attachment() instanceof WebSocketConnection) {
+            WebSocketConnection connection = (WebSocketConnection) key.attachment();
+            if (connection.isOpen()) {
+                connection.sendClose(WebSocketCodec.CLOSE_GOING_AWAY, "Inactivité");
+                try {
+                    connection.outbound.writeTo((SocketChannel) key.channel());
+                } catch (IOException e) {
+                    Log.d(TAG, "Envoi fermeture impossible: " + e.getMessage());
+                }
+            }
+        }
+        handleClientDisconnect(key);
+    }
+    
+    /**
+     * Gère la déconnexion d'un client (fermeture, erreur ou expiration)
+     */
+    private void handleClientDisconnect(SelectionKey key) {
+        SocketChannel clientChannel = (SocketChannel) key.channel();
         String clientId = clients.remove(clientChannel);
+        if (key.attachment() instanceof WebSocketConnection) {
+            WebSocketConnection connection = (WebSocketConnection) key.attachment();
+            connection.outbound.clear();
+            // Plus personne pour lire les réponses en cours: couper les appels amont
+            connection.releaseStreams();
+            if (connection.getDeflate() != null) {
+                connection.getDeflate().release();
+            }
+        }
+        connectionManager.unregister(key);
+        key.cancel();
         Log.i(TAG, "Client déconnecté: " + clientId);
         
         try {
@@ -310,4 +782,31 @@ public class WebSocketServer {
     public int getConnectedClientsCount() {
         return clients.size();
     }
+    
+    /**
+     * Connexions ouvertes, refusées et expirées (JSON)
+     */
+    public String getConnectionStats() {
+        return connectionManager.getStats();
+    }
+    
+    /**
+     * permessage-deflate: messages compressés ou laissés tels quels, ratio et coût CPU moyen par message
+     */
+    public String getCompressionStats() {
+        return compressionStats.toJson();
+    }
+    
+    /**
+     * Diffusions: encodages, remises, trames abandonnées ou fusionnées, clients lents déconnectés,
+     * coût moyen d'une diffusion sur le sélecteur (tous les clients) en microsecondes
+     */
+    public String getBroadcastStats() {
+        long count = fanOuts.get();
+        return String.format(java.util.Locale.US,
+                "{\"encodes\":%d,\"deliveries\":%d,\"dropped\":%d,\"coalesced\":%d,\"slowClientsClosed\":%d," +
+                "\"fanOuts\":%d,\"avgFanOutUs\":%.1f}",
+                broadcastEncodes.get(), broadcastDeliveries.get(), droppedFrames.get(), coalescedFrames.get(),
+                slowClientsClosed.get(), count, count > 0 ? fanOutNanos.get() / 1000.0 / count : 0);
+    }
 }
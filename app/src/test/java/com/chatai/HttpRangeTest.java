@@ -0,0 +1,109 @@
+package com.chatai;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests du parsing des en-têtes Range et If-Range
+ */
+public class HttpRangeTest {
+    private static final long LENGTH = 1000;
+
+    @Test
+    public void parse_singleRanges() {
+        assertRanges("bytes=0-499", 0, 499);
+        assertRanges("bytes=500-", 500, 999);
+        assertRanges("bytes=-200", 800, 999);
+        // Fin au-delà du fichier: tronquée
+        assertRanges("bytes=900-5000", 900, 999);
+        // Suffixe plus long que le fichier: fichier entier
+        assertRanges("bytes=-5000", 0, 999);
+        assertRanges("  Bytes=10-19 ", 10, 19);
+    }
+
+    @Test
+    public void parse_sortsAndCoalescesRanges() {
+        assertRanges("bytes=500-599, 0-99", 0, 99, 500, 599);
+        // Chevauchantes ou contiguës: fusionnées
+        assertRanges("bytes=0-99,50-149,150-199", 0, 199);
+        assertRanges("bytes=900-,-50", 900, 999);
+    }
+
+    @Test
+    public void parse_ignoresInvalidHeader() {
+        assertNull(HttpRange.parse(null, LENGTH));
+        assertNull(HttpRange.parse("items=0-1", LENGTH));
+        assertNull(HttpRange.parse("bytes=abc-10", LENGTH));
+        assertNull(HttpRange.parse("bytes=10", LENGTH));
+        assertNull(HttpRange.parse("bytes=-", LENGTH));
+        assertNull(HttpRange.parse("bytes=20-10", LENGTH));
+        assertNull(HttpRange.parse("bytes=-1-5", LENGTH));
+    }
+
+    @Test
+    public void parse_tooManyRangesServesWholeFile() {
+        StringBuilder header = new StringBuilder("bytes=");
+        for (int i = 0; i < 17; i++) {
+            header.append(i * 10).append('-').append(i * 10 + 1).append(',');
+        }
+        assertNull(HttpRange.parse(header.toString(), LENGTH));
+    }
+
+    @Test
+    public void parse_unsatisfiableReturnsEmptyList() {
+        assertTrue(HttpRange.parse("bytes=1000-", LENGTH).isEmpty());
+        assertTrue(HttpRange.parse("bytes=-0", LENGTH).isEmpty());
+        assertTrue(HttpRange.parse("bytes=0-10", 0).isEmpty());
+        // Une plage satisfaisable suffit
+        assertRanges("bytes=2000-3000,0-0", 0, 0);
+    }
+
+    @Test
+    public void contentRange() {
+        HttpRange range = new HttpRange(100, 199);
+        assertEquals(100, range.length());
+        assertEquals("bytes 100-199/1000", range.toContentRange(LENGTH));
+    }
+
+    @Test
+    public void ifRange_comparesStrongEtagOrDate() {
+        long lastModified = 1700000000123L;
+        String etag = HttpRange.fileEtag(LENGTH, lastModified);
+
+        assertTrue(HttpRange.ifRangeMatches(null, etag, lastModified));
+        assertTrue(HttpRange.ifRangeMatches(etag, etag, lastModified));
+        assertFalse(HttpRange.ifRangeMatches("\"autre\"", etag, lastModified));
+        assertFalse(HttpRange.ifRangeMatches("W/" + etag, etag, lastModified));
+
+        // Dates HTTP à la seconde près
+        assertTrue(HttpRange.ifRangeMatches(HttpRange.formatHttpDate(lastModified), etag, lastModified));
+        assertFalse(HttpRange.ifRangeMatches(HttpRange.formatHttpDate(lastModified + 1000), etag, lastModified));
+        assertFalse(HttpRange.ifRangeMatches("pas une date", etag, lastModified));
+    }
+
+    @Test
+    public void httpDate_roundTrip() {
+        assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", HttpRange.formatHttpDate(0));
+        assertEquals(784111777000L, HttpRange.parseHttpDate("Sun, 06 Nov 1994 08:49:37 GMT"));
+        assertEquals(-1, HttpRange.parseHttpDate("06/11/1994"));
+        assertEquals(-1, HttpRange.parseHttpDate(null));
+    }
+
+    /**
+     * Vérifie les plages retournées: paires début, fin incluse
+     */
+    private static void assertRanges(String header, long... bounds) {
+        List<HttpRange> ranges = HttpRange.parse(header, LENGTH);
+        assertEquals(header, bounds.length / 2, ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            assertEquals(header, bounds[2 * i], ranges.get(i).start);
+            assertEquals(header, bounds[2 * i + 1], ranges.get(i).end);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.chatai;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests du parser HTTP incrémental: découpage arbitraire des lectures, pipelining, chunked et limites
+ */
+public class HttpRequestParserTest {
+
+    /**
+     * Sink en mémoire qui garde la trace des appels
+     */
+    private static final class RecordingSink implements HttpRequestParser.BodySink {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        final List<String> calls = new ArrayList<>();
+
+        @Override
+        public void write(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            data.write(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public void finish() {
+            calls.add("finish");
+        }
+
+        @Override
+        public void abort() {
+            calls.add("abort");
+        }
+    }
+
+    @Test
+    public void parse_byteByByte() throws Exception {
+        byte[] request = ascii("GET /api/files?path=%C3%A9t%C3%A9 HTTP/1.1\r\n"
+                + "Host: localhost:8080\r\n"
+                + "X-Custom:   valeur  \r\n"
+                + "\r\n");
+        HttpRequestParser parser = new HttpRequestParser();
+
+        for (int i = 0; i < request.length; i++) {
+            boolean complete = parser.parse(ByteBuffer.wrap(request, i, 1));
+            assertEquals("octet " + i, i == request.length - 1, complete);
+            if (i == 0) {
+                assertTrue(parser.hasPartialRequest());
+                assertTrue(parser.isReadingHeaders());
+            }
+        }
+
+        assertEquals("GET", parser.getMethod());
+        assertEquals("/api/files?path=%C3%A9t%C3%A9", parser.getTarget());
+        assertEquals("HTTP/1.1", parser.getVersion());
+        assertEquals("localhost:8080", parser.getHeader("HOST"));
+        assertEquals("valeur", parser.getHeaders().get("x-custom"));
+        assertEquals(0, parser.getBody().length);
+        assertFalse(parser.isReadingHeaders());
+    }
+
+    @Test
+    public void parse_decodesUtf8Target() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        byte[] line = "GET /été HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.UTF_8);
+        assertTrue(parser.parse(ByteBuffer.wrap(line)));
+        assertEquals("/été", parser.getTarget());
+    }
+
+    @Test
+    public void parse_contentLengthBodyInPieces() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        assertFalse(parser.parse(buffer("POST /api/chat HTTP/1.1\r\nContent-Length: 11\r\n\r\nhello")));
+        assertFalse(parser.parse(buffer(" ")));
+        assertTrue(parser.parse(buffer("world")));
+        assertEquals("hello world", new String(parser.getBody(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void parse_pipelinedRequests() throws Exception {
+        ByteBuffer in = buffer("GET /a HTTP/1.1\r\n\r\n"
+                + "POST /b HTTP/1.1\r\nContent-Length: 3\r\n\r\nabc"
+                + "\r\nGET /c HTTP/1.1\r\nConnection: close\r\n\r\n");
+        HttpRequestParser parser = new HttpRequestParser();
+
+        assertTrue(parser.parse(in));
+        assertEquals("/a", parser.getTarget());
+        // Les octets suivants restent pour la requête suivante
+        assertTrue(in.hasRemaining());
+
+        parser.reset();
+        assertTrue(parser.parse(in));
+        assertEquals("/b", parser.getTarget());
+        assertEquals("abc", new String(parser.getBody(), StandardCharsets.US_ASCII));
+
+        parser.reset();
+        // Ligne vide tolérée avant la requête
+        assertTrue(parser.parse(in));
+        assertEquals("/c", parser.getTarget());
+        assertFalse(parser.isKeepAlive());
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    public void parse_chunkedBodyWithExtensionsAndTrailers() throws Exception {
+        byte[] request = ascii("POST /upload HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5;name=valeur\r\nhello\r\n"
+                + "6\r\n world\r\n"
+                + "0\r\nX-Trailer: ignoré\r\n\r\n");
+        HttpRequestParser parser = new HttpRequestParser();
+
+        // Lectures de 3 octets: tailles, données et fins de chunk coupées n'importe où
+        boolean complete = false;
+        for (int i = 0; i < request.length; i += 3) {
+            complete = parser.parse(ByteBuffer.wrap(request, i, Math.min(3, request.length - i)));
+        }
+
+        assertTrue(complete);
+        assertEquals("hello world", new String(parser.getBody(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void parse_streamsBodyToSink() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        HttpRequestParser parser = new HttpRequestParser(4);
+        parser.setBodySinkFactory((request, contentLength) -> {
+            assertEquals(10, contentLength);
+            return sink;
+        });
+
+        assertFalse(parser.parse(buffer("PUT /f HTTP/1.1\r\nContent-Length: 10\r\n\r\n01234")));
+        assertTrue(parser.parse(buffer("56789")));
+
+        // La limite en mémoire ne s'applique pas au sink
+        assertSame(sink, parser.getBodySink());
+        assertEquals("0123456789", sink.data.toString("US-ASCII"));
+        assertEquals(1, sink.calls.size());
+        assertEquals("finish", sink.calls.get(0));
+    }
+
+    @Test
+    public void reset_abortsUnfinishedSink() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        HttpRequestParser parser = new HttpRequestParser();
+        parser.setBodySinkFactory((request, contentLength) -> sink);
+
+        assertFalse(parser.parse(buffer("PUT /f HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n4\r\nab")));
+        parser.reset();
+
+        assertEquals(1, sink.calls.size());
+        assertEquals("abort", sink.calls.get(0));
+        assertNull(parser.getBodySink());
+        assertFalse(parser.hasPartialRequest());
+    }
+
+    @Test
+    public void expectContinue_reportedOnce() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        assertFalse(parser.parse(buffer("POST /x HTTP/1.1\r\nExpect: 100-continue\r\nContent-Length: 2\r\n\r\n")));
+        assertTrue(parser.takeContinueRequest());
+        assertFalse(parser.takeContinueRequest());
+    }
+
+    @Test
+    public void keepAlive_dependsOnVersion() throws Exception {
+        assertTrue(parse("GET / HTTP/1.1\r\n\r\n").isKeepAlive());
+        assertFalse(parse("GET / HTTP/1.1\r\nConnection: Close\r\n\r\n").isKeepAlive());
+        assertFalse(parse("GET / HTTP/1.0\r\n\r\n").isKeepAlive());
+        assertTrue(parse("GET / HTTP/1.0\r\nConnection: keep-alive\r\n\r\n").isKeepAlive());
+    }
+
+    @Test
+    public void duplicateHeadersAreJoined() throws Exception {
+        HttpRequestParser parser = parse("GET / HTTP/1.1\r\nAccept: a\r\naccept: b\r\n"
+                + "Content-Length: 0\r\nContent-Length: 0\r\n\r\n");
+        assertEquals("a, b", parser.getHeader("accept"));
+        assertEquals("0", parser.getHeader("content-length"));
+    }
+
+    @Test
+    public void rejectsMalformedRequests() {
+        assertStatus(400, "GET /\r\n\r\n");
+        assertStatus(505, "GET / HTTP/2.0\r\n\r\n");
+        assertStatus(400, "GET / HTTP/1.1\r\nPas de deux-points\r\n\r\n");
+        assertStatus(400, "GET / HTTP/1.1\r\nA: b\r\n  suite\r\n\r\n");
+        assertStatus(400, "POST / HTTP/1.1\r\nContent-Length: 1\r\nContent-Length: 2\r\n\r\n");
+        assertStatus(400, "POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n");
+        assertStatus(400, "POST / HTTP/1.1\r\nContent-Length: 2\r\nTransfer-Encoding: chunked\r\n\r\n");
+        assertStatus(501, "POST / HTTP/1.1\r\nTransfer-Encoding: gzip\r\n\r\n");
+        assertStatus(400, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n");
+        assertStatus(400, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n2\r\nabX\r\n");
+    }
+
+    @Test
+    public void enforcesLimits() {
+        StringBuilder longTarget = new StringBuilder("GET /");
+        for (int i = 0; i < HttpRequestParser.MAX_LINE_LENGTH; i++) {
+            longTarget.append('a');
+        }
+        assertStatus(414, longTarget + " HTTP/1.1\r\n\r\n");
+
+        StringBuilder manyHeaders = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i <= HttpRequestParser.MAX_HEADER_COUNT; i++) {
+            manyHeaders.append("X-").append(i).append(": v\r\n");
+        }
+        assertStatus(431, manyHeaders + "\r\n");
+
+        HttpRequestParser parser = new HttpRequestParser(10);
+        HttpRequestParser.HttpParseException e = assertThrows(HttpRequestParser.HttpParseException.class,
+                () -> parser.parse(buffer("POST / HTTP/1.1\r\nContent-Length: 11\r\n\r\n")));
+        assertEquals(413, e.statusCode);
+
+        HttpRequestParser chunked = new HttpRequestParser(10);
+        e = assertThrows(HttpRequestParser.HttpParseException.class,
+                () -> chunked.parse(buffer("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n8\r\n12345678\r\n8\r\n")));
+        assertEquals(413, e.statusCode);
+    }
+
+    private static HttpRequestParser parse(String request) throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        assertTrue(parser.parse(buffer(request)));
+        return parser;
+    }
+
+    private static void assertStatus(int statusCode, String request) {
+        HttpRequestParser.HttpParseException e = assertThrows(request, HttpRequestParser.HttpParseException.class,
+                () -> new HttpRequestParser().parse(buffer(request)));
+        assertEquals(request, statusCode, e.statusCode);
+    }
+
+    private static ByteBuffer buffer(String text) {
+        return ByteBuffer.wrap(ascii(text));
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,171 @@
+package com.chatai;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests des uploads reprenables: morceaux Content-Range dans le désordre, checksums et reprise
+ */
+public class ResumableUploadManagerTest {
+    private static final int SIZE = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File storage;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        storage = folder.newFolder("storage");
+        content = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            content[i] = (byte) (i % 251);
+        }
+    }
+
+    @Test
+    public void chunksOutOfOrderAreAssembled() throws Exception {
+        ResumableUploadManager manager = new ResumableUploadManager(storage);
+        ResumableUploadManager.Session session = manager.create("disque.iso", SIZE, sha256(content));
+
+        sendChunk(manager, session.id, 6000, SIZE - 1, null);
+        sendChunk(manager, session.id, 0, 2999, sha256(Arrays.copyOfRange(content, 0, 3000)));
+        assertEquals(7000, session.getReceivedBytes());
+        assertFalse(session.isComplete());
+        assertThrows(HttpRequestParser.HttpParseException.class, () -> manager.finish(session.id));
+
+        sendChunk(manager, session.id, 3000, 5999, null);
+        assertTrue(session.isComplete());
+
+        assertEquals(sha256(content), manager.finish(session.id));
+        assertArrayEquals(content, Files.readAllBytes(new File(storage, "disque.iso").toPath()));
+        assertNull(manager.get(session.id));
+    }
+
+    @Test
+    public void sessionResumesAfterRestart() throws Exception {
+        ResumableUploadManager manager = new ResumableUploadManager(storage);
+        String sha256 = sha256(content);
+        ResumableUploadManager.Session session = manager.create("rom.bin", SIZE, sha256);
+        sendChunk(manager, session.id, 0, 4999, null);
+        manager.close();
+
+        // Même fichier après redémarrage: même session, plages conservées
+        ResumableUploadManager restarted = new ResumableUploadManager(storage);
+        ResumableUploadManager.Session resumed = restarted.create("rom.bin", SIZE, sha256);
+        assertEquals(session.id, resumed.id);
+        assertEquals(5000, resumed.getReceivedBytes());
+        assertSame(resumed, restarted.get(session.id));
+
+        sendChunk(restarted, resumed.id, 5000, SIZE - 1, null);
+        assertEquals(sha256, restarted.finish(resumed.id));
+    }
+
+    @Test
+    public void invalidChunkChecksumIsNotRecorded() throws Exception {
+        ResumableUploadManager manager = new ResumableUploadManager(storage);
+        ResumableUploadManager.Session session = manager.create("a.bin", SIZE, null);
+        sendChunk(manager, session.id, 0, 999, null);
+
+        HttpRequestParser.HttpParseException e = assertThrows(HttpRequestParser.HttpParseException.class,
+                () -> sendChunk(manager, session.id, 500, 1499, sha256(new byte[1])));
+        assertEquals(422, e.statusCode);
+        // Les octets réécrits de la plage déjà reçue ne sont plus fiables
+        assertEquals(500, session.getReceivedBytes());
+    }
+
+    @Test
+    public void abortedChunkForgetsWrittenBytes() throws Exception {
+        ResumableUploadManager manager = new ResumableUploadManager(storage);
+        ResumableUploadManager.Session session = manager.create("a.bin", SIZE, null);
+        sendChunk(manager, session.id, 0, SIZE - 1, null);
+
+        ResumableUploadManager.ChunkSink sink = manager.openChunk(session.id, "bytes 2000-3999/" + SIZE, 2000, null);
+        sink.write(ByteBuffer.wrap(content, 2000, 500));
+        sink.abort();
+
+        assertEquals(SIZE - 500, session.getReceivedBytes());
+        assertFalse(session.isComplete());
+    }
+
+    @Test
+    public void contentRangeIsValidated() throws Exception {
+        ResumableUploadManager manager = new ResumableUploadManager(storage);
+        String id = manager.create("a.bin", SIZE, null).id;
+
+        assertChunkStatus(manager, id, null, 10, 400);
+        assertChunkStatus(manager, id, "octets 0-9/" + SIZE, 10, 400);
+        assertChunkStatus(manager, id, "bytes 0-9", 10, 400);
+        assertChunkStatus(manager, id, "bytes 0-9/" + (SIZE + 1), 10, 400);
+        assertChunkStatus(manager, id, "bytes 0-9/" + SIZE, 11, 400);
+        assertChunkStatus(manager, id, "bytes 9-0/" + SIZE, 10, 416);
+        assertChunkStatus(manager, id, "bytes " + (SIZE - 5) + "-" + (SIZE + 4) + "/" + SIZE, 10, 416);
+        assertChunkStatus(manager, id, "bytes 0-9/" + SIZE, -1, 411);
+        assertChunkStatus(manager, "0123456789abcdef", "bytes 0-9/" + SIZE, 10, 404);
+
+        // Taille totale inconnue acceptée
+        manager.openChunk(id, "bytes 0-9/*", 10, null).abort();
+    }
+
+    @Test
+    public void createRejectsInvalidParameters() {
+        ResumableUploadManager manager = new ResumableUploadManager(storage);
+        assertCreateStatus(manager, "", SIZE, null);
+        assertCreateStatus(manager, "..", SIZE, null);
+        assertCreateStatus(manager, "a.bin", 0, null);
+        assertCreateStatus(manager, "a.bin", SIZE, "pas-un-sha");
+    }
+
+    private void sendChunk(ResumableUploadManager manager, String id, int start, int end, String chunkSha256)
+            throws IOException {
+        ResumableUploadManager.ChunkSink sink = manager.openChunk(id, "bytes " + start + "-" + end + "/" + SIZE,
+                end - start + 1, chunkSha256);
+        // Écrit en deux fois, comme des lectures réseau successives
+        int middle = (start + end) / 2;
+        sink.write(ByteBuffer.wrap(content, start, middle - start));
+        sink.write(ByteBuffer.wrap(content, middle, end + 1 - middle));
+        try {
+            sink.finish();
+        } catch (IOException e) {
+            sink.abort();
+            throw e;
+        }
+    }
+
+    private static void assertChunkStatus(ResumableUploadManager manager, String id, String contentRange,
+                                          long contentLength, int statusCode) {
+        HttpRequestParser.HttpParseException e = assertThrows(String.valueOf(contentRange),
+                HttpRequestParser.HttpParseException.class,
+                () -> manager.openChunk(id, contentRange, contentLength, null));
+        assertEquals(String.valueOf(contentRange), statusCode, e.statusCode);
+    }
+
+    private static void assertCreateStatus(ResumableUploadManager manager, String fileName, long size, String sha256) {
+        HttpRequestParser.HttpParseException e = assertThrows(HttpRequestParser.HttpParseException.class,
+                () -> manager.create(fileName, size, sha256));
+        assertEquals(400, e.statusCode);
+    }
+
+    private static String sha256(byte[] data) throws NoSuchAlgorithmException {
+        return StreamingUpload.toHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+}
@@ -0,0 +1,348 @@
+package com.chatai;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * Tests du codec WebSocket: encodage des trames serveur, décodage incrémental des trames client,
+ * démasquage et validation des trames de contrôle
+ */
+public class WebSocketCodecTest {
+    private static final int MASK = 0x37FA213D;
+    private static final int MAX_MESSAGE_SIZE = 64 * 1024;
+
+    /**
+     * Enregistre les appels du décodeur sous forme lisible
+     */
+    private static final class RecordingHandler implements WebSocketCodec.FrameHandler {
+        final List<String> events = new ArrayList<>();
+        final List<byte[]> payloads = new ArrayList<>();
+
+        @Override
+        public void onMessage(int opcode, ByteBuffer payload) throws IOException {
+            byte[] bytes = toBytes(payload);
+            payloads.add(bytes);
+            events.add(opcode == WebSocketCodec.OPCODE_TEXT
+                    ? "text:" + new String(bytes, StandardCharsets.UTF_8)
+                    : "binary:" + bytes.length);
+        }
+
+        @Override
+        public void onPing(ByteBuffer payload) {
+            events.add("ping:" + new String(toBytes(payload), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void onPong(ByteBuffer payload) {
+            events.add("pong:" + new String(toBytes(payload), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void onClose(int code, String reason) {
+            events.add("close:" + code + ":" + reason);
+        }
+    }
+
+    // ========== ENCODAGE ==========
+
+    @Test
+    public void encodeFrame_usesShortestLengthEncoding() {
+        assertHeader(WebSocketCodec.encodeFrame(WebSocketCodec.OPCODE_BINARY, ByteBuffer.allocate(125)), 2, 125);
+        assertHeader(WebSocketCodec.encodeFrame(WebSocketCodec.OPCODE_BINARY, ByteBuffer.allocate(126)), 4, 126);
+        assertHeader(WebSocketCodec.encodeFrame(WebSocketCodec.OPCODE_BINARY, ByteBuffer.allocate(0xFFFF)), 4, 0xFFFF);
+        assertHeader(WebSocketCodec.encodeFrame(WebSocketCodec.OPCODE_BINARY, ByteBuffer.allocate(0x10000)), 10, 0x10000);
+    }
+
+    @Test
+    public void encodeFrame_setsFinOpcodeAndRsv1() {
+        ByteBuffer frame = WebSocketCodec.encodeFrame(WebSocketCodec.OPCODE_TEXT, ByteBuffer.allocate(3), true);
+        assertEquals(0x80 | 0x40 | WebSocketCodec.OPCODE_TEXT, frame.get(0) & 0xFF);
+        // Trame serveur: jamais masquée
+        assertEquals(0, frame.get(1) & 0x80);
+    }
+
+    @Test
+    public void encodeFrame_doesNotConsumePayload() {
+        ByteBuffer payload = ByteBuffer.wrap(new byte[]{1, 2, 3});
+        WebSocketCodec.encodeFrame(WebSocketCodec.OPCODE_BINARY, payload);
+        assertEquals(3, payload.remaining());
+    }
+
+    @Test
+    public void encodeClose_truncatesReasonToControlPayload() {
+        char[] reason = new char[300];
+        Arrays.fill(reason, 'x');
+        ByteBuffer frame = WebSocketCodec.encodeClose(WebSocketCodec.CLOSE_NORMAL, new String(reason));
+
+        assertEquals(WebSocketCodec.MAX_CONTROL_PAYLOAD, frame.get(1) & 0x7F);
+        assertEquals(WebSocketCodec.CLOSE_NORMAL, frame.getShort(2) & 0xFFFF);
+    }
+
+    // ========== DÉMASQUAGE ==========
+
+    @Test
+    public void unmask_matchesBytewiseXorForAnyAlignment() {
+        byte[] data = new byte[67];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + 7);
+        }
+        for (int from = 0; from < 5; from++) {
+            for (int to = from; to <= data.length; to += 3) {
+                for (long maskOffset = 0; maskOffset < 4; maskOffset++) {
+                    ByteBuffer buffer = ByteBuffer.wrap(data.clone());
+                    WebSocketCodec.unmask(buffer, from, to, MASK, maskOffset);
+
+                    byte[] expected = data.clone();
+                    for (int i = from; i < to; i++) {
+                        expected[i] ^= maskByte(maskOffset + i - from);
+                    }
+                    assertArrayEquals("from=" + from + " to=" + to + " offset=" + maskOffset, expected, buffer.array());
+                }
+            }
+        }
+    }
+
+    // ========== DÉCODAGE ==========
+
+    @Test
+    public void decode_maskedTextFrame() throws IOException {
+        RecordingHandler handler = decodeAll(clientFrame(true, WebSocketCodec.OPCODE_TEXT, utf8("Bonjour KITT")));
+        assertEquals(Arrays.asList("text:Bonjour KITT"), handler.events);
+    }
+
+    @Test
+    public void decode_byteByByteAcrossExtendedLengths() throws IOException {
+        byte[] medium = pattern(300);
+        byte[] large = pattern(70000);
+        byte[] stream = concat(
+                clientFrame(true, WebSocketCodec.OPCODE_BINARY, medium),
+                clientFrame(true, WebSocketCodec.OPCODE_BINARY, large));
+
+        WebSocketCodec.Decoder decoder = new WebSocketCodec.Decoder(MAX_MESSAGE_SIZE * 2);
+        RecordingHandler handler = new RecordingHandler();
+        // Buffer de lecture minimal: un en-tête et une trame de contrôle
+        ByteBuffer in = ByteBuffer.allocate(WebSocketCodec.MAX_HEADER_SIZE + WebSocketCodec.MAX_CONTROL_PAYLOAD);
+        for (byte b : stream) {
+            in.put(b);
+            in.flip();
+            decoder.decode(in, handler);
+            in.compact();
+        }
+
+        assertEquals(Arrays.asList("binary:300", "binary:70000"), handler.events);
+        assertArrayEquals(medium, handler.payloads.get(0));
+        assertArrayEquals(large, handler.payloads.get(1));
+    }
+
+    @Test
+    public void decode_reassemblesFragmentsAroundControlFrame() throws IOException {
+        RecordingHandler handler = decodeAll(
+                clientFrame(false, WebSocketCodec.OPCODE_TEXT, utf8("Michael, ")),
+                clientFrame(true, WebSocketCodec.OPCODE_PING, utf8("p")),
+                clientFrame(false, WebSocketCodec.OPCODE_CONTINUATION, utf8("je suis ")),
+                clientFrame(true, WebSocketCodec.OPCODE_CONTINUATION, utf8("là")));
+
+        assertEquals(Arrays.asList("ping:p", "text:Michael, je suis là"), handler.events);
+    }
+
+    @Test
+    public void decode_rejectsUnmaskedFrame() {
+        byte[] frame = clientFrame(true, WebSocketCodec.OPCODE_TEXT, utf8("x"));
+        frame[1] &= 0x7F;
+        assertProtocolError(WebSocketCodec.CLOSE_PROTOCOL_ERROR, frame);
+    }
+
+    @Test
+    public void decode_rejectsRsvWithoutExtension() {
+        byte[] frame = clientFrame(true, WebSocketCodec.OPCODE_TEXT, utf8("x"));
+        frame[0] |= 0x40;
+        assertProtocolError(WebSocketCodec.CLOSE_PROTOCOL_ERROR, frame);
+    }
+
+    @Test
+    public void decode_rejectsUnknownOpcode() {
+        assertProtocolError(WebSocketCodec.CLOSE_PROTOCOL_ERROR, clientFrame(true, 0x3, utf8("x")));
+        assertProtocolError(WebSocketCodec.CLOSE_PROTOCOL_ERROR, clientFrame(true, 0xB, utf8("x")));
+    }
+
+    @Test
+    public void decode_rejectsInvalidFragmentation() {
+        assertProtocolError(WebSocketCodec.CLOSE_PROTOCOL_ERROR,
+                clientFrame(true, WebSocketCodec.OPCODE_CONTINUATION, utf8("x")));
+        assertProtocolError(WebSocketCodec.CLOSE_PROTOCOL_ERROR,
+                clientFrame(false, WebSocketCodec.OPCODE_TEXT, utf8("a")),
+                clientFrame(true, WebSocketCodec.OPCODE_TEXT, utf8("b")));
+    }
+
+    @Test
+    public void decode_rejectsFragmentedOrOversizedControlFrame() {
+        assertProtocolError(WebSocketCodec.CLOSE_PROTOCOL_ERROR,
+                clientFrame(false, WebSocketCodec.OPCODE_PING, utf8("x")));
+        assertProtocolError(WebSocketCodec.CLOSE_PROTOCOL_ERROR,
+                clientFrame(true, WebSocketCodec.OPCODE_PING, new byte[WebSocketCodec.MAX_CONTROL_PAYLOAD + 1]));
+    }
+
+    @Test
+    public void decode_rejectsMessageOverLimit() {
+        WebSocketCodec.Decoder decoder = new WebSocketCodec.Decoder(100);
+        ByteBuffer in = ByteBuffer.wrap(concat(
+                clientFrame(false, WebSocketCodec.OPCODE_BINARY, new byte[60]),
+                clientFrame(true, WebSocketCodec.OPCODE_CONTINUATION, new byte[60])));
+
+        WebSocketCodec.ProtocolException e = assertThrows(WebSocketCodec.ProtocolException.class,
+                () -> decoder.decode(in, new RecordingHandler()));
+        assertEquals(WebSocketCodec.CLOSE_MESSAGE_TOO_BIG, e.closeCode);
+    }
+
+    // ========== FERMETURE ==========
+
+    @Test
+    public void decode_closeWithCodeAndReason() throws IOException {
+        RecordingHandler handler = decodeAll(
+                clientFrame(true, WebSocketCodec.OPCODE_CLOSE, closePayload(WebSocketCodec.CLOSE_NORMAL, "au revoir")),
+                clientFrame(true, WebSocketCodec.OPCODE_TEXT, utf8("ignoré")));
+
+        // Rien n'est décodé après la fermeture
+        assertEquals(Arrays.asList("close:1000:au revoir"), handler.events);
+    }
+
+    @Test
+    public void decode_closeWithoutCodeReportsNoStatus() throws IOException {
+        RecordingHandler handler = decodeAll(clientFrame(true, WebSocketCodec.OPCODE_CLOSE, new byte[0]));
+        assertEquals(Arrays.asList("close:" + WebSocketCodec.CLOSE_NO_STATUS + ":"), handler.events);
+    }
+
+    @Test
+    public void decode_acceptsSendableCloseCodes() throws IOException {
+        for (int code : new int[]{1000, 1001, 1003, 1007, 1011, 3000, 4999}) {
+            RecordingHandler handler = decodeAll(clientFrame(true, WebSocketCodec.OPCODE_CLOSE, closePayload(code, "")));
+            assertEquals(Arrays.asList("close:" + code + ":"), handler.events);
+        }
+    }
+
+    @Test
+    public void decode_rejectsReservedCloseCodes() {
+        for (int code : new int[]{0, 999, 1004, 1005, 1006, 1012, 2999, 5000}) {
+            assertProtocolError(WebSocketCodec.CLOSE_PROTOCOL_ERROR,
+                    clientFrame(true, WebSocketCodec.OPCODE_CLOSE, closePayload(code, "")));
+        }
+    }
+
+    @Test
+    public void decode_rejectsTruncatedClosePayload() {
+        assertProtocolError(WebSocketCodec.CLOSE_PROTOCOL_ERROR,
+                clientFrame(true, WebSocketCodec.OPCODE_CLOSE, new byte[]{0x03}));
+    }
+
+    @Test
+    public void decode_rejectsInvalidUtf8CloseReason() {
+        byte[] payload = {0x03, (byte) 0xE8, (byte) 0xC3, 0x28};
+        assertProtocolError(WebSocketCodec.CLOSE_INVALID_PAYLOAD, clientFrame(true, WebSocketCodec.OPCODE_CLOSE, payload));
+    }
+
+    @Test
+    public void decodeText_rejectsInvalidUtf8() throws IOException {
+        assertEquals("été", WebSocketCodec.decodeText(ByteBuffer.wrap(utf8("été"))));
+        WebSocketCodec.ProtocolException e = assertThrows(WebSocketCodec.ProtocolException.class,
+                () -> WebSocketCodec.decodeText(ByteBuffer.wrap(new byte[]{(byte) 0xFF, 0x41})));
+        assertEquals(WebSocketCodec.CLOSE_INVALID_PAYLOAD, e.closeCode);
+    }
+
+    // ========== OUTILS ==========
+
+    /**
+     * Trame client masquée avec MASK
+     */
+    static byte[] clientFrame(boolean fin, int opcode, byte[] payload) {
+        int length = payload.length;
+        int lengthBytes = length <= 125 ? 0 : length <= 0xFFFF ? 2 : 8;
+        ByteBuffer frame = ByteBuffer.allocate(2 + lengthBytes + 4 + length);
+        frame.put((byte) ((fin ? 0x80 : 0) | opcode));
+        if (lengthBytes == 0) {
+            frame.put((byte) (0x80 | length));
+        } else if (lengthBytes == 2) {
+            frame.put((byte) (0x80 | 126)).putShort((short) length);
+        } else {
+            frame.put((byte) (0x80 | 127)).putLong(length);
+        }
+        frame.putInt(MASK);
+        for (int i = 0; i < length; i++) {
+            frame.put((byte) (payload[i] ^ maskByte(i)));
+        }
+        return frame.array();
+    }
+
+    private static byte maskByte(long index) {
+        return (byte) (MASK >>> (24 - 8 * (int) (index & 3)));
+    }
+
+    private static RecordingHandler decodeAll(byte[]... frames) throws IOException {
+        RecordingHandler handler = new RecordingHandler();
+        new WebSocketCodec.Decoder(MAX_MESSAGE_SIZE).decode(ByteBuffer.wrap(concat(frames)), handler);
+        return handler;
+    }
+
+    private static void assertProtocolError(int closeCode, byte[]... frames) {
+        WebSocketCodec.ProtocolException e = assertThrows(WebSocketCodec.ProtocolException.class, () -> decodeAll(frames));
+        assertEquals(closeCode, e.closeCode);
+    }
+
+    private static void assertHeader(ByteBuffer frame, int headerSize, int payloadLength) {
+        assertEquals(headerSize + payloadLength, frame.remaining());
+        int shortLength = frame.get(1) & 0x7F;
+        if (headerSize == 2) {
+            assertEquals(payloadLength, shortLength);
+        } else if (headerSize == 4) {
+            assertEquals(126, shortLength);
+            assertEquals(payloadLength, frame.getShort(2) & 0xFFFF);
+        } else {
+            assertEquals(127, shortLength);
+            assertEquals(payloadLength, frame.getLong(2));
+        }
+    }
+
+    static byte[] closePayload(int code, String reason) {
+        byte[] text = utf8(reason);
+        return ByteBuffer.allocate(2 + text.length).putShort((short) code).put(text).array();
+    }
+
+    static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] pattern(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+
+    static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        ByteBuffer all = ByteBuffer.allocate(length);
+        for (byte[] part : parts) {
+            all.put(part);
+        }
+        return all.array();
+    }
+
+    static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
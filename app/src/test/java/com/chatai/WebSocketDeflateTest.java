@@ -0,0 +1,164 @@
+package com.chatai;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests de permessage-deflate: négociation, contexte partagé entre messages et décompression côté décodeur
+ */
+public class WebSocketDeflateTest {
+    private static final int MAX_SIZE = 64 * 1024;
+
+    @Test
+    public void negotiate_acceptsFirstUsableOffer() {
+        WebSocketDeflate.Stats stats = new WebSocketDeflate.Stats();
+        assertNull(WebSocketDeflate.negotiate(null, stats));
+        assertNull(WebSocketDeflate.negotiate("x-webkit-deflate-frame", stats));
+
+        assertEquals("permessage-deflate",
+                WebSocketDeflate.negotiate("permessage-deflate; client_max_window_bits", stats).getResponseHeader());
+        assertEquals("permessage-deflate; server_no_context_takeover; client_no_context_takeover",
+                WebSocketDeflate.negotiate("permessage-deflate; server_no_context_takeover; client_no_context_takeover", stats)
+                        .getResponseHeader());
+        // Fenêtre serveur réduite refusée: l'offre suivante est retenue
+        assertEquals("permessage-deflate; client_no_context_takeover",
+                WebSocketDeflate.negotiate("permessage-deflate; server_max_window_bits=10, permessage-deflate; client_no_context_takeover", stats)
+                        .getResponseHeader());
+    }
+
+    @Test
+    public void negotiate_rejectsInvalidParameters() {
+        WebSocketDeflate.Stats stats = new WebSocketDeflate.Stats();
+        assertNull(WebSocketDeflate.negotiate("permessage-deflate; server_max_window_bits=10", stats));
+        assertNull(WebSocketDeflate.negotiate("permessage-deflate; client_max_window_bits=7", stats));
+        assertNull(WebSocketDeflate.negotiate("permessage-deflate; server_no_context_takeover; server_no_context_takeover", stats));
+        assertNull(WebSocketDeflate.negotiate("permessage-deflate; inconnu", stats));
+    }
+
+    @Test
+    public void compress_skipsSmallMessages() {
+        WebSocketDeflate deflate = WebSocketDeflate.forBroadcast(new WebSocketDeflate.Stats());
+        assertNull(deflate.compress(ByteBuffer.allocate(WebSocketDeflate.MIN_COMPRESS_SIZE - 1)));
+    }
+
+    @Test
+    public void contextTakeover_shrinksRepeatedMessages() throws IOException {
+        byte[] message = json(0);
+        WebSocketDeflate server = WebSocketDeflate.negotiate("permessage-deflate", new WebSocketDeflate.Stats());
+        WebSocketDeflate client = WebSocketDeflate.negotiate("permessage-deflate", new WebSocketDeflate.Stats());
+
+        byte[] first = copy(server.compress(ByteBuffer.wrap(message)));
+        byte[] second = copy(server.compress(ByteBuffer.wrap(message)));
+
+        // Le second message référence le premier dans la fenêtre partagée
+        assertTrue(second.length < first.length);
+        assertArrayEquals(message, copy(client.decompress(ByteBuffer.wrap(first), MAX_SIZE)));
+        assertArrayEquals(message, copy(client.decompress(ByteBuffer.wrap(second), MAX_SIZE)));
+    }
+
+    @Test
+    public void noContextTakeover_compressesEachMessageAlone() throws IOException {
+        byte[] message = json(0);
+        WebSocketDeflate broadcast = WebSocketDeflate.forBroadcast(new WebSocketDeflate.Stats());
+        WebSocketDeflate client = WebSocketDeflate.negotiate("permessage-deflate; client_no_context_takeover",
+                new WebSocketDeflate.Stats());
+
+        byte[] first = copy(broadcast.compress(ByteBuffer.wrap(message)));
+        byte[] second = copy(broadcast.compress(ByteBuffer.wrap(message)));
+
+        assertArrayEquals(first, second);
+        // Chaque trame se décompresse sans l'historique de la précédente
+        assertArrayEquals(message, copy(client.decompress(ByteBuffer.wrap(second), MAX_SIZE)));
+    }
+
+    @Test
+    public void invalidateContext_restartsFromEmptyWindow() throws IOException {
+        byte[] message = json(1);
+        WebSocketDeflate server = WebSocketDeflate.negotiate("permessage-deflate", new WebSocketDeflate.Stats());
+
+        byte[] first = copy(server.compress(ByteBuffer.wrap(message)));
+        server.invalidateContext();
+        byte[] afterBroadcast = copy(server.compress(ByteBuffer.wrap(message)));
+
+        // Un client qui n'a pas vu le premier message peut décompresser le suivant
+        assertArrayEquals(first, afterBroadcast);
+        WebSocketDeflate client = WebSocketDeflate.negotiate("permessage-deflate", new WebSocketDeflate.Stats());
+        assertArrayEquals(message, copy(client.decompress(ByteBuffer.wrap(afterBroadcast), MAX_SIZE)));
+    }
+
+    @Test
+    public void decompress_rejectsInvalidOrOversizedData() {
+        WebSocketDeflate client = WebSocketDeflate.negotiate("permessage-deflate", new WebSocketDeflate.Stats());
+        WebSocketCodec.ProtocolException invalid = assertThrows(WebSocketCodec.ProtocolException.class,
+                () -> client.decompress(ByteBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0xFF, 0x00}), MAX_SIZE));
+        assertEquals(WebSocketCodec.CLOSE_INVALID_PAYLOAD, invalid.closeCode);
+
+        WebSocketDeflate server = WebSocketDeflate.forBroadcast(new WebSocketDeflate.Stats());
+        byte[] zeros = copy(server.compress(ByteBuffer.allocate(100000)));
+        WebSocketDeflate other = WebSocketDeflate.negotiate("permessage-deflate", new WebSocketDeflate.Stats());
+        WebSocketCodec.ProtocolException tooBig = assertThrows(WebSocketCodec.ProtocolException.class,
+                () -> other.decompress(ByteBuffer.wrap(zeros), MAX_SIZE));
+        assertEquals(WebSocketCodec.CLOSE_MESSAGE_TOO_BIG, tooBig.closeCode);
+    }
+
+    @Test
+    public void decoder_inflatesRsv1Messages() throws IOException {
+        byte[] message = json(2);
+        WebSocketDeflate clientSide = WebSocketDeflate.forBroadcast(new WebSocketDeflate.Stats());
+        byte[] compressed = copy(clientSide.compress(ByteBuffer.wrap(message)));
+        byte[] frame = WebSocketCodecTest.clientFrame(true, WebSocketCodec.OPCODE_TEXT, compressed);
+        frame[0] |= 0x40;
+
+        WebSocketCodec.Decoder decoder = new WebSocketCodec.Decoder(MAX_SIZE);
+        decoder.setDeflate(WebSocketDeflate.negotiate("permessage-deflate", new WebSocketDeflate.Stats()));
+        final byte[][] received = new byte[1][];
+        decoder.decode(ByteBuffer.wrap(frame), new WebSocketCodec.FrameHandler() {
+            @Override
+            public void onMessage(int opcode, ByteBuffer payload) {
+                received[0] = WebSocketCodecTest.toBytes(payload);
+            }
+
+            @Override
+            public void onPing(ByteBuffer payload) {
+            }
+
+            @Override
+            public void onPong(ByteBuffer payload) {
+            }
+
+            @Override
+            public void onClose(int code, String reason) {
+            }
+        });
+
+        assertNotNull(received[0]);
+        assertArrayEquals(message, received[0]);
+    }
+
+    /**
+     * Message JSON typique des diffusions (répétitif, compressible)
+     */
+    private static byte[] json(int seed) {
+        StringBuilder json = new StringBuilder("{\"type\":\"status\",\"items\":[");
+        for (int i = 0; i < 20; i++) {
+            json.append("{\"id\":").append(seed * 100 + i).append(",\"name\":\"capteur\",\"value\":").append(i % 7).append("},");
+        }
+        json.append("{}]}");
+        return WebSocketCodecTest.utf8(json.toString());
+    }
+
+    private static byte[] copy(ByteBuffer buffer) {
+        // Le buffer retourné est réutilisé au prochain appel
+        assertNotNull(buffer);
+        return WebSocketCodecTest.toBytes(buffer);
+    }
+}
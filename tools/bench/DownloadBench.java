@@ -0,0 +1,153 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Banc de mesure des téléchargements servis par l'application (WebServer /gamedata, FileServer /api/files/download).
+ * N clients téléchargent chacun M fois la même URL; le débit est mesuré côté client et les compteurs
+ * du processus (GC ART, octets zero-copy / copiés) sont relevés avant et après via /api/status.
+ *
+ * Lancement (JDK 11+, sans compilation): java tools/bench/DownloadBench.java [options]
+ * Voir tools/bench/README.md
+ */
+public class DownloadBench {
+    private static final int BUFFER_SIZE = 65536;
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://127.0.0.1:8888/gamedata/nes/bench.bin";
+        String statusUrl = "http://127.0.0.1:8080/api/status";
+        int clients = 4;
+        int requests = 50;
+        int warmup = 2;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url": url = args[++i]; break;
+                case "--status": statusUrl = args[++i].equals("none") ? null : args[i]; break;
+                case "--clients": clients = Integer.parseInt(args[++i]); break;
+                case "--requests": requests = Integer.parseInt(args[++i]); break;
+                case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Usage: java DownloadBench.java [--url URL] [--status URL|none]"
+                            + " [--clients N] [--requests M par client] [--warmup W par client]");
+                    System.exit(2);
+            }
+        }
+
+        System.out.printf(Locale.US, "url=%s clients=%d requests/client=%d%n", url, clients, requests);
+        run(url, clients, warmup);
+
+        String before = statusUrl != null ? fetchStatus(statusUrl) : null;
+        long start = System.nanoTime();
+        long[] latencies = run(url, clients, requests);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        String after = statusUrl != null ? fetchStatus(statusUrl) : null;
+
+        long bytes = latencies[latencies.length - 1];
+        long[] sorted = Arrays.copyOf(latencies, latencies.length - 1);
+        Arrays.sort(sorted);
+        System.out.printf(Locale.US, "bytes=%d time=%.2fs throughput=%.1f MB/s requests/s=%.1f p50=%.1fms p95=%.1fms%n",
+                bytes, seconds, bytes / 1048576.0 / seconds, sorted.length / seconds,
+                percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.95) / 1e6);
+        if (before != null && after != null) {
+            System.out.printf(Locale.US, "gcCount=%s gcTimeMs=%s blockingGcCount=%s zeroCopyBytes=%s copiedBytes=%s%n",
+                    delta(before, after, "gcCount"), delta(before, after, "gcTimeMs"),
+                    delta(before, after, "blockingGcCount"), delta(before, after, "zeroCopyBytes"),
+                    delta(before, after, "copiedBytes"));
+        }
+    }
+
+    /**
+     * Lance les téléchargements; retourne la durée de chaque requête (ns), suivie du total d'octets reçus
+     */
+    private static long[] run(String url, int clients, int requestsPerClient) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                futures.add(executor.submit(() -> {
+                    long[] result = new long[requestsPerClient + 1];
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    for (int i = 0; i < requestsPerClient; i++) {
+                        long t0 = System.nanoTime();
+                        result[requestsPerClient] += download(url, buffer);
+                        result[i] = System.nanoTime() - t0;
+                    }
+                    return result;
+                }));
+            }
+            long[] all = new long[clients * requestsPerClient + 1];
+            int index = 0;
+            for (Future<long[]> future : futures) {
+                long[] result = future.get();
+                System.arraycopy(result, 0, all, index, requestsPerClient);
+                index += requestsPerClient;
+                all[all.length - 1] += result[requestsPerClient];
+            }
+            return all;
+        } finally {
+            // Une erreur (HTTP != 200, réponse tronquée) arrête aussi les autres clients
+            executor.shutdownNow();
+        }
+    }
+
+    private static long download(String url, byte[] buffer) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if (connection.getResponseCode() != 200) {
+            throw new IOException("HTTP " + connection.getResponseCode() + " pour " + url);
+        }
+        long expected = connection.getContentLengthLong();
+        long received = 0;
+        try (InputStream in = connection.getInputStream()) {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                received += count;
+            }
+        }
+        if (expected >= 0 && received != expected) {
+            throw new IOException("Réponse tronquée: " + received + "/" + expected + " octets");
+        }
+        return received;
+    }
+
+    private static String fetchStatus(String statusUrl) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(statusUrl).openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Écart d'un compteur de /api/status, "n/a" si le build mesuré ne l'expose pas (-1 = indisponible sur l'appareil)
+     */
+    private static String delta(String before, String after, String field) {
+        Long start = numberField(before, field);
+        Long end = numberField(after, field);
+        if (start == null || end == null || start < 0 || end < 0) {
+            return "n/a";
+        }
+        return String.valueOf(end - start);
+    }
+
+    private static Long numberField(String json, String field) {
+        Matcher matcher = Pattern.compile("\"" + Pattern.quote(field) + "\"\\s*:\\s*(-?\\d+)").matcher(json);
+        return matcher.find() ? Long.valueOf(matcher.group(1)) : null;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+}